@@ -39,6 +39,7 @@ import android.view.DragEvent;
 
 import androidx.annotation.VisibleForTesting;
 import androidx.fragment.app.FragmentActivity;
+import androidx.loader.app.LoaderManager;
 import androidx.loader.app.LoaderManager.LoaderCallbacks;
 import androidx.loader.content.Loader;
 import androidx.recyclerview.selection.ItemDetailsLookup.ItemDetails;
@@ -96,6 +97,8 @@ public abstract class AbstractActionHandler<T extends FragmentActivity & CommonA
     private static final String TAG = "AbstractActionHandler";
     private static final int REFRESH_SPINNER_TIMEOUT = 500;
     private final Semaphore mLoaderSemaphore = new Semaphore(1);
+    // Loader being restarted, for the new one to refine the results of.
+    private @Nullable Loader<DirectoryResult> mPreviousLoader;
 
     protected final T mActivity;
     protected final State mState;
@@ -774,7 +777,10 @@ public abstract class AbstractActionHandler<T extends FragmentActivity & CommonA
         // multiple active loaders, because restartLoader() does not interrupt previous loaders'
         // loading, therefore may block the UI thread and cause ANR.
         if (mLoaderSemaphore.tryAcquire()) {
-            mActivity.getSupportLoaderManager().restartLoader(LOADER_ID, null, mBindings);
+            final LoaderManager loaderManager = mActivity.getSupportLoaderManager();
+            mPreviousLoader = loaderManager.getLoader(LOADER_ID);
+            loaderManager.restartLoader(LOADER_ID, null, mBindings);
+            mPreviousLoader = null;
         }
     }
 
@@ -881,7 +887,8 @@ public abstract class AbstractActionHandler<T extends FragmentActivity & CommonA
                             mExecutors,
                             mInjector.fileTypeLookup,
                             mSearchMgr.buildQueryArgs(),
-                            mState.stack.getRoot().userId);
+                            mState.stack.getRoot().userId,
+                            getSearchIndex(context));
                 } else {
                     if (DEBUG) {
                         Log.d(TAG, "Creating new loader recents.");
@@ -892,7 +899,9 @@ public abstract class AbstractActionHandler<T extends FragmentActivity & CommonA
                             mState,
                             mExecutors,
                             mInjector.fileTypeLookup,
-                            mState.stack.getRoot().userId);
+                            mState.stack.getRoot().userId,
+                            RecentsIndex.getInstance(context),
+                            getSearchIndex(context));
                 }
                 loader.setObserver(observer);
                 return loader;
@@ -930,17 +939,26 @@ public abstract class AbstractActionHandler<T extends FragmentActivity & CommonA
                             + DocumentInfo.debugString(mState.stack.peek()));
                 }
 
-                return new DirectoryLoader(
+                final DirectoryLoader loader = new DirectoryLoader(
                         mInjector.features,
                         context,
                         mState,
                         contentsUri,
                         mInjector.fileTypeLookup,
                         mContentLock,
-                        queryArgs);
+                        queryArgs,
+                        getSearchIndex(context));
+                loader.refine(mPreviousLoader);
+                return loader;
             }
         }
 
+        private @Nullable SearchIndex getSearchIndex(Context context) {
+            return mInjector.features.isLocalSearchIndexEnabled()
+                    ? SearchIndex.getInstance(context)
+                    : null;
+        }
+
         @Override
         public void onLoadFinished(Loader<DirectoryResult> loader, DirectoryResult result) {
             if (DEBUG) {
@@ -254,6 +254,7 @@ public abstract class BaseActivity
         // of "regular" search query processing.
         final CommandInterceptor cmdInterceptor = new CommandInterceptor(mInjector.features);
         cmdInterceptor.add(new CommandInterceptor.DumpRootsCacheHandler(this));
+        cmdInterceptor.add(new CommandInterceptor.DumpQueryLimiterHandler(this));
 
         // A tiny decorator that adds support for enabling CommandInterceptor
         // based on query input. It's sorta like CommandInterceptor, but its metaaahhh.
@@ -22,6 +22,7 @@ import android.content.ContentProviderClient;
 import android.content.ContentResolver;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.CursorWrapper;
 import android.database.MergeCursor;
 import android.net.Uri;
 import android.os.Bundle;
@@ -35,6 +36,7 @@ import android.util.Log;
 
 import androidx.annotation.Nullable;
 import androidx.loader.content.AsyncTaskLoader;
+import androidx.loader.content.Loader;
 
 import com.android.documentsui.archives.ArchivesProvider;
 import com.android.documentsui.base.DebugFlags;
@@ -51,6 +53,8 @@ import com.android.documentsui.sorting.SortModel;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
 import java.util.concurrent.Executor;
 
 public class DirectoryLoader extends AsyncTaskLoader<DirectoryResult> {
@@ -69,11 +73,16 @@ public class DirectoryLoader extends AsyncTaskLoader<DirectoryResult> {
     private final boolean mSearchMode;
     private final Bundle mQueryArgs;
     private final boolean mPhotoPicking;
+    private final @Nullable SearchIndex mSearchIndex;
 
     @Nullable
     private DocumentInfo mDoc;
     private CancellationSignal mSignal;
     private DirectoryResult mResult;
+    // Result of a previous search, kept open while it's shown, to filter by the query of this one
+    // until the provider answers.
+    private @Nullable DirectoryResult mPreviousResult;
+    private @Nullable DirectoryResult mFilteredResult;
 
     private Features mFeatures;
 
@@ -85,6 +94,21 @@ public class DirectoryLoader extends AsyncTaskLoader<DirectoryResult> {
             Lookup<String, String> fileTypeLookup,
             ContentLock lock,
             Bundle queryArgs) {
+        this(features, context, state, uri, fileTypeLookup, lock, queryArgs, null);
+    }
+
+    /**
+     * @param searchIndex index of names to add the listed documents to
+     */
+    public DirectoryLoader(
+            Features features,
+            Context context,
+            State state,
+            Uri uri,
+            Lookup<String, String> fileTypeLookup,
+            ContentLock lock,
+            Bundle queryArgs,
+            @Nullable SearchIndex searchIndex) {
 
         super(context);
         mFeatures = features;
@@ -98,6 +122,7 @@ public class DirectoryLoader extends AsyncTaskLoader<DirectoryResult> {
         mQueryArgs = queryArgs;
         mObserver = new LockingContentObserver(lock, this::onContentChanged);
         mPhotoPicking = state.isPhotoPicking();
+        mSearchIndex = searchIndex;
     }
 
     @Override
@@ -105,13 +130,73 @@ public class DirectoryLoader extends AsyncTaskLoader<DirectoryResult> {
         return ProviderExecutor.forAuthority(mRoot.authority);
     }
 
+    /**
+     * Shows the results of the previous loader filtered by the query of this one, until the
+     * provider answers, if the query of this loader refines the query of the previous one. Its
+     * results must be a subset of the previous ones then, e.g. when searching for "invoice" after
+     * "invoi". Must be called on the main thread, before this loader starts loading.
+     */
+    public void refine(@Nullable Loader<DirectoryResult> previous) {
+        if (!(previous instanceof DirectoryLoader)) {
+            return;
+        }
+        final DirectoryLoader loader = (DirectoryLoader) previous;
+        final DirectoryResult result = loader.mResult;
+        if (!isRefinementOf(loader) || result == null || result.exception != null
+                || result.getCursor() == null || result.getCursor().isClosed()
+                || result.getModelIds() == null || result.getDisplayNames() == null) {
+            return;
+        }
+
+        // This loader owns the result from now on, so that it stays open until the filtered
+        // result is replaced.
+        result.getCursor().unregisterContentObserver(loader.mObserver);
+        loader.mResult = null;
+        synchronized (this) {
+            mPreviousResult = result;
+        }
+    }
+
+    private boolean isRefinementOf(DirectoryLoader loader) {
+        if (!mSearchMode || !loader.mSearchMode || !mRoot.equals(loader.mRoot)
+                || !mQueryArgs.keySet().equals(loader.mQueryArgs.keySet())) {
+            return false;
+        }
+
+        for (String key : mQueryArgs.keySet()) {
+            if (!DocumentsContract.QUERY_ARG_DISPLAY_NAME.equals(key)
+                    && !Objects.deepEquals(mQueryArgs.get(key), loader.mQueryArgs.get(key))) {
+                return false;
+            }
+        }
+
+        final String query = mQueryArgs.getString(DocumentsContract.QUERY_ARG_DISPLAY_NAME);
+        final String previousQuery =
+                loader.mQueryArgs.getString(DocumentsContract.QUERY_ARG_DISPLAY_NAME);
+        return query != null && previousQuery != null
+                && query.toLowerCase(Locale.ROOT).contains(previousQuery.toLowerCase(Locale.ROOT));
+    }
+
     @Override
     public final DirectoryResult loadInBackground() {
+        final DirectoryResult previousResult;
         synchronized (this) {
             if (isLoadInBackgroundCanceled()) {
                 throw new OperationCanceledException();
             }
-            mSignal = new CancellationSignal();
+            previousResult = mPreviousResult;
+            mPreviousResult = null;
+            if (previousResult == null) {
+                mSignal = new CancellationSignal();
+            }
+        }
+
+        if (previousResult != null) {
+            final DirectoryResult result = filterPreviousResult(previousResult);
+            synchronized (this) {
+                mFilteredResult = result;
+            }
+            return result;
         }
 
         final String authority = mUri.getAuthority();
@@ -177,6 +262,11 @@ public class DirectoryLoader extends AsyncTaskLoader<DirectoryResult> {
             }
             cursor.registerContentObserver(mObserver);
 
+            if (shouldIndex()) {
+                mSearchIndex.update(mRoot.userId, authority, mRoot.rootId, mDoc.documentId,
+                        cursor);
+            }
+
             FilteringCursorWrapper filteringCursor = new FilteringCursorWrapper(cursor);
             filteringCursor.filterHiddenFiles(mState.showHiddenFiles);
             if (mSearchMode && !mFeatures.isFoldersInSearchResultsEnabled()) {
@@ -210,6 +300,62 @@ public class DirectoryLoader extends AsyncTaskLoader<DirectoryResult> {
         return result;
     }
 
+    private DirectoryResult filterPreviousResult(DirectoryResult previousResult) {
+        final Cursor previousCursor = previousResult.getCursor();
+        final Bundle extras = previousCursor.getExtras() != null
+                ? new Bundle(previousCursor.getExtras()) : new Bundle();
+        extras.putBoolean(DocumentsContract.EXTRA_LOADING, true);
+
+        // The previous cursor is still shown, and moved on the main thread, so rows are matched
+        // by the names read when it was loaded, and the filtered cursor maps positions to it.
+        final String[] previousIds = previousResult.getModelIds();
+        final String[] previousNames = previousResult.getDisplayNames();
+        final String query = mQueryArgs.getString(DocumentsContract.QUERY_ARG_DISPLAY_NAME)
+                .toLowerCase(Locale.ROOT);
+        final List<String> modelIds = new ArrayList<>();
+        final List<String> displayNames = new ArrayList<>();
+        final FilteringCursorWrapper filteringCursor = new FilteringCursorWrapper(previousCursor);
+        filteringCursor.filterPositions((position) -> {
+            final String name = previousNames[position];
+            if (name == null || !name.toLowerCase(Locale.ROOT).contains(query)) {
+                return false;
+            }
+            modelIds.add(previousIds[position]);
+            displayNames.add(name);
+            return true;
+        });
+
+        // Closing it closes the previous cursor, which is no longer shown once this one is
+        // replaced.
+        final Cursor cursor = new CursorWrapper(filteringCursor) {
+            @Override
+            public Bundle getExtras() {
+                // The provider is still to be asked.
+                return extras;
+            }
+        };
+
+        // The previous result is sorted already, and so is the filtered one.
+        final DirectoryResult result = new DirectoryResult();
+        result.doc = previousResult.doc;
+        result.client = previousResult.client;
+        result.setCursor(cursor, modelIds.toArray(new String[0]),
+                displayNames.toArray(new String[0]));
+        return result;
+    }
+
+    private boolean shouldIndex() {
+        // Only roots searched by global search are indexed, and documents of other profiles
+        // are not stored in ours.
+        return mSearchIndex != null
+                && !mSearchMode
+                && mDoc != null
+                && !mDoc.isInArchive()
+                && mRoot.isLocalOnly()
+                && mRoot.supportsSearch()
+                && UserId.CURRENT_USER.equals(mRoot.userId);
+    }
+
     private boolean shouldSearchAcrossProfile() {
         return mState.supportsCrossProfile()
                 && mRoot.supportsCrossProfile()
@@ -275,6 +421,18 @@ public class DirectoryLoader extends AsyncTaskLoader<DirectoryResult> {
         if (oldResult != null && oldResult != result) {
             FileUtils.closeQuietly(oldResult);
         }
+
+        final boolean filtered;
+        synchronized (this) {
+            filtered = result != null && result == mFilteredResult;
+            if (filtered) {
+                mFilteredResult = null;
+            }
+        }
+        if (filtered) {
+            // Now that the filtered result is shown, ask the provider for the real one.
+            onContentChanged();
+        }
     }
 
     @Override
@@ -311,6 +469,11 @@ public class DirectoryLoader extends AsyncTaskLoader<DirectoryResult> {
 
         FileUtils.closeQuietly(mResult);
         mResult = null;
+
+        synchronized (this) {
+            FileUtils.closeQuietly(mPreviousResult);
+            mPreviousResult = null;
+        }
     }
 
     private boolean checkIfCursorStale(DirectoryResult result) {
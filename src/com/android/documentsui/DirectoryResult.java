@@ -27,6 +27,7 @@ import android.util.Log;
 import com.android.documentsui.archives.ArchivesProvider;
 import com.android.documentsui.base.DocumentInfo;
 
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -36,11 +37,16 @@ public class DirectoryResult implements AutoCloseable {
 
     public Exception exception;
     public DocumentInfo doc;
+    // Whether rows of cached results shown before were replaced by live ones, which may have the
+    // same IDs but different contents.
+    public boolean cachedRowsReplaced;
     ContentProviderClient client;
 
     private Cursor mCursor;
     private Set<String> mFileNames;
     private String[] mModelIds;
+    // Display names of the documents, by cursor position.
+    private String[] mDisplayNames;
 
     @Override
     public void close() {
@@ -67,6 +73,13 @@ public class DirectoryResult implements AutoCloseable {
         return mFileNames;
     }
 
+    /**
+     * @return display names of the documents by cursor position, read along with the model IDs.
+     */
+    public String[] getDisplayNames() {
+        return mDisplayNames;
+    }
+
     /** Update the cursor and populate cursor-related fields. */
     public void setCursor(Cursor cursor) {
         mCursor = cursor;
@@ -74,16 +87,29 @@ public class DirectoryResult implements AutoCloseable {
         if (mCursor == null) {
             mFileNames = null;
             mModelIds = null;
+            mDisplayNames = null;
         } else {
             loadDataFromCursor();
         }
     }
 
+    /**
+     * Sets a cursor whose model IDs and display names are known already, without moving it, e.g.
+     * as it's shown and moved on the main thread meanwhile.
+     */
+    public void setCursor(Cursor cursor, String[] modelIds, String[] displayNames) {
+        mCursor = cursor;
+        mModelIds = modelIds;
+        mDisplayNames = displayNames;
+        mFileNames = new HashSet<>(Arrays.asList(displayNames));
+    }
+
     /** Populate cursor-related field. Must not be called from UI thread. */
     private void loadDataFromCursor() {
         ThreadHelper.assertNotOnMainThread();
         int cursorCount = mCursor.getCount();
         String[] modelIds = new String[cursorCount];
+        String[] displayNames = new String[cursorCount];
         Set<String> fileNames = new HashSet<>();
         try {
             mCursor.moveToPosition(-1);
@@ -97,8 +123,9 @@ public class DirectoryResult implements AutoCloseable {
                 // ID is a unique string that can be used to identify the document referred to by
                 // the cursor. Prefix the ids with the authority to avoid collisions.
                 modelIds[pos] = ModelId.build(mCursor);
-                fileNames.add(
-                        getCursorString(mCursor, DocumentsContract.Document.COLUMN_DISPLAY_NAME));
+                displayNames[pos] =
+                        getCursorString(mCursor, DocumentsContract.Document.COLUMN_DISPLAY_NAME);
+                fileNames.add(displayNames[pos]);
             }
         } catch (Exception e) {
             Log.e(TAG, "Exception when moving cursor. Stale cursor?", e);
@@ -107,6 +134,7 @@ public class DirectoryResult implements AutoCloseable {
 
         // Model related data is only non-null when no error iterating through cursor.
         mModelIds = modelIds;
+        mDisplayNames = displayNames;
         mFileNames = fileNames;
     }
 }
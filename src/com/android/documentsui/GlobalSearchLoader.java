@@ -23,6 +23,7 @@ import android.os.Bundle;
 import android.provider.DocumentsContract;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.android.documentsui.base.Lookup;
 import com.android.documentsui.base.RootInfo;
@@ -32,6 +33,7 @@ import com.android.documentsui.roots.ProvidersAccess;
 import com.android.documentsui.roots.RootCursorWrapper;
 
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Executor;
 
 /*
@@ -40,8 +42,12 @@ import java.util.concurrent.Executor;
  * {@link android.provider.DocumentsProvider}.
  */
 public class GlobalSearchLoader extends MultiRootDocumentsLoader {
+    // Local matches shown until providers are searched, from the most recently modified.
+    private static final int MAX_INDEXED_DOCS = 100;
+
     private final Bundle mQueryArgs;
     private final UserId mUserId;
+    private final @Nullable SearchIndex mIndex;
 
     /*
      * Create the loader to query multiple roots support
@@ -60,9 +66,19 @@ public class GlobalSearchLoader extends MultiRootDocumentsLoader {
     GlobalSearchLoader(Context context, ProvidersAccess providers, State state,
             Lookup<String, Executor> executors, Lookup<String, String> fileTypeMap,
             @NonNull Bundle queryArgs, UserId userId) {
+        this(context, providers, state, executors, fileTypeMap, queryArgs, userId, null);
+    }
+
+    /*
+     * @param index index of names to show matches from until roots are searched
+     */
+    GlobalSearchLoader(Context context, ProvidersAccess providers, State state,
+            Lookup<String, Executor> executors, Lookup<String, String> fileTypeMap,
+            @NonNull Bundle queryArgs, UserId userId, @Nullable SearchIndex index) {
         super(context, providers, state, executors, fileTypeMap);
         mQueryArgs = queryArgs;
         mUserId = userId;
+        mIndex = index;
     }
 
     @Override
@@ -85,6 +101,20 @@ public class GlobalSearchLoader extends MultiRootDocumentsLoader {
         return root.isStorage();
     }
 
+    @Override
+    protected @Nullable Map<String, List<Cursor>> loadCachedResults(
+            Map<String, List<RootInfo>> rootsIndex) {
+        // The index only knows names, so it can't help when searching by other criteria.
+        final String query = mQueryArgs.getString(DocumentsContract.QUERY_ARG_DISPLAY_NAME);
+        if (mIndex == null || mQueryArgs.size() != 1 || query == null) {
+            return null;
+        }
+        final Map<String, List<Cursor>> result = mIndex.query(mUserId, rootsIndex, query,
+                true /* excludeMedia */, MAX_INDEXED_DOCS);
+        // Rather wait for providers than show no results while searching them.
+        return result.isEmpty() ? null : result;
+    }
+
     @Override
     protected QueryTask getQueryTask(String authority, List<RootInfo> rootInfos) {
         return new SearchTask(authority, rootInfos);
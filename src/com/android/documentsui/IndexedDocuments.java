@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.provider.DocumentsContract.Document;
+
+import androidx.annotation.Nullable;
+
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Helpers shared by the local indexes of documents, {@link RecentsIndex} and
+ * {@link SearchIndex}. Both store documents with the same columns, in a database which is
+ * rebuilt from providers when its schema changes.
+ */
+final class IndexedDocuments {
+
+    // Columns of indexed documents, as stored and as returned.
+    static final String[] DOCUMENT_COLUMNS = new String[] {
+            Document.COLUMN_DOCUMENT_ID,
+            Document.COLUMN_MIME_TYPE,
+            Document.COLUMN_DISPLAY_NAME,
+            Document.COLUMN_LAST_MODIFIED,
+            Document.COLUMN_SIZE,
+            Document.COLUMN_FLAGS,
+            Document.COLUMN_SUMMARY,
+            Document.COLUMN_ICON
+    };
+
+    private IndexedDocuments() {}
+
+    /**
+     * @return values of the document columns of the current row of the cursor, or null if the
+     *     row has no document ID.
+     */
+    static @Nullable ContentValues read(Cursor cursor) {
+        final ContentValues values = new ContentValues();
+        for (String column : DOCUMENT_COLUMNS) {
+            final int index = cursor.getColumnIndex(column);
+            if (index == -1) {
+                continue;
+            }
+            switch (cursor.getType(index)) {
+                case Cursor.FIELD_TYPE_NULL:
+                    values.putNull(column);
+                    break;
+                case Cursor.FIELD_TYPE_INTEGER:
+                    values.put(column, cursor.getLong(index));
+                    break;
+                default:
+                    values.put(column, cursor.getString(index));
+                    break;
+            }
+        }
+        return values.getAsString(Document.COLUMN_DOCUMENT_ID) != null ? values : null;
+    }
+
+    /**
+     * Adds the document of the current row of an index query to the documents of its root.
+     *
+     * @param documents documents by root key, see {@link #getRootKey}.
+     */
+    static void addRow(Map<String, MatrixCursor> documents, String rootKey, Cursor cursor) {
+        MatrixCursor rootDocuments = documents.get(rootKey);
+        if (rootDocuments == null) {
+            rootDocuments = new MatrixCursor(DOCUMENT_COLUMNS);
+            documents.put(rootKey, rootDocuments);
+        }
+        final MatrixCursor.RowBuilder row = rootDocuments.newRow();
+        for (String column : DOCUMENT_COLUMNS) {
+            final int index = cursor.getColumnIndex(column);
+            row.add(column, cursor.getType(index) == Cursor.FIELD_TYPE_INTEGER
+                    ? cursor.getLong(index) : cursor.getString(index));
+        }
+    }
+
+    /**
+     * @return documents of the root, or an empty cursor if it has none.
+     */
+    static MatrixCursor getRootDocuments(Map<String, MatrixCursor> documents, String rootKey) {
+        final MatrixCursor rootDocuments = documents.get(rootKey);
+        return rootDocuments != null ? rootDocuments : new MatrixCursor(DOCUMENT_COLUMNS);
+    }
+
+    static String getRootKey(String authority, String rootId) {
+        return authority + "/" + rootId;
+    }
+
+    /**
+     * Lazily created instance of an index, shared by the whole process.
+     */
+    static final class Singleton<T> {
+        private final Function<Context, T> mFactory;
+        private T mInstance;
+
+        /**
+         * @param factory creates the index from the application context.
+         */
+        Singleton(Function<Context, T> factory) {
+            mFactory = factory;
+        }
+
+        /**
+         * @return the instance, guaranteed not null
+         */
+        synchronized T get(Context context) {
+            if (mInstance == null) {
+                mInstance = mFactory.apply(context.getApplicationContext());
+            }
+            return mInstance;
+        }
+    }
+
+    /**
+     * Database of an index. Its tables are dropped and created again on upgrades, as the index is
+     * rebuilt from providers anyway.
+     */
+    abstract static class DatabaseHelper extends SQLiteOpenHelper {
+
+        // Tables to drop on upgrades, in order.
+        private final String[] mTables;
+
+        /**
+         * @param name name of the database file, or null for an in-memory database.
+         */
+        DatabaseHelper(Context context, @Nullable String name, int version, String... tables) {
+            super(context, name, null, version);
+            mTables = tables;
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            for (String table : mTables) {
+                db.execSQL("DROP TABLE IF EXISTS " + table);
+            }
+            onCreate(db);
+        }
+    }
+}
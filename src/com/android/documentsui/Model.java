@@ -66,6 +66,7 @@ public class Model {
     private final Set<String> mFileNames = new HashSet<>();
 
     private boolean mIsLoading;
+    private boolean mCachedRowsReplaced;
     private List<EventListener<Update>> mUpdateListeners = new ArrayList<>();
     private @Nullable Cursor mCursor;
     private int mCursorCount;
@@ -105,6 +106,7 @@ public class Model {
         error = null;
         doc = null;
         mIsLoading = false;
+        mCachedRowsReplaced = false;
         mFileNames.clear();
         notifyUpdateListeners();
     }
@@ -126,6 +128,7 @@ public class Model {
         mCursor = result.getCursor();
         mCursorCount = mCursor.getCount();
         doc = result.doc;
+        mCachedRowsReplaced = result.cachedRowsReplaced;
 
         if (result.getModelIds() != null && result.getFileNames() != null) {
             mIds = result.getModelIds();
@@ -182,6 +185,14 @@ public class Model {
         return mIsLoading;
     }
 
+    /**
+     * @return whether the last update replaced cached rows with live ones, so that rows may have
+     *     changed even where their IDs didn't.
+     */
+    public boolean areCachedRowsReplaced() {
+        return mCachedRowsReplaced;
+    }
+
     public List<DocumentInfo> getDocuments(Selection<String> selection) {
         return loadDocuments(selection, DocumentFilters.ANY);
     }
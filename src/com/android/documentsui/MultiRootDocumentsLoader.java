@@ -18,22 +18,24 @@ package com.android.documentsui;
 
 import static com.android.documentsui.base.SharedMinimal.DEBUG;
 
-import android.app.ActivityManager;
 import android.content.ContentProviderClient;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.CursorWrapper;
 import android.database.MatrixCursor;
-import android.database.MergeCursor;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.CancellationSignal;
 import android.os.FileUtils;
+import android.os.OperationCanceledException;
+import android.os.SystemClock;
 import android.provider.DocumentsContract;
 import android.provider.DocumentsContract.Document;
 import android.util.Log;
 
 import androidx.annotation.GuardedBy;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.loader.content.AsyncTaskLoader;
 
 import com.android.documentsui.base.DocumentInfo;
@@ -49,14 +51,17 @@ import com.google.common.util.concurrent.AbstractFuture;
 import java.io.Closeable;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
 /*
@@ -71,9 +76,6 @@ public abstract class MultiRootDocumentsLoader extends AsyncTaskLoader<Directory
     // previously returned cursors for filtering/sorting; this currently races
     // with the UI thread.
 
-    private static final int MAX_OUTSTANDING_TASK = 4;
-    private static final int MAX_OUTSTANDING_TASK_SVELTE = 2;
-
     /**
      * Time to wait for first pass to complete before returning partial results.
      */
@@ -81,7 +83,7 @@ public abstract class MultiRootDocumentsLoader extends AsyncTaskLoader<Directory
 
     protected final State mState;
 
-    private final Semaphore mQueryPermits;
+    private final QueryLimiter mQueryLimiter;
     private final ProvidersAccess mProviders;
     private final Lookup<String, Executor> mExecutors;
     private final Lookup<String, String> mFileTypeMap;
@@ -91,9 +93,31 @@ public abstract class MultiRootDocumentsLoader extends AsyncTaskLoader<Directory
     /** A authority -> QueryTask map */
     private final Map<String, QueryTask> mTasks = new HashMap<>();
 
+    // Result of the last load. Cursors of tasks completing later are merged into it, so that
+    // rows already filtered and sorted are not processed again.
+    @GuardedBy("mTasks")
+    private Cursor mMerged;
+    @GuardedBy("mTasks")
+    private final Set<QueryTask> mMergedTasks = new HashSet<>();
+    @GuardedBy("mTasks")
+    private boolean mMergedShowHiddenFiles;
+    @GuardedBy("mTasks")
+    private String[] mMergedAcceptMimes;
+
+    // Last known results by authority, shown until the tasks of the authorities complete.
+    @GuardedBy("mTasks")
+    private Map<String, List<Cursor>> mCachedResults;
+    // Authorities whose cached results were part of the last result.
+    @GuardedBy("mTasks")
+    private final Set<String> mCachedAuthoritiesShown = new HashSet<>();
+
     private CountDownLatch mFirstPassLatch;
     private volatile boolean mFirstPassDone;
 
+    // Tasks are canceled without holding mTasks, which is held while waiting for the first pass.
+    private final List<QueryTask> mCancelableTasks = new CopyOnWriteArrayList<>();
+    private volatile boolean mCanceled;
+
     private DirectoryResult mResult;
 
     /*
@@ -113,13 +137,7 @@ public abstract class MultiRootDocumentsLoader extends AsyncTaskLoader<Directory
         mState = state;
         mExecutors = executors;
         mFileTypeMap = fileTypeMap;
-
-        // Keep clients around on high-RAM devices, since we'd be spinning them
-        // up moments later to fetch thumbnails anyway.
-        final ActivityManager am = (ActivityManager) getContext().getSystemService(
-                Context.ACTIVITY_SERVICE);
-        mQueryPermits = new Semaphore(
-                am.isLowRamDevice() ? MAX_OUTSTANDING_TASK_SVELTE : MAX_OUTSTANDING_TASK);
+        mQueryLimiter = QueryLimiter.get(getContext());
     }
 
     @Override
@@ -145,8 +163,9 @@ public abstract class MultiRootDocumentsLoader extends AsyncTaskLoader<Directory
             Map<String, List<RootInfo>> rootsIndex = indexRoots();
 
             for (Map.Entry<String, List<RootInfo>> rootEntry : rootsIndex.entrySet()) {
-                mTasks.put(rootEntry.getKey(),
-                        getQueryTask(rootEntry.getKey(), rootEntry.getValue()));
+                final QueryTask task = getQueryTask(rootEntry.getKey(), rootEntry.getValue());
+                mTasks.put(rootEntry.getKey(), task);
+                mCancelableTasks.add(task);
             }
 
             if (isLoadInBackgroundCanceled()) {
@@ -159,27 +178,48 @@ public abstract class MultiRootDocumentsLoader extends AsyncTaskLoader<Directory
                 mExecutors.lookup(task.authority).execute(task);
             }
 
-            try {
-                mFirstPassLatch.await(MAX_FIRST_PASS_WAIT_MILLIS, TimeUnit.MILLISECONDS);
-                mFirstPassDone = true;
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
+            // No need to wait for the first pass if there is something to show for every
+            // authority already.
+            mCachedResults = loadCachedResults(rootsIndex);
+            if (mCachedResults == null || !mCachedResults.keySet().containsAll(mTasks.keySet())) {
+                try {
+                    mFirstPassLatch.await(MAX_FIRST_PASS_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
             }
+            mFirstPassDone = true;
         }
 
         final long rejectBefore = getRejectBeforeTime();
 
-        // Collect all finished tasks
+        if (mMerged != null && (mMergedShowHiddenFiles != mState.showHiddenFiles
+                || !Arrays.equals(mMergedAcceptMimes, mState.acceptMimes))) {
+            // Filters changed, so all cursors have to be filtered and merged again.
+            mMerged = null;
+            mMergedTasks.clear();
+        }
+
+        // Collect tasks finished since the last load
         boolean allDone = true;
+        boolean cachedReplaced = false;
         int totalQuerySize = 0;
+        final List<QueryTask> mergedTasks = new ArrayList<>();
         List<Cursor> cursors = new ArrayList<>(mTasks.size());
+        final List<Cursor> cached = new ArrayList<>();
         for (QueryTask task : mTasks.values()) {
             if (isLoadInBackgroundCanceled()) {
                 // Loader is cancelled (e.g. about to be reset), preempt loading.
                 throw new InterruptedException("Loading is cancelled!");
             }
 
+            if (mMergedTasks.contains(task)) {
+                continue;
+            }
+
             if (task.isDone()) {
+                mergedTasks.add(task);
+                cachedReplaced |= mCachedAuthoritiesShown.remove(task.authority);
                 try {
                     final Cursor[] taskCursors = task.get();
                     if (taskCursors == null || taskCursors.length == 0) {
@@ -194,18 +234,7 @@ public abstract class MultiRootDocumentsLoader extends AsyncTaskLoader<Directory
                             continue;
                         }
 
-                        final FilteringCursorWrapper filteredCursor =
-                                new FilteringCursorWrapper(cursor) {
-                            @Override
-                            public void close() {
-                                // Ignored, since we manage cursor lifecycle internally
-                            }
-                        };
-                        filteredCursor.filterHiddenFiles(mState.showHiddenFiles);
-                        filteredCursor.filterMimes(mState.acceptMimes, getRejectMimes());
-                        filteredCursor.filterLastModified(rejectBefore);
-
-                        cursors.add(filteredCursor);
+                        cursors.add(filterCursor(cursor, rejectBefore));
                     }
 
                 } catch (InterruptedException e) {
@@ -219,31 +248,46 @@ public abstract class MultiRootDocumentsLoader extends AsyncTaskLoader<Directory
                 }
             } else {
                 allDone = false;
+                final List<Cursor> cachedCursors =
+                        mCachedResults != null ? mCachedResults.get(task.authority) : null;
+                if (cachedCursors != null) {
+                    for (Cursor cursor : cachedCursors) {
+                        cached.add(filterCursor(cursor, rejectBefore));
+                    }
+                    mCachedAuthoritiesShown.add(task.authority);
+                }
             }
         }
 
         if (DEBUG) {
             Log.d(TAG,
-                    "Found " + cursors.size() + " of " + totalQuerySize + " queries done");
+                    "Merging " + cursors.size() + " of " + totalQuerySize + " new queries done");
         }
 
         final DirectoryResult result = new DirectoryResult();
         result.doc = new DocumentInfo();
 
-        final Cursor merged;
-        if (cursors.size() > 0) {
-            merged = new MergeCursor(cursors.toArray(new Cursor[cursors.size()]));
-        } else {
-            // Return something when nobody is ready
-            merged = new MatrixCursor(new String[0]);
+        Cursor sorted = null;
+        if (mMerged != null || cursors.size() > 0) {
+            sorted = mState.sortModel.mergeSortedCursors(
+                    mMerged, cursors.toArray(new Cursor[cursors.size()]), mFileTypeMap);
+            mMerged = sorted;
+            mMergedTasks.addAll(mergedTasks);
+            mMergedShowHiddenFiles = mState.showHiddenFiles;
+            mMergedAcceptMimes = mState.acceptMimes;
         }
-
-        final Cursor sorted;
-        if (isDocumentsMovable()) {
-            sorted = mState.sortModel.sortCursor(merged, mFileTypeMap);
-        } else {
-            final Cursor notMovableMasked = new NotMovableMaskCursor(merged);
-            sorted = mState.sortModel.sortCursor(notMovableMasked, mFileTypeMap);
+        for (QueryTask task : mergedTasks) {
+            task.mUsed = true;
+        }
+        if (cached.size() > 0) {
+            // Cached results are replaced once their tasks complete, so they are merged on top
+            // of the results kept for later loads.
+            sorted = mState.sortModel.mergeSortedCursors(
+                    sorted, cached.toArray(new Cursor[cached.size()]), mFileTypeMap);
+        }
+        if (sorted == null) {
+            // Return something when nobody is ready
+            sorted = new MatrixCursor(new String[0]);
         }
 
         // Tell the UI if this is an in-progress result. When loading is complete, another update is
@@ -253,10 +297,30 @@ public abstract class MultiRootDocumentsLoader extends AsyncTaskLoader<Directory
         sorted.setExtras(extras);
 
         result.setCursor(sorted);
+        result.cachedRowsReplaced = cachedReplaced;
 
         return result;
     }
 
+    /**
+     * Filters a cursor of a task. The returned cursor ignores being closed, as it is kept to be
+     * merged with cursors of other tasks completing later.
+     */
+    private Cursor filterCursor(Cursor cursor, long rejectBefore) {
+        final FilteringCursorWrapper filteredCursor = new FilteringCursorWrapper(cursor) {
+            @Override
+            public void close() {
+                // Ignored, since we manage cursor lifecycle internally
+            }
+        };
+        filteredCursor.filterHiddenFiles(mState.showHiddenFiles);
+        filteredCursor.filterMimes(mState.acceptMimes, getRejectMimes());
+        filteredCursor.filterLastModified(rejectBefore);
+
+        // Mask each cursor rather than the merged one, so that it can be merged again.
+        return isDocumentsMovable() ? filteredCursor : new NotMovableMaskCursor(filteredCursor);
+    }
+
     /**
      * Returns a map of Authority -> rootInfos.
      */
@@ -295,6 +359,21 @@ public abstract class MultiRootDocumentsLoader extends AsyncTaskLoader<Directory
         return false;
     }
 
+    /**
+     * Returns the last known results of querying the roots, shown until the queries complete.
+     * Called once, after the queries started. The first pass is not waited for if there is an
+     * entry for every authority.
+     *
+     * @param rootsIndex roots to query by authority
+     * @return cursors by authority, with an entry only for authorities whose results are worth
+     *     showing until their query completes, or null if none are. Cursors are closed when the
+     *     loader is reset.
+     */
+    protected @Nullable Map<String, List<Cursor>> loadCachedResults(
+            Map<String, List<RootInfo>> rootsIndex) {
+        return null;
+    }
+
     protected abstract QueryTask getQueryTask(String authority, List<RootInfo> rootInfos);
 
     @Override
@@ -336,14 +415,41 @@ public abstract class MultiRootDocumentsLoader extends AsyncTaskLoader<Directory
         FileUtils.closeQuietly(result);
     }
 
+    @Override
+    protected void onAbandon() {
+        super.onAbandon();
+
+        // A new loader replaces this one, e.g. as the search query changed, so the queries still
+        // running are of no use anymore.
+        cancelQueries();
+    }
+
+    private void cancelQueries() {
+        mCanceled = true;
+        for (QueryTask task : mCancelableTasks) {
+            task.cancelQuery();
+        }
+    }
+
     @Override
     protected void onReset() {
         super.onReset();
+        cancelQueries();
 
         synchronized (mTasks) {
             for (QueryTask task : mTasks.values()) {
                 mExecutors.lookup(task.authority).execute(() -> FileUtils.closeQuietly(task));
             }
+            mMerged = null;
+            mMergedTasks.clear();
+            if (mCachedResults != null) {
+                for (List<Cursor> cursors : mCachedResults.values()) {
+                    for (Cursor cursor : cursors) {
+                        FileUtils.closeQuietly(cursor);
+                    }
+                }
+                mCachedResults = null;
+            }
         }
         FileUtils.closeQuietly(mResult);
         mResult = null;
@@ -375,7 +481,11 @@ public abstract class MultiRootDocumentsLoader extends AsyncTaskLoader<Directory
         public final String authority;
         public final List<RootInfo> rootInfos;
 
+        private final CancellationSignal mSignal = new CancellationSignal();
+        // Whether the results were merged into a result of the loader.
+        private volatile boolean mUsed;
         private Cursor[] mCursors;
+        private long mQueryTimeMs = -1;
         private boolean mIsClosed = false;
 
         public QueryTask(String authority, List<RootInfo> rootInfos) {
@@ -385,20 +495,21 @@ public abstract class MultiRootDocumentsLoader extends AsyncTaskLoader<Directory
 
         @Override
         public void run() {
-            if (isCancelled()) {
+            if (isCancelled() || mCanceled) {
                 return;
             }
 
+            final QueryLimiter.Permit permit;
             try {
-                mQueryPermits.acquire();
-            } catch (InterruptedException e) {
+                permit = mQueryLimiter.acquire(authority, mSignal);
+            } catch (InterruptedException | OperationCanceledException e) {
                 return;
             }
 
             try {
                 runInternal();
             } finally {
-                mQueryPermits.release();
+                permit.close();
             }
         }
 
@@ -410,8 +521,16 @@ public abstract class MultiRootDocumentsLoader extends AsyncTaskLoader<Directory
         protected void addQueryArgs(@NonNull Bundle queryArgs) {
         }
 
+        /**
+         * Cancels the queries of this task, either running or to run, and doesn't notify the
+         * loader of their results.
+         */
+        void cancelQuery() {
+            mSignal.cancel();
+        }
+
         private synchronized void runInternal() {
-            if (mIsClosed) {
+            if (mIsClosed || mSignal.isCanceled()) {
                 return;
             }
 
@@ -419,7 +538,8 @@ public abstract class MultiRootDocumentsLoader extends AsyncTaskLoader<Directory
             final Cursor[] res = new Cursor[rootInfoCount];
             mCursors = new Cursor[rootInfoCount];
 
-            for (int i = 0; i < rootInfoCount; i++) {
+            final long startTime = SystemClock.elapsedRealtime();
+            for (int i = 0; i < rootInfoCount && !mSignal.isCanceled(); i++) {
                 final RootInfo rootInfo = rootInfos.get(i);
                 try (ContentProviderClient client =
                              DocumentsApplication.acquireUnstableProviderOrThrow(
@@ -430,11 +550,15 @@ public abstract class MultiRootDocumentsLoader extends AsyncTaskLoader<Directory
                         final Bundle queryArgs = new Bundle();
                         mState.sortModel.addQuerySortArgs(queryArgs);
                         addQueryArgs(queryArgs);
-                        res[i] = client.query(uri, null, queryArgs, null);
+                        res[i] = client.query(uri, null, queryArgs, mSignal);
                         if (mObserver != null) {
                             res[i].registerContentObserver(mObserver);
                         }
                         mCursors[i] = generateResultCursor(rootInfo, res[i]);
+                    } catch (OperationCanceledException e) {
+                        if (DEBUG) {
+                            Log.d(TAG, "Canceled loading " + authority + ", " + rootInfo.rootId);
+                        }
                     } catch (Exception e) {
                         Log.w(TAG, "Failed to load " + authority + ", " + rootInfo.rootId, e);
                     }
@@ -444,10 +568,12 @@ public abstract class MultiRootDocumentsLoader extends AsyncTaskLoader<Directory
                 }
             }
 
+            mQueryTimeMs = SystemClock.elapsedRealtime() - startTime;
+
             set(mCursors);
 
             mFirstPassLatch.countDown();
-            if (mFirstPassDone) {
+            if (mFirstPassDone && !mSignal.isCanceled()) {
                 onContentChanged();
             }
         }
@@ -458,6 +584,11 @@ public abstract class MultiRootDocumentsLoader extends AsyncTaskLoader<Directory
                 return;
             }
 
+            if (mQueryTimeMs >= 0) {
+                mQueryLimiter.recordQueryTime(mQueryTimeMs, mUsed);
+                mQueryTimeMs = -1;
+            }
+
             for (Cursor cursor : mCursors) {
                 if (mObserver != null && cursor != null) {
                     cursor.unregisterContentObserver(mObserver);
@@ -0,0 +1,357 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui;
+
+import static com.android.documentsui.base.SharedMinimal.DEBUG;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Limits how many providers are queried at once by {@link MultiRootDocumentsLoader}, adapting to
+ * how fast they respond.
+ *
+ * <p>Authorities are split in two lanes by their average latency. Queries of fast authorities
+ * run first, fastest first, up to a limit that grows while queries complete as fast as usual,
+ * and is halved when they slow down (AIMD). Slow authorities, typically cloud providers, have a
+ * small lane of their own, so they never hold up the fast ones.
+ *
+ * <p>It also keeps track of how much time was spent on queries whose results were shown, and on
+ * queries whose results weren't, e.g. as the search query changed in the meantime.
+ *
+ * <p>This class is thread safe.
+ */
+public final class QueryLimiter {
+    private static final String TAG = "QueryLimiter";
+
+    private static final int INITIAL_LIMIT = 4;
+    private static final int INITIAL_LIMIT_SVELTE = 2;
+    private static final int MIN_LIMIT = 1;
+    private static final int SLOW_LIMIT = 2;
+    private static final int SLOW_LIMIT_SVELTE = 1;
+
+    // Authorities this slow on average miss the first pass of loaders anyway.
+    @VisibleForTesting
+    static final long SLOW_LATENCY_MS = 500;
+    // Weight of the latest query in the moving average of an authority.
+    private static final double SMOOTHING = 0.3;
+    // A query taking this many times its usual latency is a sign of contention...
+    private static final double CONGESTION_FACTOR = 2;
+    // ...unless it's still this fast.
+    private static final long MIN_CONGESTION_LATENCY_MS = 100;
+    // The limit is halved at most once per this interval, to react once per burst of slow
+    // queries.
+    private static final long DECREASE_INTERVAL_MS = 1000;
+
+    private static final int MAX_DECISIONS = 16;
+
+    private static QueryLimiter sInstance;
+
+    private final Object mLock = new Object();
+    private final int mMaxLimit;
+    private final int mSlowLimit;
+    private final Comparator<Permit> mOrder = (lhs, rhs) -> {
+        final int compare = Double.compare(lhs.mExpectedMs, rhs.mExpectedMs);
+        return compare != 0 ? compare : Long.compare(lhs.mSequence, rhs.mSequence);
+    };
+
+    @GuardedBy("mLock")
+    private final PriorityQueue<Permit> mWaiting = new PriorityQueue<>(mOrder);
+    @GuardedBy("mLock")
+    private final PriorityQueue<Permit> mWaitingSlow = new PriorityQueue<>(mOrder);
+    @GuardedBy("mLock")
+    private final Map<String, Stats> mStats = new HashMap<>();
+    @GuardedBy("mLock")
+    private final ArrayDeque<String> mDecisions = new ArrayDeque<>();
+    @GuardedBy("mLock")
+    private double mLimit;
+    @GuardedBy("mLock")
+    private int mRunning;
+    @GuardedBy("mLock")
+    private int mRunningSlow;
+    @GuardedBy("mLock")
+    private long mLastDecreaseMs = Long.MIN_VALUE / 2;
+    @GuardedBy("mLock")
+    private long mNextSequence;
+    @GuardedBy("mLock")
+    private long mUsefulQueryMs;
+    @GuardedBy("mLock")
+    private long mWastedQueryMs;
+
+    public static synchronized QueryLimiter get(Context context) {
+        if (sInstance == null) {
+            final ActivityManager am = (ActivityManager) context.getSystemService(
+                    Context.ACTIVITY_SERVICE);
+            sInstance = am.isLowRamDevice()
+                    ? new QueryLimiter(INITIAL_LIMIT_SVELTE, INITIAL_LIMIT_SVELTE,
+                            SLOW_LIMIT_SVELTE)
+                    : new QueryLimiter(INITIAL_LIMIT,
+                            Math.max(INITIAL_LIMIT, Runtime.getRuntime().availableProcessors()),
+                            SLOW_LIMIT);
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    QueryLimiter(int initialLimit, int maxLimit, int slowLimit) {
+        mLimit = initialLimit;
+        mMaxLimit = maxLimit;
+        mSlowLimit = slowLimit;
+    }
+
+    /**
+     * Blocks until a query of the authority may run.
+     *
+     * @return permit to close once the query is done.
+     */
+    public Permit acquire(String authority) throws InterruptedException {
+        return acquire(authority, null);
+    }
+
+    /**
+     * Blocks until a query of the authority may run, or the signal is canceled.
+     *
+     * @return permit to close once the query is done.
+     * @throws OperationCanceledException if the signal is canceled before the query may run.
+     */
+    public Permit acquire(String authority, @Nullable CancellationSignal signal)
+            throws InterruptedException {
+        if (signal != null) {
+            signal.setOnCancelListener(() -> {
+                synchronized (mLock) {
+                    mLock.notifyAll();
+                }
+            });
+        }
+        try {
+            return acquireInternal(authority, signal);
+        } finally {
+            if (signal != null) {
+                signal.setOnCancelListener(null);
+            }
+        }
+    }
+
+    private Permit acquireInternal(String authority, @Nullable CancellationSignal signal)
+            throws InterruptedException {
+        synchronized (mLock) {
+            final Stats stats = mStats.get(authority);
+            final Permit permit = new Permit(authority,
+                    stats != null ? stats.averageMs : 0,
+                    stats != null && stats.averageMs >= SLOW_LATENCY_MS,
+                    mNextSequence++);
+            final PriorityQueue<Permit> waiting = permit.mSlow ? mWaitingSlow : mWaiting;
+            waiting.add(permit);
+            try {
+                while (waiting.peek() != permit || !hasRoomLocked(permit.mSlow)) {
+                    if (signal != null) {
+                        signal.throwIfCanceled();
+                    }
+                    mLock.wait();
+                }
+            } finally {
+                waiting.remove(permit);
+                // Whoever is next in line may be able to go now.
+                mLock.notifyAll();
+            }
+
+            if (permit.mSlow) {
+                mRunningSlow++;
+            } else {
+                mRunning++;
+            }
+            permit.mStartedAt = SystemClock.elapsedRealtime();
+            return permit;
+        }
+    }
+
+    @GuardedBy("mLock")
+    private boolean hasRoomLocked(boolean slow) {
+        return slow ? mRunningSlow < mSlowLimit : mRunning < (int) mLimit;
+    }
+
+    @VisibleForTesting
+    void release(Permit permit, long latencyMs) {
+        synchronized (mLock) {
+            if (permit.mReleased) {
+                return;
+            }
+            permit.mReleased = true;
+
+            final Stats stats = getOrCreateStatsLocked(permit.mAuthority);
+            final boolean congested = stats.queries > 0
+                    && latencyMs >= MIN_CONGESTION_LATENCY_MS
+                    && latencyMs > CONGESTION_FACTOR * stats.averageMs;
+            stats.averageMs = stats.queries == 0
+                    ? latencyMs
+                    : SMOOTHING * latencyMs + (1 - SMOOTHING) * stats.averageMs;
+            stats.queries++;
+
+            if (permit.mSlow) {
+                mRunningSlow--;
+            } else {
+                mRunning--;
+                updateLimitLocked(permit.mAuthority, latencyMs, congested);
+            }
+            mLock.notifyAll();
+        }
+    }
+
+    /**
+     * Records the time spent on the queries of a task.
+     *
+     * @param useful whether the results of the queries were shown.
+     */
+    public void recordQueryTime(long durationMs, boolean useful) {
+        synchronized (mLock) {
+            if (useful) {
+                mUsefulQueryMs += durationMs;
+            } else {
+                mWastedQueryMs += durationMs;
+            }
+        }
+    }
+
+    @GuardedBy("mLock")
+    private void updateLimitLocked(String authority, long latencyMs, boolean congested) {
+        final long now = SystemClock.elapsedRealtime();
+        if (congested) {
+            if (now - mLastDecreaseMs >= DECREASE_INTERVAL_MS && mLimit > MIN_LIMIT) {
+                mLimit = Math.max(MIN_LIMIT, mLimit / 2);
+                mLastDecreaseMs = now;
+                addDecisionLocked("decrease to " + getLimitLocked() + ", " + authority + " took "
+                        + latencyMs + "ms");
+            }
+        } else if (!mWaiting.isEmpty() && mLimit < mMaxLimit) {
+            // Grows by about one per round of queries, as long as there is demand.
+            final int oldLimit = getLimitLocked();
+            mLimit = Math.min(mMaxLimit, mLimit + 1 / mLimit);
+            if (getLimitLocked() != oldLimit) {
+                addDecisionLocked("increase to " + getLimitLocked());
+            }
+        }
+    }
+
+    @GuardedBy("mLock")
+    private void addDecisionLocked(String decision) {
+        if (DEBUG) {
+            Log.d(TAG, decision);
+        }
+        if (mDecisions.size() == MAX_DECISIONS) {
+            mDecisions.removeFirst();
+        }
+        mDecisions.addLast(decision);
+    }
+
+    @GuardedBy("mLock")
+    private int getLimitLocked() {
+        return (int) mLimit;
+    }
+
+    @VisibleForTesting
+    int getLimit() {
+        synchronized (mLock) {
+            return getLimitLocked();
+        }
+    }
+
+    @GuardedBy("mLock")
+    private Stats getOrCreateStatsLocked(String authority) {
+        Stats stats = mStats.get(authority);
+        if (stats == null) {
+            stats = new Stats();
+            mStats.put(authority, stats);
+        }
+        return stats;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder output = new StringBuilder("Query limiter: ");
+        synchronized (mLock) {
+            output.append("limit=").append(getLimitLocked())
+                    .append(", max=").append(mMaxLimit)
+                    .append(", running=").append(mRunning)
+                    .append(", waiting=").append(mWaiting.size())
+                    .append(", slowLimit=").append(mSlowLimit)
+                    .append(", runningSlow=").append(mRunningSlow)
+                    .append(", waitingSlow=").append(mWaitingSlow.size())
+                    .append("\n  query time: useful=").append(mUsefulQueryMs).append("ms")
+                    .append(", wasted=").append(mWastedQueryMs).append("ms");
+            for (Map.Entry<String, Stats> entry : mStats.entrySet()) {
+                final Stats stats = entry.getValue();
+                output.append("\n  ").append(entry.getKey())
+                        .append(": queries=").append(stats.queries)
+                        .append(", avg=").append((long) stats.averageMs).append("ms")
+                        .append(stats.averageMs >= SLOW_LATENCY_MS ? ", slow" : "");
+            }
+            for (String decision : mDecisions) {
+                output.append("\n  ").append(decision);
+            }
+        }
+        return output.toString();
+    }
+
+    /**
+     * Permission to query an authority, to close once done.
+     */
+    public final class Permit implements Closeable {
+        private final String mAuthority;
+        private final double mExpectedMs;
+        private final boolean mSlow;
+        private final long mSequence;
+        private long mStartedAt;
+        private boolean mReleased;
+
+        private Permit(String authority, double expectedMs, boolean slow, long sequence) {
+            mAuthority = authority;
+            mExpectedMs = expectedMs;
+            mSlow = slow;
+            mSequence = sequence;
+        }
+
+        @VisibleForTesting
+        boolean isSlow() {
+            return mSlow;
+        }
+
+        @Override
+        public void close() {
+            release(this, SystemClock.elapsedRealtime() - mStartedAt);
+        }
+    }
+
+    private static class Stats {
+        int queries;
+        double averageMs;
+    }
+}
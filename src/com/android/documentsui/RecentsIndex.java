@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui;
+
+import static com.android.documentsui.IndexedDocuments.getRootKey;
+import static com.android.documentsui.base.SharedMinimal.DEBUG;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.provider.DocumentsContract.Document;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.android.documentsui.base.RootInfo;
+import com.android.documentsui.base.UserId;
+import com.android.documentsui.roots.RootCursorWrapper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Recent documents of each root as of the last time they were queried, so that Recents can be
+ * shown with one local query while providers are queried again.
+ *
+ * <p>Documents are written to the index in the background, so that querying providers isn't
+ * slowed down by it.
+ */
+public class RecentsIndex {
+
+    private static final String TAG = "RecentsIndex";
+
+    private static final IndexedDocuments.Singleton<RecentsIndex> sIndex =
+            new IndexedDocuments.Singleton<>(context -> new RecentsIndex(context,
+                    DatabaseHelper.RECENTS_DATABASE, Executors.newSingleThreadExecutor()));
+
+    private final DatabaseHelper mHelper;
+    private final Executor mExecutor;
+
+    /**
+     * Get the singleton instance of RecentsIndex.
+     *
+     * @return the singleton instance, guaranteed not null
+     */
+    public static RecentsIndex getInstance(Context context) {
+        return sIndex.get(context);
+    }
+
+    /**
+     * @param name name of the database file, or null for an in-memory database.
+     * @param executor serial executor to write to the index on.
+     */
+    @VisibleForTesting
+    RecentsIndex(Context context, @Nullable String name, Executor executor) {
+        mHelper = new DatabaseHelper(context, name);
+        mExecutor = executor;
+    }
+
+    private static class DatabaseHelper extends IndexedDocuments.DatabaseHelper {
+
+        private static final int DATABASE_VERSION = 1;
+        private static final String RECENTS_DATABASE = "recents_index.db";
+        private static final String DOCUMENTS_TABLE = "documents";
+        private static final String ROOTS_TABLE = "roots";
+        private static final String COLUMN_USER_ID = "user_id";
+        private static final String COLUMN_AUTHORITY = "authority";
+        private static final String COLUMN_ROOT_ID = "root_id";
+        private static final String COLUMN_UPDATED_TIME = "updated_time";
+
+        private DatabaseHelper(Context context, @Nullable String name) {
+            super(context, name, DATABASE_VERSION, ROOTS_TABLE, DOCUMENTS_TABLE);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            // Roots indexed so far, including those without recent documents.
+            db.execSQL("CREATE TABLE " + ROOTS_TABLE + " ("
+                    + COLUMN_USER_ID + " INTEGER NOT NULL, "
+                    + COLUMN_AUTHORITY + " TEXT NOT NULL, "
+                    + COLUMN_ROOT_ID + " TEXT NOT NULL, "
+                    + COLUMN_UPDATED_TIME + " INTEGER, "
+                    + "PRIMARY KEY (" + COLUMN_USER_ID + ", " + COLUMN_AUTHORITY + ", "
+                    + COLUMN_ROOT_ID + "))");
+            db.execSQL("CREATE TABLE " + DOCUMENTS_TABLE + " ("
+                    + COLUMN_USER_ID + " INTEGER NOT NULL, "
+                    + COLUMN_AUTHORITY + " TEXT NOT NULL, "
+                    + COLUMN_ROOT_ID + " TEXT NOT NULL, "
+                    + Document.COLUMN_DOCUMENT_ID + " TEXT NOT NULL, "
+                    + Document.COLUMN_MIME_TYPE + " TEXT, "
+                    + Document.COLUMN_DISPLAY_NAME + " TEXT, "
+                    + Document.COLUMN_LAST_MODIFIED + " INTEGER, "
+                    + Document.COLUMN_SIZE + " INTEGER, "
+                    + Document.COLUMN_FLAGS + " INTEGER, "
+                    + Document.COLUMN_SUMMARY + " TEXT, "
+                    + Document.COLUMN_ICON + " INTEGER, "
+                    + "PRIMARY KEY (" + COLUMN_USER_ID + ", " + COLUMN_AUTHORITY + ", "
+                    + COLUMN_ROOT_ID + ", " + Document.COLUMN_DOCUMENT_ID + "))");
+        }
+    }
+
+    /**
+     * Replaces the indexed documents of a root with the rows of the cursor. Leaves the cursor
+     * before its first row.
+     */
+    void update(UserId userId, String authority, String rootId, Cursor cursor) {
+        // Rows are read right away, as the cursor may be closed by the time they are written.
+        final List<ContentValues> documents = new ArrayList<>(cursor.getCount());
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            final ContentValues values = IndexedDocuments.read(cursor);
+            if (values != null) {
+                documents.add(values);
+            }
+        }
+        cursor.moveToPosition(-1);
+
+        mExecutor.execute(() -> write(userId, authority, rootId, documents));
+    }
+
+    private void write(UserId userId, String authority, String rootId,
+            List<ContentValues> documents) {
+        final String[] rootArgs = new String[] {
+                Integer.toString(userId.getIdentifier()), authority, rootId };
+        final String rootSelection = DatabaseHelper.COLUMN_USER_ID + "=? AND "
+                + DatabaseHelper.COLUMN_AUTHORITY + "=? AND "
+                + DatabaseHelper.COLUMN_ROOT_ID + "=?";
+
+        try {
+            final SQLiteDatabase db = mHelper.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                db.delete(DatabaseHelper.DOCUMENTS_TABLE, rootSelection, rootArgs);
+
+                for (ContentValues values : documents) {
+                    values.put(DatabaseHelper.COLUMN_USER_ID, userId.getIdentifier());
+                    values.put(DatabaseHelper.COLUMN_AUTHORITY, authority);
+                    values.put(DatabaseHelper.COLUMN_ROOT_ID, rootId);
+                    db.insertWithOnConflict(DatabaseHelper.DOCUMENTS_TABLE, null, values,
+                            SQLiteDatabase.CONFLICT_REPLACE);
+                }
+
+                final ContentValues root = new ContentValues();
+                root.put(DatabaseHelper.COLUMN_USER_ID, userId.getIdentifier());
+                root.put(DatabaseHelper.COLUMN_AUTHORITY, authority);
+                root.put(DatabaseHelper.COLUMN_ROOT_ID, rootId);
+                root.put(DatabaseHelper.COLUMN_UPDATED_TIME, System.currentTimeMillis());
+                db.insertWithOnConflict(DatabaseHelper.ROOTS_TABLE, null, root,
+                        SQLiteDatabase.CONFLICT_REPLACE);
+
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } catch (SQLException e) {
+            Log.w(TAG, "Failed to index recents of " + authority + ", " + rootId, e);
+        }
+    }
+
+    /**
+     * Returns the indexed documents of the roots of the user, with the columns of
+     * {@link RootCursorWrapper}. Documents last modified before the given time are skipped, and
+     * dropped from the index in the background.
+     *
+     * @param roots roots by authority
+     * @return cursors of all roots of each authority, for authorities whose roots were all
+     *     indexed before.
+     */
+    Map<String, List<Cursor>> query(UserId userId, Map<String, List<RootInfo>> roots,
+            long rejectBeforeTime, int maxCount) {
+        final Map<String, List<Cursor>> result = new HashMap<>();
+        final String userArg = Integer.toString(userId.getIdentifier());
+        final String rejectArg = Long.toString(rejectBeforeTime);
+        mExecutor.execute(() -> deleteOutdated(rejectArg));
+        try {
+            final SQLiteDatabase db = mHelper.getReadableDatabase();
+
+            final Set<String> indexedRoots = new HashSet<>();
+            try (Cursor cursor = db.query(DatabaseHelper.ROOTS_TABLE,
+                    new String[] { DatabaseHelper.COLUMN_AUTHORITY, DatabaseHelper.COLUMN_ROOT_ID },
+                    DatabaseHelper.COLUMN_USER_ID + "=?", new String[] { userArg },
+                    null, null, null)) {
+                while (cursor.moveToNext()) {
+                    indexedRoots.add(getRootKey(cursor.getString(0), cursor.getString(1)));
+                }
+            }
+
+            final Map<String, MatrixCursor> documents = new HashMap<>();
+            try (Cursor cursor = db.query(DatabaseHelper.DOCUMENTS_TABLE, null,
+                    DatabaseHelper.COLUMN_USER_ID + "=? AND ("
+                            + Document.COLUMN_LAST_MODIFIED + " IS NULL OR "
+                            + Document.COLUMN_LAST_MODIFIED + ">=?)",
+                    new String[] { userArg, rejectArg },
+                    null, null, Document.COLUMN_LAST_MODIFIED + " DESC")) {
+                final int authorityIndex = cursor.getColumnIndex(DatabaseHelper.COLUMN_AUTHORITY);
+                final int rootIdIndex = cursor.getColumnIndex(DatabaseHelper.COLUMN_ROOT_ID);
+                while (cursor.moveToNext()) {
+                    IndexedDocuments.addRow(documents, getRootKey(
+                            cursor.getString(authorityIndex), cursor.getString(rootIdIndex)),
+                            cursor);
+                }
+            }
+
+            for (Map.Entry<String, List<RootInfo>> entry : roots.entrySet()) {
+                final String authority = entry.getKey();
+                final List<Cursor> cursors = new ArrayList<>();
+                for (RootInfo root : entry.getValue()) {
+                    final String key = getRootKey(authority, root.rootId);
+                    if (!indexedRoots.contains(key)) {
+                        break;
+                    }
+                    cursors.add(new RootCursorWrapper(userId, authority, root.rootId,
+                            IndexedDocuments.getRootDocuments(documents, key), maxCount));
+                }
+                if (cursors.size() == entry.getValue().size()) {
+                    result.put(authority, cursors);
+                }
+            }
+        } catch (SQLException e) {
+            Log.w(TAG, "Failed to query recents of " + userId, e);
+        }
+
+        if (DEBUG) {
+            Log.d(TAG, "Found indexed recents of " + result.size() + " of " + roots.size()
+                    + " authorities");
+        }
+        return result;
+    }
+
+    private void deleteOutdated(String rejectArg) {
+        try {
+            mHelper.getWritableDatabase().delete(DatabaseHelper.DOCUMENTS_TABLE,
+                    Document.COLUMN_LAST_MODIFIED + "<?", new String[] { rejectArg });
+        } catch (SQLException e) {
+            Log.w(TAG, "Failed to drop outdated recents", e);
+        }
+    }
+}
@@ -23,6 +23,8 @@ import android.provider.DocumentsContract;
 import android.provider.DocumentsContract.Document;
 import android.text.format.DateUtils;
 
+import androidx.annotation.Nullable;
+
 import com.android.documentsui.base.Lookup;
 import com.android.documentsui.base.RootInfo;
 import com.android.documentsui.base.State;
@@ -31,6 +33,7 @@ import com.android.documentsui.roots.ProvidersAccess;
 import com.android.documentsui.roots.RootCursorWrapper;
 
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Executor;
 
 public class RecentsLoader extends MultiRootDocumentsLoader {
@@ -45,11 +48,29 @@ public class RecentsLoader extends MultiRootDocumentsLoader {
     private static final int MAX_DOCS_FROM_ROOT = 64;
 
     private final UserId mUserId;
+    private final @Nullable RecentsIndex mIndex;
+    private final @Nullable SearchIndex mSearchIndex;
 
     public RecentsLoader(Context context, ProvidersAccess providers, State state,
             Lookup<String, Executor> executors, Lookup<String, String> fileTypeMap, UserId userId) {
+        this(context, providers, state, executors, fileTypeMap, userId, null, null);
+    }
+
+    /**
+     * Indexes are only used for the current user, so that documents of other profiles are not
+     * stored in ours.
+     *
+     * @param index index to show recents from until roots are queried, and to update with the
+     *     results.
+     * @param searchIndex index of names to add the results to.
+     */
+    public RecentsLoader(Context context, ProvidersAccess providers, State state,
+            Lookup<String, Executor> executors, Lookup<String, String> fileTypeMap, UserId userId,
+            @Nullable RecentsIndex index, @Nullable SearchIndex searchIndex) {
         super(context, providers, state, executors, fileTypeMap);
         mUserId = userId;
+        mIndex = UserId.CURRENT_USER.equals(userId) ? index : null;
+        mSearchIndex = UserId.CURRENT_USER.equals(userId) ? searchIndex : null;
     }
 
     @Override
@@ -82,6 +103,14 @@ public class RecentsLoader extends MultiRootDocumentsLoader {
         return !root.isLocalOnly() || !root.supportsRecents() || !mUserId.equals(root.userId);
     }
 
+    @Override
+    protected @Nullable Map<String, List<Cursor>> loadCachedResults(
+            Map<String, List<RootInfo>> rootsIndex) {
+        return mIndex != null
+                ? mIndex.query(mUserId, rootsIndex, getRejectBeforeTime(), MAX_DOCS_FROM_ROOT)
+                : null;
+    }
+
     @Override
     protected QueryTask getQueryTask(String authority, List<RootInfo> rootInfos) {
         return new RecentsTask(authority, rootInfos);
@@ -100,8 +129,16 @@ public class RecentsLoader extends MultiRootDocumentsLoader {
 
         @Override
         protected RootCursorWrapper generateResultCursor(RootInfo rootInfo, Cursor oriCursor) {
-            return new RootCursorWrapper(rootInfo.userId, authority, rootInfo.rootId, oriCursor,
-                    MAX_DOCS_FROM_ROOT);
+            final RootCursorWrapper cursor = new RootCursorWrapper(rootInfo.userId, authority,
+                    rootInfo.rootId, oriCursor, MAX_DOCS_FROM_ROOT);
+            if (mIndex != null) {
+                mIndex.update(rootInfo.userId, authority, rootInfo.rootId, cursor);
+            }
+            if (mSearchIndex != null) {
+                mSearchIndex.update(rootInfo.userId, authority, rootInfo.rootId,
+                        null /* parentId */, cursor);
+            }
+            return cursor;
         }
     }
 }
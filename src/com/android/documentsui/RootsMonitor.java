@@ -22,6 +22,9 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.net.Uri;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 
 import com.android.documentsui.AbstractActionHandler.CommonAddons;
@@ -34,6 +37,7 @@ import com.android.documentsui.queries.SearchViewManager;
 import com.android.documentsui.roots.ProvidersAccess;
 
 import java.util.Collection;
+import java.util.List;
 
 /**
  * Monitors roots change and refresh the page when necessary.
@@ -56,6 +60,11 @@ final class RootsMonitor<T extends Activity & CommonAddons> {
         mReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
+                final RootInfo currentRoot = activity.getCurrentRoot();
+                if (!mayHaveRemoved(currentRoot,
+                        intent.getStringArrayListExtra(ProvidersAccess.EXTRA_AUTHORITIES))) {
+                    return;
+                }
                 new HandleRootsChangedTask<>(
                         activity,
                         actions,
@@ -63,11 +72,22 @@ final class RootsMonitor<T extends Activity & CommonAddons> {
                         docs,
                         state,
                         searchMgr,
-                        actionModeFinisher).execute(activity.getCurrentRoot());
+                        actionModeFinisher).execute(currentRoot);
             }
         };
     }
 
+    /**
+     * @param changedAuthorities authorities whose roots changed, or null if unknown.
+     * @return false if the root can't have been removed by the change.
+     */
+    @VisibleForTesting
+    static boolean mayHaveRemoved(
+            @Nullable RootInfo root, @Nullable List<String> changedAuthorities) {
+        return changedAuthorities == null || root == null
+                || changedAuthorities.contains(root.authority);
+    }
+
     void start() {
         mManager.registerReceiver(mReceiver, new IntentFilter(ProvidersAccess.BROADCAST_ACTION));
     }
@@ -0,0 +1,483 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui;
+
+import static com.android.documentsui.IndexedDocuments.DOCUMENT_COLUMNS;
+import static com.android.documentsui.IndexedDocuments.getRootKey;
+import static com.android.documentsui.base.SharedMinimal.DEBUG;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.provider.DocumentsContract.Document;
+import android.text.TextUtils;
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.android.documentsui.base.MimeTypes;
+import com.android.documentsui.base.Providers;
+import com.android.documentsui.base.RootInfo;
+import com.android.documentsui.base.UserId;
+import com.android.documentsui.roots.RootCursorWrapper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Names of documents seen in browsed directories and in Recents, indexed for full text search,
+ * so that global search can show local matches while providers are searched.
+ *
+ * <p>Names are split in tokens of letters and digits, and a query matches names with tokens
+ * starting with each token of the query, and containing the whole query. The least recently
+ * seen documents are evicted once there are more than a fixed number of them.
+ *
+ * <p>Documents are written to the index in the background, so that loading directories isn't
+ * slowed down by it. Listings which didn't change since they were last indexed are skipped, and
+ * only the latest of listings waiting to be written is written.
+ */
+public class SearchIndex {
+
+    private static final String TAG = "SearchIndex";
+
+    private static final int MAX_DOCUMENTS = 10000;
+    // Documents indexed from one listing, so that huge directories don't take over the index.
+    private static final int MAX_LISTING_DOCUMENTS = 1000;
+    // Listings whose hashes are remembered, to tell whether they changed.
+    private static final int MAX_LISTINGS = 256;
+
+    // Media documents are excluded from searches of other providers.
+    private static final String[] MEDIA_MIMES = new String[] {
+            MimeTypes.IMAGE_MIME, MimeTypes.AUDIO_MIME, MimeTypes.VIDEO_MIME };
+
+    private static final IndexedDocuments.Singleton<SearchIndex> sIndex =
+            new IndexedDocuments.Singleton<>(context -> new SearchIndex(context,
+                    DatabaseHelper.SEARCH_DATABASE, Executors.newSingleThreadExecutor(),
+                    MAX_DOCUMENTS));
+
+    private final DatabaseHelper mHelper;
+    private final Executor mExecutor;
+    private final int mMaxDocuments;
+
+    private final Object mLock = new Object();
+    // Listings waiting to be written, by key. Guarded by mLock.
+    private final Map<String, Listing> mPending = new HashMap<>();
+    // Hashes of listings indexed or waiting to be, by key. Guarded by mLock.
+    private final LruCache<String, Long> mHashes = new LruCache<>(MAX_LISTINGS);
+
+    /**
+     * Get the singleton instance of SearchIndex.
+     *
+     * @return the singleton instance, guaranteed not null
+     */
+    public static SearchIndex getInstance(Context context) {
+        return sIndex.get(context);
+    }
+
+    /**
+     * @param name name of the database file, or null for an in-memory database.
+     * @param executor serial executor to write to the index on.
+     * @param maxDocuments number of documents over which the least recently seen are evicted.
+     */
+    @VisibleForTesting
+    SearchIndex(Context context, @Nullable String name, Executor executor, int maxDocuments) {
+        mHelper = new DatabaseHelper(context, name);
+        mExecutor = executor;
+        mMaxDocuments = maxDocuments;
+    }
+
+    private static class DatabaseHelper extends IndexedDocuments.DatabaseHelper {
+
+        private static final int DATABASE_VERSION = 1;
+        private static final String SEARCH_DATABASE = "search_index.db";
+        private static final String DOCUMENTS_TABLE = "documents";
+        // Full text index of tokens of names, with the rowid of documents as docid.
+        private static final String NAMES_TABLE = "names";
+        private static final String COLUMN_USER_ID = "user_id";
+        private static final String COLUMN_AUTHORITY = "authority";
+        private static final String COLUMN_ROOT_ID = "root_id";
+        private static final String COLUMN_PARENT_ID = "parent_id";
+        private static final String COLUMN_SEEN_TIME = "seen_time";
+        private static final String COLUMN_TOKENS = "tokens";
+
+        private DatabaseHelper(Context context, @Nullable String name) {
+            super(context, name, DATABASE_VERSION, NAMES_TABLE, DOCUMENTS_TABLE);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + DOCUMENTS_TABLE + " ("
+                    + COLUMN_USER_ID + " INTEGER NOT NULL, "
+                    + COLUMN_AUTHORITY + " TEXT NOT NULL, "
+                    + COLUMN_ROOT_ID + " TEXT NOT NULL, "
+                    + COLUMN_PARENT_ID + " TEXT, "
+                    + COLUMN_SEEN_TIME + " INTEGER NOT NULL, "
+                    + Document.COLUMN_DOCUMENT_ID + " TEXT NOT NULL, "
+                    + Document.COLUMN_MIME_TYPE + " TEXT, "
+                    + Document.COLUMN_DISPLAY_NAME + " TEXT, "
+                    + Document.COLUMN_LAST_MODIFIED + " INTEGER, "
+                    + Document.COLUMN_SIZE + " INTEGER, "
+                    + Document.COLUMN_FLAGS + " INTEGER, "
+                    + Document.COLUMN_SUMMARY + " TEXT, "
+                    + Document.COLUMN_ICON + " INTEGER, "
+                    + "UNIQUE (" + COLUMN_USER_ID + ", " + COLUMN_AUTHORITY + ", "
+                    + Document.COLUMN_DOCUMENT_ID + "))");
+            db.execSQL("CREATE INDEX " + DOCUMENTS_TABLE + "_parent ON " + DOCUMENTS_TABLE + " ("
+                    + COLUMN_USER_ID + ", " + COLUMN_AUTHORITY + ", " + COLUMN_PARENT_ID + ")");
+            db.execSQL("CREATE INDEX " + DOCUMENTS_TABLE + "_seen ON " + DOCUMENTS_TABLE + " ("
+                    + COLUMN_SEEN_TIME + ")");
+            // Tokens are normalized before they are indexed, so the simple tokenizer is enough.
+            db.execSQL("CREATE VIRTUAL TABLE " + NAMES_TABLE + " USING fts4("
+                    + COLUMN_TOKENS + ", prefix=\"1,2,3\")");
+        }
+    }
+
+    /**
+     * Indexes the documents of the cursor, up to a fixed number of them. Leaves the cursor before
+     * its first row.
+     *
+     * @param parentId id of the directory the cursor lists, whose previously indexed children
+     *     are replaced, or null if the cursor is not a directory listing, e.g. recents.
+     */
+    void update(UserId userId, String authority, String rootId, @Nullable String parentId,
+            Cursor cursor) {
+        final String key = getListingKey(userId, authority, rootId, parentId);
+        final int count = Math.min(cursor.getCount(), Math.min(MAX_LISTING_DOCUMENTS,
+                mMaxDocuments));
+        final long hash = getHash(cursor, count);
+        synchronized (mLock) {
+            final Long indexedHash = mHashes.get(key);
+            if (indexedHash != null && indexedHash == hash) {
+                return;
+            }
+            mHashes.put(key, hash);
+        }
+
+        // Rows are read right away, as the cursor may be closed by the time they are written.
+        final List<ContentValues> documents = new ArrayList<>(count);
+        cursor.moveToPosition(-1);
+        while (documents.size() < count && cursor.moveToNext()) {
+            final ContentValues values = IndexedDocuments.read(cursor);
+            if (values != null) {
+                documents.add(values);
+            }
+        }
+        cursor.moveToPosition(-1);
+
+        final Listing listing = new Listing(userId, authority, rootId, parentId, documents);
+        final boolean scheduled;
+        synchronized (mLock) {
+            // A listing waiting to be written is outdated by this one.
+            scheduled = mPending.put(key, listing) != null;
+        }
+        if (!scheduled) {
+            mExecutor.execute(() -> writePending(key));
+        }
+    }
+
+    private void writePending(String key) {
+        final Listing listing;
+        synchronized (mLock) {
+            listing = mPending.remove(key);
+        }
+        if (listing != null && !write(listing.userId, listing.authority, listing.rootId,
+                listing.parentId, listing.documents)) {
+            synchronized (mLock) {
+                mHashes.remove(key);
+            }
+        }
+    }
+
+    /**
+     * @return whether the documents were written.
+     */
+    private boolean write(UserId userId, String authority, String rootId,
+            @Nullable String parentId, List<ContentValues> documents) {
+        final String user = Integer.toString(userId.getIdentifier());
+        final long now = System.currentTimeMillis();
+
+        try {
+            final SQLiteDatabase db = mHelper.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                if (parentId != null) {
+                    deleteDocuments(db, DatabaseHelper.COLUMN_USER_ID + "=? AND "
+                            + DatabaseHelper.COLUMN_AUTHORITY + "=? AND "
+                            + DatabaseHelper.COLUMN_PARENT_ID + "=?",
+                            new String[] { user, authority, parentId });
+                }
+
+                for (ContentValues values : documents) {
+                    final String tokens =
+                            getTokens(values.getAsString(Document.COLUMN_DISPLAY_NAME));
+                    if (tokens.isEmpty()) {
+                        continue;
+                    }
+
+                    final String[] documentArgs = new String[] {
+                            user, authority, values.getAsString(Document.COLUMN_DOCUMENT_ID) };
+                    // A document seen in Recents keeps the parent it was seen in before.
+                    String documentParentId = parentId;
+                    if (documentParentId == null) {
+                        try (Cursor existing = db.query(DatabaseHelper.DOCUMENTS_TABLE,
+                                new String[] { DatabaseHelper.COLUMN_PARENT_ID },
+                                getDocumentSelection(), documentArgs, null, null, null)) {
+                            if (existing.moveToFirst()) {
+                                documentParentId = existing.getString(0);
+                            }
+                        }
+                    }
+                    deleteDocuments(db, getDocumentSelection(), documentArgs);
+
+                    values.put(DatabaseHelper.COLUMN_USER_ID, userId.getIdentifier());
+                    values.put(DatabaseHelper.COLUMN_AUTHORITY, authority);
+                    values.put(DatabaseHelper.COLUMN_ROOT_ID, rootId);
+                    values.put(DatabaseHelper.COLUMN_PARENT_ID, documentParentId);
+                    values.put(DatabaseHelper.COLUMN_SEEN_TIME, now);
+                    final long rowId = db.insert(DatabaseHelper.DOCUMENTS_TABLE, null, values);
+
+                    final ContentValues names = new ContentValues();
+                    names.put("docid", rowId);
+                    names.put(DatabaseHelper.COLUMN_TOKENS, tokens);
+                    db.insert(DatabaseHelper.NAMES_TABLE, null, names);
+                }
+
+                if (evictDocuments(db)) {
+                    // Evicted listings have to be written again, even if they didn't change.
+                    synchronized (mLock) {
+                        mHashes.evictAll();
+                    }
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            return true;
+        } catch (SQLException e) {
+            Log.w(TAG, "Failed to index documents of " + authority + ", " + rootId, e);
+            return false;
+        }
+    }
+
+    /**
+     * @return hash of the indexed columns of the first rows of the cursor. Leaves the cursor
+     *     before its first row.
+     */
+    private static long getHash(Cursor cursor, int count) {
+        long hash = count;
+        cursor.moveToPosition(-1);
+        for (int i = 0; i < count && cursor.moveToNext(); i++) {
+            for (String column : DOCUMENT_COLUMNS) {
+                final int index = cursor.getColumnIndex(column);
+                if (index == -1) {
+                    continue;
+                }
+                hash *= 31;
+                switch (cursor.getType(index)) {
+                    case Cursor.FIELD_TYPE_NULL:
+                        break;
+                    case Cursor.FIELD_TYPE_INTEGER:
+                        hash += Long.hashCode(cursor.getLong(index));
+                        break;
+                    default:
+                        hash += cursor.getString(index).hashCode();
+                        break;
+                }
+            }
+        }
+        cursor.moveToPosition(-1);
+        return hash;
+    }
+
+    private static String getListingKey(UserId userId, String authority, String rootId,
+            @Nullable String parentId) {
+        return userId.getIdentifier() + "/" + getRootKey(authority, rootId)
+                + (parentId != null ? "/" + parentId : "");
+    }
+
+    private static String getDocumentSelection() {
+        return DatabaseHelper.COLUMN_USER_ID + "=? AND "
+                + DatabaseHelper.COLUMN_AUTHORITY + "=? AND "
+                + Document.COLUMN_DOCUMENT_ID + "=?";
+    }
+
+    private static void deleteDocuments(SQLiteDatabase db, String selection, String[] args) {
+        db.execSQL("DELETE FROM " + DatabaseHelper.NAMES_TABLE + " WHERE docid IN (SELECT rowid"
+                + " FROM " + DatabaseHelper.DOCUMENTS_TABLE + " WHERE " + selection + ")", args);
+        db.delete(DatabaseHelper.DOCUMENTS_TABLE, selection, args);
+    }
+
+    /**
+     * @return whether any documents were evicted.
+     */
+    private boolean evictDocuments(SQLiteDatabase db) {
+        final long count = db.compileStatement(
+                "SELECT COUNT(*) FROM " + DatabaseHelper.DOCUMENTS_TABLE).simpleQueryForLong();
+        if (count <= mMaxDocuments) {
+            return false;
+        }
+        deleteDocuments(db, "rowid IN (SELECT rowid FROM " + DatabaseHelper.DOCUMENTS_TABLE
+                + " ORDER BY " + DatabaseHelper.COLUMN_SEEN_TIME + " LIMIT ?)",
+                new String[] { Long.toString(count - mMaxDocuments) });
+        if (DEBUG) {
+            Log.d(TAG, "Evicted " + (count - mMaxDocuments) + " documents");
+        }
+        return true;
+    }
+
+    /**
+     * Returns the indexed documents of the roots of the user matching the query, with the
+     * columns of {@link RootCursorWrapper}.
+     *
+     * @param roots roots by authority
+     * @param excludeMedia whether to exclude media documents of providers other than the media
+     *     provider, as they are when searching these providers.
+     * @return cursors of all roots by authority, or an empty map if no documents match.
+     */
+    Map<String, List<Cursor>> query(UserId userId, Map<String, List<RootInfo>> roots,
+            String query, boolean excludeMedia, int maxCount) {
+        final Map<String, List<Cursor>> result = new HashMap<>();
+        final String match = getMatch(query);
+        if (match == null) {
+            return result;
+        }
+
+        final long startTime = SystemClock.elapsedRealtime();
+        final String lowerQuery = query.toLowerCase(Locale.ROOT);
+        final Map<String, MatrixCursor> documents = new HashMap<>();
+        try (Cursor cursor = mHelper.getReadableDatabase().rawQuery("SELECT "
+                + DatabaseHelper.DOCUMENTS_TABLE + ".* FROM " + DatabaseHelper.DOCUMENTS_TABLE
+                + " JOIN " + DatabaseHelper.NAMES_TABLE + " ON " + DatabaseHelper.NAMES_TABLE
+                + ".docid=" + DatabaseHelper.DOCUMENTS_TABLE + ".rowid WHERE "
+                + DatabaseHelper.NAMES_TABLE + " MATCH ? AND "
+                + DatabaseHelper.COLUMN_USER_ID + "=? ORDER BY "
+                + Document.COLUMN_LAST_MODIFIED + " DESC",
+                new String[] { match, Integer.toString(userId.getIdentifier()) })) {
+            final int authorityIndex = cursor.getColumnIndex(DatabaseHelper.COLUMN_AUTHORITY);
+            final int rootIdIndex = cursor.getColumnIndex(DatabaseHelper.COLUMN_ROOT_ID);
+            final int nameIndex = cursor.getColumnIndex(Document.COLUMN_DISPLAY_NAME);
+            final int mimeTypeIndex = cursor.getColumnIndex(Document.COLUMN_MIME_TYPE);
+            // Rows are filtered further below, so the limit only applies to the matching ones.
+            int count = 0;
+            while (count < maxCount && cursor.moveToNext()) {
+                final String authority = cursor.getString(authorityIndex);
+                // Providers match the whole query, not just the beginning of tokens.
+                if (!cursor.getString(nameIndex).toLowerCase(Locale.ROOT).contains(lowerQuery)
+                        || (excludeMedia && !Providers.AUTHORITY_MEDIA.equals(authority)
+                                && MimeTypes.mimeMatches(MEDIA_MIMES,
+                                        cursor.getString(mimeTypeIndex)))) {
+                    continue;
+                }
+
+                IndexedDocuments.addRow(documents,
+                        getRootKey(authority, cursor.getString(rootIdIndex)), cursor);
+                count++;
+            }
+        } catch (SQLException e) {
+            Log.w(TAG, "Failed to search documents of " + userId, e);
+            return result;
+        }
+
+        boolean found = false;
+        for (Map.Entry<String, List<RootInfo>> entry : roots.entrySet()) {
+            final String authority = entry.getKey();
+            final List<Cursor> cursors = new ArrayList<>();
+            for (RootInfo root : entry.getValue()) {
+                if (!userId.equals(root.userId)) {
+                    continue;
+                }
+                final String key = getRootKey(authority, root.rootId);
+                found |= documents.containsKey(key);
+                cursors.add(new RootCursorWrapper(userId, authority, root.rootId,
+                        IndexedDocuments.getRootDocuments(documents, key), -1 /* maxCount */));
+            }
+            result.put(authority, cursors);
+        }
+
+        if (DEBUG) {
+            Log.d(TAG, "Searched index in " + (SystemClock.elapsedRealtime() - startTime)
+                    + "ms, found documents: " + found);
+        }
+        if (!found) {
+            result.clear();
+        }
+        return result;
+    }
+
+    /**
+     * @return tokens of the name, in lower case, separated by spaces.
+     */
+    @VisibleForTesting
+    static String getTokens(@Nullable String name) {
+        if (name == null) {
+            return "";
+        }
+        final StringBuilder tokens = new StringBuilder();
+        final String lowerName = name.toLowerCase(Locale.ROOT);
+        for (int i = 0; i < lowerName.length(); ) {
+            final int codePoint = lowerName.codePointAt(i);
+            if (Character.isLetterOrDigit(codePoint)) {
+                tokens.appendCodePoint(codePoint);
+            } else if (tokens.length() > 0 && tokens.charAt(tokens.length() - 1) != ' ') {
+                tokens.append(' ');
+            }
+            i += Character.charCount(codePoint);
+        }
+        return tokens.toString().trim();
+    }
+
+    /**
+     * @return full text query of names with tokens starting with each token of the query, or
+     *     null if the query has no tokens.
+     */
+    private static @Nullable String getMatch(@Nullable String query) {
+        final String tokens = getTokens(query);
+        if (tokens.isEmpty()) {
+            return null;
+        }
+        // Tokens only have letters and digits in lower case, so they are never operators.
+        return TextUtils.join("* ", tokens.split(" ")) + "*";
+    }
+
+    private static class Listing {
+        private final UserId userId;
+        private final String authority;
+        private final String rootId;
+        private final @Nullable String parentId;
+        private final List<ContentValues> documents;
+
+        private Listing(UserId userId, String authority, String rootId,
+                @Nullable String parentId, List<ContentValues> documents) {
+            this.userId = userId;
+            this.authority = authority;
+            this.rootId = rootId;
+            this.parentId = parentId;
+            this.documents = documents;
+        }
+    }
+}
@@ -38,6 +38,7 @@ import androidx.core.util.Preconditions;
 import java.io.Closeable;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
@@ -76,6 +77,10 @@ public abstract class Archive implements Closeable {
     @GuardedBy("mEntries")
     final Map<String, List<ArchiveEntry>> mTree;
 
+    // Set once mEntries and mTree won't change anymore. From then on they are read without
+    // locking. The volatile write publishes all modifications made before it.
+    private volatile boolean mSealed = false;
+
     Archive(
             Context context,
             Uri archiveUri,
@@ -110,6 +115,44 @@ public abstract class Archive implements Closeable {
         }
     }
 
+    /**
+     * Marks mEntries and mTree as final, so that readers don't need to lock them anymore. Must
+     * be called after the last modification, and at most once.
+     */
+    void seal() {
+        mSealed = true;
+    }
+
+    boolean isSealed() {
+        return mSealed;
+    }
+
+    /**
+     * Returns the entry at the path, or null if there is none.
+     */
+    @Nullable ArchiveEntry getEntry(String path) {
+        if (mSealed) {
+            return mEntries.get(path);
+        }
+        synchronized (mEntries) {
+            return mEntries.get(path);
+        }
+    }
+
+    /**
+     * Returns the children of the directory at the path, or null if there is no such directory.
+     * The returned list must not be modified.
+     */
+    @Nullable List<ArchiveEntry> getChildren(String path) {
+        if (mSealed) {
+            return mTree.get(path);
+        }
+        synchronized (mEntries) {
+            final List<ArchiveEntry> children = mTree.get(path);
+            return children != null ? new ArrayList<>(children) : null;
+        }
+    }
+
     /**
      * Returns true if the file descriptor is seekable.
      * @param descriptor File descriptor to check.
@@ -142,14 +185,12 @@ public abstract class Archive implements Closeable {
             result.setNotificationUri(mContext.getContentResolver(), mNotificationUri);
         }
 
-        synchronized (mEntries) {
-            final List<ArchiveEntry> parentList = mTree.get(parsedParentId.mPath);
-            if (parentList == null) {
-                throw new FileNotFoundException();
-            }
-            for (final ArchiveEntry entry : parentList) {
-                addCursorRow(result, entry);
-            }
+        final List<ArchiveEntry> parentList = getChildren(parsedParentId.mPath);
+        if (parentList == null) {
+            throw new FileNotFoundException();
+        }
+        for (final ArchiveEntry entry : parentList) {
+            addCursorRow(result, entry);
         }
         return result;
     }
@@ -164,13 +205,11 @@ public abstract class Archive implements Closeable {
         MorePreconditions.checkArgumentEquals(mArchiveUri, parsedId.mArchiveUri,
                 "Mismatching archive Uri. Expected: %s, actual: %s.");
 
-        synchronized (mEntries) {
-            final ArchiveEntry entry = mEntries.get(parsedId.mPath);
-            if (entry == null) {
-                throw new FileNotFoundException();
-            }
-            return getMimeTypeForEntry(entry);
+        final ArchiveEntry entry = getEntry(parsedId.mPath);
+        if (entry == null) {
+            throw new FileNotFoundException();
         }
+        return getMimeTypeForEntry(entry);
     }
 
     /**
@@ -185,25 +224,23 @@ public abstract class Archive implements Closeable {
         MorePreconditions.checkArgumentEquals(mArchiveUri, parsedParentId.mArchiveUri,
                 "Mismatching archive Uri. Expected: %s, actual: %s.");
 
-        synchronized (mEntries) {
-            final ArchiveEntry entry = mEntries.get(parsedId.mPath);
-            if (entry == null) {
-                return false;
-            }
+        final ArchiveEntry entry = getEntry(parsedId.mPath);
+        if (entry == null) {
+            return false;
+        }
 
-            final ArchiveEntry parentEntry = mEntries.get(parsedParentId.mPath);
-            if (parentEntry == null || !parentEntry.isDirectory()) {
-                return false;
-            }
+        final ArchiveEntry parentEntry = getEntry(parsedParentId.mPath);
+        if (parentEntry == null || !parentEntry.isDirectory()) {
+            return false;
+        }
 
-            // Add a trailing slash even if it's not a directory, so it's easy to check if the
-            // entry is a descendant.
-            String pathWithSlash = entry.isDirectory() ? getEntryPath(entry)
-                    : getEntryPath(entry) + "/";
+        // Add a trailing slash even if it's not a directory, so it's easy to check if the
+        // entry is a descendant.
+        String pathWithSlash = entry.isDirectory() ? getEntryPath(entry)
+                : getEntryPath(entry) + "/";
 
-            return pathWithSlash.startsWith(parsedParentId.mPath) &&
-                    !parsedParentId.mPath.equals(pathWithSlash);
-        }
+        return pathWithSlash.startsWith(parsedParentId.mPath) &&
+                !parsedParentId.mPath.equals(pathWithSlash);
     }
 
     /**
@@ -217,20 +254,18 @@ public abstract class Archive implements Closeable {
         MorePreconditions.checkArgumentEquals(mArchiveUri, parsedId.mArchiveUri,
                 "Mismatching archive Uri. Expected: %s, actual: %s.");
 
-        synchronized (mEntries) {
-            final ArchiveEntry entry = mEntries.get(parsedId.mPath);
-            if (entry == null) {
-                throw new FileNotFoundException();
-            }
+        final ArchiveEntry entry = getEntry(parsedId.mPath);
+        if (entry == null) {
+            throw new FileNotFoundException();
+        }
 
-            final MatrixCursor result = new MatrixCursor(
-                    projection != null ? projection : DEFAULT_PROJECTION);
-            if (mNotificationUri != null) {
-                result.setNotificationUri(mContext.getContentResolver(), mNotificationUri);
-            }
-            addCursorRow(result, entry);
-            return result;
+        final MatrixCursor result = new MatrixCursor(
+                projection != null ? projection : DEFAULT_PROJECTION);
+        if (mNotificationUri != null) {
+            result.setNotificationUri(mContext.getContentResolver(), mNotificationUri);
         }
+        addCursorRow(result, entry);
+        return result;
     }
 
     /**
@@ -137,8 +137,13 @@ abstract class ArchiveEntryInputStream extends InputStream {
                 archiveEntry,
                 () -> ((SevenZFile) commonArchive).getNextEntry());
         } else if (commonArchive instanceof ZipFile) {
-            final InputStream inputStream =
-                    ((ZipFile) commonArchive).getInputStream((ZipArchiveEntry) archiveEntry);
+            // Streams of entries read the archive at absolute positions, so they can be read
+            // concurrently. Opening them is serialized, in case it has to parse local headers.
+            final InputStream inputStream;
+            synchronized (commonArchive) {
+                inputStream = ((ZipFile) commonArchive).getInputStream(
+                        (ZipArchiveEntry) archiveEntry);
+            }
             return new WrapZipFileInputStream(
                 (b, off, len) -> inputStream.read(b, off, len),
                 archiveEntry,
@@ -29,9 +29,11 @@ import android.text.TextUtils;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import java.io.Closeable;
 import java.io.FileInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.channels.SeekableByteChannel;
@@ -77,6 +79,12 @@ abstract class ArchiveHandle<T> implements Closeable {
     @NonNull
     private T mCommonArchive;
 
+    /**
+     * Number of times the archive was rewound, so that readers of a shared stream can tell
+     * whether someone else moved it.
+     */
+    private int mRewindCount = 0;
+
     /**
      * To use factory pattern ensure the only one way to create the ArchiveHandle instance.
      * @param parcelFileDescriptor the file descriptor
@@ -143,24 +151,61 @@ abstract class ArchiveHandle<T> implements Closeable {
             throws IOException, CompressorException, ArchiveException {
 
         if (!isCommonArchiveSupportGetInputStream()) {
-            FileInputStream fileInputStream = recreateCommonArchiveStream();
-            T commonArchive = recreateCommonArchive(fileInputStream);
-            if (commonArchive != null) {
-                closeCommonArchive();
-                setCommonArchive(commonArchive);
-            } else {
-                Log.e(TAG, "new SevenZFile or ArchiveInputStream is null");
-                fileInputStream.close();
-            }
+            rewind();
         }
 
         return ArchiveEntryInputStream.create(this, archiveEntry);
     }
 
+    /**
+     * For archives read sequentially, moves back to the beginning of the archive, so that
+     * {@link #getNextEntry} returns the first entry.
+     */
+    void rewind() throws IOException, CompressorException, ArchiveException {
+        mRewindCount++;
+        FileInputStream fileInputStream = recreateCommonArchiveStream();
+        T commonArchive = recreateCommonArchive(fileInputStream);
+        if (commonArchive != null) {
+            closeCommonArchive();
+            setCommonArchive(commonArchive);
+        } else {
+            Log.e(TAG, "new SevenZFile or ArchiveInputStream is null");
+            fileInputStream.close();
+        }
+    }
+
+    /**
+     * @return number of times {@link #rewind} was called. Callers must hold the lock of the
+     *     handle, like when rewinding it.
+     */
+    int getRewindCount() {
+        return mRewindCount;
+    }
+
     boolean isCommonArchiveSupportGetInputStream() {
         return false;
     }
 
+    /**
+     * For archives read sequentially, moves to the entry following the one read last. Its
+     * contents can then be read with {@link #getCurrentEntryInputStream}.
+     *
+     * @return the next entry, or null at the end of the archive or if the archive doesn't
+     *     support sequential reads.
+     */
+    @Nullable
+    ArchiveEntry getNextEntry() throws IOException {
+        return null;
+    }
+
+    /**
+     * @return the stream of the entry returned by {@link #getNextEntry}. Closing it has no
+     *     effect.
+     */
+    InputStream getCurrentEntryInputStream() {
+        throw new UnsupportedOperationException("This kind of ArchiveHandle doesn't support");
+    }
+
     void closeCommonArchive() throws IOException {
         throw new UnsupportedOperationException("This kind of ArchiveHandle doesn't support");
     }
@@ -199,6 +244,28 @@ abstract class ArchiveHandle<T> implements Closeable {
             return new SevenZFile(fileInputStream.getChannel());
         }
 
+        @Nullable
+        @Override
+        ArchiveEntry getNextEntry() throws IOException {
+            return getCommonArchive().getNextEntry();
+        }
+
+        @Override
+        InputStream getCurrentEntryInputStream() {
+            final SevenZFile sevenZFile = getCommonArchive();
+            return new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    return sevenZFile.read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    return sevenZFile.read(b, off, len);
+                }
+            };
+        }
+
         @NonNull
         @Override
         public Enumeration<? extends ArchiveEntry> getEntries() {
@@ -250,6 +317,22 @@ abstract class ArchiveHandle<T> implements Closeable {
             return createCommonArchive(fileInputStream, getMimeType());
         }
 
+        @Nullable
+        @Override
+        ArchiveEntry getNextEntry() throws IOException {
+            return getCommonArchive().getNextEntry();
+        }
+
+        @Override
+        InputStream getCurrentEntryInputStream() {
+            return new FilterInputStream(getCommonArchive()) {
+                @Override
+                public void close() {
+                    // The stream belongs to the archive.
+                }
+            };
+        }
+
         @NonNull
         @Override
         public Enumeration<? extends ArchiveEntry> getEntries() throws IOException {
@@ -266,9 +349,8 @@ abstract class ArchiveHandle<T> implements Closeable {
 
     @NonNull
     private static ArchiveInputStream createCommonArchive(
-            @NonNull FileInputStream fileInputStream,
+            @NonNull InputStream inputStream,
             @NonNull String mimeType) throws CompressorException, ArchiveException {
-        InputStream inputStream = fileInputStream;
 
         String compressName = ArchiveRegistry.getCompressName(mimeType);
         if (!TextUtils.isEmpty(compressName)) {
@@ -335,4 +417,22 @@ abstract class ArchiveHandle<T> implements Closeable {
                         + mimeType);
         }
     }
+
+    /**
+     * Creates the handle of a sequential archive, which reads the passed stream the first time
+     * through the archive, e.g. while the descriptor is still being written. Later passes read
+     * the descriptor.
+     */
+    static ArchiveHandle createForStream(@NonNull ParcelFileDescriptor parcelFileDescriptor,
+            @NonNull String mimeType, @NonNull InputStream inputStream)
+            throws CompressorException, ArchiveException {
+        checkNotNull(parcelFileDescriptor);
+        checkNotNull(inputStream);
+        final Integer archiveType = ArchiveRegistry.getArchiveType(mimeType);
+        checkArgument(archiveType != null && archiveType == COMMON_ARCHIVE_TYPE,
+                "Only sequential archives can be read from a stream.");
+
+        return new CommonArchiveInputHandle(parcelFileDescriptor, mimeType,
+                createCommonArchive(inputStream, mimeType));
+    }
 }
@@ -0,0 +1,277 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.archives;
+
+import static com.android.documentsui.base.SharedMinimal.DEBUG;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.system.StructStat;
+import android.util.Log;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import org.apache.commons.compress.archivers.ArchiveEntry;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Persists the list of entries of archives which can only be read sequentially, so that
+ * reopening an archive doesn't require decompressing all of it just to list it. Indexes are
+ * stored under the cache dir, validated against the size and the modification time of the
+ * archive, and evicted least recently used first once they exceed a byte budget.
+ *
+ * <p>This class is thread safe.
+ */
+final class ArchiveIndexCache {
+    private static final String TAG = "ArchiveIndexCache";
+
+    private static final String INDEX_DIR = "archive_indexes";
+    private static final long MAX_BYTES = 32 * 1024 * 1024;
+
+    private static final int VERSION_INIT = 1;
+    // Archives are told apart by their modification time in nanoseconds, rather than seconds.
+    private static final int VERSION_MTIME_NANOS = 2;
+
+    private static final Object sLock = new Object();
+    @GuardedBy("sLock")
+    private static ArchiveIndexCache sInstance;
+
+    private final File mDir;
+    private final long mMaxBytes;
+
+    @VisibleForTesting
+    ArchiveIndexCache(File dir, long maxBytes) {
+        mDir = dir;
+        mMaxBytes = maxBytes;
+    }
+
+    static ArchiveIndexCache get(Context context) {
+        synchronized (sLock) {
+            if (sInstance == null) {
+                sInstance = new ArchiveIndexCache(
+                        new File(context.getCacheDir(), INDEX_DIR), MAX_BYTES);
+            }
+            return sInstance;
+        }
+    }
+
+    /**
+     * @return the entries of the archive in their original order, or null if the archive is
+     *     not indexed or has changed since.
+     */
+    @Nullable List<ArchiveEntry> read(Key key) {
+        final File file = getFile(key);
+        if (!file.exists()) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            final int version = in.readInt();
+            if (version != VERSION_MTIME_NANOS) {
+                throw new ProtocolException("Unknown version " + version);
+            }
+            if (!key.uri.toString().equals(in.readUTF())
+                    || key.size != in.readLong()
+                    || key.lastModifiedNanos != in.readLong()) {
+                if (DEBUG) {
+                    Log.d(TAG, "Stale index of " + key.uri);
+                }
+                file.delete();
+                return null;
+            }
+
+            final int count = in.readInt();
+            final List<ArchiveEntry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                final String name = in.readUTF();
+                final long size = in.readLong();
+                final long lastModified = in.readLong();
+                final boolean isDirectory = in.readBoolean();
+                entries.add(new IndexedEntry(name, size,
+                        lastModified >= 0 ? new Date(lastModified) : null, isDirectory));
+            }
+
+            // Used just now, so evicted last.
+            file.setLastModified(System.currentTimeMillis());
+            return entries;
+        } catch (IOException e) {
+            Log.w(TAG, "Discarding unreadable index " + file, e);
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Stores entries of the archive, in their original order.
+     */
+    void write(Key key, List<ArchiveEntry> entries) {
+        mDir.mkdirs();
+        final File file = getFile(key);
+        final File tempFile = new File(mDir, file.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(VERSION_MTIME_NANOS);
+            out.writeUTF(key.uri.toString());
+            out.writeLong(key.size);
+            out.writeLong(key.lastModifiedNanos);
+            out.writeInt(entries.size());
+            for (ArchiveEntry entry : entries) {
+                out.writeUTF(entry.getName());
+                out.writeLong(entry.getSize());
+                final Date lastModified = entry.getLastModifiedDate();
+                out.writeLong(lastModified != null ? lastModified.getTime() : -1);
+                out.writeBoolean(entry.isDirectory());
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write index of " + key.uri, e);
+            tempFile.delete();
+            return;
+        }
+
+        // Readers see either the previous index or the complete new one.
+        if (!tempFile.renameTo(file)) {
+            tempFile.delete();
+            return;
+        }
+        trim();
+    }
+
+    private void trim() {
+        synchronized (sLock) {
+            final File[] files = mDir.listFiles();
+            if (files == null) {
+                return;
+            }
+
+            long bytes = 0;
+            for (File file : files) {
+                bytes += file.length();
+            }
+            if (bytes <= mMaxBytes) {
+                return;
+            }
+
+            Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+            for (File file : files) {
+                if (bytes <= mMaxBytes) {
+                    break;
+                }
+                bytes -= file.length();
+                file.delete();
+            }
+        }
+    }
+
+    private File getFile(Key key) {
+        // One index per archive. Indexes of older versions of the archive get overwritten.
+        return new File(mDir, UUID.nameUUIDFromBytes(
+                key.uri.toString().getBytes(StandardCharsets.UTF_8)).toString());
+    }
+
+    /**
+     * Identifies a version of an archive.
+     */
+    static final class Key {
+        final Uri uri;
+        final long size;
+        // With nanoseconds, so that an archive rewritten to the same size within a second
+        // isn't mistaken for the previous version.
+        final long lastModifiedNanos;
+
+        @VisibleForTesting
+        Key(Uri uri, long size, long lastModifiedNanos) {
+            this.uri = uri;
+            this.size = size;
+            this.lastModifiedNanos = lastModifiedNanos;
+        }
+
+        /**
+         * @return key of the archive behind the descriptor, or null if the descriptor doesn't
+         *     point to a regular file.
+         */
+        static @Nullable Key create(Uri uri, ParcelFileDescriptor descriptor) {
+            try {
+                final StructStat stat = Os.fstat(descriptor.getFileDescriptor());
+                if (!OsConstants.S_ISREG(stat.st_mode)) {
+                    return null;
+                }
+                return new Key(uri, stat.st_size,
+                        stat.st_mtim.tv_sec * 1000000000L + stat.st_mtim.tv_nsec);
+            } catch (ErrnoException e) {
+                return null;
+            }
+        }
+    }
+
+    private static class IndexedEntry implements ArchiveEntry {
+        private final String mName;
+        private final long mSize;
+        @Nullable private final Date mLastModifiedDate;
+        private final boolean mIsDirectory;
+
+        IndexedEntry(String name, long size, @Nullable Date lastModifiedDate,
+                boolean isDirectory) {
+            mName = name;
+            mSize = size;
+            mLastModifiedDate = lastModifiedDate;
+            mIsDirectory = isDirectory;
+        }
+
+        @Override
+        public String getName() {
+            return mName;
+        }
+
+        @Override
+        public long getSize() {
+            return mSize;
+        }
+
+        @Override
+        public boolean isDirectory() {
+            return mIsDirectory;
+        }
+
+        @Override
+        public Date getLastModifiedDate() {
+            return mLastModifiedDate;
+        }
+    }
+}
@@ -16,6 +16,7 @@
 
 package com.android.documentsui.archives;
 
+import android.content.ComponentCallbacks2;
 import android.content.ContentProviderClient;
 import android.content.res.AssetFileDescriptor;
 import android.database.Cursor;
@@ -26,7 +27,10 @@ import android.net.Uri;
 import android.os.Bundle;
 import android.os.CancellationSignal;
 import android.os.FileUtils;
+import android.os.Handler;
+import android.os.Looper;
 import android.os.ParcelFileDescriptor;
+import android.os.SystemClock;
 import android.provider.DocumentsContract;
 import android.provider.DocumentsContract.Document;
 import android.provider.DocumentsContract.Root;
@@ -35,16 +39,25 @@ import android.util.Log;
 
 import androidx.annotation.GuardedBy;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 
 import com.android.documentsui.R;
 
+import java.io.FileDescriptor;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.PrintWriter;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Provides basic implementation for creating, extracting and accessing
@@ -64,8 +77,40 @@ public class ArchivesProvider extends DocumentsProvider {
     private static final String METHOD_RELEASE_ARCHIVE = "releaseArchive";
     private static final Set<String> ZIP_MIME_TYPES = ArchiveRegistry.getSupportList();
 
+    // Archives opened at once, at most, besides those waiting for their snapshot. Others wait
+    // for a thread.
+    private static final int MAX_LOADER_THREADS = 2;
+    // Released archives are kept open this long, in case they are acquired again, e.g. when
+    // navigating out of an archive and back.
+    private static final long WARM_ARCHIVE_TIMEOUT_MS = 15 * 1000;
+    // Released archives kept open at once, at most. Open archives hold their index and caches.
+    private static final int MAX_WARM_ARCHIVES = 3;
+
     @GuardedBy("mArchives")
     private final Map<Key, Loader> mArchives = new HashMap<>();
+    // Archives released by all clients, but kept open, until acquired again or evicted. Their
+    // loaders are retained, which doesn't count as a client reference. Oldest first.
+    @GuardedBy("mArchives")
+    private final LinkedHashSet<Key> mWarmArchives = new LinkedHashSet<>();
+    @GuardedBy("mArchives")
+    private int mOpenCount = 0;
+    @GuardedBy("mArchives")
+    private int mReuseCount = 0;
+    @GuardedBy("mArchives")
+    private int mEvictCount = 0;
+
+    private final ThreadPoolExecutor mLoaderExecutor = new ThreadPoolExecutor(
+            MAX_LOADER_THREADS, MAX_LOADER_THREADS, 10, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>());
+    // Loads archives which have to be copied completely first. Waiting for the copy, e.g. of an
+    // archive streamed from the network, doesn't take up a loader thread, so other archives
+    // keep loading meanwhile.
+    private final ExecutorService mSnapshotExecutor = Executors.newCachedThreadPool();
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    public ArchivesProvider() {
+        mLoaderExecutor.allowCoreThreadTimeOut(true);
+    }
 
     @Override
     public Bundle call(String method, String arg, Bundle extras) {
@@ -235,6 +280,39 @@ public class ArchivesProvider extends DocumentsProvider {
         return loader.get().openDocumentThumbnail(documentId, sizeHint, signal);
     }
 
+    @Override
+    public void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        CompressionMetrics.get().dump(writer);
+
+        synchronized (mArchives) {
+            writer.println(String.format("Archives: opened=%d reused=%d evicted=%d warm=%d",
+                    mOpenCount, mReuseCount, mEvictCount, mWarmArchives.size()));
+            for (Loader loader : mArchives.values()) {
+                loader.dump(writer);
+            }
+        }
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            evictWarmArchives();
+        }
+    }
+
+    /**
+     * Closes all archives released by their clients.
+     */
+    @VisibleForTesting
+    public void evictWarmArchives() {
+        synchronized (mArchives) {
+            while (!mWarmArchives.isEmpty()) {
+                evictLocked(mWarmArchives.iterator().next());
+            }
+        }
+    }
+
     /**
      * Returns true if the passed mime type is supported by the helper.
      */
@@ -296,11 +374,28 @@ public class ArchivesProvider extends DocumentsProvider {
         synchronized (mArchives) {
             final Key key = Key.fromArchiveId(archiveId);
             Loader loader = mArchives.get(key);
+            if (loader != null && mWarmArchives.contains(key)
+                    && loader.getStatus() == Loader.STATUS_FAILED) {
+                // Try again rather than reusing a failure.
+                evictLocked(key);
+                loader = mArchives.get(key);
+            }
+            if (loader != null && mWarmArchives.remove(key)) {
+                mHandler.removeCallbacksAndMessages(loader);
+                loader.acquire();
+                loader.setRetained(false);
+                mReuseCount++;
+                return;
+            }
             if (loader == null) {
                 // TODO: Pass parent Uri so the loader can acquire the parent's notification Uri.
+                // Until then, archives notify on their root, which is what listings of loading
+                // archives observe as well.
                 loader = new Loader(getContext(), archiveId.mArchiveUri, archiveId.mAccessMode,
-                        null);
+                        buildUriForArchive(archiveId.mArchiveUri, archiveId.mAccessMode),
+                        mLoaderExecutor, mSnapshotExecutor);
                 mArchives.put(key, loader);
+                mOpenCount++;
             }
             loader.acquire();
             mArchives.put(key, loader);
@@ -315,11 +410,53 @@ public class ArchivesProvider extends DocumentsProvider {
         final Key key = Key.fromArchiveId(archiveId);
         synchronized (mArchives) {
             final Loader loader = mArchives.get(key);
-            loader.release();
             final int status = loader.getStatus();
-            if (status == Loader.STATUS_CLOSED || status == Loader.STATUS_CLOSING) {
-                mArchives.remove(key);
+            if (loader.getRefCount() == 1
+                    && ReadableArchive.supportsAccessMode(archiveId.mAccessMode)
+                    && (status == Loader.STATUS_OPENING || status == Loader.STATUS_OPENED)) {
+                // Keep the archive open for a while. Writeable archives are finished by closing
+                // them, so they are closed right away.
+                loader.setRetained(true);
+                loader.release();
+                mWarmArchives.add(key);
+                mHandler.postAtTime(() -> {
+                    synchronized (mArchives) {
+                        if (mWarmArchives.contains(key)) {
+                            evictLocked(key);
+                        }
+                    }
+                }, loader, SystemClock.uptimeMillis() + WARM_ARCHIVE_TIMEOUT_MS);
+
+                while (mWarmArchives.size() > MAX_WARM_ARCHIVES) {
+                    evictLocked(mWarmArchives.iterator().next());
+                }
+                return;
             }
+            releaseLocked(key, loader);
+        }
+    }
+
+    @GuardedBy("mArchives")
+    private void evictLocked(Key key) {
+        mWarmArchives.remove(key);
+        final Loader loader = mArchives.get(key);
+        mHandler.removeCallbacksAndMessages(loader);
+        loader.setRetained(false);
+        removeIfClosedLocked(key, loader);
+        mEvictCount++;
+    }
+
+    @GuardedBy("mArchives")
+    private void releaseLocked(Key key, Loader loader) {
+        loader.release();
+        removeIfClosedLocked(key, loader);
+    }
+
+    @GuardedBy("mArchives")
+    private void removeIfClosedLocked(Key key, Loader loader) {
+        final int status = loader.getStatus();
+        if (status == Loader.STATUS_CLOSED || status == Loader.STATUS_CLOSING) {
+            mArchives.remove(key);
         }
     }
 
@@ -328,7 +465,7 @@ public class ArchivesProvider extends DocumentsProvider {
         final Key key = Key.fromArchiveId(id);
         synchronized (mArchives) {
             final Loader loader = mArchives.get(key);
-            if (loader == null) {
+            if (loader == null || mWarmArchives.contains(key)) {
                 throw new IllegalStateException("Archive not acquired.");
             }
             return loader;
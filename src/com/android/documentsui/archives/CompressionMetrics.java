@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.archives;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.VisibleForTesting;
+
+import com.android.documentsui.base.MimeTypes;
+
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compression ratios achieved by {@link WriteableArchive}, per MIME class (the top-level type,
+ * e.g. "image"). Kept for the lifetime of the process and printed by
+ * {@code dumpsys activity provider com.android.documentsui.archives}.
+ *
+ * <p>This class is thread safe.
+ */
+final class CompressionMetrics {
+    private static final CompressionMetrics sInstance = new CompressionMetrics();
+
+    @GuardedBy("mStats")
+    private final Map<String, Stats> mStats = new TreeMap<>();
+
+    @VisibleForTesting
+    CompressionMetrics() {
+    }
+
+    static CompressionMetrics get() {
+        return sInstance;
+    }
+
+    /**
+     * Records an entry written to an archive.
+     *
+     * @param stored true if the entry was stored rather than deflated.
+     * @param rawBytes size of the entry.
+     * @param compressedBytes size of the entry in the archive.
+     */
+    void onEntryWritten(String mimeType, boolean stored, long rawBytes, long compressedBytes) {
+        final String[] groups = MimeTypes.splitMimeType(mimeType);
+        final String mimeClass = groups != null ? groups[0] : "unknown";
+        synchronized (mStats) {
+            Stats stats = mStats.get(mimeClass);
+            if (stats == null) {
+                stats = new Stats();
+                mStats.put(mimeClass, stats);
+            }
+            stats.entries++;
+            if (stored) {
+                stats.storedEntries++;
+            }
+            stats.rawBytes += rawBytes;
+            stats.compressedBytes += compressedBytes;
+        }
+    }
+
+    /**
+     * @return compressed size divided by raw size of all entries of the MIME class, or 1 if
+     *     none were written.
+     */
+    @VisibleForTesting
+    float getRatio(String mimeClass) {
+        synchronized (mStats) {
+            final Stats stats = mStats.get(mimeClass);
+            return stats != null ? stats.getRatio() : 1f;
+        }
+    }
+
+    void dump(PrintWriter writer) {
+        writer.println("Compression by MIME class:");
+        synchronized (mStats) {
+            for (Map.Entry<String, Stats> entry : mStats.entrySet()) {
+                final Stats stats = entry.getValue();
+                writer.println(String.format("  %s: entries=%d stored=%d raw=%d compressed=%d "
+                        + "ratio=%.3f", entry.getKey(), stats.entries, stats.storedEntries,
+                        stats.rawBytes, stats.compressedBytes, stats.getRatio()));
+            }
+        }
+    }
+
+    private static class Stats {
+        int entries;
+        int storedEntries;
+        long rawBytes;
+        long compressedBytes;
+
+        float getRatio() {
+            return rawBytes > 0 ? (float) compressedBytes / rawBytes : 1f;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.archives;
+
+import android.util.Log;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Size bounded LRU of archive entries extracted to files, for archives which can only be read
+ * sequentially. Once an entry is extracted, opening it again is a plain file read instead of a
+ * linear pass over the archive.
+ *
+ * <p>This class is thread safe.
+ */
+class ExtractionCache implements Closeable {
+    private static final String TAG = "ExtractionCache";
+
+    private final File mDir;
+    private final long mMaxBytes;
+
+    // Keyed by entry path, in access order.
+    @GuardedBy("mFiles")
+    private final LinkedHashMap<String, File> mFiles = new LinkedHashMap<>(16, 0.75f, true);
+    @GuardedBy("mFiles")
+    private long mBytes = 0;
+    @GuardedBy("mFiles")
+    private int mNextFileId = 0;
+    @GuardedBy("mFiles")
+    private boolean mClosed = false;
+
+    /**
+     * @param dir directory owned by the cache. Deleted on {@link #close}.
+     * @param maxBytes total size of extracted entries kept at once.
+     */
+    ExtractionCache(File dir, long maxBytes) {
+        mDir = dir;
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * @return true if an entry of the given size may be extracted. Entries taking a large part
+     *     of the budget would evict everything else.
+     */
+    boolean canHold(long size) {
+        return size >= 0 && size <= mMaxBytes / 4;
+    }
+
+    /**
+     * @return the file the entry was extracted to, or null if not cached.
+     */
+    @Nullable File get(String path) {
+        synchronized (mFiles) {
+            return mFiles.get(path);
+        }
+    }
+
+    /**
+     * Extracts an entry by copying the passed stream until its end. The stream is not closed.
+     *
+     * @return the file the entry was extracted to.
+     */
+    File put(String path, InputStream inputStream) throws IOException {
+        final File file;
+        synchronized (mFiles) {
+            if (mClosed) {
+                throw new IOException("The cache is closed.");
+            }
+            mDir.mkdirs();
+            file = new File(mDir, Integer.toString(mNextFileId++));
+        }
+
+        try (FileOutputStream outputStream = new FileOutputStream(file)) {
+            final byte[] buffer = new byte[32 * 1024];
+            int bytes;
+            while ((bytes = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, bytes);
+            }
+        } catch (IOException e) {
+            file.delete();
+            throw e;
+        }
+
+        synchronized (mFiles) {
+            if (mClosed) {
+                file.delete();
+                throw new IOException("The cache is closed.");
+            }
+            final File previous = mFiles.put(path, file);
+            if (previous != null) {
+                mBytes -= previous.length();
+                previous.delete();
+            }
+            mBytes += file.length();
+            trimLocked();
+        }
+        return file;
+    }
+
+    @GuardedBy("mFiles")
+    private void trimLocked() {
+        final Iterator<Map.Entry<String, File>> it = mFiles.entrySet().iterator();
+        // Never evict the most recently used entry, which was just added.
+        while (mBytes > mMaxBytes && mFiles.size() > 1 && it.hasNext()) {
+            final File file = it.next().getValue();
+            mBytes -= file.length();
+            // Descriptors opened for the file keep working after it's deleted.
+            file.delete();
+            it.remove();
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (mFiles) {
+            mClosed = true;
+            mFiles.clear();
+            mBytes = 0;
+        }
+        final File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        if (!mDir.delete() && mDir.exists()) {
+            Log.w(TAG, "Failed to delete " + mDir);
+        }
+    }
+}
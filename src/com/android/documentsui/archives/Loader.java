@@ -19,13 +19,16 @@ package com.android.documentsui.archives;
 import android.content.ContentResolver;
 import android.content.Context;
 import android.net.Uri;
+import android.os.FileUtils;
+import android.os.ParcelFileDescriptor;
 import android.util.Log;
 
 import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
 
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 import org.apache.commons.compress.archivers.ArchiveException;
 import org.apache.commons.compress.compressors.CompressorException;
@@ -46,22 +49,65 @@ public class Loader {
     private final Uri mArchiveUri;
     private final int mAccessMode;
     private final Uri mNotificationUri;
-    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
     private final Object mLock = new Object();
     @GuardedBy("mLock")
     private int mStatus = STATUS_OPENING;
+    // References of clients. Only they listen to changes of the archive.
     @GuardedBy("mLock")
     private int mRefCount = 0;
+    // Whether the archive is kept open while no client references it. See ArchivesProvider.
+    @GuardedBy("mLock")
+    private boolean mRetained = false;
     private Archive mArchive = null;
+    // Descriptor of a readable archive opened by prepare(), to be loaded by get().
+    @GuardedBy("this")
+    @Nullable private ParcelFileDescriptor mDescriptor = null;
+    @GuardedBy("this")
+    @Nullable private String mMimeType = null;
 
-    Loader(Context context, Uri archiveUri, int accessMode, Uri notificationUri) {
+    /**
+     * @param executor Executor to load the archive on.
+     * @param snapshotExecutor Executor to load the archive on instead, if it has to be copied
+     *     completely first, so that waiting for the copy doesn't hold up other archives.
+     */
+    Loader(Context context, Uri archiveUri, int accessMode, Uri notificationUri,
+            ExecutorService executor, ExecutorService snapshotExecutor) {
         this.mContext = context;
         this.mArchiveUri = archiveUri;
         this.mAccessMode = accessMode;
         this.mNotificationUri = notificationUri;
 
         // Start loading the archive immediately in the background.
-        mExecutor.submit(this::get);
+        executor.submit(() -> {
+            if (prepare()) {
+                snapshotExecutor.submit(this::get);
+            } else {
+                get();
+            }
+        });
+    }
+
+    /**
+     * Opens the descriptor of a readable archive ahead of {@link #get}.
+     *
+     * @return true if the archive can't be loaded before it's copied completely.
+     */
+    private synchronized boolean prepare() {
+        synchronized (mLock) {
+            if (mStatus != STATUS_OPENING || !ReadableArchive.supportsAccessMode(mAccessMode)) {
+                return false;
+            }
+        }
+        try {
+            final ContentResolver contentResolver = mContext.getContentResolver();
+            mMimeType = contentResolver.getType(mArchiveUri);
+            mDescriptor = contentResolver.openFileDescriptor(mArchiveUri, "r", null /* signal */);
+        } catch (IOException | RuntimeException e) {
+            // Reported once get() fails to open the descriptor again.
+            return false;
+        }
+        return mDescriptor != null
+                && ReadableArchive.needsCompletedSnapshot(mDescriptor, mMimeType);
     }
 
     synchronized Archive get() {
@@ -71,8 +117,13 @@ public class Loader {
             }
         }
 
+        final ParcelFileDescriptor descriptor = mDescriptor;
+        final String mimeType = mMimeType;
+        mDescriptor = null;
+        mMimeType = null;
         synchronized (mLock) {
             if (mStatus != STATUS_OPENING) {
+                FileUtils.closeQuietly(descriptor);
                 throw new IllegalStateException(
                         "Trying to perform an operation on an archive which is invalidated.");
             }
@@ -81,12 +132,13 @@ public class Loader {
         try {
             if (ReadableArchive.supportsAccessMode(mAccessMode)) {
                 final ContentResolver contentResolver = mContext.getContentResolver();
-                final String archiveMimeType = contentResolver.getType(mArchiveUri);
                 mArchive = ReadableArchive.createForParcelFileDescriptor(
                         mContext,
-                        contentResolver.openFileDescriptor(
+                        descriptor != null ? descriptor : contentResolver.openFileDescriptor(
                                 mArchiveUri, "r", null /* signal */),
-                        mArchiveUri, archiveMimeType, mAccessMode, mNotificationUri);
+                        mArchiveUri,
+                        descriptor != null ? mimeType : contentResolver.getType(mArchiveUri),
+                        mAccessMode, mNotificationUri);
             } else if (WriteableArchive.supportsAccessMode(mAccessMode)) {
                 mArchive = WriteableArchive.createForParcelFileDescriptor(
                         mContext,
@@ -97,11 +149,12 @@ public class Loader {
                 throw new IllegalStateException("Access mode not supported.");
             }
             synchronized (mLock) {
-                if (mRefCount == 0) {
+                if (mRefCount == 0 && !mRetained) {
                     mArchive.close();
                     mStatus = STATUS_CLOSED;
                 } else {
                     mStatus = STATUS_OPENED;
+                    updateInUseLocked();
                 }
             }
         } catch (IOException | RuntimeException | ArchiveException | CompressorException e) {
@@ -126,6 +179,32 @@ public class Loader {
         return mArchive;
     }
 
+    void dump(PrintWriter writer) {
+        synchronized (mLock) {
+            writer.println(String.format("  %s: status=%d refs=%d retained=%b",
+                    mArchiveUri, mStatus, mRefCount, mRetained));
+            if (mStatus == STATUS_OPENED && mArchive instanceof ReadableArchive) {
+                ((ReadableArchive) mArchive).getReadMetrics().dump(writer);
+            }
+        }
+    }
+
+    /**
+     * Tells the archive whether anyone listens to its changes.
+     */
+    @GuardedBy("mLock")
+    private void updateInUseLocked() {
+        if (mStatus == STATUS_OPENED && mArchive instanceof ReadableArchive) {
+            ((ReadableArchive) mArchive).setInUse(mRefCount > 0);
+        }
+    }
+
+    int getRefCount() {
+        synchronized (mLock) {
+            return mRefCount;
+        }
+    }
+
     int getStatus() {
         synchronized (mLock) {
             return mStatus;
@@ -135,35 +214,51 @@ public class Loader {
     void acquire() {
         synchronized (mLock) {
             mRefCount++;
+            updateInUseLocked();
         }
     }
 
     void release() {
         synchronized (mLock) {
             mRefCount--;
-            if (mRefCount == 0) {
-                assert(mStatus == STATUS_OPENING
-                        || mStatus == STATUS_OPENED
-                        || mStatus == STATUS_FAILED);
-
-                switch (mStatus) {
-                    case STATUS_OPENED:
-                        try {
-                            mArchive.close();
-                            mStatus = STATUS_CLOSED;
-                        } catch (IOException e) {
-                            Log.e(TAG, "Failed to close the archive on release.", e);
-                        }
-                        break;
-                    case STATUS_FAILED:
-                        mStatus = STATUS_CLOSED;
-                        break;
-                    case STATUS_OPENING:
-                        mStatus = STATUS_CLOSING;
-                        // ::get() will close the archive once opened.
-                        break;
+            updateInUseLocked();
+            closeIfUnusedLocked();
+        }
+    }
+
+    /**
+     * Sets whether the archive is kept open while no client references it. Once it isn't
+     * retained anymore, it's closed if no client references it either.
+     */
+    void setRetained(boolean retained) {
+        synchronized (mLock) {
+            mRetained = retained;
+            closeIfUnusedLocked();
+        }
+    }
+
+    @GuardedBy("mLock")
+    private void closeIfUnusedLocked() {
+        if (mRefCount > 0 || mRetained) {
+            return;
+        }
+
+        switch (mStatus) {
+            case STATUS_OPENED:
+                try {
+                    mArchive.close();
+                    mStatus = STATUS_CLOSED;
+                } catch (IOException e) {
+                    Log.e(TAG, "Failed to close the archive on release.", e);
                 }
-            }
+                break;
+            case STATUS_FAILED:
+                mStatus = STATUS_CLOSED;
+                break;
+            case STATUS_OPENING:
+                mStatus = STATUS_CLOSING;
+                // ::get() will close the archive once opened.
+                break;
         }
     }
 }
@@ -21,6 +21,9 @@ import android.os.ProxyFileDescriptorCallback;
 import android.system.ErrnoException;
 import android.system.OsConstants;
 
+import androidx.annotation.Nullable;
+
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -30,18 +33,32 @@ import org.apache.commons.compress.compressors.CompressorException;
 
 /**
  * Provides a backend for a seekable file descriptors for files in archives.
+ *
+ * <p>Archive entries can only be read sequentially. Blocks the stream passes are kept in a
+ * {@link SeekCache}, so seeking backwards is served from disk instead of decompressing the entry
+ * again from its beginning.
  */
 public class Proxy extends ProxyFileDescriptorCallback {
+    private static final int SKIP_BUFFER_SIZE = 32 * 1024;
+
     private final ArchiveHandle mFile;
     private final ArchiveEntry mEntry;
+    @Nullable private final SeekCache mSeekCache;
+    private final ReadMetrics mMetrics;
     private InputStream mInputStream = null;
     private long mOffset = 0;
+    // Rewinds of the archive up to the creation of the stream. See recreateInputStream().
+    private int mRewindCount;
+    private byte[] mSkipBuffer = null;
 
-    Proxy(ArchiveHandle file, ArchiveEntry entry)
+    Proxy(ArchiveHandle file, ArchiveEntry entry, File cacheDir, ReadMetrics metrics)
             throws IOException, CompressorException, ArchiveException {
         mFile = file;
         mEntry = entry;
+        mSeekCache = SeekCache.isWorthCaching(entry.getSize()) ? new SeekCache(cacheDir) : null;
+        mMetrics = metrics;
         recreateInputStream();
+        mMetrics.onEntryOpened();
     }
 
     @Override
@@ -51,41 +68,92 @@ public class Proxy extends ProxyFileDescriptorCallback {
 
     @Override
     public int onRead(long offset, int size, byte[] data) throws ErrnoException {
-        // TODO: Add a ring buffer to prevent expensive seeks.
-        if (offset < mOffset) {
-            try {
-                recreateInputStream();
-            } catch (IOException e) {
-                throw new ErrnoException("onRead", OsConstants.EIO);
-            } catch (ArchiveException e) {
-                throw new ErrnoException("onRead archive exception. " + e.getMessage(),
-                        OsConstants.EIO);
-            } catch (CompressorException e) {
-                throw new ErrnoException("onRead uncompress exception. " + e.getMessage(),
-                        OsConstants.EIO);
+        try {
+            int cachedSize = 0;
+            if (mSeekCache != null) {
+                cachedSize = mSeekCache.read(offset, data, 0, size);
+                if (cachedSize == size) {
+                    mMetrics.onRead(size, cachedSize);
+                    return size;
+                }
             }
+            final int bytes;
+            if (mFile.isCommonArchiveSupportGetInputStream()) {
+                bytes = cachedSize + readFromStream(offset + cachedSize,
+                        size - cachedSize, data, cachedSize);
+            } else {
+                // The stream is the one of the archive, which other passes over it move.
+                synchronized (mFile) {
+                    if (mFile.getRewindCount() != mRewindCount) {
+                        recreateInputStream();
+                        mMetrics.onStreamRecreated();
+                    }
+                    bytes = cachedSize + readFromStream(offset + cachedSize,
+                            size - cachedSize, data, cachedSize);
+                }
+            }
+            mMetrics.onRead(bytes, cachedSize);
+            return bytes;
+        } catch (IOException e) {
+            throw new ErrnoException("onRead", OsConstants.EIO);
+        } catch (ArchiveException e) {
+            throw new ErrnoException("onRead archive exception. " + e.getMessage(),
+                    OsConstants.EIO);
+        } catch (CompressorException e) {
+            throw new ErrnoException("onRead uncompress exception. " + e.getMessage(),
+                    OsConstants.EIO);
+        }
+    }
+
+    private int readFromStream(long offset, int size, byte[] data, int dataOffset)
+            throws IOException, CompressorException, ArchiveException {
+        if (offset != mOffset) {
+            mMetrics.onSeek();
+        }
+        if (offset < mOffset) {
+            // Only happens if the bytes at the offset aren't cached.
+            recreateInputStream();
+            mMetrics.onStreamRecreated();
         }
 
+        // Read rather than skip the bytes the cache can take, so that seeking back to them
+        // later doesn't decompress the entry again.
+        final long skipEnd = mSeekCache != null ? mSeekCache.getSkipEnd(mOffset, offset) : offset;
+        while (mOffset < skipEnd) {
+            final long skipped = mInputStream.skip(skipEnd - mOffset);
+            if (skipped <= 0) {
+                // Skipping past the end of the entry.
+                return 0;
+            }
+            mOffset += skipped;
+        }
         while (mOffset < offset) {
-            try {
-                mOffset +=  mInputStream.skip(offset - mOffset);
-            } catch (IOException e) {
-                throw new ErrnoException("onRead", OsConstants.EIO);
+            if (mSkipBuffer == null) {
+                mSkipBuffer = new byte[SKIP_BUFFER_SIZE];
+            }
+            final int bytes = mInputStream.read(mSkipBuffer, 0,
+                    (int) Math.min(mSkipBuffer.length, offset - mOffset));
+            if (bytes <= 0) {
+                return 0;
+            }
+            if (mSeekCache != null) {
+                mSeekCache.write(mOffset, mSkipBuffer, 0, bytes);
             }
+            mOffset += bytes;
         }
 
         int remainingSize = size;
         while (remainingSize > 0) {
-            try {
-                int bytes = mInputStream.read(data, size - remainingSize, remainingSize);
-                if (bytes <= 0) {
-                    return size - remainingSize;
-                }
-                remainingSize -= bytes;
-                mOffset += bytes;
-            } catch (IOException e) {
-                throw new ErrnoException("onRead", OsConstants.EIO);
+            final int position = dataOffset + size - remainingSize;
+            int bytes = mInputStream.read(data, position, remainingSize);
+            if (bytes <= 0) {
+                return size - remainingSize;
+            }
+            if (mSeekCache != null) {
+                mSeekCache.write(mOffset, data, position, bytes);
             }
+            remainingSize -= bytes;
+            mOffset += bytes;
         }
 
         return size - remainingSize;
@@ -93,12 +161,22 @@ public class Proxy extends ProxyFileDescriptorCallback {
 
     @Override public void onRelease() {
         FileUtils.closeQuietly(mInputStream);
+        if (mSeekCache != null) {
+            mSeekCache.close();
+        }
     }
 
+    /**
+     * Opens the stream of the entry again, from its beginning. For archives read sequentially,
+     * this rewinds the archive, so it holds the lock of the handle like other passes over it.
+     */
     private void recreateInputStream()
             throws IOException, CompressorException, ArchiveException {
-        FileUtils.closeQuietly(mInputStream);
-        mInputStream = mFile.getInputStream(mEntry);
-        mOffset = 0;
+        synchronized (mFile) {
+            FileUtils.closeQuietly(mInputStream);
+            mInputStream = mFile.getInputStream(mEntry);
+            mOffset = 0;
+            mRewindCount = mFile.getRewindCount();
+        }
     }
 }
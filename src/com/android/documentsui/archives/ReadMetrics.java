@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.archives;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reads of entries of one archive through proxy file descriptors. Printed by
+ * {@code dumpsys activity provider com.android.documentsui.archives}.
+ *
+ * <p>This class is thread safe.
+ */
+final class ReadMetrics {
+    private final AtomicLong mOpenedEntries = new AtomicLong();
+    private final AtomicLong mBytesServed = new AtomicLong();
+    private final AtomicLong mCachedBytesServed = new AtomicLong();
+    private final AtomicLong mSeeks = new AtomicLong();
+    private final AtomicLong mStreamRecreations = new AtomicLong();
+
+    void onEntryOpened() {
+        mOpenedEntries.incrementAndGet();
+    }
+
+    /**
+     * @param bytes bytes returned to the client.
+     * @param cachedBytes part of the bytes served from the seek cache.
+     */
+    void onRead(int bytes, int cachedBytes) {
+        mBytesServed.addAndGet(bytes);
+        mCachedBytesServed.addAndGet(cachedBytes);
+    }
+
+    /**
+     * Records a read at an offset other than where the entry stream is positioned.
+     */
+    void onSeek() {
+        mSeeks.incrementAndGet();
+    }
+
+    /**
+     * Records decompressing an entry again from its beginning, to seek backwards.
+     */
+    void onStreamRecreated() {
+        mStreamRecreations.incrementAndGet();
+    }
+
+    @VisibleForTesting
+    long getBytesServed() {
+        return mBytesServed.get();
+    }
+
+    @VisibleForTesting
+    long getSeeks() {
+        return mSeeks.get();
+    }
+
+    @VisibleForTesting
+    long getStreamRecreations() {
+        return mStreamRecreations.get();
+    }
+
+    void dump(PrintWriter writer) {
+        writer.println(String.format("    opened=%d served=%d cached=%d seeks=%d recreations=%d",
+                mOpenedEntries.get(), mBytesServed.get(), mCachedBytesServed.get(),
+                mSeeks.get(), mStreamRecreations.get()));
+    }
+}
@@ -18,10 +18,12 @@ package com.android.documentsui.archives;
 
 import static android.os.ParcelFileDescriptor.MODE_READ_ONLY;
 
+import static com.android.documentsui.archives.ArchiveRegistry.COMMON_ARCHIVE_TYPE;
 import static com.android.documentsui.base.SharedMinimal.DEBUG;
 
 import android.content.Context;
 import android.content.res.AssetFileDescriptor;
+import android.database.Cursor;
 import android.graphics.Point;
 import android.media.ExifInterface;
 import android.net.Uri;
@@ -31,29 +33,40 @@ import android.os.FileUtils;
 import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.ParcelFileDescriptor;
+import android.os.ProxyFileDescriptorCallback;
+import android.os.SystemClock;
 import android.os.storage.StorageManager;
 import android.provider.DocumentsContract;
 import android.util.Log;
 
+import androidx.annotation.GuardedBy;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 import androidx.core.util.Preconditions;
 
+import com.android.documentsui.R;
+
 import org.apache.commons.compress.archivers.ArchiveEntry;
 import org.apache.commons.compress.archivers.ArchiveException;
 import org.apache.commons.compress.compressors.CompressorException;
 import org.apache.commons.compress.utils.IOUtils;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.Enumeration;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Stack;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Provides basic implementation for extracting and accessing
@@ -64,11 +77,54 @@ import java.util.Stack;
 public class ReadableArchive extends Archive {
     private static final String TAG = "ReadableArchive";
 
+    // Extracted entries of a sequential archive kept at once, at most. Also limited by free space.
+    private static final long MAX_EXTRACTION_CACHE_BYTES = 256L * 1024 * 1024;
+    // Entries following an extracted one which are extracted in the same pass, as users tend to
+    // open neighbouring files one after another (e.g. swiping through photos).
+    private static final int MAX_EXTRACTED_NEIGHBOURS = 8;
+    private static final long MAX_EXTRACTED_NEIGHBOUR_BYTES = 8 * 1024 * 1024;
+
+    // Entries added to the index per lock acquisition, so readers aren't starved while indexing.
+    private static final int INDEX_BATCH_SIZE = 512;
+    // Clients are told to reload listings at most this often while indexing.
+    private static final long INDEX_NOTIFY_INTERVAL_MS = 500;
+
+    // Memory taken by EXIF thumbnails of one archive, at most. Thumbnails are usually up to
+    // 64 KB, so this holds a few hundred.
+    private static final long MAX_THUMBNAIL_CACHE_BYTES = 8 * 1024 * 1024;
+
     private final StorageManager mStorageManager;
     private final ArchiveHandle mArchiveHandle;
     private final ParcelFileDescriptor mParcelFileDescriptor;
-    private final Handler mHandler;
-    private HandlerThread mHandlerThread;
+    private final ReadMetrics mReadMetrics = new ReadMetrics();
+    private final ThumbnailCache mThumbnailCache =
+            new ThumbnailCache(MAX_THUMBNAIL_CACHE_BYTES);
+    // Only for archives which can't be read at random, otherwise null.
+    @Nullable private final ExtractionCache mExtractionCache;
+    // Identifies the version of the archive in the index cache, or null if not cacheable.
+    @Nullable private final ArchiveIndexCache.Key mIndexKey;
+    // Only for archives read from a non-seekable descriptor while it's being copied.
+    @Nullable private final StreamingSnapshot mSnapshot;
+    private final ExecutorService mIndexExecutor = Executors.newSingleThreadExecutor();
+    private final CountDownLatch mIndexed = new CountDownLatch(1);
+    private volatile boolean mIndexFailed = false;
+    // Whether clients use the archive, so they want to hear about progress of the index.
+    private volatile boolean mInUse = true;
+    private final Object mCloseLock = new Object();
+    // Set while the index is being built, as the indexer then closes the archive once closed.
+    @GuardedBy("mCloseLock")
+    private boolean mIndexing = false;
+    // Set under mCloseLock, but read without it by the indexer to stop early.
+    private volatile boolean mClosed = false;
+    // Serve callbacks of proxy file descriptors. Each descriptor is bound to one thread, and
+    // descriptors are spread over the threads round robin.
+    private final int mMaxReaderThreads;
+    @GuardedBy("mReaderThreads")
+    private final List<HandlerThread> mReaderThreads = new ArrayList<>();
+    @GuardedBy("mReaderThreads")
+    private final List<Handler> mReaderHandlers = new ArrayList<>();
+    @GuardedBy("mReaderThreads")
+    private int mNextReaderHandler = 0;
 
     private ReadableArchive(
             Context context,
@@ -76,9 +132,13 @@ public class ReadableArchive extends Archive {
             Uri archiveUri,
             String archiveMimeType,
             int accessMode,
-            @Nullable Uri notificationUri)
+            @Nullable Uri notificationUri,
+            @Nullable ArchiveIndexCache.Key indexKey,
+            @Nullable StreamingSnapshot snapshot)
             throws IOException, CompressorException, ArchiveException {
         super(context, archiveUri, accessMode, notificationUri);
+        mIndexKey = indexKey;
+        mSnapshot = snapshot;
         if (!supportsAccessMode(accessMode)) {
             throw new IllegalStateException("Unsupported access mode.");
         }
@@ -90,92 +150,277 @@ public class ReadableArchive extends Archive {
         }
         mParcelFileDescriptor = parcelFileDescriptor;
 
-        mArchiveHandle = ArchiveHandle.create(parcelFileDescriptor, archiveMimeType);
-
-        ArchiveEntry entry;
-        String entryPath;
-        final Enumeration<ArchiveEntry> it = mArchiveHandle.getEntries();
-        final Stack<ArchiveEntry> stack = new Stack<>();
-        while (it.hasMoreElements()) {
-            entry = it.nextElement();
-            if (entry.isDirectory() != entry.getName().endsWith("/")) {
-                if (DEBUG) {
-                    Log.d(TAG, "directory entry doesn't end with /");
-                }
-                continue;
+        mArchiveHandle = snapshot != null
+                ? ArchiveHandle.createForStream(
+                        parcelFileDescriptor, archiveMimeType, snapshot.getInputStream())
+                : ArchiveHandle.create(parcelFileDescriptor, archiveMimeType);
+        if (ArchiveRegistry.getArchiveType(archiveMimeType) == COMMON_ARCHIVE_TYPE) {
+            final File cacheDir = mContext.getCacheDir();
+            mExtractionCache = new ExtractionCache(
+                    new File(cacheDir, "extracted-" + UUID.randomUUID()),
+                    Math.min(MAX_EXTRACTION_CACHE_BYTES, cacheDir.getUsableSpace() / 8));
+        } else {
+            mExtractionCache = null;
+        }
+
+        // The root is listed right away, even before any entries are indexed.
+        synchronized (mEntries) {
+            mEntries.put("/", new SyntheticDirectoryEntry("/", null));
+            mTree.put("/", new ArrayList<>());
+        }
+        // Only ZIP entries can be read independently. Other formats share one stream of the
+        // archive, so reading their entries concurrently would just interleave on it.
+        final int readerThreads = Math.min(
+                mContext.getResources().getInteger(R.integer.config_archive_reader_threads),
+                Runtime.getRuntime().availableProcessors());
+        mMaxReaderThreads = mArchiveHandle.isCommonArchiveSupportGetInputStream()
+                ? Math.max(1, readerThreads) : 1;
+    }
+
+    /**
+     * Starts indexing entries in the background. Called once the archive is fully constructed,
+     * as the indexer uses all of it.
+     */
+    private void startIndexing() {
+        synchronized (mCloseLock) {
+            mIndexing = true;
+        }
+        mIndexExecutor.execute(this::buildIndex);
+    }
+
+    /**
+     * Sets whether clients use the archive. Archives kept open without clients don't notify
+     * about progress of the index, as nobody listens.
+     */
+    void setInUse(boolean inUse) {
+        mInUse = inUse;
+    }
+
+    /**
+     * @return handler to serve a new proxy file descriptor on. Threads are started on demand, so
+     *     archives with few files opened don't keep idle threads.
+     */
+    private Handler getReaderHandler() {
+        synchronized (mReaderThreads) {
+            if (mReaderThreads.size() < mMaxReaderThreads) {
+                final HandlerThread thread =
+                        new HandlerThread(TAG + "-reader-" + mReaderThreads.size());
+                thread.start();
+                final Handler handler = new Handler(thread.getLooper());
+                mReaderThreads.add(thread);
+                mReaderHandlers.add(handler);
+                return handler;
             }
-            entryPath = getEntryPath(entry);
-            if (mEntries.containsKey(entryPath)) {
-                throw new IOException("Multiple entries with the same name are not supported.");
+            final Handler handler = mReaderHandlers.get(mNextReaderHandler);
+            mNextReaderHandler = (mNextReaderHandler + 1) % mReaderHandlers.size();
+            return handler;
+        }
+    }
+
+    /**
+     * @return metrics of reads through proxy file descriptors of this archive.
+     */
+    ReadMetrics getReadMetrics() {
+        return mReadMetrics;
+    }
+
+    /**
+     * Indexes entries of the archive in batches, so that listings can be served while the rest
+     * of the archive is still being read. Clients are notified via the notification Uri as
+     * entries come in.
+     */
+    private void buildIndex() {
+        long lastNotifyTime = SystemClock.elapsedRealtime();
+        try {
+            final List<ArchiveEntry> batch = new ArrayList<>(INDEX_BATCH_SIZE);
+            if (mExtractionCache != null) {
+                final List<ArchiveEntry> indexed = mIndexKey != null
+                        ? ArchiveIndexCache.get(mContext).read(mIndexKey) : null;
+                if (indexed != null) {
+                    // The archive is unchanged since it was last indexed.
+                    for (int i = 0; i < indexed.size(); i += INDEX_BATCH_SIZE) {
+                        batch.addAll(indexed.subList(
+                                i, Math.min(i + INDEX_BATCH_SIZE, indexed.size())));
+                        addToIndex(batch);
+                    }
+                } else {
+                    // Sequential archives are read entry by entry, instead of being scanned
+                    // whole before the first entry is returned. Nobody else may move the
+                    // archive meanwhile.
+                    final List<ArchiveEntry> all = new ArrayList<>();
+                    synchronized (mArchiveHandle) {
+                        ArchiveEntry entry;
+                        while (!mClosed && (entry = mArchiveHandle.getNextEntry()) != null) {
+                            batch.add(entry);
+                            all.add(entry);
+                            if (batch.size() == INDEX_BATCH_SIZE) {
+                                addToIndex(batch);
+                                lastNotifyTime = maybeNotifyChange(lastNotifyTime);
+                            }
+                        }
+                    }
+                    addToIndex(batch);
+                    if (mIndexKey != null && !mClosed) {
+                        ArchiveIndexCache.get(mContext).write(mIndexKey, all);
+                    }
+                }
+            } else {
+                final Enumeration<ArchiveEntry> it = mArchiveHandle.getEntries();
+                while (!mClosed && it.hasMoreElements()) {
+                    batch.add(it.nextElement());
+                    if (batch.size() == INDEX_BATCH_SIZE) {
+                        addToIndex(batch);
+                        lastNotifyTime = maybeNotifyChange(lastNotifyTime);
+                    }
+                }
             }
-            mEntries.put(entryPath, entry);
-            if (entry.isDirectory()) {
-                mTree.put(entryPath, new ArrayList<ArchiveEntry>());
+            addToIndex(batch);
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Failed to index the archive.", e);
+            mIndexFailed = true;
+        } finally {
+            final boolean closed;
+            synchronized (mCloseLock) {
+                mIndexing = false;
+                closed = mClosed;
             }
-            if (!"/".equals(entryPath)) { // Skip root, as it doesn't have a parent.
-                stack.push(entry);
+            if (closed) {
+                closeArchiveHandle();
             }
+            seal();
+            mIndexed.countDown();
+            mIndexExecutor.shutdown();
+            notifyChange();
         }
+    }
 
-        int delimiterIndex;
-        String parentPath;
-        ArchiveEntry parentEntry;
-        List<ArchiveEntry> parentList;
-
-        // Go through all directories recursively and build a tree structure.
-        while (stack.size() > 0) {
-            entry = stack.pop();
-
-            entryPath = getEntryPath(entry);
-            delimiterIndex = entryPath.lastIndexOf('/', entry.isDirectory()
-                    ? entryPath.length() - 2 : entryPath.length() - 1);
-            parentPath = entryPath.substring(0, delimiterIndex) + "/";
-
-            parentList = mTree.get(parentPath);
-
-            if (parentList == null) {
-                // The archive file doesn't contain all directories leading to the entry.
-                // It's rare, but can happen in a valid archive. In such case create a
-                // fake ArchiveEntry and add it on top of the stack to process it next.
-                final String newParentPath = parentPath;
-                final Date newParentLastModify = entry.getLastModifiedDate();
-                parentEntry = new ArchiveEntry() {
-                    @Override
-                    public String getName() {
-                        return newParentPath;
-                    }
+    private long maybeNotifyChange(long lastNotifyTime) {
+        final long now = SystemClock.elapsedRealtime();
+        if (now - lastNotifyTime < INDEX_NOTIFY_INTERVAL_MS) {
+            return lastNotifyTime;
+        }
+        notifyChange();
+        return now;
+    }
 
-                    @Override
-                    public long getSize() {
-                        return 0;
-                    }
+    private void notifyChange() {
+        if (mNotificationUri != null && mInUse && !mClosed) {
+            mContext.getContentResolver().notifyChange(mNotificationUri, null /* observer */,
+                    false /* syncToNetwork */);
+        }
+    }
 
-                    @Override
-                    public boolean isDirectory() {
-                        return true;
+    /**
+     * Adds the entries to the index, and clears the list.
+     */
+    private void addToIndex(List<ArchiveEntry> entries) throws IOException {
+        synchronized (mEntries) {
+            for (ArchiveEntry entry : entries) {
+                if (entry.isDirectory() != entry.getName().endsWith("/")) {
+                    if (DEBUG) {
+                        Log.d(TAG, "directory entry doesn't end with /");
                     }
+                    continue;
+                }
 
-                    @Override
-                    public Date getLastModifiedDate() {
-                        return newParentLastModify;
+                final String entryPath = getEntryPath(entry);
+                final ArchiveEntry existing = mEntries.get(entryPath);
+                if (existing instanceof SyntheticDirectoryEntry && entry.isDirectory()) {
+                    // The directory was created earlier as a parent of another entry.
+                    mEntries.put(entryPath, entry);
+                    if (!"/".equals(entryPath)) {
+                        final List<ArchiveEntry> parentList = mTree.get(getParentPath(entryPath));
+                        parentList.set(parentList.indexOf(existing), entry);
                     }
-                };
-                mEntries.put(parentPath, parentEntry);
-
-                if (!"/".equals(parentPath)) {
-                    stack.push(parentEntry);
+                    continue;
+                }
+                if (existing != null) {
+                    throw new IOException(
+                            "Multiple entries with the same name are not supported.");
                 }
 
-                parentList = new ArrayList<>();
-                mTree.put(parentPath, parentList);
+                mEntries.put(entryPath, entry);
+                if (entry.isDirectory()) {
+                    mTree.put(entryPath, new ArrayList<>());
+                }
+                addToParentLocked(entryPath, entry);
             }
+        }
+        entries.clear();
+    }
+
+    @GuardedBy("mEntries")
+    private void addToParentLocked(String entryPath, ArchiveEntry entry) {
+        final String parentPath = getParentPath(entryPath);
+        List<ArchiveEntry> parentList = mTree.get(parentPath);
+        if (parentList == null) {
+            // The archive file doesn't contain all directories leading to the entry.
+            // It's rare, but can happen in a valid archive. In such case create a
+            // fake ArchiveEntry, replaced if the directory shows up later.
+            final ArchiveEntry parentEntry =
+                    new SyntheticDirectoryEntry(parentPath, entry.getLastModifiedDate());
+            mEntries.put(parentPath, parentEntry);
+            parentList = new ArrayList<>();
+            mTree.put(parentPath, parentList);
+            addToParentLocked(parentPath, parentEntry);
+        }
+        parentList.add(entry);
+    }
+
+    private static String getParentPath(String entryPath) {
+        final int delimiterIndex = entryPath.lastIndexOf('/', entryPath.endsWith("/")
+                ? entryPath.length() - 2 : entryPath.length() - 1);
+        return entryPath.substring(0, delimiterIndex) + "/";
+    }
+
+    /**
+     * Blocks until all entries are indexed.
+     */
+    @VisibleForTesting
+    void awaitIndexed() {
+        try {
+            mIndexed.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns the entry at the path. Paths not indexed yet may belong to entries further in the
+     * archive, so those wait for the index to complete.
+     */
+    @Override
+    @Nullable ArchiveEntry getEntry(String path) {
+        final ArchiveEntry entry = super.getEntry(path);
+        if (entry != null || isSealed()) {
+            return entry;
+        }
+        awaitIndexed();
+        return super.getEntry(path);
+    }
 
-            parentList.add(entry);
+    @Override
+    public Cursor queryChildDocuments(String documentId, @Nullable String[] projection,
+            @Nullable String sortOrder) throws FileNotFoundException {
+        final boolean indexed = isSealed();
+        final ArchiveId parsedParentId = ArchiveId.fromDocumentId(documentId);
+        if (!indexed && super.getEntry(parsedParentId.mPath) == null) {
+            // The directory may be yet to come.
+            awaitIndexed();
         }
 
-        mHandlerThread = new HandlerThread(TAG);
-        mHandlerThread.start();
-        mHandler = new Handler(mHandlerThread.getLooper());
+        final Cursor cursor = super.queryChildDocuments(documentId, projection, sortOrder);
+        if (!indexed) {
+            final Bundle extras = new Bundle();
+            extras.putBoolean(DocumentsContract.EXTRA_LOADING, true);
+            cursor.setExtras(extras);
+        } else if (mIndexFailed) {
+            final Bundle extras = new Bundle();
+            extras.putString(DocumentsContract.EXTRA_ERROR,
+                    mContext.getString(R.string.archive_loading_failed));
+            cursor.setExtras(extras);
+        }
+        return cursor;
     }
 
     /**
@@ -187,11 +432,25 @@ public class ReadableArchive extends Archive {
         return accessMode == MODE_READ_ONLY;
     }
 
+    /**
+     * @return true if an archive passed as the descriptor can't be read before a snapshot of it
+     *     is copied completely, which may take long for archives streamed from the network.
+     */
+    static boolean needsCompletedSnapshot(ParcelFileDescriptor descriptor,
+            @Nullable String archiveMimeType) {
+        if (canSeek(descriptor)) {
+            return false;
+        }
+        final Integer archiveType = ArchiveRegistry.getArchiveType(archiveMimeType);
+        return archiveType == null || archiveType != COMMON_ARCHIVE_TYPE;
+    }
+
     /**
      * Creates a DocumentsArchive instance for opening, browsing and accessing
      * documents within the archive passed as a file descriptor.
      * <p>
      * If the file descriptor is not seekable, then a snapshot will be created.
+     * Tar-based archives are listed while the snapshot is being written.
      * </p><p>
      * This method takes ownership for the passed descriptor. The caller must
      * not use it after passing.
@@ -207,11 +466,16 @@ public class ReadableArchive extends Archive {
             @NonNull String archiveMimeType, int accessMode, @Nullable Uri notificationUri)
             throws IOException, CompressorException, ArchiveException {
         if (canSeek(descriptor)) {
-            return new ReadableArchive(context, descriptor,
+            final ReadableArchive archive = new ReadableArchive(context, descriptor,
                     archiveUri, archiveMimeType, accessMode,
-                    notificationUri);
+                    notificationUri, ArchiveIndexCache.Key.create(archiveUri, descriptor),
+                    null /* snapshot */);
+            archive.startIndexing();
+            return archive;
         }
 
+        final boolean awaitSnapshot = needsCompletedSnapshot(descriptor, archiveMimeType);
+        StreamingSnapshot snapshot = null;
         try {
             // Fallback for non-seekable file descriptors.
             File snapshotFile = null;
@@ -221,29 +485,27 @@ public class ReadableArchive extends Archive {
                 // pipes.
                 snapshotFile = File.createTempFile("com.android.documentsui.snapshot{",
                         "}.zip", context.getCacheDir());
-
-                try (
-                    final FileOutputStream outputStream =
-                            new ParcelFileDescriptor.AutoCloseOutputStream(
-                                    ParcelFileDescriptor.open(
-                                            snapshotFile, ParcelFileDescriptor.MODE_WRITE_ONLY));
-                    final ParcelFileDescriptor.AutoCloseInputStream inputStream =
-                            new ParcelFileDescriptor.AutoCloseInputStream(descriptor);
-                ) {
-                    final byte[] buffer = new byte[32 * 1024];
-                    int bytes;
-                    while ((bytes = inputStream.read(buffer)) != -1) {
-                        outputStream.write(buffer, 0, bytes);
-                    }
-                    outputStream.flush();
+                snapshot = new StreamingSnapshot(descriptor, snapshotFile);
+                snapshot.start();
+
+                if (awaitSnapshot) {
+                    // Random access archives keep their directory at the end, so they can't be
+                    // listed before the whole archive is copied.
+                    snapshot.awaitCompleted();
+                    snapshot.close();
+                    snapshot = null;
                 }
+                // Otherwise the archive is listed while it's being copied.
 
                 ParcelFileDescriptor snapshotPfd = ParcelFileDescriptor.open(
                         snapshotFile, MODE_READ_ONLY);
 
-                return new ReadableArchive(context, snapshotPfd,
+                // Snapshots are new files every time, so they can't be matched to an index.
+                final ReadableArchive archive = new ReadableArchive(context, snapshotPfd,
                         archiveUri, archiveMimeType, accessMode,
-                        notificationUri);
+                        notificationUri, null /* indexKey */, snapshot);
+                archive.startIndexing();
+                return archive;
             } finally {
                 // On UNIX the file will be still available for processes which opened it, even
                 // after deleting it. Remove it ASAP, as it won't be used by anyone else.
@@ -254,6 +516,7 @@ public class ReadableArchive extends Archive {
         } catch (Exception e) {
             // Since the method takes ownership of the passed descriptor, close it
             // on exception.
+            FileUtils.closeQuietly(snapshot);
             FileUtils.closeQuietly(descriptor);
             throw e;
         }
@@ -269,14 +532,24 @@ public class ReadableArchive extends Archive {
         MorePreconditions.checkArgumentEquals(mArchiveUri, parsedId.mArchiveUri,
                 "Mismatching archive Uri. Expected: %s, actual: %s.");
 
-        final ArchiveEntry entry = mEntries.get(parsedId.mPath);
+        final ArchiveEntry entry = getEntry(parsedId.mPath);
         if (entry == null) {
             throw new FileNotFoundException();
         }
 
+        if (mExtractionCache != null) {
+            // Sequential archives can't be read while the indexer is walking through them.
+            awaitIndexed();
+        }
+        final File extractedFile = getExtractedFile(entry);
+        if (extractedFile != null) {
+            return ParcelFileDescriptor.open(extractedFile, MODE_READ_ONLY);
+        }
+
         try {
             return mStorageManager.openProxyFileDescriptor(MODE_READ_ONLY,
-                    new Proxy(mArchiveHandle, entry), mHandler);
+                    new Proxy(mArchiveHandle, entry, mContext.getCacheDir(), mReadMetrics),
+                    getReaderHandler());
         } catch (IOException e) {
             throw new IllegalStateException(e);
         } catch (ArchiveException e) {
@@ -296,58 +569,239 @@ public class ReadableArchive extends Archive {
         Preconditions.checkArgument(getDocumentType(documentId).startsWith("image/"),
                 "Thumbnails only supported for image/* MIME type.");
 
-        final ArchiveEntry entry = mEntries.get(parsedId.mPath);
+        final ArchiveEntry entry = getEntry(parsedId.mPath);
         if (entry == null) {
             throw new FileNotFoundException();
         }
 
-        InputStream inputStream = null;
+        ThumbnailCache.Thumbnail thumbnail = mThumbnailCache.get(getEntryPath(entry));
+        if (thumbnail == null) {
+            thumbnail = loadThumbnails(entry);
+        }
+        if (thumbnail.data != null) {
+            Bundle extras = null;
+            if (thumbnail.orientation != 0) {
+                extras = new Bundle(1);
+                extras.putInt(DocumentsContract.EXTRA_ORIENTATION, thumbnail.orientation);
+            }
+            try {
+                return new AssetFileDescriptor(
+                        mStorageManager.openProxyFileDescriptor(MODE_READ_ONLY,
+                                new BytesProxy(thumbnail.data), getReaderHandler()),
+                        0, thumbnail.data.length, extras);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        return new AssetFileDescriptor(
+                openDocument(documentId, "r", signal), 0, entry.getSize(), null);
+    }
+
+    /**
+     * Reads the EXIF thumbnail of the entry. For archives which can only be read sequentially,
+     * including 7z ones, thumbnails of all images in the same directory are read in the same
+     * pass over the archive, as grids request them one after another.
+     *
+     * @return the thumbnail of the entry, or {@link ThumbnailCache.Thumbnail#NONE}.
+     */
+    private ThumbnailCache.Thumbnail loadThumbnails(ArchiveEntry entry) {
+        final String entryPath = getEntryPath(entry);
+        if (mArchiveHandle.isCommonArchiveSupportGetInputStream()) {
+            // Entries of ZIP files are read independently, like by proxy file descriptors.
+            try (InputStream inputStream = mArchiveHandle.getInputStream(entry)) {
+                final ThumbnailCache.Thumbnail thumbnail = readThumbnail(inputStream);
+                mThumbnailCache.put(entryPath, thumbnail);
+                return thumbnail;
+            } catch (IOException | ArchiveException | CompressorException e) {
+                Log.e(TAG, "Failed to read " + entryPath, e);
+                return ThumbnailCache.Thumbnail.NONE;
+            }
+        }
+
+        // Sequential archives can't be read while the indexer is walking through them.
+        awaitIndexed();
+        final File extractedFile =
+                mExtractionCache != null ? mExtractionCache.get(entryPath) : null;
+        if (extractedFile != null) {
+            try (InputStream inputStream = new FileInputStream(extractedFile)) {
+                final ThumbnailCache.Thumbnail thumbnail = readThumbnail(inputStream);
+                mThumbnailCache.put(entryPath, thumbnail);
+                return thumbnail;
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to read " + extractedFile, e);
+                return ThumbnailCache.Thumbnail.NONE;
+            }
+        }
+
+        final Set<String> pending = new HashSet<>();
+        pending.add(entryPath);
+        final List<ArchiveEntry> siblings = getChildren(getParentPath(entryPath));
+        if (siblings != null) {
+            for (ArchiveEntry sibling : siblings) {
+                final String siblingPath = getEntryPath(sibling);
+                if (!sibling.isDirectory()
+                        && getMimeTypeForEntry(sibling).startsWith("image/")
+                        && mThumbnailCache.get(siblingPath) == null) {
+                    pending.add(siblingPath);
+                }
+            }
+        }
+
+        ThumbnailCache.Thumbnail result = ThumbnailCache.Thumbnail.NONE;
+        synchronized (mArchiveHandle) {
+            final ThumbnailCache.Thumbnail loaded = mThumbnailCache.get(entryPath);
+            if (loaded != null) {
+                // Read by a pass for another image of the directory meanwhile.
+                return loaded;
+            }
+
+            try {
+                mArchiveHandle.rewind();
+                ArchiveEntry next;
+                while (!pending.isEmpty() && (next = mArchiveHandle.getNextEntry()) != null) {
+                    final String nextPath = getEntryPath(next);
+                    if (!pending.remove(nextPath)) {
+                        continue;
+                    }
+                    final ThumbnailCache.Thumbnail thumbnail =
+                            readThumbnail(mArchiveHandle.getCurrentEntryInputStream());
+                    mThumbnailCache.put(nextPath, thumbnail);
+                    if (nextPath.equals(entryPath)) {
+                        result = thumbnail;
+                    }
+                }
+            } catch (IOException | ArchiveException | CompressorException e) {
+                Log.e(TAG, "Failed to read thumbnails of " + getParentPath(entryPath), e);
+            }
+        }
+        return result;
+    }
+
+    private static ThumbnailCache.Thumbnail readThumbnail(InputStream inputStream) {
         try {
-            inputStream = mArchiveHandle.getInputStream(entry);
             final ExifInterface exif = new ExifInterface(inputStream);
-            if (exif.hasThumbnail()) {
-                Bundle extras = null;
-                switch (exif.getAttributeInt(ExifInterface.TAG_ORIENTATION, -1)) {
-                    case ExifInterface.ORIENTATION_ROTATE_90:
-                        extras = new Bundle(1);
-                        extras.putInt(DocumentsContract.EXTRA_ORIENTATION, 90);
-                        break;
-                    case ExifInterface.ORIENTATION_ROTATE_180:
-                        extras = new Bundle(1);
-                        extras.putInt(DocumentsContract.EXTRA_ORIENTATION, 180);
-                        break;
-                    case ExifInterface.ORIENTATION_ROTATE_270:
-                        extras = new Bundle(1);
-                        extras.putInt(DocumentsContract.EXTRA_ORIENTATION, 270);
-                        break;
-                }
-                final long[] range = exif.getThumbnailRange();
-                return new AssetFileDescriptor(
-                        openDocument(documentId, "r", signal), range[0], range[1], extras);
+            final byte[] data = exif.hasThumbnail() ? exif.getThumbnailBytes() : null;
+            if (data == null) {
+                return ThumbnailCache.Thumbnail.NONE;
+            }
+            int orientation = 0;
+            switch (exif.getAttributeInt(ExifInterface.TAG_ORIENTATION, -1)) {
+                case ExifInterface.ORIENTATION_ROTATE_90:
+                    orientation = 90;
+                    break;
+                case ExifInterface.ORIENTATION_ROTATE_180:
+                    orientation = 180;
+                    break;
+                case ExifInterface.ORIENTATION_ROTATE_270:
+                    orientation = 270;
+                    break;
             }
+            return new ThumbnailCache.Thumbnail(data, orientation);
         } catch (IOException e) {
             // Ignore the exception, as reading the EXIF may legally fail.
             Log.e(TAG, "Failed to obtain thumbnail from EXIF.", e);
-        } catch (ArchiveException e) {
-            Log.e(TAG, "Failed to open archive.", e);
-        } catch (CompressorException e) {
-            Log.e(TAG, "Failed to uncompress.", e);
-        } finally {
-            FileUtils.closeQuietly(inputStream);
+            return ThumbnailCache.Thumbnail.NONE;
         }
+    }
 
-        return new AssetFileDescriptor(
-                openDocument(documentId, "r", signal), 0, entry.getSize(), null);
+    /**
+     * For archives which can only be read sequentially, returns the entry extracted to a file,
+     * extracting it first if needed. Entries following it in the archive are extracted along the
+     * way, as the archive is already positioned at them.
+     *
+     * @return the extracted file, or null if the entry is not to be cached.
+     */
+    private @Nullable File getExtractedFile(ArchiveEntry entry) {
+        if (mExtractionCache == null) {
+            return null;
+        }
+
+        final String entryPath = getEntryPath(entry);
+        File file = mExtractionCache.get(entryPath);
+        if (file != null || !mExtractionCache.canHold(entry.getSize())) {
+            return file;
+        }
+
+        // The archive handle can only be positioned at one entry at a time.
+        synchronized (mArchiveHandle) {
+            file = mExtractionCache.get(entryPath);
+            if (file != null) {
+                return file;
+            }
+
+            try (InputStream inputStream = mArchiveHandle.getInputStream(entry)) {
+                file = mExtractionCache.put(entryPath, inputStream);
+            } catch (IOException | CompressorException | ArchiveException e) {
+                Log.e(TAG, "Failed to extract " + entryPath, e);
+                return null;
+            }
+
+            try {
+                int extracted = 0;
+                ArchiveEntry next;
+                while (extracted < MAX_EXTRACTED_NEIGHBOURS
+                        && (next = mArchiveHandle.getNextEntry()) != null) {
+                    if (next.isDirectory()) {
+                        continue;
+                    }
+                    final String nextPath = getEntryPath(next);
+                    if (next.getSize() > MAX_EXTRACTED_NEIGHBOUR_BYTES
+                            || !mExtractionCache.canHold(next.getSize())
+                            || super.getEntry(nextPath) == null) {
+                        break;
+                    }
+                    if (mExtractionCache.get(nextPath) == null) {
+                        mExtractionCache.put(nextPath,
+                                mArchiveHandle.getCurrentEntryInputStream());
+                    }
+                    extracted++;
+                }
+            } catch (IOException e) {
+                // Neighbours are a bonus. The requested entry is extracted already.
+                Log.w(TAG, "Failed to extract entries following " + entryPath, e);
+            }
+        }
+        return file;
     }
 
     /**
      * Closes an archive.
      *
      * <p>This method does not block until shutdown. Once called, other methods should not be
-     * called. Any active pipes will be terminated.
+     * called. Any active pipes will be terminated. If the index is still being built, the
+     * indexer stops at its next entry and closes the archive file then, so that it isn't closed
+     * under its feet.
      */
     @Override
     public void close() {
+        final boolean indexing;
+        synchronized (mCloseLock) {
+            mClosed = true;
+            indexing = mIndexing;
+        }
+        if (!indexing) {
+            closeArchiveHandle();
+        }
+
+        if (mExtractionCache != null) {
+            mExtractionCache.close();
+        }
+
+        if (mSnapshot != null) {
+            mSnapshot.close();
+        }
+
+        synchronized (mReaderThreads) {
+            for (HandlerThread thread : mReaderThreads) {
+                thread.quitSafely();
+            }
+            mReaderThreads.clear();
+            mReaderHandlers.clear();
+        }
+    }
+
+    private void closeArchiveHandle() {
         try {
             mArchiveHandle.close();
         } catch (IOException e) {
@@ -359,10 +813,68 @@ public class ReadableArchive extends Archive {
              */
             IOUtils.closeQuietly(mParcelFileDescriptor);
         }
+    }
+
+    /**
+     * Serves a thumbnail from memory.
+     */
+    private static class BytesProxy extends ProxyFileDescriptorCallback {
+        private final byte[] mData;
+
+        BytesProxy(byte[] data) {
+            mData = data;
+        }
+
+        @Override
+        public long onGetSize() {
+            return mData.length;
+        }
+
+        @Override
+        public int onRead(long offset, int size, byte[] data) {
+            if (offset >= mData.length) {
+                return 0;
+            }
+            final int bytes = (int) Math.min(size, mData.length - offset);
+            System.arraycopy(mData, (int) offset, data, 0, bytes);
+            return bytes;
+        }
+
+        @Override
+        public void onRelease() {
+        }
+    }
+
+    /**
+     * Directory missing from the archive, but leading to some of its entries.
+     */
+    private static class SyntheticDirectoryEntry implements ArchiveEntry {
+        private final String mPath;
+        @Nullable private final Date mLastModifiedDate;
+
+        SyntheticDirectoryEntry(String path, @Nullable Date lastModifiedDate) {
+            mPath = path;
+            mLastModifiedDate = lastModifiedDate;
+        }
+
+        @Override
+        public String getName() {
+            return mPath;
+        }
+
+        @Override
+        public long getSize() {
+            return 0;
+        }
+
+        @Override
+        public boolean isDirectory() {
+            return true;
+        }
 
-        if (mHandlerThread != null) {
-            mHandlerThread.quitSafely();
-            mHandlerThread = null;
+        @Override
+        public Date getLastModifiedDate() {
+            return mLastModifiedDate;
         }
     }
 }
@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.archives;
+
+import android.util.Log;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the decompressed bytes of an archive entry which the stream passed over, so that seeking
+ * backwards doesn't require decompressing the entry again from its beginning.
+ *
+ * <p>The entry is split in blocks of {@link #BLOCK_BYTES}, indexed by their offset in the entry.
+ * Every block the stream passes, including skipped ones, is cached as it's read from its start,
+ * in a slot of a temporary file. Slots are reserved from a disk budget shared by all caches in
+ * the process, up to {@link #MAX_BLOCKS} per cache. Within the budget, any position before the
+ * stream's is cached, so seeking anywhere costs one block of decompression at most.
+ *
+ * <p>Once a cache can't get another slot, its least recently used block is evicted, and
+ * skipped bytes aren't cached anymore, except for the block before the target, so that the
+ * blocks around recent reads stay. Seeking backwards to a block which was evicted decompresses
+ * the entry again from its beginning, as decompressors can't be restarted from the middle of a
+ * stream.
+ *
+ * <p>This class is not thread safe.
+ */
+class SeekCache implements Closeable {
+    private static final String TAG = "SeekCache";
+
+    @VisibleForTesting
+    static final int BLOCK_BYTES = 1024 * 1024;
+
+    // Blocks kept by a single cache, so that a huge entry doesn't take the budget of all others.
+    @VisibleForTesting
+    static final int MAX_BLOCKS = 256;
+
+    // Disk used by all caches together may not exceed this, nor a quarter of the free space.
+    private static final long MAX_TOTAL_BYTES = 512L * 1024 * 1024;
+
+    private static final Object sBudgetLock = new Object();
+    @GuardedBy("sBudgetLock")
+    private static long sReservedBytes = 0;
+
+    private final File mDir;
+    private final int mBlockBytes;
+    private final int mMaxBlocks;
+    // Cached blocks by index, from the least to the most recently used.
+    private final Map<Long, Block> mBlocks = new LinkedHashMap<>(16, 0.75f, true);
+    @Nullable private RandomAccessFile mFile;
+    private int mSlotCount = 0;
+    private boolean mClosed = false;
+
+    SeekCache(File dir) {
+        this(dir, BLOCK_BYTES, MAX_BLOCKS);
+    }
+
+    @VisibleForTesting
+    SeekCache(File dir, int blockBytes, int maxBlocks) {
+        mDir = dir;
+        mBlockBytes = blockBytes;
+        mMaxBlocks = maxBlocks;
+    }
+
+    /**
+     * @return true if an entry of the given size is worth caching. Entries which fit in a
+     *     single block are cheap to decompress again.
+     */
+    static boolean isWorthCaching(long entrySize) {
+        return entrySize > BLOCK_BYTES;
+    }
+
+    /**
+     * @return position up to which bytes may be skipped rather than read when seeking forward
+     *     from {@code position} to {@code target}. While the cache can grow, all bytes are read,
+     *     so that they get cached. Otherwise, only the block before the target's is.
+     */
+    long getSkipEnd(long position, long target) {
+        if (canGrow()) {
+            return position;
+        }
+        return Math.max(position, (target / mBlockBytes - 1) * mBlockBytes);
+    }
+
+    /**
+     * Caches bytes read from the stream at {@code position}. Bytes are only kept if they start
+     * a block, or extend a cached block which isn't complete yet.
+     */
+    void write(long position, byte[] data, int offset, int length) {
+        while (length > 0 && !mClosed) {
+            final long index = position / mBlockBytes;
+            final int inBlock = (int) (position % mBlockBytes);
+            final int bytes = Math.min(length, mBlockBytes - inBlock);
+            Block block = mBlocks.get(index);
+            if (block == null && inBlock == 0) {
+                block = allocate(index);
+            }
+            if (block != null && block.length == inBlock) {
+                try {
+                    mFile.seek((long) block.slot * mBlockBytes + inBlock);
+                    mFile.write(data, offset, bytes);
+                    block.length += bytes;
+                } catch (IOException e) {
+                    Log.w(TAG, "Failed to write to the seek cache.", e);
+                    close();
+                    return;
+                }
+            }
+            position += bytes;
+            offset += bytes;
+            length -= bytes;
+        }
+    }
+
+    /**
+     * Reads cached bytes.
+     *
+     * @return number of bytes read, which is less than requested if the range goes past the
+     *     cached bytes.
+     */
+    int read(long position, byte[] data, int offset, int length) throws IOException {
+        int read = 0;
+        while (read < length && !mClosed) {
+            final Block block = mBlocks.get(position / mBlockBytes);
+            final int inBlock = (int) (position % mBlockBytes);
+            if (block == null || block.length <= inBlock) {
+                break;
+            }
+            final int bytes = Math.min(length - read, block.length - inBlock);
+            mFile.seek((long) block.slot * mBlockBytes + inBlock);
+            mFile.readFully(data, offset + read, bytes);
+            read += bytes;
+            position += bytes;
+        }
+        return read;
+    }
+
+    /**
+     * @return number of cached blocks.
+     */
+    @VisibleForTesting
+    int getBlockCount() {
+        return mBlocks.size();
+    }
+
+    @Override
+    public void close() {
+        if (mFile != null) {
+            try {
+                mFile.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to close the seek cache.", e);
+            }
+            mFile = null;
+        }
+        synchronized (sBudgetLock) {
+            sReservedBytes -= (long) mSlotCount * mBlockBytes;
+        }
+        mSlotCount = 0;
+        mBlocks.clear();
+        mClosed = true;
+    }
+
+    /**
+     * @return a new empty block, in a new slot if the budget allows, or else in the slot of the
+     *     least recently used block. Null if there is no slot to use.
+     */
+    private @Nullable Block allocate(long index) {
+        int slot;
+        if (mSlotCount < mMaxBlocks && reserveSlot()) {
+            slot = mSlotCount++;
+        } else if (!mBlocks.isEmpty()) {
+            final Iterator<Block> eldest = mBlocks.values().iterator();
+            slot = eldest.next().slot;
+            eldest.remove();
+        } else {
+            return null;
+        }
+
+        if (mFile == null) {
+            try {
+                final File file = File.createTempFile("seek", ".tmp", mDir);
+                mFile = new RandomAccessFile(file, "rw");
+                // The file stays accessible through the open descriptor only, so it can't
+                // outlive the process.
+                file.delete();
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to create the seek cache.", e);
+                close();
+                return null;
+            }
+        }
+
+        final Block block = new Block(slot);
+        mBlocks.put(index, block);
+        return block;
+    }
+
+    /**
+     * @return true if another block can be cached without evicting one.
+     */
+    private boolean canGrow() {
+        if (mClosed || mSlotCount >= mMaxBlocks) {
+            return false;
+        }
+        synchronized (sBudgetLock) {
+            return sReservedBytes + mBlockBytes <= getTotalLimit();
+        }
+    }
+
+    private boolean reserveSlot() {
+        synchronized (sBudgetLock) {
+            if (sReservedBytes + mBlockBytes > getTotalLimit()) {
+                return false;
+            }
+            sReservedBytes += mBlockBytes;
+            return true;
+        }
+    }
+
+    private long getTotalLimit() {
+        return Math.min(MAX_TOTAL_BYTES, mDir.getUsableSpace() / 4);
+    }
+
+    private static class Block {
+        final int slot;
+        // Number of bytes of the block cached, from its start.
+        int length = 0;
+
+        Block(int slot) {
+            this.slot = slot;
+        }
+    }
+}
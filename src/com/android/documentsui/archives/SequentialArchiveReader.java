@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.archives;
+
+import static com.android.documentsui.archives.ArchiveRegistry.COMMON_ARCHIVE_TYPE;
+import static com.android.documentsui.archives.ArchiveRegistry.SEVEN_Z_TYPE;
+
+import android.os.FileUtils;
+import android.os.ParcelFileDescriptor;
+
+import androidx.annotation.Nullable;
+
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveException;
+import org.apache.commons.compress.compressors.CompressorException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads all entries of an archive in a single forward pass, e.g. to extract many of them at
+ * once. Reading entries one by one through {@link ArchivesProvider} walks such archives from
+ * their beginning for every entry.
+ *
+ * <p>This class is not thread safe.
+ */
+public final class SequentialArchiveReader implements Closeable {
+    private final ArchiveHandle mArchiveHandle;
+    @Nullable private ArchiveEntry mEntry;
+
+    private SequentialArchiveReader(ArchiveHandle archiveHandle) {
+        mArchiveHandle = archiveHandle;
+    }
+
+    /**
+     * @return true if archives of the MIME type are read sequentially. Entries of other archives
+     *     (ZIP) can be read at random.
+     * @param seekable whether the archive would be passed as a seekable descriptor.
+     */
+    public static boolean isSupported(String mimeType, boolean seekable) {
+        final Integer archiveType = ArchiveRegistry.getArchiveType(mimeType);
+        if (archiveType == null) {
+            return false;
+        }
+        // 7z archives keep their headers at the end, so they need a seekable descriptor.
+        return archiveType == COMMON_ARCHIVE_TYPE || (archiveType == SEVEN_Z_TYPE && seekable);
+    }
+
+    /**
+     * Takes ownership of the descriptor.
+     */
+    public static SequentialArchiveReader create(ParcelFileDescriptor descriptor, String mimeType)
+            throws IOException {
+        try {
+            return new SequentialArchiveReader(ArchiveHandle.create(descriptor, mimeType));
+        } catch (CompressorException | ArchiveException | RuntimeException e) {
+            FileUtils.closeQuietly(descriptor);
+            throw new IOException("Failed to open the archive.", e);
+        }
+    }
+
+    /**
+     * Moves to the next entry of the archive, skipping the rest of the current one.
+     *
+     * @return false at the end of the archive.
+     */
+    public boolean moveToNext() throws IOException {
+        mEntry = mArchiveHandle.getNextEntry();
+        return mEntry != null;
+    }
+
+    /**
+     * @return path of the current entry, starting with "/". Paths of directories end with "/".
+     */
+    public String getPath() {
+        final String path = Archive.getEntryPath(mEntry);
+        // Names of 7z directories don't end with "/".
+        return mEntry.isDirectory() && !path.endsWith("/") ? path + "/" : path;
+    }
+
+    public boolean isDirectory() {
+        return mEntry.isDirectory();
+    }
+
+    /**
+     * @return size of the current entry, or -1 if unknown.
+     */
+    public long getSize() {
+        return mEntry.getSize();
+    }
+
+    public String getMimeType() {
+        return Archive.getMimeTypeForEntry(mEntry);
+    }
+
+    /**
+     * @return contents of the current entry. Closing the stream has no effect.
+     */
+    public InputStream getInputStream() {
+        return mArchiveHandle.getCurrentEntryInputStream();
+    }
+
+    @Override
+    public void close() throws IOException {
+        mArchiveHandle.close();
+    }
+}
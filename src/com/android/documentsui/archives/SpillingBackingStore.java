@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.archives;
+
+import androidx.annotation.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+
+import org.apache.commons.compress.parallel.ScatterGatherBackingStore;
+
+/**
+ * Scratch storage for a single archive entry. Keeps the first bytes in memory, so that the
+ * common case of many small files doesn't create a temporary file per entry, and spills the
+ * rest into a temporary file in the given directory.
+ *
+ * <p>This class is not thread safe. It is written by one thread, then read by another one once
+ * {@link #closeForWriting} returns.
+ */
+class SpillingBackingStore implements ScatterGatherBackingStore {
+    private final File mDir;
+    private final int mMaxInMemoryBytes;
+    private final ByteArrayOutputStream mMemory = new ByteArrayOutputStream();
+    @Nullable private File mFile;
+    @Nullable private OutputStream mFileStream;
+    private long mSize;
+
+    SpillingBackingStore(File dir, int maxInMemoryBytes) {
+        mDir = dir;
+        mMaxInMemoryBytes = maxInMemoryBytes;
+    }
+
+    @Override
+    public void writeOut(byte[] data, int offset, int length) throws IOException {
+        final int inMemory = (int) Math.min(length, Math.max(0, mMaxInMemoryBytes - mSize));
+        if (inMemory > 0) {
+            mMemory.write(data, offset, inMemory);
+        }
+        if (inMemory < length) {
+            if (mFileStream == null) {
+                mFile = File.createTempFile("entry", ".tmp", mDir);
+                mFileStream = new BufferedOutputStream(new FileOutputStream(mFile));
+            }
+            mFileStream.write(data, offset + inMemory, length - inMemory);
+        }
+        mSize += length;
+    }
+
+    @Override
+    public void closeForWriting() throws IOException {
+        if (mFileStream != null) {
+            mFileStream.close();
+        }
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        final InputStream memory = new ByteArrayInputStream(mMemory.toByteArray());
+        return mFile == null
+                ? memory
+                : new SequenceInputStream(memory, new FileInputStream(mFile));
+    }
+
+    /**
+     * @return number of bytes written so far.
+     */
+    long getSize() {
+        return mSize;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            closeForWriting();
+        } finally {
+            if (mFile != null) {
+                mFile.delete();
+                mFile = null;
+            }
+            mMemory.reset();
+        }
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.archives;
+
+import android.os.FileUtils;
+import android.os.ParcelFileDescriptor;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Snapshot of an archive passed as a non-seekable descriptor, e.g. a pipe from a cloud provider.
+ * The source is copied to the snapshot file in the background. Meanwhile the archive can be read
+ * sequentially from {@link #getInputStream} as the bytes come in, so that entries of a tar-based
+ * archive can be listed without waiting for the whole archive to be downloaded.
+ *
+ * <p>This class is thread safe.
+ */
+class StreamingSnapshot implements Closeable {
+    // Bytes moved per read from the source. The buffer is direct, so the bytes go from the
+    // source to the snapshot without being copied through the Java heap.
+    private static final int TRANSFER_BYTES = 1024 * 1024;
+
+    private final FileChannel mSource;
+    private final FileChannel mTarget;
+    private final FileInputStream mReader;
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    private final Object mLock = new Object();
+    @GuardedBy("mLock")
+    private long mLength = 0;
+    @GuardedBy("mLock")
+    private boolean mCompleted = false;
+    @GuardedBy("mLock")
+    @Nullable private IOException mError = null;
+
+    /**
+     * Takes ownership of the source descriptor.
+     *
+     * @param file the snapshot file. May be deleted once this constructor returns.
+     */
+    StreamingSnapshot(ParcelFileDescriptor source, File file) throws IOException {
+        FileOutputStream target = null;
+        try {
+            target = new FileOutputStream(file);
+            mReader = new FileInputStream(file);
+        } catch (IOException e) {
+            FileUtils.closeQuietly(target);
+            FileUtils.closeQuietly(source);
+            throw e;
+        }
+        // Closing the channels closes their streams, and the source descriptor along.
+        mSource = new ParcelFileDescriptor.AutoCloseInputStream(source).getChannel();
+        mTarget = target.getChannel();
+    }
+
+    /**
+     * Starts copying the source to the snapshot file.
+     */
+    void start() {
+        mExecutor.execute(this::copy);
+        mExecutor.shutdown();
+    }
+
+    private void copy() {
+        IOException error = null;
+        try {
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(TRANSFER_BYTES);
+            while (mSource.read(buffer) != -1) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    mTarget.write(buffer);
+                }
+                buffer.clear();
+                final long length = mTarget.position();
+                synchronized (mLock) {
+                    mLength = length;
+                    mLock.notifyAll();
+                }
+            }
+        } catch (IOException e) {
+            error = e;
+        } finally {
+            FileUtils.closeQuietly(mSource);
+            FileUtils.closeQuietly(mTarget);
+            synchronized (mLock) {
+                mError = error;
+                mCompleted = true;
+                mLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * @return stream of the snapshot from its beginning. Reads block until the requested bytes
+     *     are copied, and the stream ends with the source. Only one stream is available.
+     */
+    InputStream getInputStream() {
+        return new SnapshotInputStream();
+    }
+
+    /**
+     * Blocks until the whole source is copied.
+     *
+     * @throws IOException if the source couldn't be read completely.
+     */
+    void awaitCompleted() throws IOException {
+        synchronized (mLock) {
+            while (!mCompleted) {
+                waitLocked();
+            }
+            if (mError != null) {
+                throw new IOException("Failed to copy the archive.", mError);
+            }
+        }
+    }
+
+    /**
+     * Blocks until bytes past the position are copied, or the copy ends.
+     *
+     * @return number of copied bytes past the position, 0 at the end of the snapshot.
+     */
+    private long awaitAvailable(long position) throws IOException {
+        synchronized (mLock) {
+            while (mLength <= position && !mCompleted) {
+                waitLocked();
+            }
+            if (mLength <= position && mError != null) {
+                throw new IOException("Failed to copy the archive.", mError);
+            }
+            return mLength - position;
+        }
+    }
+
+    @GuardedBy("mLock")
+    private void waitLocked() throws InterruptedIOException {
+        try {
+            mLock.wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    /**
+     * Stops copying, if still in progress. Reads of the snapshot fail from now on.
+     */
+    @Override
+    public void close() {
+        // Closing the channels wakes up the copying thread, if blocked on them.
+        FileUtils.closeQuietly(mSource);
+        FileUtils.closeQuietly(mTarget);
+        FileUtils.closeQuietly(mReader);
+    }
+
+    private class SnapshotInputStream extends InputStream {
+        private long mPosition = 0;
+
+        @Override
+        public int read() throws IOException {
+            final byte[] data = new byte[1];
+            return read(data, 0, 1) == -1 ? -1 : data[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] data, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            final long available = awaitAvailable(mPosition);
+            if (available == 0) {
+                return -1;
+            }
+            final int bytes = mReader.read(data, offset, (int) Math.min(length, available));
+            if (bytes > 0) {
+                mPosition += bytes;
+            }
+            return bytes;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            if (count <= 0) {
+                return 0;
+            }
+            // Never skip past the bytes copied so far.
+            final long available = awaitAvailable(mPosition);
+            final long skipped = mReader.skip(Math.min(count, available));
+            mPosition += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            synchronized (mLock) {
+                return (int) Math.min(Integer.MAX_VALUE, mLength - mPosition);
+            }
+        }
+
+        @Override
+        public void close() {
+            FileUtils.closeQuietly(mReader);
+        }
+    }
+}
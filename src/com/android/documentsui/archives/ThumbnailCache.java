@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.archives;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Size bounded LRU of thumbnails embedded in EXIF of archived images, keyed by entry path.
+ * Images known to have no thumbnail are kept too, so they aren't parsed again.
+ *
+ * <p>This class is thread safe.
+ */
+final class ThumbnailCache {
+    // Approximate memory taken by an entry besides the thumbnail bytes.
+    private static final int ENTRY_OVERHEAD_BYTES = 128;
+
+    private final long mMaxBytes;
+
+    // In access order.
+    @GuardedBy("mThumbnails")
+    private final LinkedHashMap<String, Thumbnail> mThumbnails =
+            new LinkedHashMap<>(16, 0.75f, true);
+    @GuardedBy("mThumbnails")
+    private long mBytes = 0;
+
+    ThumbnailCache(long maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * @return the thumbnail of the entry, {@link Thumbnail#NONE} if it has none, or null if not
+     *     known.
+     */
+    @Nullable Thumbnail get(String path) {
+        synchronized (mThumbnails) {
+            return mThumbnails.get(path);
+        }
+    }
+
+    void put(String path, Thumbnail thumbnail) {
+        synchronized (mThumbnails) {
+            final Thumbnail previous = mThumbnails.put(path, thumbnail);
+            if (previous != null) {
+                mBytes -= previous.getBytes();
+            }
+            mBytes += thumbnail.getBytes();
+
+            final Iterator<Map.Entry<String, Thumbnail>> it = mThumbnails.entrySet().iterator();
+            while (mBytes > mMaxBytes && it.hasNext()) {
+                mBytes -= it.next().getValue().getBytes();
+                it.remove();
+            }
+        }
+    }
+
+    static final class Thumbnail {
+        static final Thumbnail NONE = new Thumbnail(null, 0);
+
+        // JPEG data, or null if the image has no thumbnail.
+        @Nullable final byte[] data;
+        // Clockwise rotation of the image in degrees.
+        final int orientation;
+
+        Thumbnail(@Nullable byte[] data, int orientation) {
+            this.data = data;
+            this.orientation = orientation;
+        }
+
+        private long getBytes() {
+            return ENTRY_OVERHEAD_BYTES + (data != null ? data.length : 0);
+        }
+    }
+}
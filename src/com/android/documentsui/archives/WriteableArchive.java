@@ -30,35 +30,121 @@ import androidx.annotation.GuardedBy;
 import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 
+import com.android.documentsui.R;
+import com.android.documentsui.base.MimeTypes;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
 
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ScatterZipOutputStream;
+import org.apache.commons.compress.archivers.zip.StreamCompressor;
+import org.apache.commons.compress.archivers.zip.Zip64Mode;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntryRequest;
 import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
 
 /**
  * Provides basic implementation for creating archives.
  *
+ * <p>Pipes are read and compressed on a bounded pool of workers, and entries are appended to the
+ * ZIP file in the order in which they were opened, so that the layout of the archive doesn't
+ * depend on thread scheduling. Entries which fit in memory are compressed there. Larger ones are
+ * streamed straight into the ZIP file once all entries before them are appended, and otherwise
+ * compressed straight from their pipes into scratch storage, so that no entry takes more scratch
+ * storage than its compressed size. Pipes stop being read while too many entries wait behind one
+ * which is still being compressed.
+ *
+ * <p>Archives with many entries switch to a large-archive mode, in which files are forgotten
+ * once appended to the ZIP file, so that compressing a huge tree doesn't keep all of it in
+ * memory. Such files can't be queried anymore, and creating a file with the name of a forgotten
+ * one isn't detected.
+ *
  * <p>This class is thread safe.
  */
 public class WriteableArchive extends Archive {
     private static final String TAG = "WriteableArchive";
 
+    // Entries up to this size are read and compressed entirely in memory.
+    private static final int MAX_IN_MEMORY_ENTRY_BYTES = 256 * 1024;
+
+    private static final int BUFFER_BYTES = 32 * 1024;
+
+    // Number of created entries from which files are forgotten once written.
+    private static final int LARGE_ARCHIVE_ENTRIES = 10000;
+
+    // Entries are appended one by one, often in small chunks, so writes to the descriptor are
+    // coalesced.
+    private static final int OUTPUT_BUFFER_BYTES = 256 * 1024;
+
+    // Upper bound of compression workers, regardless of the number of cores.
+    private static final int MAX_COMPRESSION_THREADS = 4;
+
+    // Entries compressed behind a slow one are held until it's appended. Past this many entries
+    // opened after the next one to append, pipes aren't read anymore, so that neither memory nor
+    // scratch storage grow with the number of entries.
+    private static final int MAX_ENTRIES_IN_FLIGHT = 4 * MAX_COMPRESSION_THREADS;
+
+    // Entries whose first block has at least this entropy are stored rather than deflated.
+    // DEFLATE can't shrink data much beyond ~7.5 bits per byte.
+    private static final double INCOMPRESSIBLE_ENTROPY_BITS = 7.5;
+    private static final int ENTROPY_SAMPLE_BYTES = 16 * 1024;
+    // Smaller samples don't say much, and deflating that little costs nothing anyway.
+    private static final int MIN_ENTROPY_SAMPLE_BYTES = 1024;
+
+    private static final String[] STORED_MIME_TYPES = new String[] {
+            "image/jpeg", "image/png", "image/gif", "image/webp", "image/heic", "image/heif",
+            MimeTypes.VIDEO_MIME, "audio/mpeg", "audio/mp4", "audio/aac", "audio/ogg",
+            "audio/flac", "application/zip", MimeTypes.APK_TYPE };
+
     @GuardedBy("mEntries")
     private final Set<String> mPendingEntries = new HashSet<>();
+    // Hands pipes over to the compression workers, one at a time, in the order they are opened.
     private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
-    @GuardedBy("mEntries")
+    // Reads and compresses pipes. When all workers are busy and the queue is full, the pipe
+    // dispatcher compresses the entry itself, which throttles clients writing faster than
+    // entries can be compressed.
+    private final ThreadPoolExecutor mCompressionExecutor;
+    private final int mCompressionLevel;
+    private final int mLargeArchiveEntries;
+    private final File mScratchDir;
+    // Written with mEntries held, except by the worker streaming the next entry to append, while
+    // nothing else can be appended.
     private final ZipArchiveOutputStream mZipOutputStream;
     private final AutoCloseOutputStream mOutputStream;
 
+    // Sequence number given to the next directory created or file opened.
+    @GuardedBy("mEntries")
+    private int mNextSequence = 0;
+    // Sequence number of the next entry to be appended to the ZIP file.
+    @GuardedBy("mEntries")
+    private int mNextWrittenSequence = 0;
+    // Entries ready to be appended, waiting for the entries before them. Null values are entries
+    // which failed or were cancelled, and are skipped.
+    @GuardedBy("mEntries")
+    private final Map<Integer, ReadyEntry> mReadyEntries = new HashMap<>();
+
     /**
      * Takes ownership of the passed file descriptor.
      */
@@ -67,16 +153,34 @@ public class WriteableArchive extends Archive {
             ParcelFileDescriptor fd,
             Uri archiveUri,
             int accessMode,
-            @Nullable Uri notificationUri)
+            @Nullable Uri notificationUri,
+            int largeArchiveEntries)
             throws IOException {
         super(context, archiveUri, accessMode, notificationUri);
         if (!supportsAccessMode(accessMode)) {
             throw new IllegalStateException("Unsupported access mode.");
         }
 
+        mCompressionLevel = context.getResources().getInteger(
+                R.integer.config_archive_compression_level);
+        mLargeArchiveEntries = largeArchiveEntries;
+        mScratchDir = context.getCacheDir();
+        // Workers also wait for clients to write their pipes, so there are at least two, so that
+        // an entry opened but not written yet doesn't hold up the entries after it.
+        final int threads = Math.max(2, Math.min(MAX_COMPRESSION_THREADS,
+                Runtime.getRuntime().availableProcessors()));
+        mCompressionExecutor = new ThreadPoolExecutor(threads, threads,
+                0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(threads),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+
         addEntry(null /* no parent */, new ZipArchiveEntry("/"));  // Root entry.
         mOutputStream = new AutoCloseOutputStream(fd);
-        mZipOutputStream = new ZipArchiveOutputStream(mOutputStream);
+        mZipOutputStream = new ZipArchiveOutputStream(
+                new BufferedOutputStream(mOutputStream, OUTPUT_BUFFER_BYTES));
+        // The descriptor isn't seekable, so headers can't be patched once written. Sizes of
+        // entries are known before they're appended though, so ZIP64 extra fields are added
+        // exactly when an entry, an offset or the number of entries doesn't fit in 32 bits.
+        mZipOutputStream.setUseZip64(Zip64Mode.AsNeeded);
     }
 
     private void addEntry(@Nullable ZipArchiveEntry parentEntry, ZipArchiveEntry entry) {
@@ -119,9 +223,22 @@ public class WriteableArchive extends Archive {
             Context context, ParcelFileDescriptor descriptor, Uri archiveUri, int accessMode,
             @Nullable Uri notificationUri)
             throws IOException {
+        return createForParcelFileDescriptor(context, descriptor, archiveUri, accessMode,
+                notificationUri, LARGE_ARCHIVE_ENTRIES);
+    }
+
+    /**
+     * @param largeArchiveEntries number of created entries from which files are forgotten once
+     *     written.
+     */
+    @VisibleForTesting
+    static WriteableArchive createForParcelFileDescriptor(
+            Context context, ParcelFileDescriptor descriptor, Uri archiveUri, int accessMode,
+            @Nullable Uri notificationUri, int largeArchiveEntries)
+            throws IOException {
         try {
             return new WriteableArchive(context, descriptor, archiveUri, accessMode,
-                    notificationUri);
+                    notificationUri, largeArchiveEntries);
         } catch (Exception e) {
             // Since the method takes ownership of the passed descriptor, close it
             // on exception.
@@ -183,14 +300,10 @@ public class WriteableArchive extends Archive {
                 mPendingEntries.add(entryPath);
             }
         } else {
-            try {
-                synchronized (mEntries) {
-                    mZipOutputStream.putArchiveEntry(entry);
-                    mZipOutputStream.closeArchiveEntry();
-                }
-            } catch (IOException e) {
-                throw new IllegalStateException(
-                        "Failed to create a file in the archive: " + entryPath, e);
+            // Directories still have to wait for files opened before them, so that entries
+            // keep their order in the ZIP file.
+            synchronized (mEntries) {
+                onEntryReadyLocked(mNextSequence++, new ReadyEntry(entry, null, 0));
             }
         }
 
@@ -208,6 +321,7 @@ public class WriteableArchive extends Archive {
                 "Mismatching archive Uri. Expected: %s, actual: %s.");
 
         final ZipArchiveEntry entry;
+        final int sequence;
         synchronized (mEntries) {
             entry = (ZipArchiveEntry) mEntries.get(parsedId.mPath);
             if (entry == null) {
@@ -218,12 +332,16 @@ public class WriteableArchive extends Archive {
                 throw new IllegalStateException("Files can be written only once.");
             }
             mPendingEntries.remove(parsedId.mPath);
+            sequence = mNextSequence++;
         }
 
         ParcelFileDescriptor[] pipe;
         try {
             pipe = ParcelFileDescriptor.createReliablePipe();
         } catch (IOException e) {
+            synchronized (mEntries) {
+                onEntryReadyLocked(sequence, null);
+            }
             // Ideally we'd simply throw IOException to the caller, but for consistency
             // with DocumentsProvider::openDocument, converting it to IllegalStateException.
             throw new IllegalStateException("Failed to open the document.", e);
@@ -231,71 +349,301 @@ public class WriteableArchive extends Archive {
         final ParcelFileDescriptor inputPipe = pipe[0];
 
         try {
-            mExecutor.execute(
-                    new Runnable() {
-                        @Override
-                        public void run() {
-                            try (final ParcelFileDescriptor.AutoCloseInputStream inputStream =
-                                    new ParcelFileDescriptor.AutoCloseInputStream(inputPipe)) {
-                                try {
-                                    synchronized (mEntries) {
-                                        mZipOutputStream.putArchiveEntry(entry);
-                                        final byte buffer[] = new byte[32 * 1024];
-                                        int bytes;
-                                        long size = 0;
-                                        while ((bytes = inputStream.read(buffer)) != -1) {
-                                            if (signal != null) {
-                                                signal.throwIfCanceled();
-                                            }
-                                            mZipOutputStream.write(buffer, 0, bytes);
-                                            size += bytes;
-                                        }
-                                        entry.setSize(size);
-                                        mZipOutputStream.closeArchiveEntry();
-                                    }
-                                } catch (IOException e) {
-                                    // Catch the exception before the outer try-with-resource closes
-                                    // the pipe with close() instead of closeWithError().
-                                    try {
-                                        Log.e(TAG, "Failed while writing to a file.", e);
-                                        inputPipe.closeWithError("Writing failure.");
-                                    } catch (IOException e2) {
-                                        Log.e(TAG, "Failed to close the pipe after an error.", e2);
-                                    }
-                                }
-                            } catch (OperationCanceledException e) {
-                                // Cancelled gracefully.
-                            } catch (IOException e) {
-                                // Input stream auto-close error. Close quietly.
-                            }
+            mExecutor.execute(() -> {
+                // Pipes are handed over in order, so all entries before this one are compressing
+                // or ready already, and those will be appended.
+                synchronized (mEntries) {
+                    while (sequence - mNextWrittenSequence > MAX_ENTRIES_IN_FLIGHT) {
+                        try {
+                            mEntries.wait();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            break;
                         }
-                    });
+                    }
+                }
+                mCompressionExecutor.execute(
+                        () -> writeEntry(sequence, entry, inputPipe, signal));
+            });
         } catch (RejectedExecutionException e) {
             FileUtils.closeQuietly(pipe[0]);
             FileUtils.closeQuietly(pipe[1]);
+            synchronized (mEntries) {
+                onEntryReadyLocked(sequence, null);
+            }
             throw new IllegalStateException("Failed to initialize pipe.");
         }
 
         return pipe[1];
     }
 
+    /**
+     * Reads the pipe of an entry, and either appends it to the ZIP file right away or compresses
+     * it to be appended once the entries before it are.
+     */
+    private void writeEntry(int sequence, ZipArchiveEntry entry, ParcelFileDescriptor inputPipe,
+            @Nullable CancellationSignal signal) {
+        ReadyEntry ready = null;
+        boolean appended = false;
+        try (EntryInputStream inputStream = new EntryInputStream(
+                new ParcelFileDescriptor.AutoCloseInputStream(inputPipe), signal)) {
+            try {
+                final byte[] head = readHead(inputStream);
+                final String mimeType = getMimeTypeForEntry(entry);
+                final boolean stored = shouldStore(mimeType) || isIncompressible(head);
+                final InputStream contents = new SequenceInputStream(
+                        new ByteArrayInputStream(head), inputStream);
+
+                final long compressedSize;
+                if (head.length == MAX_IN_MEMORY_ENTRY_BYTES && isNextToAppend(sequence)) {
+                    appended = true;
+                    appendDirectly(entry, stored, contents);
+                    compressedSize = entry.getCompressedSize();
+                } else {
+                    ready = compress(entry, stored, contents);
+                    compressedSize = ready.compressedSize;
+                }
+                synchronized (mEntries) {
+                    entry.setSize(inputStream.getCount());
+                }
+                CompressionMetrics.get().onEntryWritten(
+                        mimeType, stored, inputStream.getCount(), compressedSize);
+            } catch (IOException e) {
+                // Catch the exception before the outer try-with-resource closes the pipe with
+                // close() instead of closeWithError().
+                try {
+                    Log.e(TAG, "Failed while writing to a file.", e);
+                    inputPipe.closeWithError("Writing failure.");
+                } catch (IOException e2) {
+                    Log.e(TAG, "Failed to close the pipe after an error.", e2);
+                }
+            }
+        } catch (OperationCanceledException e) {
+            // Cancelled gracefully.
+        } catch (IOException e) {
+            // Input stream auto-close error. Close quietly.
+        } finally {
+            synchronized (mEntries) {
+                if (appended) {
+                    onEntryAppendedLocked(entry);
+                }
+                onEntryReadyLocked(sequence, ready);
+            }
+        }
+    }
+
+    private boolean isNextToAppend(int sequence) {
+        // Entries are appended in order, so once this one is next, it stays so until it's ready.
+        synchronized (mEntries) {
+            return sequence == mNextWrittenSequence;
+        }
+    }
+
+    /**
+     * Streams contents of the next entry to append into the ZIP file, without scratch storage.
+     * Must only be called for the entry whose sequence number is next to be written.
+     */
+    private void appendDirectly(ZipArchiveEntry entry, boolean stored, InputStream contents)
+            throws IOException {
+        // Stored entries need their size and CRC in their header, which aren't known before the
+        // contents are read. Deflating without compression only costs a few bytes per block.
+        entry.setMethod(ZipArchiveEntry.DEFLATED);
+        mZipOutputStream.setLevel(stored ? Deflater.NO_COMPRESSION : mCompressionLevel);
+        // The size isn't known up front either, and the descriptor isn't seekable, so ZIP64
+        // fields are added in case the entry turns out to need them.
+        mZipOutputStream.setUseZip64(Zip64Mode.Always);
+        try {
+            mZipOutputStream.putArchiveEntry(entry);
+            try {
+                final byte[] buffer = new byte[BUFFER_BYTES];
+                int bytes;
+                while ((bytes = contents.read(buffer)) != -1) {
+                    mZipOutputStream.write(buffer, 0, bytes);
+                }
+            } finally {
+                mZipOutputStream.closeArchiveEntry();
+            }
+        } finally {
+            mZipOutputStream.setUseZip64(Zip64Mode.AsNeeded);
+        }
+    }
+
+    /**
+     * Compresses contents of an entry into scratch storage, to be appended to the ZIP file once
+     * the entries before it are.
+     */
+    private ReadyEntry compress(ZipArchiveEntry entry, boolean stored, InputStream contents)
+            throws IOException {
+        entry.setMethod(stored ? ZipArchiveEntry.STORED : ZipArchiveEntry.DEFLATED);
+        final SpillingBackingStore compressed = new SpillingBackingStore(
+                mScratchDir, MAX_IN_MEMORY_ENTRY_BYTES);
+        final ScatterZipOutputStream scatter = new ScatterZipOutputStream(compressed,
+                StreamCompressor.create(mCompressionLevel, compressed));
+        boolean compressedAll = false;
+        try {
+            scatter.addArchiveEntry(ZipArchiveEntryRequest.createZipArchiveEntryRequest(
+                    entry, () -> contents));
+            compressedAll = true;
+            return new ReadyEntry(entry, scatter, compressed.getSize());
+        } finally {
+            if (!compressedAll) {
+                FileUtils.closeQuietly(scatter);
+            }
+        }
+    }
+
+    /**
+     * @return the first bytes of the stream, up to {@link #MAX_IN_MEMORY_ENTRY_BYTES}. Fewer
+     *     only if the stream ended.
+     */
+    private static byte[] readHead(InputStream inputStream) throws IOException {
+        // Most entries are small, so the buffer grows as needed.
+        byte[] head = new byte[BUFFER_BYTES];
+        int length = 0;
+        while (true) {
+            if (length == head.length) {
+                if (length == MAX_IN_MEMORY_ENTRY_BYTES) {
+                    return head;
+                }
+                head = Arrays.copyOf(head, Math.min(2 * length, MAX_IN_MEMORY_ENTRY_BYTES));
+            }
+            final int bytes = inputStream.read(head, length, head.length - length);
+            if (bytes == -1) {
+                return Arrays.copyOf(head, length);
+            }
+            length += bytes;
+        }
+    }
+
+    /**
+     * @return true if files of the MIME type are compressed already, so deflating them would
+     *     only burn CPU.
+     */
+    @VisibleForTesting
+    static boolean shouldStore(String mimeType) {
+        return MimeTypes.mimeMatches(STORED_MIME_TYPES, mimeType)
+                || ArchivesProvider.isSupportedArchiveType(mimeType);
+    }
+
+    /**
+     * Samples the first block of the contents, and guesses whether they are compressed or
+     * encrypted already. Catches compressed files with generic or unknown MIME types.
+     */
+    private static boolean isIncompressible(byte[] head) {
+        final int length = Math.min(head.length, ENTROPY_SAMPLE_BYTES);
+        return length >= MIN_ENTROPY_SAMPLE_BYTES
+                && getEntropy(head, length) >= INCOMPRESSIBLE_ENTROPY_BITS;
+    }
+
+    /**
+     * @return Shannon entropy of the first {@code length} bytes of {@code data}, in bits per
+     *     byte. Ranges from 0 for a constant block to 8 for uniformly random bytes.
+     */
+    @VisibleForTesting
+    static double getEntropy(byte[] data, int length) {
+        final int[] counts = new int[256];
+        for (int i = 0; i < length; i++) {
+            counts[data[i] & 0xff]++;
+        }
+        double entropy = 0;
+        for (int count : counts) {
+            if (count > 0) {
+                final double p = (double) count / length;
+                entropy -= p * Math.log(p);
+            }
+        }
+        return entropy / Math.log(2);
+    }
+
+    /**
+     * Marks the entry with the sequence number as ready, and appends to the ZIP file all ready
+     * entries which aren't waiting for earlier ones anymore.
+     *
+     * @param entry Entry to append, or null if there is nothing to append, e.g. because the
+     *     entry failed or was appended already.
+     */
+    @GuardedBy("mEntries")
+    private void onEntryReadyLocked(int sequence, @Nullable ReadyEntry entry) {
+        mReadyEntries.put(sequence, entry);
+        if (sequence == mNextWrittenSequence) {
+            // Let the pipe reader go on.
+            mEntries.notifyAll();
+        }
+        while (mReadyEntries.containsKey(mNextWrittenSequence)) {
+            final ReadyEntry next = mReadyEntries.remove(mNextWrittenSequence++);
+            if (next == null) {
+                continue;
+            }
+            try {
+                if (next.contents != null) {
+                    next.contents.writeTo(mZipOutputStream);
+                } else {
+                    mZipOutputStream.putArchiveEntry(next.entry);
+                    mZipOutputStream.closeArchiveEntry();
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to append an entry: " + next.entry.getName(), e);
+            } finally {
+                if (next.contents != null) {
+                    FileUtils.closeQuietly(next.contents);
+                }
+            }
+            onEntryAppendedLocked(next.entry);
+        }
+    }
+
+    @GuardedBy("mEntries")
+    private void onEntryAppendedLocked(ZipArchiveEntry entry) {
+        // Directories stay, as files may still be created in them.
+        if (mNextSequence >= mLargeArchiveEntries && !entry.isDirectory()) {
+            forgetEntryLocked(entry);
+        }
+    }
+
+    @GuardedBy("mEntries")
+    private void forgetEntryLocked(ZipArchiveEntry entry) {
+        final String entryPath = getEntryPath(entry);
+        mEntries.remove(entryPath);
+        final List<ArchiveEntry> siblings =
+                mTree.get(entryPath.substring(0, entryPath.lastIndexOf('/') + 1));
+        if (siblings != null) {
+            siblings.remove(entry);
+        }
+    }
+
+    /**
+     * @return number of entries kept in memory.
+     */
+    @VisibleForTesting
+    int getEntryCount() {
+        synchronized (mEntries) {
+            return mEntries.size();
+        }
+    }
+
     /**
      * Closes the archive. Blocks until all enqueued pipes are completed.
      */
     @Override
     public void close() {
-        // Waits until all enqueued pipe requests are completed.
+        // Waits until all enqueued pipe requests are completed. Pipe readers hand entries over
+        // to the compression workers, so only then the workers can be shut down.
         mExecutor.shutdown();
         try {
             final boolean result = mExecutor.awaitTermination(
                     Long.MAX_VALUE, TimeUnit.MILLISECONDS);
             assert(result);
+            mCompressionExecutor.shutdown();
+            final boolean compressionResult = mCompressionExecutor.awaitTermination(
+                    Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            assert(compressionResult);
         } catch (InterruptedException e) {
             Log.e(TAG, "Opened files failed to be fullly written.", e);
         }
 
         // Flush all pending entries. They will all have empty size.
         synchronized (mEntries) {
+            assert(mReadyEntries.isEmpty());
             for (final String path : mPendingEntries) {
                 try {
                     mZipOutputStream.putArchiveEntry(mEntries.get(path));
@@ -314,4 +662,54 @@ public class WriteableArchive extends Archive {
 
         FileUtils.closeQuietly(mOutputStream);
     }
+
+    private static class ReadyEntry {
+        final ZipArchiveEntry entry;
+        // Compressed contents, or null for directories.
+        @Nullable final ScatterZipOutputStream contents;
+        final long compressedSize;
+
+        ReadyEntry(ZipArchiveEntry entry, @Nullable ScatterZipOutputStream contents,
+                long compressedSize) {
+            this.entry = entry;
+            this.contents = contents;
+            this.compressedSize = compressedSize;
+        }
+    }
+
+    /**
+     * Contents of a pipe, which counts the bytes read, and throws
+     * {@link OperationCanceledException} once the operation is cancelled.
+     */
+    private static class EntryInputStream extends FilterInputStream {
+        @Nullable private final CancellationSignal mSignal;
+        private long mCount;
+
+        EntryInputStream(InputStream inputStream, @Nullable CancellationSignal signal) {
+            super(inputStream);
+            mSignal = signal;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (mSignal != null) {
+                mSignal.throwIfCanceled();
+            }
+            final int bytes = super.read(b, off, len);
+            if (bytes > 0) {
+                mCount += bytes;
+            }
+            return bytes;
+        }
+
+        long getCount() {
+            return mCount;
+        }
+    }
 }
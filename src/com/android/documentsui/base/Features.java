@@ -44,6 +44,7 @@ public interface Features {
     boolean isInspectorEnabled();
     boolean isJobProgressDialogEnabled();
     boolean isLaunchToDocumentEnabled();
+    boolean isLocalSearchIndexEnabled();
     boolean isNotificationChannelEnabled();
     boolean isOverwriteConfirmationEnabled();
     boolean isRemoteActionsEnabled();
@@ -147,6 +148,11 @@ public interface Features {
             return isEnabled(R.bool.feature_launch_to_document);
         }
 
+        @Override
+        public boolean isLocalSearchIndexEnabled() {
+            return isEnabled(R.bool.feature_local_search_index);
+        }
+
         @Override
         public boolean isNotificationChannelEnabled() {
             return isEnabled(R.bool.feature_notification_channel);
@@ -28,6 +28,9 @@ import android.os.Bundle;
 import android.provider.DocumentsContract.Document;
 import android.util.Log;
 
+import java.util.Locale;
+import java.util.function.IntPredicate;
+
 /**
  * Cursor wrapper that filters cursor results by given conditions.
  */
@@ -70,6 +73,31 @@ public class FilteringCursorWrapper extends AbstractCursor {
         });
     }
 
+    /** Filters cursor according to display name, and rejects names not containing the query. */
+    public void filterDisplayName(String query) {
+        final String lowerQuery = query.toLowerCase(Locale.ROOT);
+        filterByCondition((cursor) -> {
+            final String name = getCursorString(cursor, Document.COLUMN_DISPLAY_NAME);
+            return name != null && name.toLowerCase(Locale.ROOT).contains(lowerQuery);
+        });
+    }
+
+    /**
+     * Filters cursor according to positions of rows in the wrapped cursor. Unlike other filters,
+     * doesn't move the wrapped cursor, so it may be used while another thread moves it.
+     */
+    public void filterPositions(IntPredicate condition) {
+        final int[] newPositions = new int[mCount];
+        int newCount = 0;
+        for (int i = 0; i < mCount; i++) {
+            if (condition.test(mPositions[i])) {
+                newPositions[newCount++] = mPositions[i];
+            }
+        }
+        mCount = newCount;
+        mPositions = newPositions;
+    }
+
     /** Filter hidden files based on preference. */
     public void filterHiddenFiles(boolean showHiddenFiles) {
         if (showHiddenFiles) {
@@ -117,6 +117,8 @@ import com.google.common.base.Objects;
 import java.io.IOException;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
@@ -151,6 +153,9 @@ public class DirectoryFragment extends Fragment implements SwipeRefreshLayout.On
     private State mState;
     private Model mModel;
     private final EventListener<Model.Update> mModelUpdateListener = new ModelUpdateListener();
+    // Items of the adapter as of the last model update, and whether that update was partial.
+    private List<String> mAdapterItems = Collections.emptyList();
+    private boolean mAdapterItemsLoading;
     private final DocumentsAdapter.Environment mAdapterEnv = new AdapterEnvironment();
 
     @Injected
@@ -1387,7 +1392,7 @@ public class DirectoryFragment extends Fragment implements SwipeRefreshLayout.On
                 }
             }
 
-            mAdapter.notifyDataSetChanged();
+            notifyAdapterOfUpdate(update);
 
             if (mRestoredState != null) {
                 mSelectionMgr.onRestoreInstanceState(mRestoredState);
@@ -1438,6 +1443,43 @@ public class DirectoryFragment extends Fragment implements SwipeRefreshLayout.On
         }
     }
 
+    /**
+     * Tells the adapter what changed in the model. Partial results of multiple roots grow as roots
+     * complete, and only the new items are bound then, rather than all of them. Once cached rows
+     * are replaced by live ones, all items are bound again, as rows with the same IDs may differ.
+     */
+    private void notifyAdapterOfUpdate(Model.Update update) {
+        final List<String> items = new ArrayList<>(mAdapter.getItemCount());
+        for (int i = 0; i < mAdapter.getItemCount(); i++) {
+            final String id = mAdapter.getStableId(i);
+            // Add-ons like messages have no ID, so tell them apart by type.
+            items.add(id != null ? id : "#" + mAdapter.getItemViewType(i));
+        }
+
+        final InsertedRanges inserted =
+                mAdapterItemsLoading && !update.hasException() && !mAdapterItems.isEmpty()
+                        && !mModel.areCachedRowsReplaced()
+                        ? InsertedRanges.find(mAdapterItems, items)
+                        : null;
+        if (inserted != null) {
+            if (DEBUG) {
+                Log.d(TAG, "Inserting " + inserted.getInsertedCount() + " items.");
+            }
+            inserted.dispatchTo(mAdapter);
+            // Messages may have changed along with the load progress.
+            for (int i = 0; i < items.size(); i++) {
+                if (mAdapter.getStableId(i) == null) {
+                    mAdapter.notifyItemChanged(i);
+                }
+            }
+        } else {
+            mAdapter.notifyDataSetChanged();
+        }
+
+        mAdapterItems = items;
+        mAdapterItemsLoading = mModel.isLoading();
+    }
+
     private final class AdapterEnvironment implements DocumentsAdapter.Environment {
 
         @Override
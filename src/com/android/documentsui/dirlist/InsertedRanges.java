@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.dirlist;
+
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Ranges of items inserted between two versions of the items of an adapter, e.g. when results
+ * of roots completing late are merged into a partial result. Notifying the adapter of these
+ * ranges only binds the new items, instead of all of them after a data set change.
+ */
+final class InsertedRanges {
+
+    // Start positions and counts of the inserted ranges, in the new items, in increasing order.
+    private final List<int[]> mRanges;
+
+    private InsertedRanges(List<int[]> ranges) {
+        mRanges = ranges;
+    }
+
+    /**
+     * @return inserted ranges, or null if some of the old items were removed or moved, so that
+     *     the old items are not a subsequence of the new ones.
+     */
+    static @Nullable InsertedRanges find(List<String> oldItems, List<String> newItems) {
+        final List<int[]> ranges = new ArrayList<>();
+        int oldPosition = 0;
+        for (int newPosition = 0; newPosition < newItems.size(); newPosition++) {
+            if (oldPosition < oldItems.size() && Objects.equals(
+                    oldItems.get(oldPosition), newItems.get(newPosition))) {
+                oldPosition++;
+                continue;
+            }
+
+            final int[] last = ranges.isEmpty() ? null : ranges.get(ranges.size() - 1);
+            if (last != null && last[0] + last[1] == newPosition) {
+                last[1]++;
+            } else {
+                ranges.add(new int[] { newPosition, 1 });
+            }
+        }
+        return oldPosition == oldItems.size() ? new InsertedRanges(ranges) : null;
+    }
+
+    int getInsertedCount() {
+        int count = 0;
+        for (int[] range : mRanges) {
+            count += range[1];
+        }
+        return count;
+    }
+
+    void dispatchTo(RecyclerView.Adapter<?> adapter) {
+        // Positions are in the new items, so earlier ranges must be inserted first.
+        for (int[] range : mRanges) {
+            adapter.notifyItemRangeInserted(range[0], range[1]);
+        }
+    }
+}
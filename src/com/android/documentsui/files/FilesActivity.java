@@ -58,6 +58,7 @@ import com.android.documentsui.dirlist.AnimationView.AnimationType;
 import com.android.documentsui.dirlist.AppsRowManager;
 import com.android.documentsui.dirlist.DirectoryFragment;
 import com.android.documentsui.services.FileOperationService;
+import com.android.documentsui.services.FileOperations;
 import com.android.documentsui.sidebar.RootsFragment;
 import com.android.documentsui.ui.DialogController;
 import com.android.documentsui.ui.MessageBuilder;
@@ -192,6 +193,10 @@ public class FilesActivity extends BaseActivity implements AbstractActionHandler
         saveContainer.setBackgroundColor(Color.TRANSPARENT);
 
         presentFileErrors(icicle, intent);
+
+        if (icicle == null) {
+            FileOperations.resumeInterrupted(this);
+        }
     }
 
     // This is called in the intent contains label and icon resources.
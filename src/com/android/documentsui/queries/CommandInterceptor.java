@@ -23,6 +23,7 @@ import android.text.TextUtils;
 import android.util.Log;
 
 import com.android.documentsui.DocumentsApplication;
+import com.android.documentsui.QueryLimiter;
 import com.android.documentsui.R;
 import com.android.documentsui.base.DebugFlags;
 import com.android.documentsui.base.EventHandler;
@@ -191,6 +192,23 @@ public final class CommandInterceptor implements EventHandler<String> {
         }
     }
 
+    public static final class DumpQueryLimiterHandler implements EventHandler<String[]> {
+        private final Context mContext;
+
+        public DumpQueryLimiterHandler(Context context) {
+            mContext = context;
+        }
+
+        @Override
+        public boolean accept(String[] tokens) {
+            if ("dumpQueries".equals(tokens[0])) {
+                Log.i(TAG, QueryLimiter.get(mContext).toString());
+                return true;
+            }
+            return false;
+        }
+    }
+
     /**
      * Wraps {@link CommandInterceptor} in a tiny decorator that adds support for
      * enabling CommandInterceptor feature based on some magic query input.
@@ -39,6 +39,9 @@ import java.util.List;
 public interface ProvidersAccess {
 
     String BROADCAST_ACTION = "com.android.documentsui.action.ROOT_CHANGED";
+    // Authorities whose roots changed, as an ArrayList<String> extra of BROADCAST_ACTION.
+    // Missing if any root may have changed.
+    String EXTRA_AUTHORITIES = "com.android.documentsui.extra.AUTHORITIES";
 
     /**
      * Return the requested {@link RootInfo}, but only loading the roots for the
@@ -47,6 +47,7 @@ import android.util.Log;
 
 import androidx.annotation.GuardedBy;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 
 import com.android.documentsui.DocumentsApplication;
@@ -61,9 +62,11 @@ import com.android.documentsui.base.State;
 import com.android.documentsui.base.UserId;
 
 import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
 import com.google.common.util.concurrent.MoreExecutors;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -72,12 +75,16 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Function;
 
 /**
@@ -96,6 +103,11 @@ public class ProvidersCache implements ProvidersAccess, LookupApplicationName {
         add(ArchivesProvider.AUTHORITY);
     }};
     private static final int FIRST_LOAD_TIMEOUT_MS = 5000;
+    private static final int UPDATE_TIMEOUT_MS = 15000;
+    // Upper bound of providers queried at once by an update, across all users.
+    private static final int ROOTS_LOADING_THREADS = 8;
+    @VisibleForTesting
+    static final String SNAPSHOT_DIR = "roots_snapshots";
 
     private final Context mContext;
 
@@ -117,16 +129,40 @@ public class ProvidersCache implements ProvidersAccess, LookupApplicationName {
     private Multimap<UserAuthority, RootInfo> mRoots = ArrayListMultimap.create();
     @GuardedBy("mLock")
     private HashSet<UserAuthority> mStoppedAuthorities = new HashSet<>();
+    // Immutable copy of mRoots and mStoppedAuthorities, republished whenever they change, so
+    // that readers never wait for roots being loaded under mLock.
+    private volatile RootsIndex mRootsIndex = RootsIndex.EMPTY;
     private final Semaphore mMultiProviderUpdateTaskSemaphore = new Semaphore(1);
+    // Loads roots for all updates. Loads which outlive their timeout, e.g. as their provider
+    // hung, get a thread added in their place, so that they don't use up the bound.
+    private final ThreadPoolExecutor mRootsLoadPool = new ThreadPoolExecutor(
+            ROOTS_LOADING_THREADS, ROOTS_LOADING_THREADS, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>());
+    private final ExecutorService mRootsLoadExecutor =
+            MoreExecutors.getExitingExecutorService(mRootsLoadPool);
+    // Loads still running past their timeout, at most one per provider.
+    @GuardedBy("mStuckLoads")
+    private final Map<UserAuthority, RootsLoad> mStuckLoads = new HashMap<>();
 
     @GuardedBy("mObservedAuthoritiesDetails")
     private final Map<UserAuthority, PackageDetails> mObservedAuthoritiesDetails = new HashMap<>();
+    // Details of authorities served from the snapshot, until they are observed.
+    @GuardedBy("mObservedAuthoritiesDetails")
+    private final Map<UserAuthority, PackageDetails> mSnapshotAuthoritiesDetails =
+            new HashMap<>();
 
     private final UserIdManager mUserIdManager;
+    private final RootsSnapshot mSnapshot;
+    private final RootsLoadStats mLoadStats = new RootsLoadStats();
+    // Whether roots changed since the snapshot was last written. Only accessed by the update
+    // task holding mMultiProviderUpdateTaskSemaphore.
+    private boolean mSnapshotOutdated;
 
     public ProvidersCache(Context context, UserIdManager userIdManager) {
         mContext = context;
         mUserIdManager = userIdManager;
+        mSnapshot = new RootsSnapshot(new File(context.getCacheDir(), SNAPSHOT_DIR));
+        mRootsLoadPool.allowCoreThreadTimeOut(true);
     }
 
     private RootInfo generateRecentsRoot(UserId rootUserId) {
@@ -185,13 +221,19 @@ public class ProvidersCache implements ProvidersAccess, LookupApplicationName {
 
     @Override
     public String getApplicationName(UserId userId, String authority) {
-        return mObservedAuthoritiesDetails.get(
-                new UserAuthority(userId, authority)).applicationName;
+        return getPackageDetails(new UserAuthority(userId, authority)).applicationName;
     }
 
     @Override
     public String getPackageName(UserId userId, String authority) {
-        return mObservedAuthoritiesDetails.get(new UserAuthority(userId, authority)).packageName;
+        return getPackageDetails(new UserAuthority(userId, authority)).packageName;
+    }
+
+    private PackageDetails getPackageDetails(UserAuthority userAuthority) {
+        synchronized (mObservedAuthoritiesDetails) {
+            final PackageDetails details = mObservedAuthoritiesDetails.get(userAuthority);
+            return details != null ? details : mSnapshotAuthoritiesDetails.get(userAuthority);
+        }
     }
 
     public void updateAsync(boolean forceRefreshAll, @Nullable Runnable callback) {
@@ -262,16 +304,97 @@ public class ProvidersCache implements ProvidersAccess, LookupApplicationName {
         return success;
     }
 
+    /**
+     * Serves roots from the snapshot of the previous run, if there is one for every user, so
+     * that callers waiting for the first load don't have to wait for all providers.
+     */
+    private void loadSnapshot() {
+        final Multimap<UserAuthority, RootInfo> roots = ArrayListMultimap.create();
+        final Map<UserAuthority, PackageDetails> details = new HashMap<>();
+        for (UserId userId : mUserIdManager.getUserIds()) {
+            final List<RootsSnapshot.AuthorityRoots> snapshot = mSnapshot.read(userId);
+            if (snapshot == null) {
+                return;
+            }
+            final RootInfo recents = createOrGetRecentsRoot(userId);
+            roots.put(new UserAuthority(recents.userId, recents.authority), recents);
+            for (RootsSnapshot.AuthorityRoots authorityRoots : snapshot) {
+                final UserAuthority userAuthority =
+                        new UserAuthority(userId, authorityRoots.authority);
+                roots.putAll(userAuthority, authorityRoots.roots);
+                details.put(userAuthority, new PackageDetails(
+                        authorityRoots.applicationName, authorityRoots.packageName));
+            }
+        }
+
+        synchronized (mObservedAuthoritiesDetails) {
+            mSnapshotAuthoritiesDetails.putAll(details);
+        }
+        synchronized (mLock) {
+            mRoots = roots;
+            publishLocked();
+        }
+        if (VERBOSE) {
+            Log.v(TAG, "Served " + roots.size() + " roots from the snapshot");
+        }
+        mFirstLoad.countDown();
+    }
+
+    /**
+     * Snapshots roots of every user, for the next cold start.
+     */
+    private void writeSnapshot(Multimap<UserAuthority, RootInfo> roots) {
+        final Map<UserId, List<RootsSnapshot.AuthorityRoots>> snapshots = new HashMap<>();
+        for (UserId userId : mUserIdManager.getUserIds()) {
+            snapshots.put(userId, new ArrayList<>());
+        }
+        for (UserAuthority userAuthority : roots.keySet()) {
+            final List<RootsSnapshot.AuthorityRoots> snapshot =
+                    snapshots.get(userAuthority.userId);
+            if (userAuthority.authority == null || snapshot == null) {
+                // Recents roots aren't provided by anyone.
+                continue;
+            }
+            final PackageDetails details;
+            synchronized (mObservedAuthoritiesDetails) {
+                details = mObservedAuthoritiesDetails.get(userAuthority);
+            }
+            if (details != null) {
+                snapshot.add(new RootsSnapshot.AuthorityRoots(userAuthority.authority,
+                        details.applicationName, details.packageName,
+                        new ArrayList<>(roots.get(userAuthority))));
+            }
+        }
+        for (Map.Entry<UserId, List<RootsSnapshot.AuthorityRoots>> entry
+                : snapshots.entrySet()) {
+            mSnapshot.write(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * @return authorities whose roots differ between the two sets of roots.
+     */
+    private static ArrayList<String> getChangedAuthorities(
+            Multimap<UserAuthority, RootInfo> previous, Multimap<UserAuthority, RootInfo> next) {
+        final Set<UserAuthority> userAuthorities = new HashSet<>(previous.keySet());
+        userAuthorities.addAll(next.keySet());
+        final Set<String> changed = new HashSet<>();
+        for (UserAuthority userAuthority : userAuthorities) {
+            if (userAuthority.authority != null && !RootsSnapshot.sameRoots(
+                    previous.get(userAuthority), next.get(userAuthority))) {
+                changed.add(userAuthority.authority);
+            }
+        }
+        return new ArrayList<>(changed);
+    }
+
     /**
      * Load roots from authorities that are in stopped state. Normal
      * {@link MultiProviderUpdateTask} passes ignore stopped applications.
      */
     private void loadStoppedAuthorities() {
-        synchronized (mLock) {
-            for (UserAuthority userAuthority : mStoppedAuthorities) {
-                mRoots.replaceValues(userAuthority, loadRootsForAuthority(userAuthority, true));
-            }
-            mStoppedAuthorities.clear();
+        for (UserAuthority userAuthority : mRootsIndex.stoppedAuthorities) {
+            loadStoppedAuthority(userAuthority);
         }
     }
 
@@ -280,18 +403,37 @@ public class ProvidersCache implements ProvidersAccess, LookupApplicationName {
      * ignore stopped applications.
      */
     private void loadStoppedAuthority(UserAuthority userAuthority) {
+        if (!mRootsIndex.stoppedAuthorities.contains(userAuthority)) {
+            return;
+        }
+        if (DEBUG) {
+            Log.d(TAG, "Loading stopped authority " + userAuthority);
+        }
+        // Loaded outside of mLock, as this starts the provider's process.
+        final Collection<RootInfo> roots = loadRootsForAuthority(userAuthority, true);
         synchronized (mLock) {
-            if (!mStoppedAuthorities.contains(userAuthority)) {
+            // Skip if loaded by another caller, or if an update replaced the roots meanwhile.
+            if (!mStoppedAuthorities.remove(userAuthority)) {
                 return;
             }
-            if (DEBUG) {
-                Log.d(TAG, "Loading stopped authority " + userAuthority);
-            }
-            mRoots.replaceValues(userAuthority, loadRootsForAuthority(userAuthority, true));
-            mStoppedAuthorities.remove(userAuthority);
+            mRoots.replaceValues(userAuthority, roots);
+            publishLocked();
         }
     }
 
+    /**
+     * @param changedAuthorities authorities whose roots changed.
+     */
+    private void broadcastRootsChanged(ArrayList<String> changedAuthorities) {
+        LocalBroadcastManager.getInstance(mContext).sendBroadcast(new Intent(BROADCAST_ACTION)
+                .putStringArrayListExtra(EXTRA_AUTHORITIES, changedAuthorities));
+    }
+
+    @GuardedBy("mLock")
+    private void publishLocked() {
+        mRootsIndex = new RootsIndex(mRoots, mStoppedAuthorities);
+    }
+
     /**
      * Bring up requested provider and query for all active roots. Will consult cached
      * roots if not forceRefresh. Will query when cached roots is empty (which should never happen).
@@ -361,6 +503,7 @@ public class ProvidersCache implements ProvidersAccess, LookupApplicationName {
 
         ContentProviderClient client = null;
         Cursor cursor = null;
+        final long start = SystemClock.elapsedRealtime();
         try {
             client = DocumentsApplication.acquireUnstableProviderOrThrow(resolver, authority);
             cursor = client.query(rootsUri, null, null, null, null);
@@ -368,6 +511,7 @@ public class ProvidersCache implements ProvidersAccess, LookupApplicationName {
                 final RootInfo root = RootInfo.fromRootsCursor(userId, authority, cursor);
                 roots.add(root);
             }
+            mLoadStats.onLoaded(authority, SystemClock.elapsedRealtime() - start);
         } catch (Exception e) {
             Log.w(TAG, "Failed to load some roots from " + authority, e);
             // We didn't load every root from the provider. Don't put it to
@@ -400,28 +544,20 @@ public class ProvidersCache implements ProvidersAccess, LookupApplicationName {
 
     public RootInfo getRootOneshot(UserId userId, String authority, String rootId,
             boolean forceRefresh) {
-        synchronized (mLock) {
-            UserAuthority userAuthority = new UserAuthority(userId, authority);
-            RootInfo root = forceRefresh ? null : getRootLocked(userAuthority, rootId);
-            if (root == null) {
-                mRoots.replaceValues(userAuthority,
-                        loadRootsForAuthority(userAuthority, forceRefresh));
-                root = getRootLocked(userAuthority, rootId);
+        UserAuthority userAuthority = new UserAuthority(userId, authority);
+        if (!forceRefresh) {
+            final RootInfo root = mRootsIndex.getRoot(userAuthority, rootId);
+            if (root != null) {
+                return root;
             }
-            return root;
         }
-    }
-
-    public RootInfo getRootBlocking(UserId userId, String authority, String rootId) {
-        waitForFirstLoad();
-        loadStoppedAuthorities();
+        // Loaded outside of mLock, as providers may take a while to respond.
+        final Collection<RootInfo> roots = loadRootsForAuthority(userAuthority, forceRefresh);
         synchronized (mLock) {
-            return getRootLocked(new UserAuthority(userId, authority), rootId);
+            mRoots.replaceValues(userAuthority, roots);
+            publishLocked();
         }
-    }
-
-    private RootInfo getRootLocked(UserAuthority userAuthority, String rootId) {
-        for (RootInfo root : mRoots.get(userAuthority)) {
+        for (RootInfo root : roots) {
             if (Objects.equals(root.rootId, rootId)) {
                 return root;
             }
@@ -429,6 +565,12 @@ public class ProvidersCache implements ProvidersAccess, LookupApplicationName {
         return null;
     }
 
+    public RootInfo getRootBlocking(UserId userId, String authority, String rootId) {
+        waitForFirstLoad();
+        loadStoppedAuthorities();
+        return mRootsIndex.getRoot(new UserAuthority(userId, authority), rootId);
+    }
+
     @Override
     public RootInfo getRecentsRoot(UserId userId) {
         return createOrGetRecentsRoot(userId);
@@ -442,18 +584,14 @@ public class ProvidersCache implements ProvidersAccess, LookupApplicationName {
     public Collection<RootInfo> getRootsBlocking() {
         waitForFirstLoad();
         loadStoppedAuthorities();
-        synchronized (mLock) {
-            return new HashSet<>(mRoots.values());
-        }
+        return mRootsIndex.allRoots;
     }
 
     @Override
     public Collection<RootInfo> getMatchingRootsBlocking(State state) {
         waitForFirstLoad();
         loadStoppedAuthorities();
-        synchronized (mLock) {
-            return ProvidersAccess.getMatchingRoots(mRoots.values(), state);
-        }
+        return ProvidersAccess.getMatchingRoots(mRootsIndex.allRoots, state);
     }
 
     @Override
@@ -461,10 +599,7 @@ public class ProvidersCache implements ProvidersAccess, LookupApplicationName {
         waitForFirstLoad();
         UserAuthority userAuthority = new UserAuthority(userId, authority);
         loadStoppedAuthority(userAuthority);
-        synchronized (mLock) {
-            final Collection<RootInfo> roots = mRoots.get(userAuthority);
-            return roots != null ? roots : Collections.<RootInfo>emptyList();
-        }
+        return mRootsIndex.getRoots(userAuthority);
     }
 
     @Override
@@ -493,6 +628,7 @@ public class ProvidersCache implements ProvidersAccess, LookupApplicationName {
         }
 
         Log.i(TAG, output.toString());
+        Log.i(TAG, mLoadStats.toString());
     }
 
     private class MultiProviderUpdateTask extends AsyncTask<Void, Void, Void> {
@@ -537,6 +673,11 @@ public class ProvidersCache implements ProvidersAccess, LookupApplicationName {
 
             final long start = SystemClock.elapsedRealtime();
 
+            // On cold start, show roots of the previous run while providers are revalidated.
+            if (mFirstLoad.getCount() > 0) {
+                loadSnapshot();
+            }
+
             for (UserId userId : mUserIdManager.getUserIds()) {
                 final RootInfo recents = createOrGetRecentsRoot(userId);
                 synchronized (mLock) {
@@ -558,47 +699,81 @@ public class ProvidersCache implements ProvidersAccess, LookupApplicationName {
                 }
             }
 
+            boolean completed = true;
             if (!taskInfos.isEmpty()) {
-                CountDownLatch updateTaskInternalCountDown = new CountDownLatch(taskInfos.size());
-                ExecutorService executor = MoreExecutors.getExitingExecutorService(
-                        (ThreadPoolExecutor) Executors.newCachedThreadPool());
+                final List<RootsLoad> loads = new ArrayList<>(taskInfos.size());
                 for (SingleProviderUpdateTaskInfo taskInfo: taskInfos) {
-                    executor.submit(() ->
-                            startSingleProviderUpdateTask(
-                                    taskInfo.providerInfo,
-                                    taskInfo.userId,
-                                    updateTaskInternalCountDown));
+                    final UserAuthority userAuthority = new UserAuthority(
+                            taskInfo.userId, taskInfo.providerInfo.authority);
+                    if (isRootsLoadStuck(userAuthority)) {
+                        // Another load would just get stuck as well. Roots of the provider are
+                        // kept as they are until a later update gets to load them.
+                        Log.w(TAG, "Still loading roots of " + userAuthority.authority);
+                        synchronized (mLock) {
+                            mLocalRoots.putAll(userAuthority, mRoots.get(userAuthority));
+                        }
+                        completed = false;
+                        continue;
+                    }
+                    final RootsLoad load = new RootsLoad(userAuthority);
+                    load.future = mRootsLoadExecutor.submit(() -> {
+                        load.startedAt = SystemClock.elapsedRealtime();
+                        try {
+                            startSingleProviderUpdateTask(taskInfo.providerInfo, taskInfo.userId);
+                        } finally {
+                            onRootsLoadFinished(load);
+                        }
+                    });
+                    loads.add(load);
                 }
 
-                // Block until all SingleProviderUpdateTask threads finish executing.
-                // Use a shorter timeout for first load since it could block picker UI.
-                long timeoutMs = mFirstLoadDone ? 15000 : FIRST_LOAD_TIMEOUT_MS;
-                boolean success = false;
-                try {
-                    success = updateTaskInternalCountDown.await(timeoutMs, TimeUnit.MILLISECONDS);
-                } catch (InterruptedException e) {
-                }
-                if (!success) {
-                    Log.w(TAG, "Timeout executing update task!");
+                // Block until all SingleProviderUpdateTask threads finish executing, or until
+                // providers take much longer than they usually do. Use a shorter limit for first
+                // load since it could block picker UI.
+                final long maxTimeoutMs =
+                        mFirstLoadDone ? UPDATE_TIMEOUT_MS : FIRST_LOAD_TIMEOUT_MS;
+                final long limitAt = SystemClock.elapsedRealtime() + maxTimeoutMs;
+                for (RootsLoad load : loads) {
+                    if (!awaitRootsLoad(load, maxTimeoutMs, limitAt)) {
+                        Log.w(TAG, "Timeout loading roots of " + load.userAuthority.authority);
+                        mLoadStats.onTimedOut(load.userAuthority.authority);
+                        onRootsLoadTimedOut(load);
+                        completed = false;
+                    }
                 }
             }
 
             final long delta = SystemClock.elapsedRealtime() - start;
+            final ArrayList<String> changedAuthorities;
             synchronized (mLock) {
                 mFirstLoadDone = true;
                 if (mBootCompletedResult != null) {
                     mBootCompletedResult.finish();
                     mBootCompletedResult = null;
                 }
+                changedAuthorities = getChangedAuthorities(mRoots, mLocalRoots);
                 mRoots = mLocalRoots;
                 mStoppedAuthorities = mLocalStoppedAuthorities;
+                publishLocked();
             }
             if (VERBOSE) {
-                Log.v(TAG, "Update found " + mLocalRoots.size() + " roots in " + delta + "ms");
+                Log.v(TAG, "Update found " + mLocalRoots.size() + " roots in " + delta + "ms, "
+                        + "changed authorities: " + changedAuthorities);
+            }
+
+            // Roots of providers which timed out are missing, so they aren't snapshotted. Those
+            // changes are written by the next complete update instead.
+            mSnapshotOutdated |= !changedAuthorities.isEmpty();
+            if (completed && mSnapshotOutdated) {
+                writeSnapshot(mLocalRoots);
+                mSnapshotOutdated = false;
             }
 
             mFirstLoad.countDown();
-            LocalBroadcastManager.getInstance(mContext).sendBroadcast(new Intent(BROADCAST_ACTION));
+            // Without a snapshot, every authority counts as changed on the first load.
+            if (!changedAuthorities.isEmpty()) {
+                broadcastRootsChanged(changedAuthorities);
+            }
             mMultiProviderUpdateTaskSemaphore.release();
 
             Thread.currentThread().setPriority(previousPriority);
@@ -612,17 +787,41 @@ public class ProvidersCache implements ProvidersAccess, LookupApplicationName {
             }
         }
 
-        private void startSingleProviderUpdateTask(
-                ProviderInfo providerInfo,
-                UserId userId,
-                CountDownLatch updateCountDown) {
+        private void startSingleProviderUpdateTask(ProviderInfo providerInfo, UserId userId) {
             int previousPriority = Thread.currentThread().getPriority();
             Thread.currentThread().setPriority(Thread.MAX_PRIORITY);
             handleDocumentsProvider(providerInfo, userId);
-            updateCountDown.countDown();
             Thread.currentThread().setPriority(previousPriority);
         }
 
+        /**
+         * Waits for roots of a provider, for as long as its loads usually take once started.
+         *
+         * @param limitAt time after which no load is waited for anymore, even if still queued.
+         * @return false if the load timed out.
+         */
+        private boolean awaitRootsLoad(RootsLoad load, long maxTimeoutMs, long limitAt) {
+            final long timeoutMs =
+                    mLoadStats.getTimeoutMs(load.userAuthority.authority, maxTimeoutMs);
+            while (true) {
+                final long now = SystemClock.elapsedRealtime();
+                final long startedAt = load.startedAt;
+                // Loads still queued behind others are given their full timeout once started.
+                final long deadline = Math.min(limitAt,
+                        (startedAt != 0 ? startedAt : now) + timeoutMs);
+                try {
+                    load.future.get(Math.max(0, deadline - now), TimeUnit.MILLISECONDS);
+                    return true;
+                } catch (TimeoutException e) {
+                    if (load.startedAt != 0 || SystemClock.elapsedRealtime() >= limitAt) {
+                        return false;
+                    }
+                } catch (InterruptedException | ExecutionException e) {
+                    return false;
+                }
+            }
+        }
+
         private void handleDocumentsProvider(ProviderInfo info, UserId userId) {
             UserAuthority userAuthority = new UserAuthority(userId, info.authority);
             // Ignore stopped packages for now; we might query them
@@ -640,9 +839,20 @@ public class ProvidersCache implements ProvidersAccess, LookupApplicationName {
             final boolean forceRefresh = mForceRefreshAll
                     || Objects.equals(
                     new UserPackage(userId, info.packageName), mForceRefreshUserPackage);
+            // Loaded outside of mLock, as providers may take a while to respond.
+            final Collection<RootInfo> roots = loadRootsForAuthority(userAuthority, forceRefresh);
+            final boolean late;
             synchronized (mLock) {
-                mLocalRoots.putAll(userAuthority,
-                        loadRootsForAuthority(userAuthority, forceRefresh));
+                mLocalRoots.putAll(userAuthority, roots);
+                // Providers which timed out may still be loaded after the update completes.
+                late = mRoots == mLocalRoots;
+                if (late) {
+                    publishLocked();
+                }
+            }
+            if (late && !roots.isEmpty()) {
+                // The update went out without these roots.
+                broadcastRootsChanged(Lists.newArrayList(info.authority));
             }
         }
     }
@@ -683,6 +893,95 @@ public class ProvidersCache implements ProvidersAccess, LookupApplicationName {
         }
     }
 
+    /**
+     * Immutable view of the roots, indexed for lookups by user, authority and root ID.
+     */
+    private static final class RootsIndex {
+        static final RootsIndex EMPTY =
+                new RootsIndex(ArrayListMultimap.create(), Collections.emptySet());
+
+        final Set<RootInfo> allRoots;
+        final Set<UserAuthority> stoppedAuthorities;
+        private final Map<UserAuthority, List<RootInfo>> mRootsByAuthority;
+        private final Map<UserAuthority, Map<String, RootInfo>> mRootsById;
+
+        RootsIndex(Multimap<UserAuthority, RootInfo> roots,
+                Collection<UserAuthority> stoppedAuthorities) {
+            allRoots = Collections.unmodifiableSet(new HashSet<>(roots.values()));
+            this.stoppedAuthorities =
+                    Collections.unmodifiableSet(new HashSet<>(stoppedAuthorities));
+            final Map<UserAuthority, List<RootInfo>> rootsByAuthority = new HashMap<>();
+            final Map<UserAuthority, Map<String, RootInfo>> rootsById = new HashMap<>();
+            for (UserAuthority userAuthority : roots.keySet()) {
+                final List<RootInfo> authorityRoots = new ArrayList<>(roots.get(userAuthority));
+                rootsByAuthority.put(userAuthority, Collections.unmodifiableList(authorityRoots));
+                final Map<String, RootInfo> byId = new HashMap<>();
+                for (RootInfo root : authorityRoots) {
+                    // The first root wins, as with the linear scan this replaces.
+                    byId.putIfAbsent(root.rootId, root);
+                }
+                rootsById.put(userAuthority, byId);
+            }
+            mRootsByAuthority = rootsByAuthority;
+            mRootsById = rootsById;
+        }
+
+        List<RootInfo> getRoots(UserAuthority userAuthority) {
+            final List<RootInfo> roots = mRootsByAuthority.get(userAuthority);
+            return roots != null ? roots : Collections.emptyList();
+        }
+
+        @Nullable RootInfo getRoot(UserAuthority userAuthority, String rootId) {
+            final Map<String, RootInfo> roots = mRootsById.get(userAuthority);
+            return roots != null ? roots.get(rootId) : null;
+        }
+    }
+
+    private boolean isRootsLoadStuck(UserAuthority userAuthority) {
+        synchronized (mStuckLoads) {
+            return mStuckLoads.containsKey(userAuthority);
+        }
+    }
+
+    /**
+     * Stops counting a load which timed out while running against the bound of threads, by
+     * adding a thread in its place until it finishes.
+     */
+    private void onRootsLoadTimedOut(RootsLoad load) {
+        synchronized (mStuckLoads) {
+            if (load.startedAt == 0 || load.finished
+                    || mStuckLoads.putIfAbsent(load.userAuthority, load) != null) {
+                return;
+            }
+            // The maximum can't go below the core size, so it grows first.
+            mRootsLoadPool.setMaximumPoolSize(mRootsLoadPool.getMaximumPoolSize() + 1);
+            mRootsLoadPool.setCorePoolSize(mRootsLoadPool.getCorePoolSize() + 1);
+        }
+    }
+
+    private void onRootsLoadFinished(RootsLoad load) {
+        synchronized (mStuckLoads) {
+            load.finished = true;
+            if (mStuckLoads.remove(load.userAuthority, load)) {
+                mRootsLoadPool.setCorePoolSize(mRootsLoadPool.getCorePoolSize() - 1);
+                mRootsLoadPool.setMaximumPoolSize(mRootsLoadPool.getMaximumPoolSize() - 1);
+            }
+        }
+    }
+
+    private static class RootsLoad {
+        private final UserAuthority userAuthority;
+        private Future<?> future;
+        // Time the load was picked up by a thread, or 0 while still queued.
+        private volatile long startedAt;
+        // Guarded by mStuckLoads of the cache.
+        private boolean finished;
+
+        RootsLoad(UserAuthority userAuthority) {
+            this.userAuthority = userAuthority;
+        }
+    }
+
     private static class SingleProviderUpdateTaskInfo {
         private final ProviderInfo providerInfo;
         private final UserId userId;
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.roots;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.VisibleForTesting;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Latencies of loading roots, per authority. Used to wait for each provider about as long as it
+ * usually takes, instead of a fixed timeout for all of them.
+ *
+ * <p>This class is thread safe.
+ */
+final class RootsLoadStats {
+    // Weight of the latest load in the moving average.
+    private static final double SMOOTHING = 0.3;
+    // Providers are waited for this many times their average latency...
+    private static final double TIMEOUT_MULTIPLIER = 4;
+    // ...but never less than this, to absorb hiccups of fast providers, and leave time for the
+    // process of providers which aren't running to start.
+    @VisibleForTesting
+    static final long MIN_TIMEOUT_MS = 3000;
+
+    @GuardedBy("mStats")
+    private final Map<String, Stats> mStats = new HashMap<>();
+
+    /**
+     * @param maxTimeoutMs timeout for authorities never loaded before, and upper bound of
+     *     all timeouts.
+     * @return how long to wait for roots of the authority.
+     */
+    long getTimeoutMs(String authority, long maxTimeoutMs) {
+        synchronized (mStats) {
+            final Stats stats = mStats.get(authority);
+            if (stats == null || stats.loads == 0) {
+                return maxTimeoutMs;
+            }
+            final long timeoutMs = Math.max(MIN_TIMEOUT_MS,
+                    (long) (TIMEOUT_MULTIPLIER * stats.averageMs));
+            return Math.min(maxTimeoutMs, timeoutMs);
+        }
+    }
+
+    void onLoaded(String authority, long latencyMs) {
+        synchronized (mStats) {
+            final Stats stats = getOrCreateLocked(authority);
+            stats.averageMs = stats.loads == 0
+                    ? latencyMs
+                    : SMOOTHING * latencyMs + (1 - SMOOTHING) * stats.averageMs;
+            stats.maxMs = Math.max(stats.maxMs, latencyMs);
+            stats.loads++;
+        }
+    }
+
+    void onTimedOut(String authority) {
+        synchronized (mStats) {
+            getOrCreateLocked(authority).timeouts++;
+        }
+    }
+
+    @GuardedBy("mStats")
+    private Stats getOrCreateLocked(String authority) {
+        Stats stats = mStats.get(authority);
+        if (stats == null) {
+            stats = new Stats();
+            mStats.put(authority, stats);
+        }
+        return stats;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder output = new StringBuilder("Roots load stats: ");
+        synchronized (mStats) {
+            boolean first = true;
+            for (Map.Entry<String, Stats> entry : mStats.entrySet()) {
+                final Stats stats = entry.getValue();
+                output.append(first ? "" : ", ").append(entry.getKey())
+                        .append("={loads=").append(stats.loads)
+                        .append(", avg=").append((long) stats.averageMs)
+                        .append("ms, max=").append(stats.maxMs)
+                        .append("ms, timeouts=").append(stats.timeouts).append("}");
+                first = false;
+            }
+        }
+        return output.toString();
+    }
+
+    private static class Stats {
+        int loads;
+        int timeouts;
+        double averageMs;
+        long maxMs;
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.roots;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.android.documentsui.base.DurableUtils;
+import com.android.documentsui.base.RootInfo;
+import com.android.documentsui.base.UserId;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Roots of all providers of a user as of the last update of {@link ProvidersCache}, stored in a
+ * file per user. Unlike the cache kept by the system process, the snapshot survives the death of
+ * our process, so that the roots can be shown on cold start before any provider is queried.
+ *
+ * <p>Snapshots are dropped when the locale changes, as titles of roots are localized.
+ */
+final class RootsSnapshot {
+    private static final String TAG = "RootsSnapshot";
+
+    private static final int VERSION_INIT = 1;
+
+    private final File mDir;
+
+    RootsSnapshot(File dir) {
+        mDir = dir;
+    }
+
+    /**
+     * @return roots of the user by authority, or null if there is no usable snapshot.
+     */
+    @Nullable List<AuthorityRoots> read(UserId userId) {
+        final File file = getFile(userId);
+        if (!file.exists()) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            final int version = in.readInt();
+            if (version != VERSION_INIT) {
+                throw new ProtocolException("Unknown version " + version);
+            }
+            if (!Locale.getDefault().toLanguageTag().equals(in.readUTF())) {
+                file.delete();
+                return null;
+            }
+
+            final int count = in.readInt();
+            final List<AuthorityRoots> authorities = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                final String authority = in.readUTF();
+                final String applicationName = in.readUTF();
+                final String packageName = in.readUTF();
+                final int rootCount = in.readInt();
+                final List<RootInfo> roots = new ArrayList<>(rootCount);
+                for (int j = 0; j < rootCount; j++) {
+                    final RootInfo root = new RootInfo();
+                    root.read(in);
+                    roots.add(root);
+                }
+                authorities.add(
+                        new AuthorityRoots(authority, applicationName, packageName, roots));
+            }
+            return authorities;
+        } catch (IOException e) {
+            Log.w(TAG, "Discarding unreadable snapshot " + file, e);
+            file.delete();
+            return null;
+        }
+    }
+
+    void write(UserId userId, List<AuthorityRoots> authorities) {
+        mDir.mkdirs();
+        final File file = getFile(userId);
+        final File tempFile = new File(mDir, file.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(VERSION_INIT);
+            out.writeUTF(Locale.getDefault().toLanguageTag());
+            out.writeInt(authorities.size());
+            for (AuthorityRoots authority : authorities) {
+                out.writeUTF(authority.authority);
+                out.writeUTF(authority.applicationName);
+                out.writeUTF(authority.packageName);
+                out.writeInt(authority.roots.size());
+                for (RootInfo root : authority.roots) {
+                    root.write(out);
+                }
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write snapshot of " + userId, e);
+            tempFile.delete();
+            return;
+        }
+
+        // Readers see either the previous snapshot or the complete new one.
+        if (!tempFile.renameTo(file)) {
+            tempFile.delete();
+        }
+    }
+
+    private File getFile(UserId userId) {
+        return new File(mDir, Integer.toString(userId.getIdentifier()));
+    }
+
+    /**
+     * @return true if both collections hold the same roots, with the same values, in the same
+     *     order.
+     */
+    static boolean sameRoots(Collection<RootInfo> a, Collection<RootInfo> b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        final Iterator<RootInfo> aIt = a.iterator();
+        final Iterator<RootInfo> bIt = b.iterator();
+        while (aIt.hasNext()) {
+            final byte[] aData = DurableUtils.writeToArrayOrNull(aIt.next());
+            final byte[] bData = DurableUtils.writeToArrayOrNull(bIt.next());
+            if (aData == null || !Arrays.equals(aData, bData)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Roots of one provider, with what's needed to show them before the provider is queried.
+     */
+    static final class AuthorityRoots {
+        final String authority;
+        final String applicationName;
+        final String packageName;
+        final List<RootInfo> roots;
+
+        AuthorityRoots(String authority, String applicationName, String packageName,
+                List<RootInfo> roots) {
+            this.authority = authority;
+            this.applicationName = applicationName;
+            this.packageName = packageName;
+            this.roots = roots;
+        }
+    }
+}
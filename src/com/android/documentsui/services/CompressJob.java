@@ -61,6 +61,12 @@ final class CompressJob extends CopyJob {
         super(service, listener, id, OPERATION_MOVE, destination, srcs, messenger, features);
     }
 
+    @Override
+    boolean isResumable() {
+        // A half-written zip can't be appended to after a restart.
+        return false;
+    }
+
     @Override
     Builder createProgressBuilder() {
         return super.createProgressBuilder(
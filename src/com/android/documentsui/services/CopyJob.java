@@ -98,12 +98,18 @@ import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 import java.util.function.LongSupplier;
 
+import javax.annotation.Nullable;
+
 class CopyJob extends ResolvedResourcesJob {
 
     private static final String TAG = "CopyJob";
 
     private static final long LOADING_TIMEOUT = 60000; // 1 min
 
+    // How often the destination is synced and the copied offset journaled during a byte copy.
+    // Larger values mean fewer fsync() calls, but more bytes to redo after being killed.
+    private static final long CHECKPOINT_INTERVAL_BYTES = 16 * 1024 * 1024;
+
     final ArrayList<DocumentInfo> convertedFiles = new ArrayList<>();
     DocumentInfo mDstInfo;
 
@@ -113,6 +119,11 @@ class CopyJob extends ResolvedResourcesJob {
 
     private CopyJobProgressTracker mProgressTracker;
 
+    // Records progress so the operation can be resumed if the process dies. Null if the job
+    // isn't resumable, or if the journal couldn't be written.
+    private @Nullable CopyJournal mJournal;
+    private boolean mResumed;
+
     /**
      * @see @link {@link Job} constructor for most param descriptions.
      */
@@ -141,7 +152,8 @@ class CopyJob extends ResolvedResourcesJob {
 
     @Override
     public Notification getSetupNotification() {
-        return getSetupNotification(service.getString(R.string.copy_preparing));
+        return getSetupNotification(service.getString(
+                isResumed() ? R.string.copy_resuming : R.string.copy_preparing));
     }
 
     Notification getProgressNotification(@StringRes int msgId) {
@@ -157,6 +169,12 @@ class CopyJob extends ResolvedResourcesJob {
 
     @Override
     void finish() {
+        // The job ran to its end (even if canceled or failed), so there is nothing to resume.
+        if (mJournal != null) {
+            mJournal.delete();
+            mJournal = null;
+        }
+
         try {
             mMessenger.send(Message.obtain(mHandler, MESSAGE_FINISH, 0, 0));
         } catch (RemoteException e) {
@@ -165,6 +183,15 @@ class CopyJob extends ResolvedResourcesJob {
         super.finish();
     }
 
+    @Override
+    void onDropped() {
+        // Canceled while queued, so the operation must not be resumed on the next launch either.
+        if (mJournal != null) {
+            mJournal.delete();
+            mJournal = null;
+        }
+    }
+
     @Override
     Notification getFailureNotification() {
         return getFailureNotification(
@@ -195,8 +222,51 @@ class CopyJob extends ResolvedResourcesJob {
         return warningBuilder.build();
     }
 
+    /**
+     * Resumes the operation recorded in {@code journal} rather than starting from scratch.
+     * Documents the journal marks as completed are skipped, and partially copied files are
+     * continued from their last checkpoint. Must be called before the job runs.
+     */
+    void resumeFrom(CopyJournal journal) {
+        assert(getState() == STATE_CREATED);
+        assert(isResumable());
+        mJournal = journal;
+        mResumed = true;
+    }
+
+    /**
+     * @return whether this job continues an operation which was interrupted.
+     */
+    boolean isResumed() {
+        return mResumed;
+    }
+
+    /**
+     * @return whether progress of this job may be journaled and resumed after process death.
+     */
+    boolean isResumable() {
+        return true;
+    }
+
+    /**
+     * @return the parent of the source documents, if any. Journaled to resume moves.
+     */
+    @Nullable Uri getSrcParentUri() {
+        return null;
+    }
+
     @Override
     boolean setUp() {
+        if (mJournal == null && isResumable()) {
+            try {
+                mJournal = CopyJournal.create(appContext, operationType, stack, getSrcParentUri(),
+                        mResourceUris.getUris(appContext));
+            } catch (IOException e) {
+                // Not fatal. The job just can't be resumed if we get killed.
+                Log.w(TAG, "Failed to create a journal. Proceeding without one.", e);
+            }
+        }
+
         if (!super.setUp()) {
             return false;
         }
@@ -220,7 +290,7 @@ class CopyJob extends ResolvedResourcesJob {
 
     @Override
     void start() {
-        mProgressTracker.start();
+        startProgress();
 
         DocumentInfo srcInfo;
         for (int i = 0; i < mResolvedDocs.size() && !isCanceled(); ++i) {
@@ -303,12 +373,17 @@ class CopyJob extends ResolvedResourcesJob {
         return !convertedFiles.isEmpty();
     }
 
+    @Override
+    boolean isAlreadyProcessed(Uri uri) {
+        return mJournal != null && mJournal.isCompleted(uri);
+    }
+
     /**
      * Logs progress on the current copy operation. Displays/Updates the progress notification.
      *
      * @param bytesCopied
      */
-    private void makeCopyProgress(long bytesCopied) {
+    void makeCopyProgress(long bytesCopied) {
         try {
             mMessenger.send(Message.obtain(mHandler, MESSAGE_PROGRESS,
                     (int) (100 * mProgressTracker.getProgress()), // Progress in percentage
@@ -381,12 +456,48 @@ class CopyJob extends ResolvedResourcesJob {
         byteCopyDocument(src, dstDirInfo);
     }
 
+    /**
+     * Starts measuring the time the job takes, for jobs which don't go through {@link #start}.
+     */
+    void startProgress() {
+        mProgressTracker.start();
+    }
+
+    /**
+     * Counts a top level document as done, for jobs which don't go through
+     * {@link #processDocument}.
+     */
+    void onDocumentCompleted() {
+        mProgressTracker.onDocumentCompleted();
+    }
+
     private void processDocumentThenUpdateProgress(DocumentInfo src, DocumentInfo srcParent,
             DocumentInfo dstDirInfo) throws ResourceException {
-        processDocument(src, srcParent, dstDirInfo);
+        processJournaledDocument(src, srcParent, dstDirInfo);
         mProgressTracker.onDocumentCompleted();
     }
 
+    /**
+     * Same as {@link #processDocument}, but skips documents already completed before the job
+     * was resumed, and journals completion of the others.
+     */
+    private void processJournaledDocument(DocumentInfo src, DocumentInfo srcParent,
+            DocumentInfo dstDirInfo) throws ResourceException {
+        if (mJournal != null && mJournal.isCompleted(src.derivedUri)) {
+            if (DEBUG) {
+                Log.d(TAG, "Skipping document completed before resuming: " + src.derivedUri);
+            }
+            makeOptimizedCopyProgress(src);
+            return;
+        }
+
+        processDocument(src, srcParent, dstDirInfo);
+
+        if (mJournal != null && !isCanceled()) {
+            mJournal.onCompleted(src.derivedUri);
+        }
+    }
+
     void byteCopyDocument(DocumentInfo src, DocumentInfo dest) throws ResourceException {
         final String dstMimeType;
         final String dstDisplayName;
@@ -425,6 +536,18 @@ class CopyJob extends ResolvedResourcesJob {
             dstDisplayName = src.displayName;
         }
 
+        // If the target was created before the job got resumed, continue filling it in rather
+        // than creating a duplicate.
+        DocumentInfo dstInfo = getDestinationCreatedBeforeResume(src);
+        if (dstInfo != null) {
+            if (Document.MIME_TYPE_DIR.equals(src.mimeType)) {
+                copyDirectoryHelper(src, dstInfo);
+            } else {
+                copyFileHelper(src, dstInfo, dest, dstMimeType);
+            }
+            return;
+        }
+
         // Create the target document (either a file or a directory), then copy recursively the
         // contents (bytes or children).
         Uri dstUri = null;
@@ -450,7 +573,10 @@ class CopyJob extends ResolvedResourcesJob {
                     dest.derivedUri);
         }
 
-        DocumentInfo dstInfo = null;
+        if (mJournal != null) {
+            mJournal.onCreated(src.derivedUri, dstUri);
+        }
+
         try {
             dstInfo = DocumentInfo.fromUri(dest.userId.getContentResolver(service), dstUri,
                     dest.userId);
@@ -468,6 +594,29 @@ class CopyJob extends ResolvedResourcesJob {
         }
     }
 
+    /**
+     * @return the destination document created for {@code src} before the job was resumed, or
+     *     null if there is none or it is gone.
+     */
+    private @Nullable DocumentInfo getDestinationCreatedBeforeResume(DocumentInfo src) {
+        final Uri dstUri = mJournal != null ? mJournal.getCreated(src.derivedUri) : null;
+        if (dstUri == null) {
+            return null;
+        }
+
+        try {
+            final DocumentInfo dstInfo = DocumentInfo.fromUri(
+                    mDstInfo.userId.getContentResolver(service), dstUri, mDstInfo.userId);
+            if (DEBUG) {
+                Log.d(TAG, "Resuming into previously created document: " + dstUri);
+            }
+            return dstInfo;
+        } catch (FileNotFoundException | RuntimeException e) {
+            Log.w(TAG, "Document created before resuming is gone: " + dstUri, e);
+            return null;
+        }
+    }
+
     /**
      * Handles recursion into a directory and copying its contents. Note that in linux terms, this
      * does the equivalent of "cp src/* dst", not "cp -r src dst".
@@ -507,7 +656,7 @@ class CopyJob extends ResolvedResourcesJob {
             while (cursor.moveToNext() && !isCanceled()) {
                 try {
                     src = DocumentInfo.fromCursor(cursor, srcDir.userId, srcDir.authority);
-                    processDocument(src, srcDir, destDir);
+                    processJournaledDocument(src, srcDir, destDir);
                 } catch (RuntimeException e) {
                     Log.e(TAG, String.format(
                             "Failed to recursively process a file %s due to an exception.",
@@ -548,6 +697,12 @@ class CopyJob extends ResolvedResourcesJob {
         ParcelFileDescriptor.AutoCloseOutputStream out = null;
         boolean success = false;
 
+        // Virtual files are converted on the fly, so their byte offsets aren't stable across
+        // runs. Always copy them from the start.
+        long resumeOffset = (mJournal != null && !src.isVirtual())
+                ? mJournal.getCheckpoint(src.derivedUri)
+                : 0;
+
         try {
             // If the file is virtual, but can be converted to another format, then try to copy it
             // as such format.
@@ -593,7 +748,19 @@ class CopyJob extends ResolvedResourcesJob {
             }
 
             try {
-                dstFile = getClient(dest).openFile(dest.derivedUri, "w", mSignal);
+                // Don't truncate a partially copied file we're about to continue. Not all
+                // providers support "rw", so fall back to starting over.
+                if (resumeOffset > 0) {
+                    try {
+                        dstFile = getClient(dest).openFile(dest.derivedUri, "rw", mSignal);
+                    } catch (FileNotFoundException | UnsupportedOperationException e) {
+                        Log.w(TAG, "Can't reopen " + dest.derivedUri + " to resume. Restarting.");
+                        resumeOffset = 0;
+                    }
+                }
+                if (dstFile == null) {
+                    dstFile = getClient(dest).openFile(dest.derivedUri, "w", mSignal);
+                }
             } catch (FileNotFoundException | RemoteException | RuntimeException e) {
                 if (e instanceof DeadObjectException) {
                     releaseClient(dest);
@@ -606,6 +773,11 @@ class CopyJob extends ResolvedResourcesJob {
             out = new ParcelFileDescriptor.AutoCloseOutputStream(dstFile);
 
             try {
+                if (resumeOffset > 0) {
+                    resumeOffset = seekForResume(srcFile, dstFile, resumeOffset);
+                    makeCopyProgress(resumeOffset);
+                }
+
                 // If we know the source size, and the destination supports disk
                 // space allocation, then allocate the space we'll need. This
                 // uses fallocate() under the hood to optimize on-disk layout
@@ -618,11 +790,20 @@ class CopyJob extends ResolvedResourcesJob {
                 }
 
                 try {
+                    final long startOffset = resumeOffset;
+                    final ParcelFileDescriptor syncedFile = dstFile;
                     final Int64Ref last = new Int64Ref(0);
+                    final Int64Ref lastCheckpoint = new Int64Ref(0);
                     FileUtils.copy(in, out, mSignal, Runnable::run, (long progress) -> {
                         final long delta = progress - last.value;
                         last.value = progress;
                         makeCopyProgress(delta);
+
+                        if (mJournal != null && !src.isVirtual()
+                                && progress - lastCheckpoint.value >= CHECKPOINT_INTERVAL_BYTES) {
+                            lastCheckpoint.value = progress;
+                            checkpoint(src, syncedFile, startOffset + progress);
+                        }
                     });
                 } catch (OperationCanceledException e) {
                     if (DEBUG) {
@@ -691,6 +872,52 @@ class CopyJob extends ResolvedResourcesJob {
         }
     }
 
+    /**
+     * Positions both files to continue a byte copy at {@code offset}, clamped to what actually
+     * made it into the destination.
+     *
+     * @return the offset the copy continues from, 0 if the files can't be seeked.
+     */
+    private long seekForResume(ParcelFileDescriptor srcFile, ParcelFileDescriptor dstFile,
+            long offset) {
+        final FileDescriptor srcFd = srcFile.getFileDescriptor();
+        final FileDescriptor dstFd = dstFile.getFileDescriptor();
+        try {
+            offset = Math.min(offset, Os.fstat(dstFd).st_size);
+            Os.lseek(srcFd, offset, OsConstants.SEEK_SET);
+            Os.lseek(dstFd, offset, OsConstants.SEEK_SET);
+            Os.ftruncate(dstFd, offset);
+            if (DEBUG) {
+                Log.d(TAG, "Resuming byte copy at offset " + offset);
+            }
+            return offset;
+        } catch (ErrnoException e) {
+            // Pipes and sockets can't be seeked. Rewind whatever we can and start over.
+            Log.w(TAG, "Failed to seek to resume offset. Restarting copy.", e);
+            try {
+                Os.lseek(srcFd, 0, OsConstants.SEEK_SET);
+                Os.lseek(dstFd, 0, OsConstants.SEEK_SET);
+                Os.ftruncate(dstFd, 0);
+            } catch (ErrnoException ignored) {
+                // Nothing we can do, the descriptors were fresh anyway.
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * Syncs the destination and journals that {@code offset} bytes of {@code src} are durable.
+     * Skipped if the destination can't be synced, as the offset would then be meaningless.
+     */
+    private void checkpoint(DocumentInfo src, ParcelFileDescriptor dstFile, long offset) {
+        try {
+            Os.fsync(dstFile.getFileDescriptor());
+        } catch (ErrnoException e) {
+            return;
+        }
+        mJournal.onCheckpoint(src.derivedUri, offset);
+    }
+
     /**
      * Create CopyJobProgressTracker instance for notification to update copy progress.
      *
@@ -0,0 +1,396 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.services;
+
+import static com.android.documentsui.base.SharedMinimal.DEBUG;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.annotation.VisibleForTesting;
+
+import com.android.documentsui.base.DocumentStack;
+import com.android.documentsui.base.Durable;
+import com.android.documentsui.base.DurableUtils;
+import com.android.documentsui.services.FileOperationService.OpType;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+/**
+ * Durable record of the progress of a {@link CopyJob}, kept under the app's files dir so that a
+ * copy or move interrupted by process death can be resumed by {@link FileOperationService}
+ * instead of being restarted from scratch.
+ *
+ * <p>The journal is a header describing the operation followed by an append-only list of
+ * records: destination documents created, byte checkpoints within a file, and source documents
+ * completed. A torn trailing record (e.g. the process died mid-write) is ignored on read.
+ */
+final class CopyJournal implements Durable {
+
+    private static final String TAG = "CopyJournal";
+
+    private static final String JOURNAL_DIR = "copy_journals";
+
+    private static final int VERSION_INIT = 1;
+
+    private static final int RECORD_CREATED = 1;
+    private static final int RECORD_CHECKPOINT = 2;
+    private static final int RECORD_COMPLETED = 3;
+
+    // Journals older than this belong to operations the user has long forgotten about, and
+    // resuming them would only be surprising.
+    private static final long MAX_JOURNAL_AGE_MILLIS = TimeUnit.DAYS.toMillis(7);
+
+    @OpType int opType;
+    final DocumentStack destination = new DocumentStack();
+    @Nullable Uri srcParent;
+    final List<Uri> srcs = new ArrayList<>();
+
+    // Keyed by the string form of the source document uri.
+    private final Map<String, Uri> mCreated = new HashMap<>();
+    private final Map<String, Long> mCheckpoints = new HashMap<>();
+    private final Set<String> mCompleted = new HashSet<>();
+
+    // Journals owned by jobs alive in this process, which must never be resumed a second time.
+    private static final Set<File> sOpenJournals = new HashSet<>();
+
+    private final File mFile;
+    private @Nullable DataOutputStream mOut;
+
+    @VisibleForTesting
+    CopyJournal(File file) {
+        mFile = file;
+    }
+
+    /**
+     * Creates a fresh journal for an operation that is about to start.
+     */
+    static CopyJournal create(Context context, @OpType int opType, DocumentStack destination,
+            @Nullable Uri srcParent, Iterable<Uri> srcs) throws IOException {
+        final CopyJournal journal =
+                new CopyJournal(new File(getJournalDir(context), UUID.randomUUID().toString()));
+        journal.opType = opType;
+        journal.destination.reset(destination);
+        journal.srcParent = srcParent;
+        for (Uri uri : srcs) {
+            journal.srcs.add(uri);
+        }
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(journal.mFile)))) {
+            journal.write(out);
+        }
+        synchronized (sOpenJournals) {
+            sOpenJournals.add(journal.mFile);
+        }
+        return journal;
+    }
+
+    /**
+     * Loads the journals left behind by operations which were interrupted before they could
+     * finish, e.g. because the process was killed. Expired and unreadable journals are deleted
+     * along the way. Returned journals are owned by the caller, who must resume or delete them.
+     */
+    static List<CopyJournal> loadPending(Context context) {
+        final File[] files = getJournalDir(context).listFiles();
+        if (files == null) {
+            return Collections.emptyList();
+        }
+
+        final long now = System.currentTimeMillis();
+        final List<CopyJournal> journals = new ArrayList<>(files.length);
+        synchronized (sOpenJournals) {
+            for (File file : files) {
+                if (sOpenJournals.contains(file)) {
+                    continue;
+                }
+
+                if (now - file.lastModified() > MAX_JOURNAL_AGE_MILLIS) {
+                    if (DEBUG) {
+                        Log.d(TAG, "Deleting expired journal " + file);
+                    }
+                    file.delete();
+                    continue;
+                }
+
+                final CopyJournal journal = new CopyJournal(file);
+                try (DataInputStream in = new DataInputStream(
+                        new BufferedInputStream(new FileInputStream(file)))) {
+                    journal.read(in);
+                } catch (IOException e) {
+                    Log.w(TAG, "Discarding unreadable journal " + file, e);
+                    file.delete();
+                    continue;
+                }
+
+                sOpenJournals.add(file);
+                journals.add(journal);
+            }
+        }
+        return journals;
+    }
+
+    /**
+     * @return true if some operation left a journal behind which may be resumed.
+     */
+    static boolean hasPending(Context context) {
+        final String[] names = getJournalDir(context).list();
+        if (names == null) {
+            return false;
+        }
+        synchronized (sOpenJournals) {
+            return names.length > sOpenJournals.size();
+        }
+    }
+
+    @VisibleForTesting
+    File getFile() {
+        return mFile;
+    }
+
+    private static File getJournalDir(Context context) {
+        final File dir = new File(context.getFilesDir(), JOURNAL_DIR);
+        dir.mkdirs();
+        return dir;
+    }
+
+    boolean isCompleted(Uri src) {
+        return mCompleted.contains(src.toString());
+    }
+
+    /**
+     * @return the destination document created for {@code src} in a previous run, or null.
+     */
+    @Nullable Uri getCreated(Uri src) {
+        return mCreated.get(src.toString());
+    }
+
+    /**
+     * @return the number of bytes of {@code src} known to be copied in a previous run.
+     */
+    long getCheckpoint(Uri src) {
+        final Long offset = mCheckpoints.get(src.toString());
+        return offset != null ? offset : 0;
+    }
+
+    void onCreated(Uri src, Uri dst) {
+        mCreated.put(src.toString(), dst);
+        appendRecord(RECORD_CREATED, src, dst.toString(), 0);
+    }
+
+    /**
+     * Records that the first {@code offset} bytes of {@code src} are in the destination. Callers
+     * must sync the destination before checkpointing, or the offset may point past real data.
+     */
+    void onCheckpoint(Uri src, long offset) {
+        mCheckpoints.put(src.toString(), offset);
+        appendRecord(RECORD_CHECKPOINT, src, null, offset);
+    }
+
+    void onCompleted(Uri src) {
+        final String key = src.toString();
+        mCompleted.add(key);
+        mCreated.remove(key);
+        mCheckpoints.remove(key);
+        appendRecord(RECORD_COMPLETED, src, null, 0);
+    }
+
+    /**
+     * Discards the journal. Called once the operation is over, successfully or not, so that it
+     * is never resumed.
+     */
+    void delete() {
+        if (mOut != null) {
+            try {
+                mOut.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to close journal " + mFile, e);
+            }
+            mOut = null;
+        }
+        mFile.delete();
+        synchronized (sOpenJournals) {
+            sOpenJournals.remove(mFile);
+        }
+    }
+
+    /**
+     * Gives up ownership of a journal returned by {@link #loadPending} without deleting it, so
+     * that it may be loaded again.
+     */
+    @VisibleForTesting
+    void release() {
+        synchronized (sOpenJournals) {
+            sOpenJournals.remove(mFile);
+        }
+    }
+
+    private void appendRecord(int type, Uri src, @Nullable String value, long offset) {
+        try {
+            if (mOut == null) {
+                mOut = new DataOutputStream(new FileOutputStream(mFile, true));
+            }
+            // Records are small; writing each one in a single call keeps a torn write confined
+            // to the tail of the file.
+            final ByteArrayOutputStream record = new ByteArrayOutputStream();
+            writeRecord(new DataOutputStream(record), type, src.toString(), value, offset);
+            mOut.write(record.toByteArray());
+            mOut.flush();
+        } catch (IOException e) {
+            // Losing journal records only costs redoing work after a crash, so don't fail the
+            // job over it.
+            Log.w(TAG, "Failed to append to journal " + mFile, e);
+        }
+    }
+
+    private static void writeRecord(DataOutputStream out, int type, String src,
+            @Nullable String value, long offset) throws IOException {
+        out.writeByte(type);
+        out.writeUTF(src);
+        switch (type) {
+            case RECORD_CREATED:
+                out.writeUTF(value);
+                break;
+            case RECORD_CHECKPOINT:
+                out.writeLong(offset);
+                break;
+            case RECORD_COMPLETED:
+                break;
+            default:
+                throw new ProtocolException("Unknown record type " + type);
+        }
+    }
+
+    @Override
+    public void reset() {
+        opType = FileOperationService.OPERATION_UNKNOWN;
+        destination.reset();
+        srcParent = null;
+        srcs.clear();
+        mCreated.clear();
+        mCheckpoints.clear();
+        mCompleted.clear();
+    }
+
+    @Override
+    public void read(DataInputStream in) throws IOException {
+        final int version = in.readInt();
+        switch (version) {
+            case VERSION_INIT:
+                opType = in.readInt();
+                destination.read(in);
+                final String parent = DurableUtils.readNullableString(in);
+                srcParent = parent != null ? Uri.parse(parent) : null;
+                final int size = in.readInt();
+                for (int i = 0; i < size; i++) {
+                    srcs.add(Uri.parse(in.readUTF()));
+                }
+                readRecords(in);
+                break;
+            default:
+                throw new ProtocolException("Unknown version " + version);
+        }
+    }
+
+    private void readRecords(DataInputStream in) throws IOException {
+        while (true) {
+            final int type = in.read();
+            if (type == -1) {
+                return;
+            }
+
+            try {
+                final String src = in.readUTF();
+                switch (type) {
+                    case RECORD_CREATED:
+                        mCreated.put(src, Uri.parse(in.readUTF()));
+                        break;
+                    case RECORD_CHECKPOINT:
+                        mCheckpoints.put(src, in.readLong());
+                        break;
+                    case RECORD_COMPLETED:
+                        mCompleted.add(src);
+                        mCreated.remove(src);
+                        mCheckpoints.remove(src);
+                        break;
+                    default:
+                        throw new ProtocolException("Unknown record type " + type);
+                }
+            } catch (EOFException e) {
+                // The process died while appending this record. Everything before it is intact.
+                Log.w(TAG, "Ignoring truncated record at the end of " + mFile);
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(VERSION_INIT);
+        out.writeInt(opType);
+        destination.write(out);
+        DurableUtils.writeNullableString(out, srcParent != null ? srcParent.toString() : null);
+        out.writeInt(srcs.size());
+        for (Uri uri : srcs) {
+            out.writeUTF(uri.toString());
+        }
+        for (Map.Entry<String, Uri> entry : mCreated.entrySet()) {
+            writeRecord(out, RECORD_CREATED, entry.getKey(), entry.getValue().toString(), 0);
+        }
+        for (Map.Entry<String, Long> entry : mCheckpoints.entrySet()) {
+            writeRecord(out, RECORD_CHECKPOINT, entry.getKey(), null, entry.getValue());
+        }
+        for (String src : mCompleted) {
+            writeRecord(out, RECORD_COMPLETED, src, null, 0);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return new StringBuilder()
+                .append("CopyJournal")
+                .append("{")
+                .append("file=" + mFile)
+                .append(", opType=" + opType)
+                .append(", srcs=" + srcs.size())
+                .append(", completed=" + mCompleted.size())
+                .append("}")
+                .toString();
+    }
+}
@@ -36,6 +36,15 @@ import com.android.documentsui.base.UserId;
 import com.android.documentsui.clipping.UrisSupplier;
 
 import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.Nullable;
 
@@ -43,9 +52,16 @@ final class DeleteJob extends ResolvedResourcesJob {
 
     private static final String TAG = "DeleteJob";
 
+    // Below this many documents, deleting on the job thread beats spinning up workers.
+    private static final int MIN_DOCS_FOR_PARALLEL_DELETE = 8;
+
+    // Upper bound of concurrent delete calls to a single provider.
+    private static final int MAX_CONCURRENT_DELETES = 4;
+
     private final Uri mParentUri;
 
-    private volatile int mDocsProcessed = 0;
+    // Updated from worker threads, and polled by the progress notification.
+    private final AtomicInteger mDocsProcessed = new AtomicInteger();
 
     /**
      * Moves files to a destination identified by {@code destination}.
@@ -76,10 +92,11 @@ final class DeleteJob extends ResolvedResourcesJob {
 
     @Override
     public Notification getProgressNotification() {
-        mProgressBuilder.setProgress(mResourceUris.getItemCount(), mDocsProcessed, false);
+        final int docsProcessed = mDocsProcessed.get();
+        mProgressBuilder.setProgress(mResourceUris.getItemCount(), docsProcessed, false);
         String format = service.getString(R.string.delete_progress);
         mProgressBuilder.setSubText(
-                String.format(format, mDocsProcessed, mResourceUris.getItemCount()));
+                String.format(format, docsProcessed, mResourceUris.getItemCount()));
 
         mProgressBuilder.setContentText(null);
 
@@ -112,7 +129,91 @@ final class DeleteJob extends ResolvedResourcesJob {
           return;
         }
 
+        // Providers delete directories recursively on their side, so each selected document
+        // costs a single call no matter how many descendants it has.
+        final List<DocumentInfo> failures;
+        if (mResolvedDocs.size() < MIN_DOCS_FOR_PARALLEL_DELETE) {
+            failures = deleteBatch(mResolvedDocs, parentDoc);
+        } else {
+            failures = deleteInParallel(parentDoc);
+        }
+
+        for (DocumentInfo doc : failures) {
+            onFileFailed(doc);
+        }
+
+        if (isCanceled()) {
+            return;
+        }
+
+        Metrics.logFileOperation(operationType, mResolvedDocs, null);
+    }
+
+    /**
+     * Deletes the resolved documents with a few concurrent calls per provider. Documents are
+     * grouped by authority, as all of them share the parent.
+     *
+     * @return documents which failed to be deleted.
+     */
+    private List<DocumentInfo> deleteInParallel(@Nullable DocumentInfo parentDoc) {
+        final Map<String, List<DocumentInfo>> docsByAuthority = new LinkedHashMap<>();
         for (DocumentInfo doc : mResolvedDocs) {
+            docsByAuthority.computeIfAbsent(doc.authority, k -> new ArrayList<>()).add(doc);
+        }
+
+        final List<List<DocumentInfo>> batches = new ArrayList<>();
+        for (List<DocumentInfo> docs : docsByAuthority.values()) {
+            // Deal documents round-robin, so that the order of deletion roughly follows the
+            // order of selection.
+            final int numBatches = Math.min(MAX_CONCURRENT_DELETES,
+                    (docs.size() + MIN_DOCS_FOR_PARALLEL_DELETE - 1)
+                            / MIN_DOCS_FOR_PARALLEL_DELETE);
+            final int first = batches.size();
+            for (int i = 0; i < numBatches; ++i) {
+                batches.add(new ArrayList<>(docs.size() / numBatches + 1));
+            }
+            for (int i = 0; i < docs.size(); ++i) {
+                batches.get(first + i % numBatches).add(docs.get(i));
+            }
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(batches.size());
+        final List<Future<List<DocumentInfo>>> results = new ArrayList<>(batches.size());
+        for (List<DocumentInfo> batch : batches) {
+            results.add(executor.submit(() -> deleteBatch(batch, parentDoc)));
+        }
+        executor.shutdown();
+
+        final List<DocumentInfo> failures = new ArrayList<>();
+        for (int i = 0; i < results.size(); ++i) {
+            try {
+                failures.addAll(results.get(i).get());
+            } catch (ExecutionException e) {
+                Log.e(TAG, "Unexpected failure in a batch of deletions.", e);
+                failures.addAll(batches.get(i));
+            } catch (InterruptedException e) {
+                Log.w(TAG, "Interrupted while waiting for deletions.", e);
+                Thread.currentThread().interrupt();
+                executor.shutdownNow();
+                failures.addAll(batches.get(i));
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Deletes the documents one by one. May be called from worker threads.
+     *
+     * @return documents which failed to be deleted.
+     */
+    private List<DocumentInfo> deleteBatch(List<DocumentInfo> docs,
+            @Nullable DocumentInfo parentDoc) {
+        final List<DocumentInfo> failures = new ArrayList<>();
+        for (DocumentInfo doc : docs) {
+            if (isCanceled()) {
+                break;
+            }
+
             if (DEBUG) {
                 Log.d(TAG, "Deleting document @ " + doc.derivedUri);
             }
@@ -122,16 +223,12 @@ final class DeleteJob extends ResolvedResourcesJob {
                 Metrics.logFileOperationFailure(
                         appContext, MetricConsts.SUBFILEOP_DELETE_DOCUMENT, doc.derivedUri);
                 Log.e(TAG, "Failed to delete document @ " + doc.derivedUri, e);
-                onFileFailed(doc);
+                failures.add(doc);
             }
 
-            mDocsProcessed++;
-            if (isCanceled()) {
-                return;
-            }
+            mDocsProcessed.incrementAndGet();
         }
-
-        Metrics.logFileOperation(operationType, mResolvedDocs, null);
+        return failures;
     }
 
     @Override
@@ -0,0 +1,317 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.services;
+
+import static com.android.documentsui.base.Providers.AUTHORITY_DOWNLOADS;
+import static com.android.documentsui.base.Providers.AUTHORITY_STORAGE;
+import static com.android.documentsui.base.SharedMinimal.DEBUG;
+
+import android.net.Uri;
+import android.os.SystemClock;
+import android.provider.DocumentsContract;
+import android.util.Log;
+
+import androidx.annotation.VisibleForTesting;
+
+import com.android.documentsui.archives.ArchiveId;
+import com.android.documentsui.archives.ArchivesProvider;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.function.LongSupplier;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * Runs jobs on a shared executor, one "lane" per storage device. Jobs whose sources and
+ * destinations live on different devices run concurrently, while jobs sharing a device are
+ * serialised so that they don't thrash it. Among queued jobs, small ones go before large ones,
+ * unless a large one has been waiting for too long.
+ *
+ * <p>Working out the lanes and weight of a job may take I/O, e.g. reading its clip and sizing its
+ * sources, so it can be done on a separate executor while the job waits in the queue.
+ */
+final class DeviceLaneScheduler {
+
+    private static final String TAG = "DeviceLaneScheduler";
+
+    // Queued jobs waiting for longer than this are no longer overtaken by smaller ones.
+    @VisibleForTesting
+    static final long STARVATION_MILLIS = 30 * 1000;
+
+    // Lane of storage backed by the primary shared storage, no matter which provider serves it.
+    private static final String LANE_PRIMARY = "primary";
+
+    private final Object mLock = new Object();
+    private final ExecutorService mExecutor;
+    private final Executor mPlacingExecutor;
+    private final int mMaxRunning;
+    private final LongSupplier mElapsedRealtime;
+
+    @GuardedBy("mLock")
+    private final List<Entry> mPending = new ArrayList<>();
+
+    @GuardedBy("mLock")
+    private final Set<String> mBusyLanes = new HashSet<>();
+
+    @GuardedBy("mLock")
+    private int mRunning;
+
+    @GuardedBy("mLock")
+    private long mNextSequence;
+
+    /**
+     * @param placingExecutor executor to work out lanes and weights of jobs on. See
+     *     {@link #schedule(Job, Callable)}.
+     */
+    DeviceLaneScheduler(ExecutorService executor, Executor placingExecutor, int maxRunning) {
+        this(executor, placingExecutor, maxRunning, SystemClock::elapsedRealtime);
+    }
+
+    @VisibleForTesting
+    DeviceLaneScheduler(ExecutorService executor, Executor placingExecutor, int maxRunning,
+            LongSupplier elapsedRealtime) {
+        assert(maxRunning > 0);
+        mExecutor = executor;
+        mPlacingExecutor = placingExecutor;
+        mMaxRunning = maxRunning;
+        mElapsedRealtime = elapsedRealtime;
+    }
+
+    /**
+     * Schedules a job to run once all of its lanes are free.
+     *
+     * @param lanes lanes of the devices the job reads from and writes to. See {@link #getLane}.
+     * @param weight estimated size of the job. Lighter jobs are started first.
+     * @return future of the job, which is done once the job ran or was dropped.
+     */
+    Future<?> schedule(Job job, Set<String> lanes, long weight) {
+        final Entry entry = new Entry(job, lanes, weight);
+        synchronized (mLock) {
+            entry.sequence = mNextSequence++;
+            entry.enqueueTime = mElapsedRealtime.getAsLong();
+            mPending.add(entry);
+            if (DEBUG) {
+                Log.d(TAG, "Queued " + job.id + " on lanes " + lanes + " with weight " + weight);
+            }
+            dispatchLocked();
+        }
+        return entry.task;
+    }
+
+    /**
+     * Schedules a job whose lanes and weight are worked out by {@code placer} on the placing
+     * executor. The job doesn't start before they are known, but it queues from now on, so that
+     * it may not be overtaken by jobs scheduled later for having been placed sooner.
+     *
+     * @return future of the job, which is done once the job ran or was dropped.
+     */
+    Future<?> schedule(Job job, Callable<Placement> placer) {
+        final Entry entry = new Entry(job, Collections.emptySet(), 0);
+        entry.placed = false;
+        synchronized (mLock) {
+            entry.sequence = mNextSequence++;
+            entry.enqueueTime = mElapsedRealtime.getAsLong();
+            mPending.add(entry);
+        }
+
+        mPlacingExecutor.execute(() -> {
+            Placement placement;
+            try {
+                placement = placer.call();
+            } catch (Exception e) {
+                // The job will most likely fail on its own, so it doesn't matter where it runs.
+                Log.w(TAG, "Failed to place " + job.id, e);
+                placement = new Placement(Collections.emptySet(), 0);
+            }
+            synchronized (mLock) {
+                entry.lanes = placement.lanes;
+                entry.weight = placement.weight;
+                entry.placed = true;
+                if (DEBUG) {
+                    Log.d(TAG, "Placed " + job.id + " on lanes " + entry.lanes + " with weight "
+                            + entry.weight);
+                }
+                dispatchLocked();
+            }
+        });
+        return entry.task;
+    }
+
+    /**
+     * Drops a job that hasn't started yet.
+     *
+     * @return true if the job was queued and is now dropped, false if it is already running or
+     *     done.
+     */
+    boolean cancelPending(Job job) {
+        synchronized (mLock) {
+            for (int i = 0; i < mPending.size(); ++i) {
+                final Entry entry = mPending.get(i);
+                if (entry.job == job) {
+                    mPending.remove(i);
+                    entry.task.cancel(false);
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Drops all queued jobs.
+     *
+     * @return the dropped jobs.
+     */
+    List<Runnable> shutdown() {
+        synchronized (mLock) {
+            final List<Runnable> dropped = new ArrayList<>(mPending.size());
+            for (Entry entry : mPending) {
+                dropped.add(entry.job);
+            }
+            mPending.clear();
+            return dropped;
+        }
+    }
+
+    @GuardedBy("mLock")
+    private void dispatchLocked() {
+        if (mPending.isEmpty() || mRunning >= mMaxRunning) {
+            return;
+        }
+
+        final long now = mElapsedRealtime.getAsLong();
+        final List<Entry> candidates = new ArrayList<>(mPending.size());
+        for (Entry entry : mPending) {
+            if (entry.placed) {
+                candidates.add(entry);
+            }
+        }
+        Collections.sort(candidates, Comparator
+                .comparing((Entry e) -> now - e.enqueueTime < STARVATION_MILLIS)
+                .thenComparingLong(e -> e.weight)
+                .thenComparingLong(e -> e.sequence));
+
+        for (Entry entry : candidates) {
+            if (mRunning >= mMaxRunning) {
+                return;
+            }
+            if (!Collections.disjoint(mBusyLanes, entry.lanes)) {
+                continue;
+            }
+
+            mPending.remove(entry);
+            mBusyLanes.addAll(entry.lanes);
+            mRunning++;
+            if (DEBUG) {
+                Log.d(TAG, "Starting " + entry.job.id + ". Busy lanes: " + mBusyLanes);
+            }
+            mExecutor.execute(() -> run(entry));
+        }
+    }
+
+    private void run(Entry entry) {
+        try {
+            entry.task.run();
+        } finally {
+            synchronized (mLock) {
+                mBusyLanes.removeAll(entry.lanes);
+                mRunning--;
+                dispatchLocked();
+            }
+        }
+    }
+
+    /**
+     * @return the lane of the device holding the document at {@code uri}. Documents of the same
+     *     provider are assumed to share a device, except for external storage which exposes one
+     *     root per volume.
+     */
+    static String getLane(Uri uri) {
+        final String authority = uri.getAuthority();
+        if (ArchivesProvider.AUTHORITY.equals(authority)) {
+            // Archived documents are read from, or written to, the archive file itself.
+            final @Nullable String documentId = getDocumentIdOrNull(uri);
+            try {
+                if (documentId != null) {
+                    return getLane(ArchiveId.fromDocumentId(documentId).mArchiveUri);
+                }
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Malformed archive document id: " + documentId);
+            }
+        } else if (AUTHORITY_DOWNLOADS.equals(authority)) {
+            return LANE_PRIMARY;
+        } else if (AUTHORITY_STORAGE.equals(authority)) {
+            // Document ids are of the form "<volume>:<path>", e.g. "primary:DCIM/foo.jpg".
+            final @Nullable String documentId = getDocumentIdOrNull(uri);
+            final int split = documentId != null ? documentId.indexOf(':') : -1;
+            if (split > 0) {
+                final String volume = documentId.substring(0, split);
+                return LANE_PRIMARY.equals(volume) ? LANE_PRIMARY : authority + "/" + volume;
+            }
+        }
+        return authority;
+    }
+
+    private static @Nullable String getDocumentIdOrNull(Uri uri) {
+        try {
+            return DocumentsContract.getDocumentId(uri);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Lanes and weight of a job. See {@link #schedule(Job, Set, long)}.
+     */
+    static final class Placement {
+        final Set<String> lanes;
+        final long weight;
+
+        Placement(Set<String> lanes, long weight) {
+            this.lanes = lanes;
+            this.weight = weight;
+        }
+    }
+
+    private static final class Entry {
+        final Job job;
+        final FutureTask<Void> task;
+        Set<String> lanes;
+        long weight;
+        boolean placed = true;
+        long sequence;
+        long enqueueTime;
+
+        Entry(Job job, Set<String> lanes, long weight) {
+            this.job = job;
+            this.lanes = lanes;
+            this.weight = weight;
+            this.task = new FutureTask<>(job, null);
+        }
+    }
+}
@@ -0,0 +1,456 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.services;
+
+import static android.content.ContentResolver.wrap;
+import static android.provider.DocumentsContract.getDocumentId;
+
+import static com.android.documentsui.base.SharedMinimal.DEBUG;
+import static com.android.documentsui.services.FileOperationService.OPERATION_EXTRACT;
+
+import android.app.Notification;
+import android.app.Notification.Builder;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.net.Uri;
+import android.os.FileUtils;
+import android.os.Messenger;
+import android.os.OperationCanceledException;
+import android.os.ParcelFileDescriptor;
+import android.os.RemoteException;
+import android.provider.DocumentsContract;
+import android.provider.DocumentsContract.Document;
+import android.util.ArrayMap;
+import android.util.Log;
+
+import com.android.documentsui.Metrics;
+import com.android.documentsui.R;
+import com.android.documentsui.archives.Archive;
+import com.android.documentsui.archives.ArchiveId;
+import com.android.documentsui.archives.ArchivesProvider;
+import com.android.documentsui.archives.SequentialArchiveReader;
+import com.android.documentsui.base.DocumentInfo;
+import com.android.documentsui.base.DocumentStack;
+import com.android.documentsui.base.Features;
+import com.android.documentsui.base.UserId;
+import com.android.documentsui.clipping.UrisSupplier;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+/**
+ * Extracts documents out of an archive. Entries of archives which can only be read sequentially
+ * (tar based and 7z) are extracted in a single pass over the archive, instead of one pass per
+ * extracted file. ZIP archives are read at random, so they are copied like any other documents.
+ */
+final class ExtractJob extends CopyJob {
+
+    private static final String TAG = "ExtractJob";
+
+    // Small entries are read into memory and written to the destination on a pool of threads,
+    // while the archive is read further. Larger ones are written as they're read.
+    private static final int WRITER_THREADS = 4;
+    private static final int MAX_BUFFERED_ENTRY_BYTES = 1024 * 1024;
+    private static final int MAX_BUFFERED_BYTES = 16 * 1024 * 1024;
+
+    private final Object mProgressLock = new Object();
+
+    // Archive the sources belong to, if all of them belong to the same one. Resolved lazily.
+    private boolean mArchiveResolved;
+    private @Nullable Uri mArchiveUri;
+    private @Nullable String mArchiveMimeType;
+
+    /**
+     * @see @link {@link Job} constructor for most param descriptions.
+     */
+    ExtractJob(Context service, Listener listener, String id, DocumentStack destination,
+            UrisSupplier srcs, Messenger messenger, Features features) {
+        super(service, listener, id, OPERATION_EXTRACT, destination, srcs, messenger, features);
+    }
+
+    @Override
+    Builder createProgressBuilder() {
+        return super.createProgressBuilder(
+                service.getString(R.string.extract_notification_title),
+                R.drawable.ic_menu_extract,
+                service.getString(android.R.string.cancel),
+                R.drawable.ic_cab_cancel);
+    }
+
+    @Override
+    public Notification getSetupNotification() {
+        return getSetupNotification(service.getString(R.string.extract_preparing));
+    }
+
+    @Override
+    public Notification getProgressNotification() {
+        return getProgressNotification(R.string.copy_remaining);
+    }
+
+    @Override
+    Notification getFailureNotification() {
+        return getFailureNotification(
+                R.plurals.copy_error_notification_title, R.drawable.ic_menu_extract);
+    }
+
+    @Override
+    boolean isResumable() {
+        // Entries extracted in a single pass aren't journaled one by one.
+        return !isStreamable(true /* seekable */);
+    }
+
+    @Override
+    void start() {
+        if (!isStreamable(true /* seekable */)) {
+            super.start();
+            return;
+        }
+
+        final ParcelFileDescriptor descriptor;
+        try {
+            descriptor = getSourceResolver().openFileDescriptor(mArchiveUri, "r", mSignal);
+        } catch (FileNotFoundException | OperationCanceledException | RuntimeException e) {
+            Log.e(TAG, "Failed to open " + mArchiveUri, e);
+            failAll(mResolvedDocs);
+            return;
+        }
+
+        if (!isStreamable(Archive.canSeek(descriptor))) {
+            FileUtils.closeQuietly(descriptor);
+            super.start();
+            return;
+        }
+
+        if (DEBUG) {
+            Log.d(TAG, "Extracting " + mResolvedDocs.size() + " documents from " + mArchiveUri
+                    + " in a single pass.");
+        }
+
+        startProgress();
+        final Set<DocumentInfo> failed = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        final Set<DocumentInfo> found = new HashSet<>();
+        try (SequentialArchiveReader reader =
+                SequentialArchiveReader.create(descriptor, mArchiveMimeType)) {
+            new Extraction(reader, failed, found).run();
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Failed to extract from " + mArchiveUri, e);
+            failAll(mResolvedDocs);
+            return;
+        }
+
+        for (DocumentInfo doc : mResolvedDocs) {
+            if (failed.contains(doc) || !found.contains(doc)) {
+                onFileFailed(doc);
+            } else {
+                onDocumentCompleted();
+            }
+        }
+
+        Metrics.logFileOperation(operationType, mResolvedDocs, mDstInfo);
+    }
+
+    private void onBytesWritten(long bytes) {
+        // Entries are written on many threads at once.
+        synchronized (mProgressLock) {
+            makeCopyProgress(bytes);
+        }
+    }
+
+    private void failAll(Iterable<DocumentInfo> docs) {
+        for (DocumentInfo doc : docs) {
+            onFileFailed(doc);
+        }
+    }
+
+    /**
+     * @return whether the sources are entries of a single archive which is read sequentially.
+     * @param seekable whether the archive is available as a seekable descriptor.
+     */
+    private boolean isStreamable(boolean seekable) {
+        if (!mArchiveResolved) {
+            mArchiveResolved = true;
+            resolveArchive();
+        }
+        return mArchiveUri != null
+                && SequentialArchiveReader.isSupported(mArchiveMimeType, seekable);
+    }
+
+    /**
+     * @return resolver of the user the sources belong to. Sources are resolved for the default
+     *     user until they are set up.
+     */
+    private ContentResolver getSourceResolver() {
+        final UserId userId =
+                mResolvedDocs.isEmpty() ? UserId.DEFAULT_USER : mResolvedDocs.get(0).userId;
+        return userId.getContentResolver(service);
+    }
+
+    private void resolveArchive() {
+        Uri archiveUri = null;
+        try {
+            for (Uri uri : mResourceUris.getUris(appContext)) {
+                if (!ArchivesProvider.AUTHORITY.equals(uri.getAuthority())) {
+                    return;
+                }
+                final Uri uriOfArchive = ArchiveId.fromDocumentId(getDocumentId(uri)).mArchiveUri;
+                if (archiveUri != null && !archiveUri.equals(uriOfArchive)) {
+                    return;
+                }
+                archiveUri = uriOfArchive;
+            }
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Failed to resolve the archive. Extracting documents one by one.", e);
+            return;
+        }
+
+        if (archiveUri != null) {
+            mArchiveMimeType = getSourceResolver().getType(archiveUri);
+            mArchiveUri = mArchiveMimeType != null ? archiveUri : null;
+        }
+    }
+
+    /**
+     * One pass over the archive, writing every entry under the selected documents to the
+     * destination.
+     */
+    private class Extraction {
+        private final SequentialArchiveReader mReader;
+        private final Set<DocumentInfo> mFailed;
+        private final Set<DocumentInfo> mFound;
+
+        // Selected documents by their path within the archive. Paths of directories end
+        // with "/".
+        private final Map<String, DocumentInfo> mSelected = new ArrayMap<>();
+        // Created directories by their path relative to the destination, "" being the
+        // destination itself.
+        private final Map<String, Uri> mDirs = new ArrayMap<>();
+
+        private final ExecutorService mWriters = Executors.newFixedThreadPool(WRITER_THREADS);
+        private final Semaphore mBufferedBytes = new Semaphore(MAX_BUFFERED_BYTES);
+
+        Extraction(SequentialArchiveReader reader, Set<DocumentInfo> failed,
+                Set<DocumentInfo> found) {
+            mReader = reader;
+            mFailed = failed;
+            mFound = found;
+            for (DocumentInfo doc : mResolvedDocs) {
+                mSelected.put(ArchiveId.fromDocumentId(doc.documentId).mPath, doc);
+            }
+            mDirs.put("", mDstInfo.derivedUri);
+        }
+
+        void run() throws IOException {
+            try {
+                while (!isCanceled() && mReader.moveToNext()) {
+                    final String path = mReader.getPath();
+                    final DocumentInfo doc = findSelected(path);
+                    if (doc == null || mFailed.contains(doc)) {
+                        continue;
+                    }
+                    mFound.add(doc);
+                    extractEntry(doc, path);
+                }
+            } finally {
+                mWriters.shutdown();
+                awaitWriters();
+            }
+        }
+
+        private void extractEntry(DocumentInfo doc, String path) throws IOException {
+            // Selected documents are extracted along with their names, except for the root of
+            // the archive.
+            final String selectedPath = ArchiveId.fromDocumentId(doc.documentId).mPath;
+            final String relativePath = path.substring(
+                    "/".equals(selectedPath) ? 1 : getParentPath(selectedPath).length());
+            try {
+                if (mReader.isDirectory()) {
+                    getOrCreateDir(relativePath);
+                    return;
+                }
+
+                final Uri dirUri = getOrCreateDir(getParentPath(relativePath));
+                final String name = relativePath.substring(getParentPath(relativePath).length());
+                final String mimeType = mReader.getMimeType();
+                final long size = mReader.getSize();
+
+                if (size < 0 || size > MAX_BUFFERED_ENTRY_BYTES) {
+                    writeEntry(doc, dirUri, mimeType, name, mReader.getInputStream());
+                    return;
+                }
+
+                final byte[] data = new byte[(int) size];
+                readFully(mReader.getInputStream(), data);
+                mBufferedBytes.acquireUninterruptibly(data.length);
+                mWriters.execute(() -> {
+                    try {
+                        writeEntry(doc, dirUri, mimeType, name, data);
+                    } finally {
+                        mBufferedBytes.release(data.length);
+                    }
+                });
+            } catch (ResourceException e) {
+                Log.e(TAG, "Failed to extract " + path, e);
+                mFailed.add(doc);
+            }
+        }
+
+        /**
+         * @return the selected document which is or contains the entry at the path, if any.
+         */
+        private @Nullable DocumentInfo findSelected(String path) {
+            String current = path;
+            while (!current.isEmpty()) {
+                final DocumentInfo doc = mSelected.get(current);
+                if (doc != null) {
+                    return doc;
+                }
+                current = getParentPath(current);
+            }
+            return null;
+        }
+
+        private Uri getOrCreateDir(String relativePath) throws ResourceException {
+            final Uri cached = mDirs.get(relativePath);
+            if (cached != null) {
+                return cached;
+            }
+
+            final String parentPath = getParentPath(relativePath);
+            final Uri parentUri = getOrCreateDir(parentPath);
+            final String name = relativePath.substring(
+                    parentPath.length(), relativePath.length() - 1);
+            final Uri uri = createDocument(parentUri, Document.MIME_TYPE_DIR, name);
+            mDirs.put(relativePath, uri);
+            return uri;
+        }
+
+        private Uri createDocument(Uri parentUri, String mimeType, String name)
+                throws ResourceException {
+            final Uri uri;
+            try {
+                uri = DocumentsContract.createDocument(
+                        wrap(getClient(mDstInfo)), parentUri, mimeType, name);
+            } catch (FileNotFoundException | RemoteException | RuntimeException e) {
+                throw new ResourceException(
+                        "Couldn't create document in %s due to an exception.", parentUri, e);
+            }
+            if (uri == null) {
+                throw new ResourceException("Couldn't create document in %s.", parentUri);
+            }
+            return uri;
+        }
+
+        private void writeEntry(DocumentInfo doc, Uri dirUri, String mimeType, String name,
+                byte[] data) {
+            Uri uri = null;
+            try {
+                uri = createDocument(dirUri, mimeType, name);
+                try (ParcelFileDescriptor descriptor = getClient(mDstInfo).openFile(
+                        uri, "w", mSignal);
+                        OutputStream out =
+                                new ParcelFileDescriptor.AutoCloseOutputStream(descriptor)) {
+                    out.write(data);
+                }
+                onBytesWritten(data.length);
+            } catch (ResourceException | IOException | RemoteException | RuntimeException e) {
+                Log.e(TAG, "Failed to write " + name, e);
+                mFailed.add(doc);
+                deleteQuietly(uri);
+            }
+        }
+
+        private void writeEntry(DocumentInfo doc, Uri dirUri, String mimeType, String name,
+                InputStream in) throws ResourceException {
+            final Uri uri = createDocument(dirUri, mimeType, name);
+            try (ParcelFileDescriptor descriptor = getClient(mDstInfo).openFile(
+                    uri, "w", mSignal);
+                    OutputStream out =
+                            new ParcelFileDescriptor.AutoCloseOutputStream(descriptor)) {
+                final byte[] buffer = new byte[32 * 1024];
+                int bytes;
+                while ((bytes = in.read(buffer)) != -1) {
+                    if (isCanceled()) {
+                        throw new OperationCanceledException();
+                    }
+                    out.write(buffer, 0, bytes);
+                    onBytesWritten(bytes);
+                }
+            } catch (IOException | RemoteException | RuntimeException e) {
+                deleteQuietly(uri);
+                throw new ResourceException("Failed to write %s due to an exception.", uri, e);
+            }
+        }
+
+        private void deleteQuietly(@Nullable Uri uri) {
+            if (uri == null) {
+                return;
+            }
+            try {
+                DocumentsContract.deleteDocument(wrap(getClient(mDstInfo)), uri);
+            } catch (FileNotFoundException | RemoteException | RuntimeException e) {
+                Log.w(TAG, "Failed to clean up " + uri, e);
+            }
+        }
+
+        private void awaitWriters() {
+            try {
+                while (!mWriters.awaitTermination(1, TimeUnit.SECONDS)) {
+                    if (isCanceled()) {
+                        mWriters.shutdownNow();
+                    }
+                }
+            } catch (InterruptedException e) {
+                mWriters.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * @return path of the directory containing the path, ending with "/". Empty for top level
+     *     relative paths, and for "/".
+     */
+    private static String getParentPath(String path) {
+        final int end = path.endsWith("/") ? path.length() - 1 : path.length();
+        final int lastSlash = path.lastIndexOf('/', end - 1);
+        return lastSlash == -1 ? "" : path.substring(0, lastSlash + 1);
+    }
+
+    private static void readFully(InputStream in, byte[] data) throws IOException {
+        int offset = 0;
+        while (offset < data.length) {
+            final int bytes = in.read(data, offset, data.length - offset);
+            if (bytes == -1) {
+                throw new IOException("Unexpected end of the entry.");
+            }
+            offset += bytes;
+        }
+    }
+}
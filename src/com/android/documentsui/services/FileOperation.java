@@ -219,10 +219,9 @@ public abstract class FileOperation implements Parcelable {
             return builder.toString();
         }
 
-        // TODO: Replace CopyJob with ExtractJob.
         @Override
         CopyJob createJob(Context service, Job.Listener listener, String id, Features features) {
-            return new CopyJob(
+            return new ExtractJob(
                     service, listener, id, getDestination(), getSrc(), getMessenger(), features);
         }
 
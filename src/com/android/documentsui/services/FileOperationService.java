@@ -16,6 +16,8 @@
 
 package com.android.documentsui.services;
 
+import static com.android.documentsui.base.DocumentInfo.getCursorLong;
+import static com.android.documentsui.base.DocumentInfo.getCursorString;
 import static com.android.documentsui.base.SharedMinimal.DEBUG;
 
 import android.app.Notification;
@@ -24,28 +26,41 @@ import android.app.NotificationManager;
 import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
+import android.database.Cursor;
+import android.net.Uri;
 import android.os.Handler;
 import android.os.IBinder;
 import android.os.PowerManager;
 import android.os.UserManager;
+import android.provider.DocumentsContract;
+import android.provider.DocumentsContract.Document;
 import android.util.Log;
 
 import androidx.annotation.IntDef;
 import androidx.annotation.VisibleForTesting;
 
+import com.android.documentsui.DocumentsApplication;
 import com.android.documentsui.R;
+import com.android.documentsui.base.DocumentInfo;
 import com.android.documentsui.base.Features;
+import com.android.documentsui.clipping.UrisSupplier;
 
+import java.io.IOException;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
 
 public class FileOperationService extends Service implements Job.Listener {
@@ -67,6 +82,9 @@ public class FileOperationService extends Service implements Job.Listener {
     public static final String EXTRA_OPERATION = "com.android.documentsui.OPERATION";
     public static final String EXTRA_CANCEL = "com.android.documentsui.CANCEL";
 
+    // Extra used to resume operations interrupted by the death of the process.
+    public static final String EXTRA_RESUME = "com.android.documentsui.RESUME";
+
     @IntDef({
             OPERATION_UNKNOWN,
             OPERATION_COPY,
@@ -98,9 +116,19 @@ public class FileOperationService extends Service implements Job.Listener {
 
     static final String NOTIFICATION_CHANNEL_ID = "channel_id";
 
-    // This is a temporary solution, we will gray out the UI when a transaction is in progress to
-    // not enable users to make a transaction.
-    private static final int POOL_SIZE = 1;  // Allow only 1 executor operation
+    // Upper bound of jobs running at once. Jobs sharing a storage device are serialised by
+    // DeviceLaneScheduler regardless, so this only caps jobs on distinct devices.
+    private static final int POOL_SIZE = 3;
+
+    // Sources with more documents than this aren't sized any further when weighing jobs. They
+    // are about as heavy as jobs get anyway.
+    private static final int MAX_WEIGHED_DOCUMENTS = 1000;
+
+    private static final String[] WEIGHT_PROJECTION = new String[] {
+            Document.COLUMN_DOCUMENT_ID,
+            Document.COLUMN_MIME_TYPE,
+            Document.COLUMN_SIZE
+    };
 
     @VisibleForTesting static final int NOTIFICATION_ID_PROGRESS = 1;
     private static final int NOTIFICATION_ID_FAILURE = 2;
@@ -114,6 +142,12 @@ public class FileOperationService extends Service implements Job.Listener {
     // Use a separate thread pool to prioritize deletions.
     @VisibleForTesting ExecutorService deletionExecutor;
 
+    // Works out lanes and weights of copy-like jobs, off the main thread.
+    @VisibleForTesting ExecutorService placingExecutor;
+
+    // Decides which jobs run concurrently on the executor.
+    private DeviceLaneScheduler mScheduler;
+
     // Use a handler to schedule monitor tasks.
     @VisibleForTesting Handler handler;
 
@@ -149,6 +183,12 @@ public class FileOperationService extends Service implements Job.Listener {
             deletionExecutor = Executors.newCachedThreadPool();
         }
 
+        if (placingExecutor == null) {
+            placingExecutor = Executors.newCachedThreadPool();
+        }
+
+        mScheduler = new DeviceLaneScheduler(executor, placingExecutor, POOL_SIZE);
+
         if (handler == null) {
             // Monitor tasks are small enough to schedule them on main thread.
             handler = new Handler();
@@ -188,10 +228,13 @@ public class FileOperationService extends Service implements Job.Listener {
             Log.d(TAG, "Shutting down executor.");
         }
 
+        List<Runnable> unscheduledCopies = mScheduler.shutdown();
         List<Runnable> unfinishedCopies = executor.shutdownNow();
         List<Runnable> unfinishedDeletions = deletionExecutor.shutdownNow();
-        List<Runnable> unfinished =
-                new ArrayList<>(unfinishedCopies.size() + unfinishedDeletions.size());
+        placingExecutor.shutdownNow();
+        List<Runnable> unfinished = new ArrayList<>(unscheduledCopies.size()
+                + unfinishedCopies.size() + unfinishedDeletions.size());
+        unfinished.addAll(unscheduledCopies);
         unfinished.addAll(unfinishedCopies);
         unfinished.addAll(unfinishedDeletions);
         if (!unfinished.isEmpty()) {
@@ -200,6 +243,8 @@ public class FileOperationService extends Service implements Job.Listener {
 
         executor = null;
         deletionExecutor = null;
+        placingExecutor = null;
+        mScheduler = null;
         handler = null;
 
         if (DEBUG) {
@@ -212,6 +257,13 @@ public class FileOperationService extends Service implements Job.Listener {
         // TODO: Ensure we're not being called with retry or redeliver.
         // checkArgument(flags == 0);  // retry and redeliver are not supported.
 
+        if (intent.hasExtra(EXTRA_RESUME)) {
+            // Track the service supplied id so we can stop the service once we're out of work.
+            mLastServiceId = serviceId;
+            handleResume();
+            return START_NOT_STICKY;
+        }
+
         String jobId = intent.getStringExtra(EXTRA_JOB_ID);
         assert(jobId != null);
 
@@ -233,6 +285,17 @@ public class FileOperationService extends Service implements Job.Listener {
     }
 
     private void handleOperation(String jobId, FileOperation operation) {
+        handleOperation(jobId, operation, null);
+    }
+
+    /**
+     * Schedules a job for the operation.
+     *
+     * @param journal If not null, the job resumes the work recorded in it instead of starting
+     *     over.
+     */
+    private void handleOperation(
+            String jobId, FileOperation operation, @Nullable CopyJournal journal) {
         synchronized (mJobs) {
             if (mWakeLock == null) {
                 mWakeLock = mPowerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, TAG);
@@ -250,11 +313,16 @@ public class FileOperationService extends Service implements Job.Listener {
                 return;
             }
 
+            if (journal != null) {
+                // Only copy-like jobs write journals, so only they may be resumed.
+                ((CopyJob) job).resumeFrom(journal);
+            }
+
             assert (job != null);
             if (DEBUG) {
                 Log.d(TAG, "Scheduling job " + job.id + ".");
             }
-            Future<?> future = getExecutorService(operation.getOpType()).submit(job);
+            Future<?> future = schedule(job, operation);
             mJobs.put(jobId, new JobRecord(job, future));
 
             // Acquire wake lock to keep CPU running until we finish all jobs. Acquire wake lock
@@ -264,6 +332,40 @@ public class FileOperationService extends Service implements Job.Listener {
         }
     }
 
+    /**
+     * Resumes operations which were interrupted before finishing, e.g. because the process was
+     * killed mid-copy. Each gets a new job id, as ids are only unique within a boot.
+     */
+    private void handleResume() {
+        final List<CopyJournal> journals = CopyJournal.loadPending(this);
+        // Resumed jobs say so in their notifications, as the user didn't just ask for them.
+        Log.i(TAG, "Resuming " + journals.size() + " interrupted operation(s).");
+
+        for (CopyJournal journal : journals) {
+            final FileOperation operation;
+            try {
+                operation = new FileOperation.Builder()
+                        .withOpType(journal.opType)
+                        .withSrcs(UrisSupplier.create(
+                                journal.srcs, DocumentsApplication.getClipStore(this)))
+                        .withDestination(journal.destination)
+                        .withSrcParent(journal.srcParent)
+                        .build();
+            } catch (IOException | RuntimeException e) {
+                Log.w(TAG, "Failed to restore an interrupted operation: " + journal, e);
+                journal.delete();
+                continue;
+            }
+            handleOperation(FileOperations.createJobId(), operation, journal);
+        }
+
+        synchronized (mJobs) {
+            if (mJobs.isEmpty()) {
+                handler.post(this::shutdown);
+            }
+        }
+    }
+
     /**
      * Cancels the operation corresponding to job id, identified in "EXTRA_JOB_ID".
      *
@@ -287,6 +389,14 @@ public class FileOperationService extends Service implements Job.Listener {
             JobRecord record = mJobs.get(jobId);
             if (record != null) {
                 record.job.cancel();
+                if (mScheduler.cancelPending(record.job)) {
+                    // The job never started, so it won't report back. Finish it off here.
+                    record.job.onDropped();
+                    deleteJob(record.job);
+                    if (mJobs.isEmpty()) {
+                        handler.post(this::shutdown);
+                    }
+                }
                 updateForegroundState(record.job);
             }
         }
@@ -300,20 +410,87 @@ public class FileOperationService extends Service implements Job.Listener {
         // TODO: Guarantee the job is being finalized
     }
 
-    private ExecutorService getExecutorService(@OpType int operationType) {
-        switch (operationType) {
+    private Future<?> schedule(Job job, FileOperation operation) {
+        switch (operation.getOpType()) {
             case OPERATION_COPY:
             case OPERATION_COMPRESS:
             case OPERATION_EXTRACT:
             case OPERATION_MOVE:
-                return executor;
+                return mScheduler.schedule(job, () -> place(operation));
             case OPERATION_DELETE:
-                return deletionExecutor;
+                return deletionExecutor.submit(job);
             default:
                 throw new UnsupportedOperationException();
         }
     }
 
+    /**
+     * Works out the lanes of the devices the operation reads from and writes to, and its weight.
+     * Sources are assumed to share a device, as they are picked from a single directory. Reads
+     * the clip and queries providers, so it's called on the placing executor.
+     */
+    private DeviceLaneScheduler.Placement place(FileOperation operation) {
+        final Set<String> lanes = new HashSet<>();
+
+        final DocumentInfo dst = operation.getDestination().peek();
+        if (dst != null && dst.derivedUri != null) {
+            lanes.add(DeviceLaneScheduler.getLane(dst.derivedUri));
+        }
+
+        final List<Uri> srcs = new ArrayList<>();
+        try {
+            for (Uri uri : operation.getSrc().getUris(this)) {
+                srcs.add(uri);
+            }
+        } catch (IOException e) {
+            // The job will fail to resolve its sources too, so it doesn't matter where it runs.
+            Log.w(TAG, "Failed to read sources of " + operation, e);
+        }
+        if (!srcs.isEmpty()) {
+            lanes.add(DeviceLaneScheduler.getLane(srcs.get(0)));
+        }
+
+        return new DeviceLaneScheduler.Placement(lanes, getWeight(srcs));
+    }
+
+    /**
+     * @return the total size of the files of {@code srcs}, including those within directories, or
+     *     {@link Long#MAX_VALUE} if there are too many documents to size them all.
+     */
+    private long getWeight(List<Uri> srcs) {
+        final Deque<Uri> queries = new ArrayDeque<>(srcs);
+        long weight = 0;
+        int documents = 0;
+        while (!queries.isEmpty()) {
+            final Uri uri = queries.poll();
+            try (Cursor cursor = getContentResolver().query(
+                    uri, WEIGHT_PROJECTION, null, null, null)) {
+                while (cursor != null && cursor.moveToNext()) {
+                    if (++documents > MAX_WEIGHED_DOCUMENTS) {
+                        return Long.MAX_VALUE;
+                    }
+                    if (Document.MIME_TYPE_DIR.equals(
+                            getCursorString(cursor, Document.COLUMN_MIME_TYPE))) {
+                        final String documentId =
+                                getCursorString(cursor, Document.COLUMN_DOCUMENT_ID);
+                        queries.add(DocumentsContract.isTreeUri(uri)
+                                ? DocumentsContract.buildChildDocumentsUriUsingTree(
+                                        uri, documentId)
+                                : DocumentsContract.buildChildDocumentsUri(
+                                        uri.getAuthority(), documentId));
+                    } else {
+                        // This may be -1 if the size isn't defined. Ignore those cases.
+                        weight += Math.max(0, getCursorLong(cursor, Document.COLUMN_SIZE));
+                    }
+                }
+            } catch (RuntimeException e) {
+                // Only used to order jobs, so an underestimate is fine.
+                Log.w(TAG, "Failed to weigh " + uri, e);
+            }
+        }
+        return weight;
+    }
+
     @GuardedBy("mJobs")
     private void deleteJob(Job job) {
         if (DEBUG) {
@@ -444,9 +621,10 @@ public class FileOperationService extends Service implements Job.Listener {
                 }
 
                 notificationManager.cancel(candidate.id, NOTIFICATION_ID_PROGRESS);
-                Notification notification = (candidate.getState() == Job.STATE_STARTED)
-                        ? candidate.getSetupNotification()
-                        : candidate.getProgressNotification();
+                // Jobs still queued on their lane have nothing to report progress of yet.
+                Notification notification = (candidate.getState() == Job.STATE_SET_UP)
+                        ? candidate.getProgressNotification()
+                        : candidate.getSetupNotification();
                 notificationManager.notify(NOTIFICATION_ID_PROGRESS, notification);
             }
         }
@@ -480,17 +658,27 @@ public class FileOperationService extends Service implements Job.Listener {
         }
     }
 
+    /**
+     * @return the unfinished job furthest along, preferring running jobs over jobs being set up,
+     *     and those over jobs still queued on their lane, or null if there is none.
+     */
     @GuardedBy("mJobs")
     private Job getCandidateForegroundJob() {
-        if (mJobs.isEmpty()) {
-            return null;
-        }
+        Job candidate = null;
         for (JobRecord rec : mJobs.values()) {
-            if (!rec.job.isFinished()) {
-                return rec.job;
+            final Job job = rec.job;
+            if (job.isFinished()) {
+                continue;
+            }
+            if (job.getState() == Job.STATE_SET_UP) {
+                return job;
+            }
+            if (candidate == null || (job.getState() == Job.STATE_STARTED
+                    && candidate.getState() == Job.STATE_CREATED)) {
+                candidate = job;
             }
         }
-        return null;
+        return candidate;
     }
 
     private static final class JobRecord {
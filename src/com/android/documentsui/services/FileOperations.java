@@ -21,11 +21,13 @@ import static com.android.documentsui.base.SharedMinimal.DEBUG;
 import static com.android.documentsui.services.FileOperationService.EXTRA_CANCEL;
 import static com.android.documentsui.services.FileOperationService.EXTRA_JOB_ID;
 import static com.android.documentsui.services.FileOperationService.EXTRA_OPERATION;
+import static com.android.documentsui.services.FileOperationService.EXTRA_RESUME;
 
 import androidx.annotation.IntDef;
 import android.app.Activity;
 import android.content.Context;
 import android.content.Intent;
+import android.os.AsyncTask;
 import androidx.annotation.VisibleForTesting;
 import android.util.Log;
 
@@ -74,6 +76,27 @@ public final class FileOperations {
         return newJobId;
     }
 
+    /**
+     * Resumes copy and move operations which were interrupted by the death of the process, if
+     * there are any. Journals are looked up in the background, as this is called on startup.
+     */
+    public static void resumeInterrupted(Context context) {
+        final Context appContext = context.getApplicationContext();
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(() -> {
+            if (!CopyJournal.hasPending(appContext)) {
+                return;
+            }
+
+            if (DEBUG) {
+                Log.d(TAG, "Resuming interrupted operations.");
+            }
+
+            Intent intent = new Intent(appContext, FileOperationService.class);
+            intent.putExtra(EXTRA_RESUME, true);
+            appContext.startService(intent);
+        });
+    }
+
     @VisibleForTesting
     public static void cancel(Activity activity, String jobId) {
         if (DEBUG) {
@@ -110,6 +110,7 @@ abstract public class Job implements Runnable {
 
     final CancellationSignal mSignal = new CancellationSignal();
 
+    // Guarded by itself, as jobs may call providers from several worker threads.
     private final Map<String, ContentProviderClient> mClients = new HashMap<>();
     private final Features mFeatures;
 
@@ -183,6 +184,12 @@ abstract public class Job implements Runnable {
 
     abstract void finish();
 
+    /**
+     * Called instead of {@link #run} when the job is canceled before it started, so it may drop
+     * state left for it, e.g. a journal to resume from.
+     */
+    void onDropped() {}
+
     abstract void start();
     abstract Notification getSetupNotification();
     abstract Notification getProgressNotification();
@@ -195,18 +202,20 @@ abstract public class Job implements Runnable {
     }
 
     ContentProviderClient getClient(Uri uri) throws RemoteException {
-        ContentProviderClient client = mClients.get(uri.getAuthority());
-        if (client == null) {
-            // Acquire content providers.
-            client = acquireUnstableProviderOrThrow(
-                    getContentResolver(),
-                    uri.getAuthority());
-
-            mClients.put(uri.getAuthority(), client);
-        }
+        synchronized (mClients) {
+            ContentProviderClient client = mClients.get(uri.getAuthority());
+            if (client == null) {
+                // Acquire content providers.
+                client = acquireUnstableProviderOrThrow(
+                        getContentResolver(),
+                        uri.getAuthority());
+
+                mClients.put(uri.getAuthority(), client);
+            }
 
-        assert(client != null);
-        return client;
+            assert(client != null);
+            return client;
+        }
     }
 
     ContentProviderClient getClient(DocumentInfo doc) throws RemoteException {
@@ -214,10 +223,12 @@ abstract public class Job implements Runnable {
     }
 
     void releaseClient(Uri uri) {
-        ContentProviderClient client = mClients.get(uri.getAuthority());
-        if (client != null) {
-            client.close();
-            mClients.remove(uri.getAuthority());
+        synchronized (mClients) {
+            ContentProviderClient client = mClients.get(uri.getAuthority());
+            if (client != null) {
+                client.close();
+                mClients.remove(uri.getAuthority());
+            }
         }
     }
 
@@ -226,8 +237,10 @@ abstract public class Job implements Runnable {
     }
 
     final void cleanup() {
-        for (ContentProviderClient client : mClients.values()) {
-            FileUtils.closeQuietly(client);
+        synchronized (mClients) {
+            for (ContentProviderClient client : mClients.values()) {
+                FileUtils.closeQuietly(client);
+            }
         }
     }
 
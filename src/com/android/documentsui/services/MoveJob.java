@@ -68,6 +68,11 @@ final class MoveJob extends CopyJob {
         mSrcParentUri = srcParent;
     }
 
+    @Override
+    @Nullable Uri getSrcParentUri() {
+        return mSrcParentUri;
+    }
+
     @Override
     Builder createProgressBuilder() {
         return super.createProgressBuilder(
@@ -79,7 +84,8 @@ final class MoveJob extends CopyJob {
 
     @Override
     public Notification getSetupNotification() {
-        return getSetupNotification(service.getString(R.string.move_preparing));
+        return getSetupNotification(service.getString(
+                isResumed() ? R.string.move_resuming : R.string.move_preparing));
     }
 
     @Override
@@ -114,6 +114,14 @@ public abstract class ResolvedResourcesJob extends Job {
         return true;
     }
 
+    /**
+     * Allows sub-classes to skip resources which were fully processed by an earlier run of the
+     * same operation. Such resources are neither resolved nor reported as failures.
+     */
+    boolean isAlreadyProcessed(Uri uri) {
+        return false;
+    }
+
     /**
      * @return number of docs successfully loaded.
      */
@@ -131,6 +139,11 @@ public abstract class ResolvedResourcesJob extends Job {
         int docsLoaded = 0;
         for (Uri uri : uris) {
 
+            if (isAlreadyProcessed(uri)) {
+                docsLoaded++;
+                continue;
+            }
+
             DocumentInfo doc;
             try {
                 doc = DocumentInfo.fromUri(resolver, uri, UserId.DEFAULT_USER);
@@ -0,0 +1,264 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.sorting;
+
+import android.database.AbstractCursor;
+import android.database.ContentObserver;
+import android.database.Cursor;
+
+import androidx.annotation.Nullable;
+
+import com.android.documentsui.base.Lookup;
+import com.android.documentsui.sorting.SortModel.SortDimensionId;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * Cursor wrapper that presents a sorted view of several cursors, such as the results of querying
+ * multiple roots. Ordering is the same as {@link SortingCursorWrapper}, or the order of the
+ * cursors when there is no sorted dimension, like {@link android.database.MergeCursor}. Both
+ * compare rows with {@link SortKey}.
+ *
+ * <p>Providers are asked to sort their results, so cursors usually come in already sorted. Those
+ * are merged in O(n log k) with a heap over the heads of the k cursors, instead of sorting all
+ * the rows again. Providers are not required to honor the sort arguments though, and may sort
+ * e.g. titles with a different collation, so each cursor is checked, and the ones out of order
+ * are sorted on their own before merging.
+ *
+ * <p>Cursors arriving later can be merged into an existing wrapper, keeping the order and sort
+ * keys of the rows already merged. Closing the wrapper closes all cursors, so cursors meant to
+ * be merged again must ignore {@link Cursor#close()}.
+ */
+class MergingCursorWrapper extends AbstractCursor {
+    private final Cursor[] mCursors;
+    private final @SortDimensionId int mSortedId;
+    private final @SortDimension.SortDirection int mSortDirection;
+
+    // Rows of all cursors, in the order of the merged view.
+    private final Row[] mRows;
+
+    private Cursor mCursor;
+
+    MergingCursorWrapper(Cursor[] cursors, @Nullable SortDimension dimension,
+            Lookup<String, String> fileTypeLookup) {
+        this(null, cursors, dimension, fileTypeLookup);
+    }
+
+    /**
+     * @param merged rows to merge the cursors into. If it was sorted differently, rows of its
+     *     cursors are read and merged again.
+     */
+    MergingCursorWrapper(@Nullable MergingCursorWrapper merged, Cursor[] cursors,
+            @Nullable SortDimension dimension, Lookup<String, String> fileTypeLookup) {
+        mSortedId = dimension != null ? dimension.getId() : SortModel.SORT_DIMENSION_ID_UNKNOWN;
+        mSortDirection = dimension != null
+                ? dimension.getSortDirection() : SortDimension.SORT_DIRECTION_NONE;
+        final Comparator<SortKey> comparator =
+                SortKey.createComparator(mSortedId, mSortDirection);
+
+        final boolean reuseRows = merged != null
+                && merged.mSortedId == mSortedId && merged.mSortDirection == mSortDirection;
+        final int mergedCount = merged != null ? merged.mCursors.length : 0;
+        mCursors = new Cursor[mergedCount + cursors.length];
+        if (merged != null) {
+            System.arraycopy(merged.mCursors, 0, mCursors, 0, mergedCount);
+        }
+        System.arraycopy(cursors, 0, mCursors, mergedCount, cursors.length);
+        mCursor = mCursors.length > 0 ? mCursors[0] : null;
+
+        final int firstCursor = reuseRows ? mergedCount : 0;
+        final Row[] rows = mergeCursors(firstCursor, comparator, fileTypeLookup);
+        mRows = reuseRows ? mergeRows(merged.mRows, rows, comparator) : rows;
+    }
+
+    /**
+     * Reads and merges rows of cursors starting at the given index.
+     */
+    private Row[] mergeCursors(
+            int firstCursor, Comparator<SortKey> comparator,
+            Lookup<String, String> fileTypeLookup) {
+        final int cursorCount = mCursors.length - firstCursor;
+        final Row[][] rows = new Row[cursorCount][];
+        int count = 0;
+        for (int i = 0; i < cursorCount; i++) {
+            rows[i] = readRows(mCursors[firstCursor + i], firstCursor + i, mSortedId,
+                    fileTypeLookup);
+            if (!isSorted(rows[i], comparator)) {
+                Arrays.sort(rows[i], comparator);
+            }
+            count += rows[i].length;
+        }
+
+        // Heads of all non-exhausted cursors, by their current row.
+        final int[] heads = new int[cursorCount];
+        final PriorityQueue<Integer> queue = new PriorityQueue<>(Math.max(1, cursorCount),
+                (lhs, rhs) -> {
+                    final int compare = comparator.compare(
+                            rows[lhs][heads[lhs]], rows[rhs][heads[rhs]]);
+                    // Keep rows equal across cursors in the order of the cursors.
+                    return compare != 0 ? compare : Integer.compare(lhs, rhs);
+                });
+        for (int i = 0; i < cursorCount; i++) {
+            if (rows[i].length > 0) {
+                queue.add(i);
+            }
+        }
+
+        final Row[] merged = new Row[count];
+        for (int i = 0; i < count; i++) {
+            final int cursorIndex = queue.poll();
+            merged[i] = rows[cursorIndex][heads[cursorIndex]];
+            if (++heads[cursorIndex] < rows[cursorIndex].length) {
+                queue.add(cursorIndex);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Merges two sorted runs of rows in linear time. Rows of the first run go first on ties.
+     */
+    private static Row[] mergeRows(Row[] first, Row[] second, Comparator<SortKey> comparator) {
+        final Row[] merged = new Row[first.length + second.length];
+        int i = 0;
+        int j = 0;
+        for (int k = 0; k < merged.length; k++) {
+            if (j == second.length
+                    || (i < first.length && comparator.compare(first[i], second[j]) <= 0)) {
+                merged[k] = first[i++];
+            } else {
+                merged[k] = second[j++];
+            }
+        }
+        return merged;
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        for (Cursor cursor : mCursors) {
+            cursor.close();
+        }
+    }
+
+    @Override
+    public boolean onMove(int oldPosition, int newPosition) {
+        final Row row = mRows[newPosition];
+        mCursor = mCursors[row.cursor];
+        return mCursor.moveToPosition(row.position);
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return mCursor != null ? mCursor.getColumnNames() : new String[0];
+    }
+
+    @Override
+    public int getCount() {
+        return mRows.length;
+    }
+
+    @Override
+    public double getDouble(int column) {
+        return mCursor.getDouble(column);
+    }
+
+    @Override
+    public float getFloat(int column) {
+        return mCursor.getFloat(column);
+    }
+
+    @Override
+    public int getInt(int column) {
+        return mCursor.getInt(column);
+    }
+
+    @Override
+    public long getLong(int column) {
+        return mCursor.getLong(column);
+    }
+
+    @Override
+    public short getShort(int column) {
+        return mCursor.getShort(column);
+    }
+
+    @Override
+    public String getString(int column) {
+        return mCursor.getString(column);
+    }
+
+    @Override
+    public byte[] getBlob(int column) {
+        return mCursor.getBlob(column);
+    }
+
+    @Override
+    public int getType(int column) {
+        return mCursor.getType(column);
+    }
+
+    @Override
+    public boolean isNull(int column) {
+        return mCursor.isNull(column);
+    }
+
+    @Override
+    public void registerContentObserver(ContentObserver observer) {
+        for (Cursor cursor : mCursors) {
+            cursor.registerContentObserver(observer);
+        }
+    }
+
+    @Override
+    public void unregisterContentObserver(ContentObserver observer) {
+        for (Cursor cursor : mCursors) {
+            cursor.unregisterContentObserver(observer);
+        }
+    }
+
+    private static Row[] readRows(Cursor cursor, int cursorIndex, @SortDimensionId int id,
+            Lookup<String, String> fileTypeLookup) {
+        final Row[] rows = new Row[cursor.getCount()];
+        cursor.moveToPosition(-1);
+        for (int i = 0; i < rows.length; i++) {
+            cursor.moveToNext();
+            final Row row = new Row();
+            row.cursor = cursorIndex;
+            row.position = i;
+            row.read(cursor, id, fileTypeLookup);
+            rows[i] = row;
+        }
+        return rows;
+    }
+
+    private static boolean isSorted(Row[] rows, Comparator<SortKey> comparator) {
+        for (int i = 1; i < rows.length; i++) {
+            if (comparator.compare(rows[i - 1], rows[i]) > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static class Row extends SortKey {
+        int cursor;
+        int position;
+    }
+}
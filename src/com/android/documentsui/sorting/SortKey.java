@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.sorting;
+
+import static com.android.documentsui.base.DocumentInfo.getCursorLong;
+import static com.android.documentsui.base.DocumentInfo.getCursorString;
+
+import android.database.Cursor;
+import android.provider.DocumentsContract.Document;
+
+import com.android.documentsui.base.Lookup;
+import com.android.documentsui.base.Shared;
+import com.android.documentsui.sorting.SortModel.SortDimensionId;
+
+import java.util.Comparator;
+
+/**
+ * Values of a document row which it is sorted by. Shared by {@link SortingCursorWrapper} and
+ * {@link MergingCursorWrapper}, so that both order documents the same way.
+ */
+class SortKey {
+    boolean isDir;
+    String id;
+    String stringValue;
+    long longValue;
+
+    /**
+     * Reads the values of the current row of the cursor which the dimension sorts by.
+     */
+    void read(Cursor cursor, @SortDimensionId int dimensionId,
+            Lookup<String, String> fileTypeLookup) {
+        final String mimeType = getCursorString(cursor, Document.COLUMN_MIME_TYPE);
+        isDir = Document.MIME_TYPE_DIR.equals(mimeType);
+        id = getCursorString(cursor, Document.COLUMN_DOCUMENT_ID);
+
+        switch (dimensionId) {
+            case SortModel.SORT_DIMENSION_ID_TITLE:
+                stringValue = getCursorString(cursor, Document.COLUMN_DISPLAY_NAME);
+                break;
+            case SortModel.SORT_DIMENSION_ID_FILE_TYPE:
+                stringValue = fileTypeLookup.lookup(mimeType);
+                break;
+            case SortModel.SORT_DIMENSION_ID_DATE:
+                // Some docs (e.g. active downloads) have a null timestamp. These are replaced
+                // with MAX_LONG so that such files get sorted to the top when sorting
+                // descending by date.
+                final long lastModified = getCursorLong(cursor, Document.COLUMN_LAST_MODIFIED);
+                longValue = (lastModified == -1) ? Long.MAX_VALUE : lastModified;
+                break;
+            case SortModel.SORT_DIMENSION_ID_SIZE:
+                longValue = getCursorLong(cursor, Document.COLUMN_SIZE);
+                break;
+        }
+    }
+
+    /**
+     * @return comparator putting directories first, then ordering by the dimension, then by
+     *     document ID so that results are stable. Compares all keys equal if there is no sorted
+     *     dimension.
+     */
+    static Comparator<SortKey> createComparator(
+            @SortDimensionId int dimensionId, @SortDimension.SortDirection int direction) {
+        if (dimensionId == SortModel.SORT_DIMENSION_ID_UNKNOWN) {
+            return (lhs, rhs) -> 0;
+        }
+        if (direction != SortDimension.SORT_DIRECTION_ASCENDING
+                && direction != SortDimension.SORT_DIRECTION_DESCENDING) {
+            throw new IllegalArgumentException("Unknown sorting direction: " + direction);
+        }
+
+        return (lhs, rhs) -> {
+            // Directories always go in front.
+            if (lhs.isDir != rhs.isDir) {
+                return lhs.isDir ? -1 : 1;
+            }
+
+            int compare = 0;
+            switch (dimensionId) {
+                case SortModel.SORT_DIMENSION_ID_TITLE:
+                case SortModel.SORT_DIMENSION_ID_FILE_TYPE:
+                    compare = Shared.compareToIgnoreCaseNullable(
+                            lhs.stringValue, rhs.stringValue);
+                    break;
+                case SortModel.SORT_DIMENSION_ID_DATE:
+                case SortModel.SORT_DIMENSION_ID_SIZE:
+                    compare = Long.compare(lhs.longValue, rhs.longValue);
+                    break;
+            }
+            if (direction == SortDimension.SORT_DIRECTION_DESCENDING) {
+                compare = -compare;
+            }
+
+            // If the values tie, use document ID as a tie breaker. This yields stable results
+            // even if incoming items are continually shuffling and have identical sort keys, as
+            // when sorting a set of active downloads by mod time.
+            if (compare == 0 && lhs.id != null && rhs.id != null) {
+                compare = lhs.id.compareTo(rhs.id);
+            }
+            return compare;
+        };
+    }
+}
@@ -235,6 +235,28 @@ public class SortModel implements Parcelable {
         }
     }
 
+    /**
+     * Merges cursors into one sorted cursor. Cursors already sorted in the current order, e.g.
+     * by providers honoring {@link #addQuerySortArgs(Bundle)}, are merged without sorting again.
+     */
+    public Cursor mergeSortedCursors(Cursor[] cursors, Lookup<String, String> fileTypesMap) {
+        return mergeSortedCursors(null, cursors, fileTypesMap);
+    }
+
+    /**
+     * Like {@link #mergeSortedCursors(Cursor[], Lookup)}, but keeps the rows of a cursor
+     * previously returned by this method, and merges more cursors into them. Rows already
+     * merged are not read again unless the sort order changed since.
+     *
+     * @param merged cursor returned by a previous merge. Its cursors must ignore being closed,
+     *     as they are shared with the returned cursor.
+     */
+    public Cursor mergeSortedCursors(@Nullable Cursor merged, Cursor[] cursors,
+            Lookup<String, String> fileTypesMap) {
+        return new MergingCursorWrapper(
+                (MergingCursorWrapper) merged, cursors, mSortedDimension, fileTypesMap);
+    }
+
     public void addQuerySortArgs(Bundle queryArgs) {
         // should only be called when R.bool.feature_content_paging is true
 
@@ -77,6 +77,8 @@ public class TestJob extends Job {
 
     @Override
     Notification getProgressNotification() {
+        // Like copy jobs, there is no progress to report before the job is set up.
+        assertTrue("Progress of a job which isn't running", getState() == STATE_SET_UP);
         ++mNumOfNotifications;
         double completed = mStarted ? 1F : 0F;
         return mProgressBuilder
@@ -31,6 +31,7 @@ public class TestFeatures implements Features {
     public boolean inspector = true;
     public boolean jobProgressDialog = false;
     public boolean launchToDocument = true;
+    public boolean localSearchIndex = false;
     public boolean notificationChannel = true;
     public boolean overwriteConfirmation = true;
     public boolean remoteActions = true;
@@ -87,6 +88,11 @@ public class TestFeatures implements Features {
         return launchToDocument;
     }
 
+    @Override
+    public boolean isLocalSearchIndexEnabled() {
+        return localSearchIndex;
+    }
+
     @Override
     public boolean isNotificationChannelEnabled() {
         return notificationChannel;
@@ -74,6 +74,17 @@ public class ArchivesProviderTest {
     public void tearDown() throws Exception {
         mExecutor.shutdown();
         assertTrue(mExecutor.awaitTermination(3 /* timeout */, TimeUnit.SECONDS));
+
+        // Released archives are kept open for a while. Close them, so that every test loads
+        // its archives from scratch.
+        try (ContentProviderClient client = mContext.getContentResolver()
+                .acquireContentProviderClient(ArchivesProvider.AUTHORITY)) {
+            final ArchivesProvider provider =
+                    (ArchivesProvider) client.getLocalContentProvider();
+            if (provider != null) {
+                provider.evictWarmArchives();
+            }
+        }
     }
 
     @Test
@@ -236,6 +247,53 @@ public class ArchivesProviderTest {
         client.release();
     }
 
+    @Test
+    public void testOpen_reusesReleasedArchive() throws InterruptedException {
+        final Uri sourceUri = DocumentsContract.buildDocumentUri(
+                ResourcesProvider.AUTHORITY, "archive.zip");
+        final Uri archiveUri = ArchivesProvider.buildUriForArchive(sourceUri,
+                ParcelFileDescriptor.MODE_READ_ONLY);
+
+        final Uri childrenUri = DocumentsContract.buildChildDocumentsUri(
+                ArchivesProvider.AUTHORITY, DocumentsContract.getDocumentId(archiveUri));
+
+        final ContentResolver resolver = mContext.getContentResolver();
+        final CountDownLatch latch = new CountDownLatch(1);
+        final ContentObserver observer = new ContentObserver(null) {
+            @Override
+            public void onChange(boolean selfChange, Uri uri) {
+                latch.countDown();
+            }
+        };
+
+        // Archives notify on their root once loaded. Observe it before acquiring the archive, so
+        // that the notification can't be missed.
+        resolver.registerContentObserver(archiveUri, false, observer);
+        final ContentProviderClient client = resolver.acquireUnstableContentProviderClient(
+                archiveUri);
+        ArchivesProvider.acquireArchive(client, archiveUri);
+        try (Cursor cursor = resolver.query(childrenUri, null, null, null, null, null)) {
+            assertNotNull("Cursor must not be null. File not found?", cursor);
+            assertTrue(latch.await(3, TimeUnit.SECONDS));
+        } finally {
+            resolver.unregisterContentObserver(observer);
+        }
+        ArchivesProvider.releaseArchive(client, archiveUri);
+
+        // Acquired again before it's evicted, so the archive is loaded already.
+        ArchivesProvider.acquireArchive(client, archiveUri);
+        try (Cursor cursor = resolver.query(childrenUri, null, null, null, null, null)) {
+            assertNotNull("Cursor must not be null. File not found?", cursor);
+
+            assertEquals(3, cursor.getCount());
+            final Bundle extras = cursor.getExtras();
+            assertEquals(false, extras.getBoolean(DocumentsContract.EXTRA_LOADING, false));
+        }
+
+        ArchivesProvider.releaseArchive(client, archiveUri);
+        client.release();
+    }
+
     @Test
     public void testNoNotificationAfterAllReleased() throws InterruptedException, RemoteException {
         final Uri sourceUri = DocumentsContract.buildDocumentUri(
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.archives;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class ArchiveIndexCacheTest {
+
+    private static final Uri ARCHIVE_URI = Uri.parse("content://i/love/strawberries.tar.gz");
+
+    private File mDir;
+    private ArchiveIndexCache mCache;
+
+    @Before
+    public void setUp() {
+        mDir = new File(InstrumentationRegistry.getTargetContext().getCacheDir(),
+                "archive-index-cache-test");
+        mCache = new ArchiveIndexCache(mDir, 1024 * 1024);
+    }
+
+    @After
+    public void tearDown() {
+        final File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDir.delete();
+    }
+
+    @Test
+    public void testWriteThenRead() {
+        final ArchiveIndexCache.Key key = new ArchiveIndexCache.Key(ARCHIVE_URI, 100, 200);
+        mCache.write(key, createEntries());
+
+        final List<ArchiveEntry> entries = mCache.read(key);
+        assertNotNull(entries);
+        assertEquals(2, entries.size());
+        assertEquals("dir/", entries.get(0).getName());
+        assertTrue(entries.get(0).isDirectory());
+        assertEquals("dir/strawberries.txt", entries.get(1).getName());
+        assertFalse(entries.get(1).isDirectory());
+        assertEquals(21, entries.get(1).getSize());
+        assertEquals(1000000, entries.get(1).getLastModifiedDate().getTime());
+    }
+
+    @Test
+    public void testRead_changedArchive() {
+        mCache.write(new ArchiveIndexCache.Key(ARCHIVE_URI, 100, 200), createEntries());
+
+        assertNull(mCache.read(new ArchiveIndexCache.Key(ARCHIVE_URI, 101, 200)));
+        assertNull(mCache.read(new ArchiveIndexCache.Key(ARCHIVE_URI, 100, 200)));
+    }
+
+    @Test
+    public void testCreateKey_tellsApartRewritesWithinASecond() throws IOException {
+        mDir.mkdirs();
+        final File archive = new File(mDir, "archive.tar");
+        try (FileOutputStream out = new FileOutputStream(archive)) {
+            out.write(new byte[100]);
+        }
+
+        assertTrue(archive.setLastModified(1000000000L));
+        final ArchiveIndexCache.Key key = createKey(archive);
+        mCache.write(key, createEntries());
+        assertNotNull(mCache.read(createKey(archive)));
+
+        assertTrue(archive.setLastModified(1000000500L));
+        assertNull(mCache.read(createKey(archive)));
+    }
+
+    @Test
+    public void testWrite_evictsOverBudget() {
+        mCache = new ArchiveIndexCache(mDir, 1);
+        final ArchiveIndexCache.Key key = new ArchiveIndexCache.Key(ARCHIVE_URI, 100, 200);
+        mCache.write(key, createEntries());
+
+        assertNull(mCache.read(key));
+    }
+
+    private static ArchiveIndexCache.Key createKey(File file) throws IOException {
+        try (ParcelFileDescriptor descriptor =
+                ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY)) {
+            return ArchiveIndexCache.Key.create(ARCHIVE_URI, descriptor);
+        }
+    }
+
+    private static List<ArchiveEntry> createEntries() {
+        final List<ArchiveEntry> entries = new ArrayList<>();
+        entries.add(new TarArchiveEntry("dir/"));
+        final TarArchiveEntry file = new TarArchiveEntry("dir/strawberries.txt");
+        file.setSize(21);
+        file.setModTime(new Date(1000000));
+        entries.add(file);
+        return entries;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.archives;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class CompressionMetricsTest {
+
+    private CompressionMetrics mMetrics;
+
+    @Before
+    public void setUp() {
+        mMetrics = new CompressionMetrics();
+    }
+
+    @Test
+    public void testGetRatio_noEntries() {
+        assertEquals(1f, mMetrics.getRatio("text"), 0f);
+    }
+
+    @Test
+    public void testGetRatio_groupsByMimeClass() {
+        mMetrics.onEntryWritten("text/plain", false, 1000, 200);
+        mMetrics.onEntryWritten("text/html", false, 1000, 400);
+        mMetrics.onEntryWritten("image/jpeg", true, 1000, 1010);
+
+        assertEquals(0.3f, mMetrics.getRatio("text"), 0.001f);
+        assertEquals(1.01f, mMetrics.getRatio("image"), 0.001f);
+        assertEquals(1f, mMetrics.getRatio("audio"), 0f);
+    }
+
+    @Test
+    public void testGetRatio_emptyEntries() {
+        mMetrics.onEntryWritten("text/plain", false, 0, 2);
+
+        assertEquals(1f, mMetrics.getRatio("text"), 0f);
+    }
+
+    @Test
+    public void testOnEntryWritten_malformedMimeType() {
+        mMetrics.onEntryWritten("garbage", false, 100, 50);
+
+        assertEquals(0.5f, mMetrics.getRatio("unknown"), 0.001f);
+    }
+
+    @Test
+    public void testDump() {
+        mMetrics.onEntryWritten("text/plain", false, 1000, 250);
+        mMetrics.onEntryWritten("image/png", true, 500, 500);
+
+        final StringWriter output = new StringWriter();
+        mMetrics.dump(new PrintWriter(output, true));
+
+        final String dump = output.toString();
+        assertTrue(dump, dump.contains(
+                "image: entries=1 stored=1 raw=500 compressed=500"));
+        assertTrue(dump, dump.contains(
+                "text: entries=1 stored=0 raw=1000 compressed=250"));
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.archives;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class ExtractionCacheTest {
+
+    private File mDir;
+    private ExtractionCache mCache;
+
+    @Before
+    public void setUp() {
+        mDir = new File(InstrumentationRegistry.getTargetContext().getCacheDir(),
+                "extraction-cache-test");
+        mCache = new ExtractionCache(mDir, 40);
+    }
+
+    @After
+    public void tearDown() {
+        mCache.close();
+    }
+
+    @Test
+    public void testCanHold() {
+        assertTrue(mCache.canHold(10));
+        assertFalse(mCache.canHold(11));
+        assertFalse(mCache.canHold(-1));
+    }
+
+    @Test
+    public void testPut() throws IOException {
+        assertNull(mCache.get("/a.txt"));
+        final File file = mCache.put("/a.txt", new ByteArrayInputStream(new byte[10]));
+        assertEquals(10, file.length());
+        assertEquals(file, mCache.get("/a.txt"));
+    }
+
+    @Test
+    public void testPut_evictsLeastRecentlyUsed() throws IOException {
+        mCache.put("/a.txt", new ByteArrayInputStream(new byte[10]));
+        mCache.put("/b.txt", new ByteArrayInputStream(new byte[10]));
+        mCache.put("/c.txt", new ByteArrayInputStream(new byte[10]));
+        mCache.put("/d.txt", new ByteArrayInputStream(new byte[10]));
+        assertNotNull(mCache.get("/a.txt"));
+
+        mCache.put("/e.txt", new ByteArrayInputStream(new byte[10]));
+        assertNotNull(mCache.get("/a.txt"));
+        assertNull(mCache.get("/b.txt"));
+        assertNotNull(mCache.get("/e.txt"));
+    }
+
+    @Test
+    public void testClose_deletesFiles() throws IOException {
+        final File file = mCache.put("/a.txt", new ByteArrayInputStream(new byte[10]));
+        mCache.close();
+
+        assertFalse(file.exists());
+        assertFalse(mDir.exists());
+        assertNull(mCache.get("/a.txt"));
+    }
+}
@@ -25,6 +25,7 @@ import static org.junit.Assert.assertTrue;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.ParcelFileDescriptor;
+import android.provider.DocumentsContract;
 import android.provider.DocumentsContract.Document;
 import android.system.ErrnoException;
 import android.system.Os;
@@ -45,10 +46,12 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.Scanner;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 @RunWith(AndroidJUnit4.class)
@@ -91,6 +94,7 @@ public class ReadableArchiveTest {
                 mimeType,
                 ParcelFileDescriptor.MODE_READ_ONLY,
                 Uri.parse(NOTIFICATION_URI));
+        ((ReadableArchive) mArchive).awaitIndexed();
     }
 
     private void loadArchive(ParcelFileDescriptor descriptor)
@@ -374,6 +378,57 @@ public class ReadableArchiveTest {
                 "application/x-brotli-compressed-tar");
     }
 
+    @Test
+    public void archive_tgz_nonSeekable_openDocument()
+            throws IOException, CompressorException, ArchiveException {
+        // Listed while the snapshot of the pipe is being written.
+        loadArchive(mTestUtils.getNonSeekableDescriptor(R.raw.hello_tgz),
+                "application/x-compressed-tar");
+        final String documentId = createArchiveId("/hello/hello.txt").toDocumentId();
+
+        assertThat(readDocument(documentId).length).isEqualTo(48);
+    }
+
+    @Test
+    public void archive_tgz_openDocumentTwice()
+            throws IOException, CompressorException, ArchiveException {
+        loadArchive(mTestUtils.getSeekableDescriptor(R.raw.hello_tgz),
+                "application/x-compressed-tar");
+        final String documentId = createArchiveId("/hello/hello.txt").toDocumentId();
+
+        // The second open is served from the extracted copy of the entry.
+        final byte[] first = readDocument(documentId);
+        final byte[] second = readDocument(documentId);
+        assertThat(first.length).isEqualTo(48);
+        assertThat(second).isEqualTo(first);
+    }
+
+    private byte[] readDocument(String documentId) throws IOException {
+        try (ParcelFileDescriptor.AutoCloseInputStream inputStream =
+                new ParcelFileDescriptor.AutoCloseInputStream(
+                        mArchive.openDocument(documentId, "r", null /* signal */))) {
+            final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[1024];
+            int bytes;
+            while ((bytes = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, bytes);
+            }
+            return outputStream.toByteArray();
+        }
+    }
+
+    @Test
+    public void testQueryChildDocument_indexed()
+            throws IOException, CompressorException, ArchiveException {
+        loadArchive(mTestUtils.getSeekableDescriptor(R.raw.archive));
+        final Cursor cursor = mArchive.queryChildDocuments(
+                createArchiveId("/").toDocumentId(), null, null);
+
+        assertFalse(cursor.getExtras().getBoolean(DocumentsContract.EXTRA_LOADING));
+        assertTrue(TextUtils.isEmpty(
+                cursor.getExtras().getString(DocumentsContract.EXTRA_ERROR)));
+    }
+
     @Test
     public void testOpenDocument()
             throws IOException, CompressorException, ArchiveException, ErrnoException {
@@ -403,6 +458,27 @@ public class ReadableArchiveTest {
         }
     }
 
+    @Test
+    public void testOpenDocument_concurrently() throws Exception {
+        loadArchive(mTestUtils.getSeekableDescriptor(R.raw.archive));
+        final String firstId = createArchiveId("/dir2/strawberries.txt").toDocumentId();
+        final String secondId = createArchiveId("/file1.txt").toDocumentId();
+
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<byte[]> first = executor.submit(() -> readDocument(firstId));
+            final Future<byte[]> second = executor.submit(() -> readDocument(secondId));
+            assertEquals("I love strawberries!\n", new String(first.get()));
+            assertEquals(13, second.get().length);
+        } finally {
+            executor.shutdown();
+        }
+
+        final ReadMetrics metrics = ((ReadableArchive) mArchive).getReadMetrics();
+        assertEquals(21 + 13, metrics.getBytesServed());
+        assertEquals(0, metrics.getStreamRecreations());
+    }
+
     @Test
     public void testCanSeek() throws IOException {
         assertTrue(Archive.canSeek(mTestUtils.getSeekableDescriptor(R.raw.archive)));
@@ -62,6 +62,7 @@ public class ResourcesProvider extends DocumentsProvider {
         RESOURCES.put("images.tar.xz", R.raw.images_tar_xz);
         RESOURCES.put("images.tgz", R.raw.images_tgz);
         RESOURCES.put("images.tar.br", R.raw.images_tar_br);
+        RESOURCES.put("hello.tar", R.raw.hello_tar);
     }
 
     private ExecutorService mExecutor = null;
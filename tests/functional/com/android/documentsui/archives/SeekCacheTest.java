@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.archives;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class SeekCacheTest {
+
+    private static final int BLOCK_BYTES = 8;
+    private static final int MAX_BLOCKS = 2;
+
+    private SeekCache mCache;
+
+    @Before
+    public void setUp() {
+        mCache = new SeekCache(InstrumentationRegistry.getTargetContext().getCacheDir(),
+                BLOCK_BYTES, MAX_BLOCKS);
+    }
+
+    @After
+    public void tearDown() {
+        mCache.close();
+    }
+
+    @Test
+    public void testIsWorthCaching() {
+        assertFalse(SeekCache.isWorthCaching(SeekCache.BLOCK_BYTES));
+        assertTrue(SeekCache.isWorthCaching(SeekCache.BLOCK_BYTES + 1));
+    }
+
+    @Test
+    public void testReadsCachedBlocks() throws IOException {
+        mCache.write(0, "I love ".getBytes(), 0, 7);
+        mCache.write(7, "strawberr".getBytes(), 0, 9);
+        assertEquals(2, mCache.getBlockCount());
+
+        final byte[] data = new byte[16];
+        assertEquals(9, mCache.read(7, data, 0, data.length));
+        assertArrayEquals("strawberr".getBytes(), Arrays.copyOf(data, 9));
+
+        assertEquals(4, mCache.read(2, data, 10, 4));
+        assertArrayEquals("love".getBytes(), Arrays.copyOfRange(data, 10, 14));
+
+        assertEquals(0, mCache.read(16, data, 0, data.length));
+    }
+
+    @Test
+    public void testWrite_ignoresBytesNotStartingBlocks() throws IOException {
+        mCache.write(3, "strawberries!".getBytes(), 0, 13);
+
+        final byte[] data = new byte[16];
+        assertEquals(0, mCache.read(3, data, 0, data.length));
+        assertEquals(8, mCache.read(8, data, 0, data.length));
+        assertArrayEquals("berries!".getBytes(), Arrays.copyOf(data, 8));
+    }
+
+    @Test
+    public void testWrite_evictsLeastRecentlyUsedBlock() throws IOException {
+        mCache.write(0, "0123456789abcdef".getBytes(), 0, 16);
+        final byte[] data = new byte[BLOCK_BYTES];
+        assertEquals(BLOCK_BYTES, mCache.read(0, data, 0, data.length));
+
+        // Far ahead, as after a forward seek.
+        mCache.write(80, "ABCDEFGH".getBytes(), 0, 8);
+
+        assertEquals(MAX_BLOCKS, mCache.getBlockCount());
+        assertEquals(BLOCK_BYTES, mCache.read(0, data, 0, data.length));
+        assertArrayEquals("01234567".getBytes(), data);
+        assertEquals(0, mCache.read(8, data, 0, data.length));
+        assertEquals(BLOCK_BYTES, mCache.read(80, data, 0, data.length));
+        assertArrayEquals("ABCDEFGH".getBytes(), data);
+    }
+
+    @Test
+    public void testGetSkipEnd_readsAllWhileCacheCanGrow() {
+        assertEquals(0, mCache.getSkipEnd(0, 85));
+        assertEquals(20, mCache.getSkipEnd(20, 85));
+    }
+
+    @Test
+    public void testGetSkipEnd_skipsToBlockBeforeTargetOnceFull() {
+        mCache.write(0, "0123456789abcdef".getBytes(), 0, 16);
+        assertEquals(MAX_BLOCKS, mCache.getBlockCount());
+
+        assertEquals(16, mCache.getSkipEnd(16, 20));
+        assertEquals(72, mCache.getSkipEnd(16, 85));
+        assertEquals(80, mCache.getSkipEnd(80, 85));
+    }
+
+    @Test
+    public void testClose_stopsCaching() throws IOException {
+        mCache.write(0, new byte[10], 0, 10);
+        mCache.close();
+
+        assertEquals(0, mCache.getBlockCount());
+        mCache.write(0, new byte[10], 0, 10);
+        assertEquals(0, mCache.getBlockCount());
+        assertEquals(0, mCache.read(0, new byte[10], 0, 10));
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.archives;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.filters.MediumTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.documentsui.tests.R;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(AndroidJUnit4.class)
+@MediumTest
+public class SequentialArchiveReaderTest {
+
+    private ExecutorService mExecutor;
+    private TestUtils mTestUtils;
+
+    @Before
+    public void setUp() {
+        mExecutor = Executors.newSingleThreadExecutor();
+        mTestUtils = new TestUtils(InstrumentationRegistry.getTargetContext(),
+                InstrumentationRegistry.getContext(), mExecutor);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mExecutor.shutdown();
+        assertTrue(mExecutor.awaitTermination(3 /* timeout */, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testIsSupported() {
+        assertTrue(SequentialArchiveReader.isSupported("application/x-tar", false));
+        assertTrue(SequentialArchiveReader.isSupported("application/x-7z-compressed", true));
+        assertFalse(SequentialArchiveReader.isSupported("application/x-7z-compressed", false));
+        assertFalse(SequentialArchiveReader.isSupported("application/zip", true));
+        assertFalse(SequentialArchiveReader.isSupported("text/plain", true));
+    }
+
+    @Test
+    public void testReadsAllEntries_tar() throws IOException {
+        final Map<String, String> entries = readAll(SequentialArchiveReader.create(
+                mTestUtils.getNonSeekableDescriptor(R.raw.hello_tar), "application/x-tar"));
+
+        assertThat(entries.keySet()).containsExactly("/hello/", "/hello/hello.txt",
+                "/hello/hello2.txt", "/hello/inside_folder/",
+                "/hello/inside_folder/hello_insside.txt");
+        assertEquals(48, entries.get("/hello/hello.txt").length());
+    }
+
+    @Test
+    public void testReadsAllEntries_7z() throws IOException {
+        final Map<String, String> entries = readAll(SequentialArchiveReader.create(
+                mTestUtils.getSeekableDescriptor(R.raw.hello_7z), "application/x-7z-compressed"));
+
+        assertThat(entries.keySet()).containsAtLeast("/hello/", "/hello/hello.txt",
+                "/hello/inside_folder/hello_insside.txt");
+        assertEquals(48, entries.get("/hello/hello.txt").length());
+    }
+
+    /**
+     * @return contents of files, and null for directories, by path.
+     */
+    private static Map<String, String> readAll(SequentialArchiveReader reader)
+            throws IOException {
+        final Map<String, String> entries = new HashMap<>();
+        try (SequentialArchiveReader closeable = reader) {
+            while (reader.moveToNext()) {
+                entries.put(reader.getPath(),
+                        reader.isDirectory() ? null : read(reader.getInputStream()));
+            }
+        }
+        return entries;
+    }
+
+    private static String read(InputStream inputStream) throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[1024];
+        int bytes;
+        while ((bytes = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, bytes);
+        }
+        return outputStream.toString();
+    }
+}
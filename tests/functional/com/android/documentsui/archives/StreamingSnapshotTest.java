@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.archives;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import android.os.ParcelFileDescriptor;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class StreamingSnapshotTest {
+
+    private File mFile;
+    private ParcelFileDescriptor[] mPipe;
+    private StreamingSnapshot mSnapshot;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("snapshot", ".tmp",
+                InstrumentationRegistry.getTargetContext().getCacheDir());
+        mPipe = ParcelFileDescriptor.createPipe();
+        mSnapshot = new StreamingSnapshot(mPipe[0], mFile);
+        mSnapshot.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mSnapshot.close();
+        mPipe[1].close();
+        mFile.delete();
+    }
+
+    @Test
+    public void testReadsWhileCopying() throws IOException {
+        final InputStream inputStream = mSnapshot.getInputStream();
+        final OutputStream outputStream = new ParcelFileDescriptor.AutoCloseOutputStream(mPipe[1]);
+
+        // The first bytes are readable before the source ends.
+        outputStream.write("I love ".getBytes());
+        outputStream.flush();
+        final byte[] data = new byte[32];
+        assertEquals(7, readFully(inputStream, data, 0, 7));
+
+        outputStream.write("strawberries!".getBytes());
+        outputStream.close();
+        assertEquals(13, readFully(inputStream, data, 7, data.length - 7));
+        assertEquals(-1, inputStream.read());
+        assertArrayEquals("I love strawberries!".getBytes(), Arrays.copyOf(data, 20));
+
+        mSnapshot.awaitCompleted();
+        assertEquals(20, mFile.length());
+    }
+
+    @Test
+    public void testClose_failsReads() throws IOException {
+        final InputStream inputStream = mSnapshot.getInputStream();
+        mSnapshot.close();
+
+        try {
+            inputStream.read();
+            fail("Reading a closed snapshot should fail.");
+        } catch (IOException e) {
+            // Expected.
+        }
+    }
+
+    private static int readFully(InputStream inputStream, byte[] data, int offset, int length)
+            throws IOException {
+        int total = 0;
+        int bytes;
+        while (total < length
+                && (bytes = inputStream.read(data, offset + total, length - total)) != -1) {
+            total += bytes;
+        }
+        return total;
+    }
+}
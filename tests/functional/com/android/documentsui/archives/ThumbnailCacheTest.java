@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.archives;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class ThumbnailCacheTest {
+
+    @Test
+    public void testPutThenGet() {
+        final ThumbnailCache cache = new ThumbnailCache(1024 * 1024);
+        cache.put("/dir/a.jpg", new ThumbnailCache.Thumbnail(new byte[10], 90));
+        cache.put("/dir/b.jpg", ThumbnailCache.Thumbnail.NONE);
+
+        final ThumbnailCache.Thumbnail thumbnail = cache.get("/dir/a.jpg");
+        assertNotNull(thumbnail);
+        assertEquals(10, thumbnail.data.length);
+        assertEquals(90, thumbnail.orientation);
+        assertSame(ThumbnailCache.Thumbnail.NONE, cache.get("/dir/b.jpg"));
+        assertNull(cache.get("/dir/c.jpg"));
+    }
+
+    @Test
+    public void testPut_evictsLeastRecentlyUsed() {
+        final ThumbnailCache cache = new ThumbnailCache(3000);
+        cache.put("/a.jpg", new ThumbnailCache.Thumbnail(new byte[1000], 0));
+        cache.put("/b.jpg", new ThumbnailCache.Thumbnail(new byte[1000], 0));
+        cache.get("/a.jpg");
+        cache.put("/c.jpg", new ThumbnailCache.Thumbnail(new byte[1000], 0));
+
+        assertNotNull(cache.get("/a.jpg"));
+        assertNull(cache.get("/b.jpg"));
+        assertNotNull(cache.get("/c.jpg"));
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.archives;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.provider.DocumentsContract.Document;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.filters.LargeTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Compresses a synthetic tree of a million files, which takes a ZIP64 central directory and
+ * the large-archive mode of {@link WriteableArchive}.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class WriteableArchiveStressTest {
+
+    private static final int DIRS = 1000;
+    private static final int FILES_PER_DIR = 1000;
+    private static final int LARGE_ARCHIVE_ENTRIES = 1000;
+
+    private ExecutorService mExecutor;
+    private File mFile;
+    private WriteableArchive mArchive;
+
+    @Before
+    public void setUp() throws IOException {
+        mExecutor = Executors.newSingleThreadExecutor();
+        final TestUtils testUtils = new TestUtils(InstrumentationRegistry.getTargetContext(),
+                InstrumentationRegistry.getContext(), mExecutor);
+        mFile = testUtils.createTemporaryFile();
+        mArchive = WriteableArchive.createForParcelFileDescriptor(
+                InstrumentationRegistry.getTargetContext(),
+                ParcelFileDescriptor.open(mFile, ParcelFileDescriptor.MODE_WRITE_ONLY),
+                TestUtils.ARCHIVE_URI,
+                ParcelFileDescriptor.MODE_WRITE_ONLY,
+                Uri.parse(TestUtils.NOTIFICATION_URI),
+                LARGE_ARCHIVE_ENTRIES);
+    }
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdown();
+        mFile.delete();
+    }
+
+    @Test
+    public void testMillionFiles() throws IOException {
+        final String rootId = new ArchiveId(TestUtils.ARCHIVE_URI,
+                ParcelFileDescriptor.MODE_WRITE_ONLY, "/").toDocumentId();
+        for (int i = 0; i < DIRS; i++) {
+            final String dirId = mArchive.createDocument(rootId, Document.MIME_TYPE_DIR,
+                    "dir" + i);
+            for (int j = 0; j < FILES_PER_DIR; j++) {
+                final String documentId = mArchive.createDocument(dirId, "text/plain",
+                        "file" + j + ".txt");
+                try (ParcelFileDescriptor.AutoCloseOutputStream outputStream =
+                        new ParcelFileDescriptor.AutoCloseOutputStream(
+                                mArchive.openDocument(documentId, "w", null))) {
+                    // Keep most files empty, so that the test is about the number of entries.
+                    if (j == 0) {
+                        outputStream.write(("Directory " + i).getBytes());
+                    }
+                }
+            }
+        }
+        mArchive.close();
+
+        // Written files are forgotten, except for those written before the mode kicked in.
+        assertTrue(mArchive.getEntryCount() <= 2 * LARGE_ARCHIVE_ENTRIES + DIRS + 1);
+
+        try (ZipFile zip = new ZipFile(mFile)) {
+            assertEquals(DIRS + DIRS * FILES_PER_DIR, zip.size());
+            final ZipEntry entry = zip.getEntry("dir" + (DIRS - 1) + "/file0.txt");
+            final Scanner scanner = new Scanner(zip.getInputStream(entry));
+            assertEquals("Directory " + (DIRS - 1), scanner.nextLine());
+        }
+    }
+}
@@ -25,10 +25,13 @@ import android.test.suitebuilder.annotation.MediumTest;
 
 import androidx.test.InstrumentationRegistry;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 import java.util.Enumeration;
+import java.util.Random;
 import java.util.Scanner;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -297,4 +300,143 @@ public class WriteableArchiveTest extends AndroidTestCase {
             }
         }
     }
+
+    public void testAddFiles_keepsOrder() throws IOException {
+        final String dirDocumentId = mArchive.createDocument(createArchiveId("/").toDocumentId(),
+                Document.MIME_TYPE_DIR, "dir");
+        for (int i = 0; i < 20; i++) {
+            final String documentId = mArchive.createDocument(dirDocumentId, "text/plain",
+                    "file" + i + ".txt");
+            final ParcelFileDescriptor fd = mArchive.openDocument(documentId, "w", null);
+            try (ParcelFileDescriptor.AutoCloseOutputStream outputStream =
+                    new ParcelFileDescriptor.AutoCloseOutputStream(fd)) {
+                // Larger files first, so that later entries tend to be compressed earlier.
+                for (int j = 0; j < (20 - i) * 1000; j++) {
+                    outputStream.write(("Line " + j + " of file " + i + "\n").getBytes());
+                }
+            }
+        }
+        mArchive.close();
+
+        // Verify archive.
+        try (ZipFile zip = new ZipFile(mFile)) {
+            final Enumeration<? extends ZipEntry> entries = zip.entries();
+            assertEquals("dir/", entries.nextElement().getName());
+            for (int i = 0; i < 20; i++) {
+                final ZipEntry entry = entries.nextElement();
+                assertEquals("dir/file" + i + ".txt", entry.getName());
+                assertEquals(ZipEntry.DEFLATED, entry.getMethod());
+                final Scanner scanner = new Scanner(zip.getInputStream(entry));
+                assertEquals("Line 0 of file " + i, scanner.nextLine());
+            }
+            assertFalse(entries.hasMoreElements());
+        }
+    }
+
+    public void testAddFile_storesCompressedMedia() throws IOException {
+        final String documentId = mArchive.createDocument(createArchiveId("/").toDocumentId(),
+                "image/jpeg", "photo.jpg");
+        final ParcelFileDescriptor fd = mArchive.openDocument(documentId, "w", null);
+        try (ParcelFileDescriptor.AutoCloseOutputStream outputStream =
+                new ParcelFileDescriptor.AutoCloseOutputStream(fd)) {
+            outputStream.write("Not really a JPEG.".getBytes());
+        }
+        mArchive.close();
+
+        // Verify archive.
+        try (ZipFile zip = new ZipFile(mFile)) {
+            final ZipEntry entry = zip.getEntry("photo.jpg");
+            assertEquals(ZipEntry.STORED, entry.getMethod());
+            assertEquals(18, entry.getSize());
+            final Scanner scanner = new Scanner(zip.getInputStream(entry));
+            assertEquals("Not really a JPEG.", scanner.nextLine());
+        }
+    }
+
+    public void testAddFile_storesIncompressibleData() throws IOException {
+        final byte[] random = new byte[64 * 1024];
+        new Random(42).nextBytes(random);
+        final String randomDocumentId = mArchive.createDocument(
+                createArchiveId("/").toDocumentId(), "application/octet-stream", "random.bin");
+        try (ParcelFileDescriptor.AutoCloseOutputStream outputStream =
+                new ParcelFileDescriptor.AutoCloseOutputStream(
+                        mArchive.openDocument(randomDocumentId, "w", null))) {
+            outputStream.write(random);
+        }
+
+        final String zerosDocumentId = mArchive.createDocument(
+                createArchiveId("/").toDocumentId(), "application/octet-stream", "zeros.bin");
+        try (ParcelFileDescriptor.AutoCloseOutputStream outputStream =
+                new ParcelFileDescriptor.AutoCloseOutputStream(
+                        mArchive.openDocument(zerosDocumentId, "w", null))) {
+            outputStream.write(new byte[64 * 1024]);
+        }
+        mArchive.close();
+
+        // Verify archive.
+        try (ZipFile zip = new ZipFile(mFile)) {
+            assertEquals(ZipEntry.STORED, zip.getEntry("random.bin").getMethod());
+            assertEquals(ZipEntry.DEFLATED, zip.getEntry("zeros.bin").getMethod());
+        }
+    }
+
+    public void testAddFiles_largeEntries() throws IOException {
+        final byte[] video = new byte[1024 * 1024];
+        new Random(42).nextBytes(video);
+        final byte[] text = new byte[1024 * 1024];
+        Arrays.fill(text, (byte) 'a');
+
+        // The first file is appended as it's read, the second one is compressed while the first
+        // one is still open.
+        final String videoDocumentId = mArchive.createDocument(
+                createArchiveId("/").toDocumentId(), "video/mp4", "video.mp4");
+        final String textDocumentId = mArchive.createDocument(
+                createArchiveId("/").toDocumentId(), "text/plain", "text.txt");
+        final ParcelFileDescriptor videoFd = mArchive.openDocument(videoDocumentId, "w", null);
+        try (ParcelFileDescriptor.AutoCloseOutputStream outputStream =
+                new ParcelFileDescriptor.AutoCloseOutputStream(
+                        mArchive.openDocument(textDocumentId, "w", null))) {
+            outputStream.write(text);
+        }
+        try (ParcelFileDescriptor.AutoCloseOutputStream outputStream =
+                new ParcelFileDescriptor.AutoCloseOutputStream(videoFd)) {
+            outputStream.write(video);
+        }
+        mArchive.close();
+
+        // Verify archive.
+        try (ZipFile zip = new ZipFile(mFile)) {
+            final Enumeration<? extends ZipEntry> entries = zip.entries();
+            assertEquals("video.mp4", entries.nextElement().getName());
+            assertEquals("text.txt", entries.nextElement().getName());
+            assertFalse(entries.hasMoreElements());
+
+            assertEquals(video.length, zip.getEntry("video.mp4").getSize());
+            assertTrue(Arrays.equals(video, readAll(zip, "video.mp4")));
+            assertEquals(text.length, zip.getEntry("text.txt").getSize());
+            assertTrue(Arrays.equals(text, readAll(zip, "text.txt")));
+        }
+    }
+
+    private static byte[] readAll(ZipFile zip, String name) throws IOException {
+        try (InputStream inputStream = zip.getInputStream(zip.getEntry(name))) {
+            final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[32 * 1024];
+            int bytes;
+            while ((bytes = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, bytes);
+            }
+            return outputStream.toByteArray();
+        }
+    }
+
+    public void testGetEntropy() {
+        final byte[] data = new byte[256];
+        assertEquals(0.0, WriteableArchive.getEntropy(data, data.length), 0.001);
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        assertEquals(8.0, WriteableArchive.getEntropy(data, data.length), 0.001);
+        assertEquals(1.0, WriteableArchive.getEntropy(data, 2), 0.001);
+    }
 }
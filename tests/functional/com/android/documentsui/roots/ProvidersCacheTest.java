@@ -0,0 +1,271 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.roots;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.ProviderInfo;
+import android.content.pm.ResolveInfo;
+import android.test.AndroidTestCase;
+
+import androidx.localbroadcastmanager.content.LocalBroadcastManager;
+import androidx.test.filters.MediumTest;
+
+import com.android.documentsui.StubProvider;
+import com.android.documentsui.TestUserIdManager;
+import com.android.documentsui.base.RootInfo;
+import com.android.documentsui.base.UserId;
+import com.android.documentsui.testing.TestPackageManager;
+
+import com.google.common.collect.Lists;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs updates against {@link StubProvider}, as the only provider installed.
+ */
+@MediumTest
+public class ProvidersCacheTest extends AndroidTestCase {
+
+    private static final String AUTHORITY = StubProvider.DEFAULT_AUTHORITY;
+    private static final String GONE_AUTHORITY = "com.example.gone";
+    private static final UserId USER = UserId.DEFAULT_USER;
+    private static final int UPDATE_TIMEOUT_S = 20;
+
+    private final List<List<String>> mBroadcasts =
+            Collections.synchronizedList(new ArrayList<>());
+    private final BroadcastReceiver mReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            mBroadcasts.add(intent.getStringArrayListExtra(ProvidersAccess.EXTRA_AUTHORITIES));
+        }
+    };
+
+    private File mCacheDir;
+    private ProviderInfo mProvider;
+    private Context mContext;
+    private TestPackageManager mPackageManager;
+    private TestUserIdManager mUserIdManager;
+    private RootsSnapshot mSnapshot;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mCacheDir = new File(getContext().getCacheDir(), "providers_cache_test");
+
+        mProvider = getContext().getPackageManager().resolveContentProvider(
+                AUTHORITY, PackageManager.GET_META_DATA);
+        mPackageManager = TestPackageManager.create();
+        final ResolveInfo info = new ResolveInfo();
+        info.providerInfo = mProvider;
+        mPackageManager.contentProviders.put(AUTHORITY, info);
+        when(mPackageManager.resolveContentProvider(AUTHORITY, PackageManager.GET_META_DATA))
+                .thenReturn(mProvider);
+        when(mPackageManager.getApplicationLabel(any(ApplicationInfo.class)))
+                .thenReturn("Stub");
+
+        mContext = new ContextWrapper(getContext()) {
+            @Override
+            public File getCacheDir() {
+                return mCacheDir;
+            }
+
+            @Override
+            public PackageManager getPackageManager() {
+                return mPackageManager;
+            }
+        };
+        mUserIdManager = new TestUserIdManager();
+        mUserIdManager.userIds.add(USER);
+        mSnapshot = new RootsSnapshot(new File(mCacheDir, ProvidersCache.SNAPSHOT_DIR));
+
+        LocalBroadcastManager.getInstance(getContext()).registerReceiver(
+                mReceiver, new IntentFilter(ProvidersAccess.BROADCAST_ACTION));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        LocalBroadcastManager.getInstance(getContext()).unregisterReceiver(mReceiver);
+        deleteRecursively(mCacheDir);
+        super.tearDown();
+    }
+
+    public void testFirstUpdate_snapshotsAndBroadcastsAllAuthorities() throws Exception {
+        update(createCache());
+
+        assertThat(mBroadcasts).containsExactly(Lists.newArrayList(AUTHORITY));
+        assertNotNull(findAuthority(mSnapshot.read(USER), AUTHORITY));
+    }
+
+    public void testColdStart_servesSnapshotThenBroadcastsDiff() throws Exception {
+        mSnapshot.write(USER, Collections.singletonList(new RootsSnapshot.AuthorityRoots(
+                GONE_AUTHORITY, "Gone", "com.example.gone.app",
+                Lists.newArrayList(buildRoot(GONE_AUTHORITY, "home")))));
+
+        final ProvidersCache cache = createCache();
+        update(cache);
+
+        // Application names are kept from the snapshot which was served.
+        assertEquals("Gone", cache.getApplicationName(USER, GONE_AUTHORITY));
+        assertThat(cache.getRootsForAuthorityBlocking(USER, GONE_AUTHORITY)).isEmpty();
+        assertThat(cache.getRootsForAuthorityBlocking(USER, AUTHORITY)).isNotEmpty();
+
+        assertEquals(1, mBroadcasts.size());
+        assertThat(mBroadcasts.get(0)).containsExactly(AUTHORITY, GONE_AUTHORITY);
+        final List<RootsSnapshot.AuthorityRoots> snapshot = mSnapshot.read(USER);
+        assertNotNull(findAuthority(snapshot, AUTHORITY));
+        assertNull(findAuthority(snapshot, GONE_AUTHORITY));
+    }
+
+    public void testColdStart_unchanged_skipsSnapshotAndBroadcast() throws Exception {
+        update(createCache());
+        final File snapshotFile = markSnapshotFile();
+        mBroadcasts.clear();
+
+        update(createCache());
+
+        assertThat(mBroadcasts).isEmpty();
+        assertEquals(1000, snapshotFile.lastModified());
+    }
+
+    public void testUpdate_unchanged_skipsSnapshotAndBroadcast() throws Exception {
+        final ProvidersCache cache = createCache();
+        update(cache);
+        final File snapshotFile = markSnapshotFile();
+        mBroadcasts.clear();
+
+        update(cache);
+
+        assertThat(mBroadcasts).isEmpty();
+        assertEquals(1000, snapshotFile.lastModified());
+    }
+
+    public void testGetRootOneshot_publishesLoadedRoots() throws Exception {
+        final ProvidersCache cache = createCache();
+
+        final RootInfo root = cache.getRootOneshot(USER, AUTHORITY, StubProvider.ROOT_0_ID);
+        assertNotNull(root);
+        assertEquals(StubProvider.ROOT_0_ID, root.rootId);
+
+        // Served from the published index...
+        assertSame(root, cache.getRootOneshot(USER, AUTHORITY, StubProvider.ROOT_0_ID));
+
+        // ...until roots are loaded again, which republishes them.
+        final RootInfo refreshed = cache.getRootOneshot(
+                USER, AUTHORITY, StubProvider.ROOT_0_ID, true /* forceRefresh */);
+        assertNotSame(root, refreshed);
+        assertSame(refreshed, cache.getRootOneshot(USER, AUTHORITY, StubProvider.ROOT_0_ID));
+
+        assertNull(cache.getRootOneshot(USER, AUTHORITY, "missing"));
+    }
+
+    public void testUpdate_publishesRootsIndex() throws Exception {
+        final ProvidersCache cache = createCache();
+        update(cache);
+
+        final RootInfo root = cache.getRootBlocking(USER, AUTHORITY, StubProvider.ROOT_0_ID);
+        assertNotNull(root);
+        assertThat(cache.getRootsForAuthorityBlocking(USER, AUTHORITY)).contains(root);
+        assertThat(cache.getRootsBlocking()).contains(root);
+        assertThat(cache.getRootsBlocking()).contains(cache.getRecentsRoot(USER));
+        assertNull(cache.getRootBlocking(USER, AUTHORITY, "missing"));
+        assertThat(cache.getRootsForAuthorityBlocking(USER, GONE_AUTHORITY)).isEmpty();
+    }
+
+    public void testStoppedAuthority_loadedOnDemand() throws Exception {
+        final ProviderInfo stopped = new ProviderInfo(mProvider);
+        stopped.applicationInfo = new ApplicationInfo(mProvider.applicationInfo);
+        stopped.applicationInfo.flags |= ApplicationInfo.FLAG_STOPPED;
+        mPackageManager.contentProviders.get(AUTHORITY).providerInfo = stopped;
+
+        final ProvidersCache cache = createCache();
+        update(cache);
+
+        // Stopped providers aren't queried by updates, only once their roots are needed.
+        assertThat(mBroadcasts).isEmpty();
+        final RootInfo root = cache.getRootBlocking(USER, AUTHORITY, StubProvider.ROOT_0_ID);
+        assertNotNull(root);
+        assertThat(cache.getRootsForAuthorityBlocking(USER, AUTHORITY)).contains(root);
+        assertThat(cache.getRootsBlocking()).contains(root);
+    }
+
+    private ProvidersCache createCache() {
+        return new ProvidersCache(mContext, mUserIdManager);
+    }
+
+    private static void update(ProvidersCache cache) throws InterruptedException {
+        // Broadcasts are delivered on the main thread before the callback runs.
+        final CountDownLatch latch = new CountDownLatch(1);
+        cache.updateAsync(true /* forceRefreshAll */, latch::countDown);
+        assertTrue(latch.await(UPDATE_TIMEOUT_S, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Sets a fixed modification time on the snapshot file, to tell whether it's rewritten.
+     */
+    private File markSnapshotFile() {
+        final File file = new File(new File(mCacheDir, ProvidersCache.SNAPSHOT_DIR),
+                Integer.toString(USER.getIdentifier()));
+        assertTrue(file.setLastModified(1000));
+        return file;
+    }
+
+    private static RootsSnapshot.AuthorityRoots findAuthority(
+            List<RootsSnapshot.AuthorityRoots> snapshot, String authority) {
+        for (RootsSnapshot.AuthorityRoots authorityRoots : snapshot) {
+            if (authority.equals(authorityRoots.authority)) {
+                return authorityRoots;
+            }
+        }
+        return null;
+    }
+
+    private static RootInfo buildRoot(String authority, String rootId) {
+        final RootInfo root = new RootInfo();
+        root.userId = USER;
+        root.authority = authority;
+        root.rootId = rootId;
+        root.title = "Home";
+        root.documentId = rootId;
+        return root;
+    }
+
+    private static void deleteRecursively(File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -25,6 +25,7 @@ import android.provider.DocumentsContract;
 
 import androidx.test.filters.MediumTest;
 
+import java.util.ArrayList;
 import java.util.List;
 
 @MediumTest
@@ -57,6 +58,21 @@ public class DeleteJobTest extends AbstractJobTest<DeleteJob> {
         mDocs.assertChildCount(mSrcRoot, 0);
     }
 
+    public void testDeleteFiles_ManyFiles() throws Exception {
+        List<Uri> testFiles = new ArrayList<>();
+        for (int i = 0; i < 20; ++i) {
+            Uri testFile = mDocs.createDocument(mSrcRoot, "text/plain", "test" + i + ".txt");
+            mDocs.writeDocument(testFile, HAM_BYTES);
+            testFiles.add(testFile);
+        }
+
+        createJob(testFiles,
+                DocumentsContract.buildDocumentUri(AUTHORITY, mSrcRoot.documentId)).run();
+        mJobListener.waitForFinished();
+
+        mDocs.assertChildCount(mSrcRoot, 0);
+    }
+
     /**
      * Creates a job with a stack consisting to the default src directory.
      */
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.services;
+
+import static com.android.documentsui.services.FileOperationService.OPERATION_EXTRACT;
+
+import static com.google.common.collect.Lists.newArrayList;
+
+import android.content.ContentProviderClient;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.provider.DocumentsContract;
+
+import androidx.test.filters.MediumTest;
+
+import com.android.documentsui.archives.ArchiveId;
+import com.android.documentsui.archives.ArchivesProvider;
+import com.android.documentsui.archives.ResourcesProvider;
+import com.android.documentsui.base.DocumentInfo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@MediumTest
+public class ExtractJobTest extends AbstractCopyJobTest<ExtractJob> {
+
+    // Sizes of entries in hello.tar, and of the only entry in images.tar.
+    private static final int HELLO_SIZE = 48;
+    private static final int HELLO_INSIDE_SIZE = 14;
+    private static final int FREDDY_SIZE = 2851219;
+
+    private final List<Uri> mArchiveUris = new ArrayList<>();
+    private ContentProviderClient mClient;
+    private Uri mHelloUri;
+    private Uri mImagesUri;
+
+    public ExtractJobTest() {
+        super(OPERATION_EXTRACT);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        mClient = mResolver.acquireUnstableContentProviderClient(ArchivesProvider.AUTHORITY);
+        mHelloUri = acquireArchive("hello.tar");
+        mImagesUri = acquireArchive("images.tar");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (Uri archiveUri : mArchiveUris) {
+            ArchivesProvider.releaseArchive(mClient, archiveUri);
+        }
+        mClient.release();
+        super.tearDown();
+    }
+
+    public void testExtractsInSinglePass() throws Exception {
+        createJob(newArrayList(buildEntryUri(mHelloUri, "/hello/"))).run();
+        waitForJobFinished();
+
+        mJobListener.assertFinished();
+        mJobListener.assertMadeProgress();
+        mDocs.assertChildCount(mDestRoot, 1);
+        mDocs.assertHasDirectory(mDestRoot, "hello");
+
+        final DocumentInfo hello = mDocs.findDocument(mDestRoot.documentId, "hello");
+        mDocs.assertChildCount(hello.derivedUri, 3);
+        assertSize(hello.documentId, "hello.txt", HELLO_SIZE);
+        assertSize(hello.documentId, "hello2.txt", HELLO_SIZE);
+
+        final DocumentInfo inside = mDocs.findDocument(hello.documentId, "inside_folder");
+        assertSize(inside.documentId, "hello_insside.txt", HELLO_INSIDE_SIZE);
+    }
+
+    public void testStreamsLargeEntries() throws Exception {
+        createJob(newArrayList(buildEntryUri(mImagesUri, "/freddy.jpg"))).run();
+        waitForJobFinished();
+
+        mJobListener.assertFinished();
+        mJobListener.assertMadeProgress();
+        assertSize(mDestRoot.documentId, "freddy.jpg", FREDDY_SIZE);
+    }
+
+    public void testWritesSmallEntriesInParallel() throws Exception {
+        createJob(newArrayList(
+                buildEntryUri(mHelloUri, "/hello/hello.txt"),
+                buildEntryUri(mHelloUri, "/hello/hello2.txt"),
+                buildEntryUri(mHelloUri, "/hello/inside_folder/hello_insside.txt"))).run();
+        waitForJobFinished();
+
+        mJobListener.assertFinished();
+        mDocs.assertChildCount(mDestRoot, 3);
+        assertSize(mDestRoot.documentId, "hello.txt", HELLO_SIZE);
+        assertSize(mDestRoot.documentId, "hello2.txt", HELLO_SIZE);
+        assertSize(mDestRoot.documentId, "hello_insside.txt", HELLO_INSIDE_SIZE);
+    }
+
+    public void testReportsFailingEntry() throws Exception {
+        // The stub provider doesn't allow duplicate names, so writing this entry fails.
+        mDocs.createDocument(mDestRoot, "text/plain", "hello2.txt");
+
+        createJob(newArrayList(
+                buildEntryUri(mHelloUri, "/hello/hello.txt"),
+                buildEntryUri(mHelloUri, "/hello/hello2.txt"))).run();
+        waitForJobFinished();
+
+        mJobListener.assertFailed();
+        mJobListener.assertFailureCount(1);
+        mJobListener.assertFileFailed("hello2.txt");
+        assertSize(mDestRoot.documentId, "hello.txt", HELLO_SIZE);
+        assertSize(mDestRoot.documentId, "hello2.txt", 0);
+    }
+
+    /**
+     * @return uri of the archive in {@link ResourcesProvider}, which stays open for the test.
+     */
+    private Uri acquireArchive(String name) {
+        final Uri sourceUri = DocumentsContract.buildDocumentUri(ResourcesProvider.AUTHORITY, name);
+        final Uri archiveUri = ArchivesProvider.buildUriForArchive(
+                sourceUri, ParcelFileDescriptor.MODE_READ_ONLY);
+        ArchivesProvider.acquireArchive(mClient, archiveUri);
+        mArchiveUris.add(archiveUri);
+        return sourceUri;
+    }
+
+    private static Uri buildEntryUri(Uri sourceUri, String path) {
+        return DocumentsContract.buildDocumentUri(ArchivesProvider.AUTHORITY,
+                new ArchiveId(sourceUri, ParcelFileDescriptor.MODE_READ_ONLY, path)
+                        .toDocumentId());
+    }
+
+    private void assertSize(String parentId, String name, int expected) throws Exception {
+        final DocumentInfo doc = mDocs.findDocument(parentId, name);
+        assertEquals(expected, mDocs.readDocument(doc.derivedUri).length);
+    }
+}
@@ -98,6 +98,9 @@ public class FileOperationServiceTest extends ServiceTestCase<FileOperationServi
         assertNull(mService.deletionExecutor);
         mService.deletionExecutor = mDeletionExecutor;
 
+        assertNull(mService.placingExecutor);
+        mService.placingExecutor = mExecutor;
+
         assertNull(mService.handler);
         mService.handler = mHandler;
 
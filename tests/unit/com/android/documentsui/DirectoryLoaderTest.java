@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.provider.DocumentsContract;
+import android.provider.DocumentsContract.Document;
+
+import androidx.test.filters.MediumTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.documentsui.base.DocumentInfo;
+import com.android.documentsui.base.State;
+import com.android.documentsui.testing.TestEnv;
+import com.android.documentsui.testing.TestFileTypeLookup;
+import com.android.documentsui.testing.TestProvidersAccess;
+import com.android.documentsui.testing.UserManagers;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(AndroidJUnit4.class)
+@MediumTest
+public class DirectoryLoaderTest {
+
+    private TestEnv mEnv;
+    private TestActivity mActivity;
+    private DocumentInfo mFreddy;
+
+    @Before
+    public void setUp() {
+        mEnv = TestEnv.create();
+        mActivity = TestActivity.create(mEnv);
+        mActivity.userManager = UserManagers.create();
+
+        mEnv.state.action = State.ACTION_BROWSE;
+        mEnv.state.acceptMimes = new String[] { "*/*" };
+        mEnv.populateStack();
+
+        mFreddy = mEnv.model.createFile("freddy.jpg");
+        mEnv.mockProviders.get(TestProvidersAccess.HOME.authority)
+                .setNextChildDocumentsReturns(mFreddy, mEnv.model.createFile("fresh.txt"));
+    }
+
+    @Test
+    public void testRefine_filtersPreviousResult() {
+        final DirectoryLoader previous = createSearchLoader("fre");
+        final DirectoryResult previousResult = previous.loadInBackground();
+        previous.deliverResult(previousResult);
+        assertEquals(2, previousResult.getCursor().getCount());
+
+        final DirectoryLoader loader = createSearchLoader("FRED");
+        loader.refine(previous);
+        final Cursor cursor = loader.loadInBackground().getCursor();
+
+        assertEquals(1, cursor.getCount());
+        cursor.moveToFirst();
+        assertEquals(mFreddy.displayName,
+                cursor.getString(cursor.getColumnIndex(Document.COLUMN_DISPLAY_NAME)));
+        assertTrue(cursor.getExtras().getBoolean(DocumentsContract.EXTRA_LOADING));
+    }
+
+    @Test
+    public void testRefine_leavesPreviousCursorToMainThread() {
+        final DirectoryLoader previous = createSearchLoader("fre");
+        final DirectoryResult previousResult = previous.loadInBackground();
+        previous.deliverResult(previousResult);
+        final Cursor previousCursor = previousResult.getCursor();
+        previousCursor.moveToPosition(1);
+
+        final DirectoryLoader loader = createSearchLoader("FRED");
+        loader.refine(previous);
+        assertEquals(1, previousCursor.getPosition());
+
+        // Loading filters by the names read with the previous result, without moving the cursor
+        // which is shown.
+        previousCursor.moveToPosition(0);
+        final DirectoryResult result = loader.loadInBackground();
+        assertEquals(0, previousCursor.getPosition());
+        assertEquals(1, result.getCursor().getCount());
+        assertEquals(1, result.getModelIds().length);
+        assertEquals(1, result.getFileNames().size());
+
+        result.close();
+        assertTrue(previousCursor.isClosed());
+    }
+
+    @Test
+    public void testRefine_queriesProviderAfterwards() {
+        final DirectoryLoader previous = createSearchLoader("fre");
+        previous.deliverResult(previous.loadInBackground());
+
+        final DirectoryLoader loader = createSearchLoader("fres");
+        loader.refine(previous);
+        loader.deliverResult(loader.loadInBackground());
+        final Cursor cursor = loader.loadInBackground().getCursor();
+
+        assertEquals(1, cursor.getCount());
+        assertFalse(cursor.getExtras().getBoolean(DocumentsContract.EXTRA_LOADING));
+    }
+
+    @Test
+    public void testRefine_ignoresUnrelatedQuery() {
+        final DirectoryLoader previous = createSearchLoader("fre");
+        final DirectoryResult previousResult = previous.loadInBackground();
+        previous.deliverResult(previousResult);
+
+        final DirectoryLoader loader = createSearchLoader("jpg");
+        loader.refine(previous);
+        final Cursor cursor = loader.loadInBackground().getCursor();
+
+        // Answered by the provider rather than from the previous result.
+        assertEquals(1, cursor.getCount());
+        assertFalse(cursor.getExtras().getBoolean(DocumentsContract.EXTRA_LOADING));
+        assertFalse(previousResult.getCursor().isClosed());
+    }
+
+    private DirectoryLoader createSearchLoader(String query) {
+        final Uri uri = DocumentsContract.buildSearchDocumentsUri(
+                TestProvidersAccess.HOME.authority, TestProvidersAccess.HOME.rootId, query);
+        final Bundle queryArgs = new Bundle();
+        queryArgs.putString(DocumentsContract.QUERY_ARG_DISPLAY_NAME, query);
+        return new DirectoryLoader(mEnv.features, mActivity, mEnv.state, uri,
+                new TestFileTypeLookup(), new ContentLock(), queryArgs);
+    }
+}
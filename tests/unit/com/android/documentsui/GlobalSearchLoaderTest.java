@@ -22,10 +22,12 @@ import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertTrue;
 
 import android.database.Cursor;
+import android.database.MatrixCursor;
 import android.os.Bundle;
 import android.provider.DocumentsContract;
 import android.provider.DocumentsContract.Document;
 
+import androidx.test.InstrumentationRegistry;
 import androidx.test.filters.MediumTest;
 import androidx.test.runner.AndroidJUnit4;
 
@@ -44,6 +46,8 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.concurrent.Executor;
+
 @RunWith(AndroidJUnit4.class)
 @MediumTest
 public class GlobalSearchLoaderTest {
@@ -122,6 +126,36 @@ public class GlobalSearchLoaderTest {
         TestProvidersAccess.DOWNLOADS.userId = TestProvidersAccess.USER_ID;
     }
 
+    @Test
+    public void testShowsIndexedMatches_untilRootsSearched() {
+        final SearchIndex index = new SearchIndex(InstrumentationRegistry.getTargetContext(),
+                null, new TestImmediateExecutor(), 100);
+        final DocumentInfo doc = mEnv.model.createFile(SEARCH_STRING + ".txt", FILE_FLAG);
+        doc.lastModified = System.currentTimeMillis();
+        final MatrixCursor cursor = new MatrixCursor(new String[] {
+                Document.COLUMN_DOCUMENT_ID,
+                Document.COLUMN_MIME_TYPE,
+                Document.COLUMN_DISPLAY_NAME,
+                Document.COLUMN_LAST_MODIFIED });
+        cursor.addRow(new Object[] {
+                doc.documentId, doc.mimeType, doc.displayName, doc.lastModified });
+        index.update(TestProvidersAccess.USER_ID, TestProvidersAccess.DOWNLOADS.authority,
+                TestProvidersAccess.DOWNLOADS.rootId, "dir", cursor);
+
+        // Providers never respond to this loader.
+        final Executor pending = command -> {};
+        mLoader = new GlobalSearchLoader(mActivity, mEnv.providers, mEnv.state,
+                authority -> pending, new TestFileTypeLookup(), mQueryArgs,
+                TestProvidersAccess.USER_ID, index);
+        final Cursor c = mLoader.loadInBackground().getCursor();
+
+        assertEquals(1, c.getCount());
+        c.moveToFirst();
+        assertEquals(doc.displayName,
+                c.getString(c.getColumnIndex(Document.COLUMN_DISPLAY_NAME)));
+        assertTrue(c.getExtras().getBoolean(DocumentsContract.EXTRA_LOADING));
+    }
+
     @Test
     public void testSearchResult_includeDirectory() {
         final DocumentInfo doc = mEnv.model.createFolder(SEARCH_STRING);
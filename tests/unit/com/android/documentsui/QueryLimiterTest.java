@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class QueryLimiterTest {
+
+    private static final String LOCAL = "com.example.local";
+    private static final String CLOUD = "com.example.cloud";
+
+    private QueryLimiter mLimiter;
+
+    @Before
+    public void setUp() {
+        mLimiter = new QueryLimiter(2, 4, 1);
+    }
+
+    @Test
+    public void testSlowAuthority_doesNotTakeFastPermits() throws Exception {
+        mLimiter.release(mLimiter.acquire(CLOUD), QueryLimiter.SLOW_LATENCY_MS * 2);
+
+        final QueryLimiter.Permit cloud = mLimiter.acquire(CLOUD);
+        assertTrue(cloud.isSlow());
+
+        // Both fast permits are still available.
+        final QueryLimiter.Permit local1 = mLimiter.acquire(LOCAL);
+        final QueryLimiter.Permit local2 = mLimiter.acquire(LOCAL);
+        assertFalse(local1.isSlow());
+        assertFalse(local2.isSlow());
+    }
+
+    @Test
+    public void testAcquire_blocksAtLimit() throws Exception {
+        final QueryLimiter.Permit first = mLimiter.acquire(LOCAL);
+        mLimiter.acquire(LOCAL);
+
+        final CountDownLatch acquired = new CountDownLatch(1);
+        new Thread(() -> {
+            try {
+                mLimiter.acquire(LOCAL);
+                acquired.countDown();
+            } catch (InterruptedException e) {
+                // Test fails on timeout.
+            }
+        }).start();
+
+        assertFalse(acquired.await(100, TimeUnit.MILLISECONDS));
+        mLimiter.release(first, 10);
+        assertTrue(acquired.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testLimit_decreasesOnCongestion() throws Exception {
+        mLimiter.release(mLimiter.acquire(LOCAL), 100);
+        mLimiter.release(mLimiter.acquire(LOCAL), 1000);
+
+        assertEquals(1, mLimiter.getLimit());
+    }
+
+    @Test
+    public void testLimit_increasesWithDemand() throws Exception {
+        mLimiter = new QueryLimiter(1, 4, 1);
+        final QueryLimiter.Permit first = mLimiter.acquire(LOCAL);
+        final CountDownLatch acquired = new CountDownLatch(1);
+        new Thread(() -> {
+            try {
+                mLimiter.acquire(LOCAL);
+                acquired.countDown();
+            } catch (InterruptedException e) {
+                // Test fails on timeout.
+            }
+        }).start();
+        while (!mLimiter.toString().contains("waiting=1")) {
+            Thread.sleep(10);
+        }
+
+        mLimiter.release(first, 10);
+
+        assertTrue(acquired.await(1, TimeUnit.SECONDS));
+        assertEquals(2, mLimiter.getLimit());
+    }
+
+    @Test
+    public void testAcquire_canceledWhileWaiting() throws Exception {
+        mLimiter.acquire(LOCAL);
+        mLimiter.acquire(LOCAL);
+
+        final CancellationSignal signal = new CancellationSignal();
+        final CountDownLatch canceled = new CountDownLatch(1);
+        new Thread(() -> {
+            try {
+                mLimiter.acquire(LOCAL, signal);
+            } catch (OperationCanceledException e) {
+                canceled.countDown();
+            } catch (InterruptedException e) {
+                // Test fails on timeout.
+            }
+        }).start();
+        while (!mLimiter.toString().contains("waiting=1")) {
+            Thread.sleep(10);
+        }
+
+        signal.cancel();
+
+        assertTrue(canceled.await(1, TimeUnit.SECONDS));
+        assertTrue(mLimiter.toString().contains("waiting=0"));
+    }
+
+    @Test
+    public void testRecordQueryTime() {
+        mLimiter.recordQueryTime(100, true);
+        mLimiter.recordQueryTime(30, false);
+        mLimiter.recordQueryTime(20, false);
+
+        assertTrue(mLimiter.toString().contains("useful=100ms, wasted=50ms"));
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui;
+
+import static com.android.documentsui.base.DocumentInfo.getCursorString;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.provider.DocumentsContract.Document;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.documentsui.base.RootInfo;
+import com.android.documentsui.base.UserId;
+import com.android.documentsui.roots.RootCursorWrapper;
+import com.android.documentsui.testing.TestImmediateExecutor;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class RecentsIndexTest {
+
+    private static final String AUTHORITY = "com.example";
+    private static final UserId USER = UserId.DEFAULT_USER;
+    private static final int MAX_COUNT = 64;
+
+    private RecentsIndex mIndex;
+    private RootInfo mHome;
+    private RootInfo mDownloads;
+    private Map<String, List<RootInfo>> mRoots;
+
+    @Before
+    public void setUp() {
+        mIndex = new RecentsIndex(InstrumentationRegistry.getTargetContext(), null,
+                new TestImmediateExecutor());
+        mHome = createRoot("home");
+        mDownloads = createRoot("downloads");
+        mRoots = Collections.singletonMap(AUTHORITY, Arrays.asList(mHome, mDownloads));
+    }
+
+    @Test
+    public void testQuery_rootsNotIndexed() {
+        mIndex.update(USER, AUTHORITY, mHome.rootId, createCursor("doc1"));
+
+        assertTrue(mIndex.query(USER, mRoots, 0, MAX_COUNT).isEmpty());
+    }
+
+    @Test
+    public void testQuery_rootsIndexed() {
+        mIndex.update(USER, AUTHORITY, mHome.rootId, createCursor("doc1", "doc2"));
+        mIndex.update(USER, AUTHORITY, mDownloads.rootId, createCursor());
+
+        final List<Cursor> cursors = mIndex.query(USER, mRoots, 0, MAX_COUNT).get(AUTHORITY);
+        assertEquals(2, cursors.size());
+        assertEquals(2, cursors.get(0).getCount());
+        assertEquals(0, cursors.get(1).getCount());
+
+        final Cursor cursor = cursors.get(0);
+        cursor.moveToFirst();
+        assertEquals(AUTHORITY, getCursorString(cursor, RootCursorWrapper.COLUMN_AUTHORITY));
+        assertEquals(mHome.rootId, getCursorString(cursor, RootCursorWrapper.COLUMN_ROOT_ID));
+        assertEquals("doc2", getCursorString(cursor, Document.COLUMN_DOCUMENT_ID));
+    }
+
+    @Test
+    public void testUpdate_replacesRoot() {
+        mIndex.update(USER, AUTHORITY, mHome.rootId, createCursor("doc1", "doc2"));
+        mIndex.update(USER, AUTHORITY, mHome.rootId, createCursor("doc3"));
+        mIndex.update(USER, AUTHORITY, mDownloads.rootId, createCursor());
+
+        final Cursor cursor = mIndex.query(USER, mRoots, 0, MAX_COUNT).get(AUTHORITY).get(0);
+        assertEquals(1, cursor.getCount());
+        cursor.moveToFirst();
+        assertEquals("doc3", getCursorString(cursor, Document.COLUMN_DOCUMENT_ID));
+    }
+
+    @Test
+    public void testQuery_dropsOldDocuments() {
+        mIndex.update(USER, AUTHORITY, mHome.rootId, createCursor("doc1", "doc2"));
+        mIndex.update(USER, AUTHORITY, mDownloads.rootId, createCursor());
+
+        // doc1 was last modified at 1000, doc2 at 2000.
+        final Cursor cursor = mIndex.query(USER, mRoots, 1500, MAX_COUNT).get(AUTHORITY).get(0);
+        assertEquals(1, cursor.getCount());
+    }
+
+    @Test
+    public void testUpdate_writesOnExecutor() {
+        final List<Runnable> writes = new ArrayList<>();
+        mIndex = new RecentsIndex(InstrumentationRegistry.getTargetContext(), null, writes::add);
+        final Cursor cursor = createCursor("doc1");
+        mIndex.update(USER, AUTHORITY, mHome.rootId, cursor);
+        mIndex.update(USER, AUTHORITY, mDownloads.rootId, createCursor());
+
+        // Rows were read before the cursor is closed.
+        cursor.close();
+        assertTrue(mIndex.query(USER, mRoots, 0, MAX_COUNT).isEmpty());
+
+        for (Runnable write : writes) {
+            write.run();
+        }
+        assertEquals(1, mIndex.query(USER, mRoots, 0, MAX_COUNT).get(AUTHORITY).get(0)
+                .getCount());
+    }
+
+    @Test
+    public void testQuery_otherUser() {
+        mIndex.update(USER, AUTHORITY, mHome.rootId, createCursor("doc1"));
+        mIndex.update(USER, AUTHORITY, mDownloads.rootId, createCursor());
+
+        assertFalse(mIndex.query(UserId.of(USER.getIdentifier() + 1), mRoots, 0, MAX_COUNT)
+                .containsKey(AUTHORITY));
+    }
+
+    private static RootInfo createRoot(String rootId) {
+        final RootInfo root = new RootInfo();
+        root.userId = USER;
+        root.authority = AUTHORITY;
+        root.rootId = rootId;
+        return root;
+    }
+
+    private static Cursor createCursor(String... documentIds) {
+        final MatrixCursor cursor = new MatrixCursor(new String[] {
+                Document.COLUMN_DOCUMENT_ID,
+                Document.COLUMN_MIME_TYPE,
+                Document.COLUMN_DISPLAY_NAME,
+                Document.COLUMN_LAST_MODIFIED
+        });
+        for (int i = 0; i < documentIds.length; i++) {
+            cursor.newRow()
+                    .add(Document.COLUMN_DOCUMENT_ID, documentIds[i])
+                    .add(Document.COLUMN_MIME_TYPE, "text/plain")
+                    .add(Document.COLUMN_DISPLAY_NAME, documentIds[i] + ".txt")
+                    .add(Document.COLUMN_LAST_MODIFIED, (i + 1) * 1000L);
+        }
+        return cursor;
+    }
+}
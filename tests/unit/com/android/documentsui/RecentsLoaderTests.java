@@ -26,8 +26,10 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.when;
 
 import android.database.Cursor;
+import android.provider.DocumentsContract;
 import android.provider.DocumentsContract.Document;
 
+import androidx.test.InstrumentationRegistry;
 import androidx.test.filters.MediumTest;
 import androidx.test.runner.AndroidJUnit4;
 
@@ -46,7 +48,10 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 
 @RunWith(AndroidJUnit4.class)
@@ -146,6 +151,88 @@ public class RecentsLoaderTests {
         }
     }
 
+    @Test
+    public void testShowsIndexedRecents_untilRootsQueried() {
+        final RecentsIndex index =
+                new RecentsIndex(InstrumentationRegistry.getTargetContext(), null,
+                        new TestImmediateExecutor());
+        final DocumentInfo doc = mEnv.model.createFile("freddy.jpg");
+        doc.lastModified = System.currentTimeMillis();
+        mEnv.mockProviders.get(TestProvidersAccess.HOME.authority)
+                .setNextRecentDocumentsReturns(doc);
+        mLoader = new RecentsLoader(mActivity, mEnv.providers, mEnv.state,
+                TestImmediateExecutor.createLookup(), new TestFileTypeLookup(),
+                UserId.DEFAULT_USER, index, null /* searchIndex */);
+        mLoader.loadInBackground();
+
+        // Providers never respond to this loader.
+        final Executor pending = command -> {};
+        mLoader = new RecentsLoader(mActivity, mEnv.providers, mEnv.state,
+                authority -> pending, new TestFileTypeLookup(), UserId.DEFAULT_USER, index,
+                null /* searchIndex */);
+        final Cursor c = mLoader.loadInBackground().getCursor();
+
+        assertEquals(1, c.getCount());
+        c.moveToFirst();
+        assertEquals(doc.documentId,
+                c.getString(c.getColumnIndex(Document.COLUMN_DOCUMENT_ID)));
+        assertTrue(c.getExtras().getBoolean(DocumentsContract.EXTRA_LOADING));
+    }
+
+    @Test
+    public void testReplacingIndexedRecents_isReported() {
+        final RecentsIndex index =
+                new RecentsIndex(InstrumentationRegistry.getTargetContext(), null,
+                        new TestImmediateExecutor());
+        final DocumentInfo doc = mEnv.model.createFile("freddy.jpg");
+        doc.lastModified = System.currentTimeMillis();
+        mEnv.mockProviders.get(TestProvidersAccess.HOME.authority)
+                .setNextRecentDocumentsReturns(doc);
+        mLoader = new RecentsLoader(mActivity, mEnv.providers, mEnv.state,
+                TestImmediateExecutor.createLookup(), new TestFileTypeLookup(),
+                UserId.DEFAULT_USER, index, null /* searchIndex */);
+        mLoader.loadInBackground();
+
+        // Queries run only once the indexed recents are shown.
+        final List<Runnable> queries = new ArrayList<>();
+        mEnv.mockProviders.get(TestProvidersAccess.HOME.authority)
+                .setNextRecentDocumentsReturns(doc);
+        mLoader = new RecentsLoader(mActivity, mEnv.providers, mEnv.state,
+                authority -> queries::add, new TestFileTypeLookup(), UserId.DEFAULT_USER, index,
+                null /* searchIndex */);
+        assertFalse(mLoader.loadInBackground().cachedRowsReplaced);
+
+        for (Runnable query : queries) {
+            query.run();
+        }
+        final DirectoryResult result = mLoader.loadInBackground();
+
+        assertTrue(result.cachedRowsReplaced);
+        assertEquals(1, result.getCursor().getCount());
+    }
+
+    @Test
+    public void testAbandon_cancelsQueries() {
+        final DocumentInfo doc = mEnv.model.createFile("freddy.jpg");
+        doc.lastModified = System.currentTimeMillis();
+        mEnv.mockProviders.get(TestProvidersAccess.HOME.authority)
+                .setNextRecentDocumentsReturns(doc);
+        final List<Runnable> tasks = new ArrayList<>();
+        final Executor pending = tasks::add;
+        mLoader = new RecentsLoader(mActivity, mEnv.providers, mEnv.state,
+                authority -> pending, new TestFileTypeLookup(), UserId.DEFAULT_USER);
+        mLoader.loadInBackground();
+
+        mLoader.abandon();
+        for (Runnable task : tasks) {
+            task.run();
+        }
+        final Cursor c = mLoader.loadInBackground().getCursor();
+
+        assertEquals(0, c.getCount());
+        assertTrue(c.getExtras().getBoolean(DocumentsContract.EXTRA_LOADING));
+    }
+
     @Test
     public void testContentsUpdate_observable() throws Exception {
         CountDownLatch latch = new CountDownLatch(1);
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui;
+
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.documentsui.base.RootInfo;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class RootsMonitorTest {
+
+    private static final String AUTHORITY = "com.example";
+    private static final String OTHER_AUTHORITY = "com.example.other";
+
+    private RootInfo mRoot;
+
+    @Before
+    public void setUp() {
+        mRoot = new RootInfo();
+        mRoot.authority = AUTHORITY;
+        mRoot.rootId = "home";
+    }
+
+    @Test
+    public void testMayHaveRemoved_authorityChanged() {
+        assertTrue(RootsMonitor.mayHaveRemoved(
+                mRoot, Arrays.asList(OTHER_AUTHORITY, AUTHORITY)));
+    }
+
+    @Test
+    public void testMayHaveRemoved_otherAuthoritiesChanged() {
+        assertFalse(RootsMonitor.mayHaveRemoved(
+                mRoot, Collections.singletonList(OTHER_AUTHORITY)));
+        assertFalse(RootsMonitor.mayHaveRemoved(mRoot, Collections.emptyList()));
+    }
+
+    @Test
+    public void testMayHaveRemoved_unknownChanges() {
+        assertTrue(RootsMonitor.mayHaveRemoved(mRoot, null));
+    }
+
+    @Test
+    public void testMayHaveRemoved_noCurrentRoot() {
+        assertTrue(RootsMonitor.mayHaveRemoved(null, Collections.singletonList(AUTHORITY)));
+    }
+}
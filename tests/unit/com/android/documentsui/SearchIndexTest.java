@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui;
+
+import static com.android.documentsui.base.DocumentInfo.getCursorString;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.provider.DocumentsContract.Document;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.documentsui.base.Providers;
+import com.android.documentsui.base.RootInfo;
+import com.android.documentsui.base.UserId;
+import com.android.documentsui.testing.TestImmediateExecutor;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class SearchIndexTest {
+
+    private static final String AUTHORITY = "com.example";
+    private static final UserId USER = UserId.DEFAULT_USER;
+    private static final int MAX_COUNT = 64;
+
+    private SearchIndex mIndex;
+    private Map<String, List<RootInfo>> mRoots;
+
+    @Before
+    public void setUp() {
+        mIndex = new SearchIndex(InstrumentationRegistry.getTargetContext(), null,
+                new TestImmediateExecutor(), 4);
+        mRoots = Collections.singletonMap(AUTHORITY, Arrays.asList(createRoot(AUTHORITY)));
+    }
+
+    @Test
+    public void testGetTokens() {
+        assertEquals("annual report 2020 pdf", SearchIndex.getTokens("Annual_Report (2020).pdf"));
+        assertEquals("", SearchIndex.getTokens("--"));
+    }
+
+    @Test
+    public void testQuery_matchesPrefixOfTokens() {
+        mIndex.update(USER, AUTHORITY, "root", "dir",
+                createCursor("Annual Report.pdf", "Reports.txt", "Unreported.txt"));
+
+        assertEquals(Arrays.asList("Annual Report.pdf", "Reports.txt"), query("rep"));
+        assertEquals(Arrays.asList("Annual Report.pdf"), query("annual rep"));
+    }
+
+    @Test
+    public void testQuery_matchesWholeQuery() {
+        mIndex.update(USER, AUTHORITY, "root", "dir", createCursor("Report annual.pdf"));
+
+        assertTrue(mIndex.query(USER, mRoots, "annual rep", false, MAX_COUNT).isEmpty());
+    }
+
+    @Test
+    public void testQuery_limitsMatchesOfWholeQuery() {
+        final MatrixCursor cursor = createCursor();
+        cursor.newRow()
+                .add(Document.COLUMN_DOCUMENT_ID, "old")
+                .add(Document.COLUMN_DISPLAY_NAME, "Annual Report.pdf")
+                .add(Document.COLUMN_LAST_MODIFIED, 1L);
+        cursor.newRow()
+                .add(Document.COLUMN_DOCUMENT_ID, "new")
+                .add(Document.COLUMN_DISPLAY_NAME, "Report annual.pdf")
+                .add(Document.COLUMN_LAST_MODIFIED, 2L);
+        mIndex.update(USER, AUTHORITY, "root", "dir", cursor);
+
+        // The newer document matches the tokens but not the whole query.
+        assertEquals(Arrays.asList("Annual Report.pdf"),
+                getNames(mIndex.query(USER, mRoots, "annual rep", false, 1).get(AUTHORITY)));
+    }
+
+    @Test
+    public void testUpdate_replacesChildrenOfDirectory() {
+        mIndex.update(USER, AUTHORITY, "root", "dir", createCursor("notes.txt"));
+        mIndex.update(USER, AUTHORITY, "root", "dir", createCursor("notebook.txt"));
+
+        assertEquals(Arrays.asList("notebook.txt"), query("note"));
+    }
+
+    @Test
+    public void testUpdate_evictsLeastRecentlySeen() throws Exception {
+        mIndex.update(USER, AUTHORITY, "root", "dir1", createCursor("a1.txt", "a2.txt"));
+        // Documents seen at the same time are evicted in no particular order.
+        Thread.sleep(10);
+        mIndex.update(USER, AUTHORITY, "root", "dir2",
+                createCursor("a3.txt", "a4.txt", "a5.txt", "a6.txt"));
+
+        assertEquals(Arrays.asList("a3.txt", "a4.txt", "a5.txt", "a6.txt"), query("a"));
+    }
+
+    @Test
+    public void testUpdate_capsListing() {
+        mIndex.update(USER, AUTHORITY, "root", "dir",
+                createCursor("a1.txt", "a2.txt", "a3.txt", "a4.txt", "a5.txt", "a6.txt"));
+
+        assertEquals(Arrays.asList("a1.txt", "a2.txt", "a3.txt", "a4.txt"), query("a"));
+    }
+
+    @Test
+    public void testUpdate_skipsUnchangedListing() {
+        final List<Runnable> writes = new ArrayList<>();
+        mIndex = new SearchIndex(InstrumentationRegistry.getTargetContext(), null, writes::add, 4);
+        mIndex.update(USER, AUTHORITY, "root", "dir", createCursor("notes.txt"));
+        runWrites(writes);
+
+        mIndex.update(USER, AUTHORITY, "root", "dir", createCursor("notes.txt"));
+        assertTrue(writes.isEmpty());
+
+        mIndex.update(USER, AUTHORITY, "root", "other", createCursor("notes.txt"));
+        assertEquals(1, writes.size());
+    }
+
+    @Test
+    public void testUpdate_mergesPendingListings() {
+        final List<Runnable> writes = new ArrayList<>();
+        mIndex = new SearchIndex(InstrumentationRegistry.getTargetContext(), null, writes::add, 4);
+        mIndex.update(USER, AUTHORITY, "root", "dir", createCursor("notes.txt"));
+        mIndex.update(USER, AUTHORITY, "root", "dir", createCursor("notebook.txt"));
+        assertEquals(1, writes.size());
+
+        runWrites(writes);
+        assertEquals(Arrays.asList("notebook.txt"), query("note"));
+    }
+
+    @Test
+    public void testQuery_excludesMediaOfOtherProviders() {
+        final MatrixCursor cursor = createCursor("cat.txt");
+        cursor.newRow()
+                .add(Document.COLUMN_DOCUMENT_ID, "cat.jpg")
+                .add(Document.COLUMN_MIME_TYPE, "image/jpeg")
+                .add(Document.COLUMN_DISPLAY_NAME, "cat.jpg")
+                .add(Document.COLUMN_LAST_MODIFIED, 0L);
+        mIndex.update(USER, AUTHORITY, "root", "dir", cursor);
+        mIndex.update(USER, Providers.AUTHORITY_MEDIA, "root", "dir", cursor);
+
+        final List<String> names = getNames(
+                mIndex.query(USER, mRoots, "cat", true, MAX_COUNT).get(AUTHORITY));
+        assertEquals(Arrays.asList("cat.txt"), names);
+
+        mRoots = Collections.singletonMap(Providers.AUTHORITY_MEDIA,
+                Arrays.asList(createRoot(Providers.AUTHORITY_MEDIA)));
+        assertEquals(2, getNames(mIndex.query(USER, mRoots, "cat", true, MAX_COUNT)
+                .get(Providers.AUTHORITY_MEDIA)).size());
+    }
+
+    private List<String> query(String query) {
+        final Map<String, List<Cursor>> result =
+                mIndex.query(USER, mRoots, query, false, MAX_COUNT);
+        final List<String> names = getNames(result.get(AUTHORITY));
+        Collections.sort(names);
+        return names;
+    }
+
+    private static void runWrites(List<Runnable> writes) {
+        for (Runnable write : writes) {
+            write.run();
+        }
+        writes.clear();
+    }
+
+    private static List<String> getNames(List<Cursor> cursors) {
+        final List<String> names = new ArrayList<>();
+        for (Cursor cursor : cursors) {
+            while (cursor.moveToNext()) {
+                names.add(getCursorString(cursor, Document.COLUMN_DISPLAY_NAME));
+            }
+        }
+        return names;
+    }
+
+    private static RootInfo createRoot(String authority) {
+        final RootInfo root = new RootInfo();
+        root.userId = USER;
+        root.authority = authority;
+        root.rootId = "root";
+        return root;
+    }
+
+    private static MatrixCursor createCursor(String... names) {
+        final MatrixCursor cursor = new MatrixCursor(new String[] {
+                Document.COLUMN_DOCUMENT_ID,
+                Document.COLUMN_MIME_TYPE,
+                Document.COLUMN_DISPLAY_NAME,
+                Document.COLUMN_LAST_MODIFIED
+        });
+        for (String name : names) {
+            cursor.newRow()
+                    .add(Document.COLUMN_DOCUMENT_ID, name)
+                    .add(Document.COLUMN_MIME_TYPE, "text/plain")
+                    .add(Document.COLUMN_DISPLAY_NAME, name)
+                    .add(Document.COLUMN_LAST_MODIFIED, 0L);
+        }
+        return cursor;
+    }
+}
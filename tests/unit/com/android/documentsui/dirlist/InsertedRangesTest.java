@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.dirlist;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public final class InsertedRangesTest {
+
+    @Test
+    public void testFind_insertions() {
+        final InsertedRanges ranges = InsertedRanges.find(
+                Arrays.asList("b", "e"),
+                Arrays.asList("a", "b", "c", "d", "e", "f"));
+
+        assertEquals(4, ranges.getInsertedCount());
+
+        final RecyclerView.Adapter<?> adapter = mock(RecyclerView.Adapter.class);
+        ranges.dispatchTo(adapter);
+        final InOrder inOrder = inOrder(adapter);
+        inOrder.verify(adapter).notifyItemRangeInserted(0, 1);
+        inOrder.verify(adapter).notifyItemRangeInserted(2, 2);
+        inOrder.verify(adapter).notifyItemRangeInserted(5, 1);
+    }
+
+    @Test
+    public void testFind_unchanged() {
+        assertEquals(0, InsertedRanges.find(
+                Arrays.asList("a", "b"), Arrays.asList("a", "b")).getInsertedCount());
+    }
+
+    @Test
+    public void testFind_removal() {
+        assertNull(InsertedRanges.find(Arrays.asList("a", "b"), Arrays.asList("a")));
+        assertNull(InsertedRanges.find(Arrays.asList("a"), Collections.emptyList()));
+    }
+
+    @Test
+    public void testFind_move() {
+        assertNull(InsertedRanges.find(Arrays.asList("a", "b"), Arrays.asList("b", "a", "c")));
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.roots;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+@SmallTest
+public class RootsLoadStatsTest extends AndroidTestCase {
+
+    private static final String AUTHORITY = "com.example";
+    private static final long MAX_TIMEOUT_MS = 15000;
+
+    private RootsLoadStats mStats;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mStats = new RootsLoadStats();
+    }
+
+    public void testTimeout_unknownAuthority() {
+        assertEquals(MAX_TIMEOUT_MS, mStats.getTimeoutMs(AUTHORITY, MAX_TIMEOUT_MS));
+    }
+
+    public void testTimeout_fastAuthority() {
+        mStats.onLoaded(AUTHORITY, 10);
+
+        assertEquals(RootsLoadStats.MIN_TIMEOUT_MS,
+                mStats.getTimeoutMs(AUTHORITY, MAX_TIMEOUT_MS));
+    }
+
+    public void testTimeout_followsLatency() {
+        mStats.onLoaded(AUTHORITY, 1000);
+
+        assertEquals(4000, mStats.getTimeoutMs(AUTHORITY, MAX_TIMEOUT_MS));
+
+        mStats.onLoaded(AUTHORITY, 2000);
+
+        // Moving average of 1000ms and 2000ms.
+        assertEquals(5200, mStats.getTimeoutMs(AUTHORITY, MAX_TIMEOUT_MS));
+    }
+
+    public void testTimeout_cappedByMax() {
+        mStats.onLoaded(AUTHORITY, 5000);
+
+        assertEquals(MAX_TIMEOUT_MS, mStats.getTimeoutMs(AUTHORITY, MAX_TIMEOUT_MS));
+    }
+
+    public void testTimeout_notLearnedFromTimeouts() {
+        mStats.onTimedOut(AUTHORITY);
+
+        assertEquals(MAX_TIMEOUT_MS, mStats.getTimeoutMs(AUTHORITY, MAX_TIMEOUT_MS));
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.roots;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.documentsui.base.RootInfo;
+import com.android.documentsui.base.UserId;
+
+import com.google.common.collect.Lists;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Collections;
+import java.util.List;
+
+@SmallTest
+public class RootsSnapshotTest extends AndroidTestCase {
+
+    private static final UserId OTHER_USER = UserId.of(UserId.DEFAULT_USER.getIdentifier() + 1);
+
+    private File mDir;
+    private RootsSnapshot mSnapshot;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDir = new File(getContext().getCacheDir(), "roots_snapshot_test");
+        mSnapshot = new RootsSnapshot(mDir);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        final File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDir.delete();
+        super.tearDown();
+    }
+
+    public void testWriteThenRead() {
+        final RootInfo root = buildRoot(UserId.DEFAULT_USER, "com.example", "home");
+        mSnapshot.write(UserId.DEFAULT_USER, Collections.singletonList(
+                new RootsSnapshot.AuthorityRoots("com.example", "Example", "com.example.app",
+                        Lists.newArrayList(root))));
+
+        final List<RootsSnapshot.AuthorityRoots> snapshot = mSnapshot.read(UserId.DEFAULT_USER);
+        assertThat(snapshot).hasSize(1);
+        assertEquals("com.example", snapshot.get(0).authority);
+        assertEquals("Example", snapshot.get(0).applicationName);
+        assertEquals("com.example.app", snapshot.get(0).packageName);
+        assertTrue(RootsSnapshot.sameRoots(Lists.newArrayList(root), snapshot.get(0).roots));
+    }
+
+    public void testRead_otherUser() {
+        mSnapshot.write(UserId.DEFAULT_USER, Collections.emptyList());
+
+        assertNotNull(mSnapshot.read(UserId.DEFAULT_USER));
+        assertNull(mSnapshot.read(OTHER_USER));
+    }
+
+    public void testRead_corrupted() throws Exception {
+        mDir.mkdirs();
+        try (FileOutputStream out = new FileOutputStream(
+                new File(mDir, Integer.toString(UserId.DEFAULT_USER.getIdentifier())))) {
+            out.write(new byte[] { 0, 0, 0, 1, 42 });
+        }
+
+        assertNull(mSnapshot.read(UserId.DEFAULT_USER));
+    }
+
+    public void testSameRoots() {
+        final RootInfo root = buildRoot(UserId.DEFAULT_USER, "com.example", "home");
+        final RootInfo sameRoot = buildRoot(UserId.DEFAULT_USER, "com.example", "home");
+        final RootInfo renamedRoot = buildRoot(UserId.DEFAULT_USER, "com.example", "home");
+        renamedRoot.title = "Renamed";
+
+        assertTrue(RootsSnapshot.sameRoots(
+                Lists.newArrayList(root), Lists.newArrayList(sameRoot)));
+        assertFalse(RootsSnapshot.sameRoots(
+                Lists.newArrayList(root), Lists.newArrayList(renamedRoot)));
+        assertFalse(RootsSnapshot.sameRoots(
+                Lists.newArrayList(root), Collections.emptyList()));
+    }
+
+    private static RootInfo buildRoot(UserId userId, String authority, String rootId) {
+        final RootInfo root = new RootInfo();
+        root.userId = userId;
+        root.authority = authority;
+        root.rootId = rootId;
+        root.title = "Home";
+        root.documentId = rootId;
+        return root;
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.services;
+
+import static com.android.documentsui.services.FileOperationService.OPERATION_MOVE;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.net.Uri;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.documentsui.base.DocumentStack;
+import com.android.documentsui.base.DurableUtils;
+import com.android.documentsui.testing.TestProvidersAccess;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class CopyJournalTest {
+    private static final Uri SRC_PARENT = Uri.parse("content://ham/parent");
+    private static final Uri SRC_1 = Uri.parse("content://ham/fancy");
+    private static final Uri SRC_2 = Uri.parse("content://ham/monkey");
+    private static final Uri DST_1 = Uri.parse("content://poodle/fancy");
+    private static final List<Uri> SRCS = Arrays.asList(SRC_1, SRC_2);
+
+    private Context mContext;
+    private CopyJournal mJournal;
+    private final List<CopyJournal> mLoaded = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        mContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        mJournal = CopyJournal.create(mContext, OPERATION_MOVE,
+                new DocumentStack(TestProvidersAccess.HOME), SRC_PARENT, SRCS);
+    }
+
+    @After
+    public void tearDown() {
+        mJournal.delete();
+        for (CopyJournal journal : mLoaded) {
+            journal.release();
+        }
+    }
+
+    @Test
+    public void testRead_RestoresOperation() throws Exception {
+        CopyJournal restored = reload();
+
+        assertEquals(OPERATION_MOVE, restored.opType);
+        assertEquals(TestProvidersAccess.HOME, restored.destination.getRoot());
+        assertEquals(SRC_PARENT, restored.srcParent);
+        assertEquals(SRCS, restored.srcs);
+    }
+
+    @Test
+    public void testRead_RestoresRecords() throws Exception {
+        mJournal.onCreated(SRC_1, DST_1);
+        mJournal.onCheckpoint(SRC_1, 4096);
+        mJournal.onCompleted(SRC_2);
+
+        CopyJournal restored = reload();
+
+        assertEquals(DST_1, restored.getCreated(SRC_1));
+        assertEquals(4096, restored.getCheckpoint(SRC_1));
+        assertFalse(restored.isCompleted(SRC_1));
+        assertTrue(restored.isCompleted(SRC_2));
+    }
+
+    @Test
+    public void testRead_CompletionClearsCheckpoints() throws Exception {
+        mJournal.onCreated(SRC_1, DST_1);
+        mJournal.onCheckpoint(SRC_1, 4096);
+        mJournal.onCompleted(SRC_1);
+
+        CopyJournal restored = reload();
+
+        assertTrue(restored.isCompleted(SRC_1));
+        assertNull(restored.getCreated(SRC_1));
+        assertEquals(0, restored.getCheckpoint(SRC_1));
+    }
+
+    @Test
+    public void testRead_IgnoresTornRecord() throws Exception {
+        mJournal.onCompleted(SRC_1);
+        mJournal.onCheckpoint(SRC_2, 4096);
+
+        byte[] data = Files.readAllBytes(mJournal.getFile().toPath());
+        byte[] torn = Arrays.copyOf(data, data.length - 3);
+        CopyJournal restored =
+                DurableUtils.readFromArray(torn, new CopyJournal(mJournal.getFile()));
+
+        assertTrue(restored.isCompleted(SRC_1));
+        assertEquals(0, restored.getCheckpoint(SRC_2));
+    }
+
+    @Test
+    public void testLoadPending_SkipsJournalsOfRunningJobs() {
+        mLoaded.addAll(CopyJournal.loadPending(mContext));
+        for (CopyJournal journal : mLoaded) {
+            assertFalse(journal.getFile().equals(mJournal.getFile()));
+        }
+    }
+
+    @Test
+    public void testDelete_RemovesFile() {
+        mJournal.delete();
+
+        assertFalse(mJournal.getFile().exists());
+    }
+
+    private CopyJournal reload() throws Exception {
+        byte[] data = Files.readAllBytes(mJournal.getFile().toPath());
+        return DurableUtils.readFromArray(data, new CopyJournal(mJournal.getFile()));
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.services;
+
+import static com.android.documentsui.services.FileOperationService.OPERATION_COPY;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.net.Uri;
+import android.provider.DocumentsContract;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.documentsui.base.DocumentStack;
+import com.android.documentsui.base.Providers;
+import com.android.documentsui.clipping.UrisSupplier;
+import com.android.documentsui.testing.TestFeatures;
+import com.android.documentsui.testing.TestScheduledExecutorService;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class DeviceLaneSchedulerTest {
+
+    private static final Set<String> LANE_SD = Collections.singleton("sd");
+    private static final Set<String> LANE_USB = Collections.singleton("usb");
+    private static final Set<String> LANES_SD_USB = new HashSet<>(Arrays.asList("sd", "usb"));
+
+    private final List<String> mStarted = new ArrayList<>();
+
+    private Context mContext;
+    private TestScheduledExecutorService mExecutor;
+    private TestScheduledExecutorService mPlacingExecutor;
+    private DeviceLaneScheduler mScheduler;
+    private long mNow;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        mExecutor = new TestScheduledExecutorService();
+        mPlacingExecutor = new TestScheduledExecutorService();
+        mScheduler = new DeviceLaneScheduler(mExecutor, mPlacingExecutor, 2, () -> mNow);
+        mStarted.clear();
+    }
+
+    @Test
+    public void testRunsJobsOnDistinctLanesConcurrently() {
+        mScheduler.schedule(createJob("a"), LANE_SD, 1);
+        mScheduler.schedule(createJob("b"), LANE_USB, 1);
+
+        mExecutor.run(0);
+        mExecutor.run(0);
+
+        assertEquals(Arrays.asList("a", "b"), mStarted);
+    }
+
+    @Test
+    public void testSerialisesJobsSharingALane() {
+        mScheduler.schedule(createJob("a"), LANE_SD, 1);
+        mScheduler.schedule(createJob("b"), LANES_SD_USB, 1);
+
+        mExecutor.run(0);
+        assertEquals(Arrays.asList("a"), mStarted);
+
+        mExecutor.runAll();
+        assertEquals(Arrays.asList("a", "b"), mStarted);
+    }
+
+    @Test
+    public void testLimitsRunningJobs() {
+        mScheduler.schedule(createJob("a"), Collections.singleton("1"), 1);
+        mScheduler.schedule(createJob("b"), Collections.singleton("2"), 1);
+        mScheduler.schedule(createJob("c"), Collections.singleton("3"), 1);
+
+        mExecutor.run(0);
+        mExecutor.run(0);
+        assertEquals(Arrays.asList("a", "b"), mStarted);
+
+        mExecutor.runAll();
+        assertEquals(Arrays.asList("a", "b", "c"), mStarted);
+    }
+
+    @Test
+    public void testSmallJobsOvertakeLargeOnes() {
+        mScheduler.schedule(createJob("running"), LANE_SD, 1);
+        mScheduler.schedule(createJob("large"), LANE_SD, 1000);
+        mScheduler.schedule(createJob("small"), LANE_SD, 1);
+
+        mExecutor.runAll();
+
+        assertEquals(Arrays.asList("running", "small", "large"), mStarted);
+    }
+
+    @Test
+    public void testStarvingJobsAreNotOvertaken() {
+        mScheduler.schedule(createJob("running"), LANE_SD, 1);
+        mScheduler.schedule(createJob("large"), LANE_SD, 1000);
+        mNow += DeviceLaneScheduler.STARVATION_MILLIS;
+        mScheduler.schedule(createJob("small"), LANE_SD, 1);
+
+        mExecutor.runAll();
+
+        assertEquals(Arrays.asList("running", "large", "small"), mStarted);
+    }
+
+    @Test
+    public void testCancelPending() {
+        TestJob running = createJob("running");
+        TestJob queued = createJob("queued");
+        mScheduler.schedule(running, LANE_SD, 1);
+        mScheduler.schedule(queued, LANE_SD, 1);
+
+        assertFalse(mScheduler.cancelPending(running));
+        assertTrue(mScheduler.cancelPending(queued));
+
+        mExecutor.runAll();
+        assertEquals(Arrays.asList("running"), mStarted);
+    }
+
+    @Test
+    public void testWaitsForPlacement() {
+        mScheduler.schedule(createJob("running"), LANE_SD, 1);
+        mScheduler.schedule(createJob("placed"),
+                () -> new DeviceLaneScheduler.Placement(LANE_SD, 1000));
+        mScheduler.schedule(createJob("queued"), LANE_SD, 1);
+
+        mExecutor.runAll();
+        assertEquals(Arrays.asList("running", "queued"), mStarted);
+
+        mPlacingExecutor.runAll();
+        mExecutor.runAll();
+        assertEquals(Arrays.asList("running", "queued", "placed"), mStarted);
+    }
+
+    @Test
+    public void testCancelPending_beforePlacement() {
+        TestJob job = createJob("job");
+        mScheduler.schedule(job, () -> new DeviceLaneScheduler.Placement(LANE_SD, 1));
+
+        assertTrue(mScheduler.cancelPending(job));
+
+        mPlacingExecutor.runAll();
+        mExecutor.runAll();
+        assertTrue(mStarted.isEmpty());
+    }
+
+    @Test
+    public void testGetLane_SplitsExternalStorageByVolume() {
+        String primary = DeviceLaneScheduler.getLane(DocumentsContract.buildDocumentUri(
+                Providers.AUTHORITY_STORAGE, "primary:DCIM"));
+        String sdCard = DeviceLaneScheduler.getLane(DocumentsContract.buildDocumentUri(
+                Providers.AUTHORITY_STORAGE, "1234-5678:DCIM"));
+        String downloads = DeviceLaneScheduler.getLane(DocumentsContract.buildDocumentUri(
+                Providers.AUTHORITY_DOWNLOADS, "42"));
+
+        assertNotEquals(primary, sdCard);
+        assertEquals(primary, downloads);
+    }
+
+    private TestJob createJob(String id) {
+        UrisSupplier srcs = new UrisSupplier.StandardUrisSupplier(
+                Arrays.asList(Uri.parse("content://ham/" + id)));
+        return new TestJob(mContext, new TestJobListener(), id, OPERATION_COPY,
+                new DocumentStack(), srcs, () -> mStarted.add(id), new TestFeatures());
+    }
+}
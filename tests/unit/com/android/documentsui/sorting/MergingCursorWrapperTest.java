@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.sorting;
+
+import static com.android.documentsui.base.DocumentInfo.getCursorString;
+
+import static junit.framework.Assert.assertEquals;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.os.Bundle;
+import android.provider.DocumentsContract;
+import android.provider.DocumentsContract.Document;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.documentsui.roots.RootCursorWrapper;
+import com.android.documentsui.testing.SortModels;
+import com.android.documentsui.testing.TestFileTypeLookup;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class MergingCursorWrapperTest {
+    private static final String[] COLUMNS = new String[]{
+            RootCursorWrapper.COLUMN_AUTHORITY,
+            Document.COLUMN_DOCUMENT_ID,
+            Document.COLUMN_DISPLAY_NAME,
+            Document.COLUMN_SIZE,
+            Document.COLUMN_MIME_TYPE
+    };
+
+    private TestFileTypeLookup fileTypeLookup;
+    private SortModel sortModel;
+
+    @Before
+    public void setUp() {
+        sortModel = SortModels.createTestSortModel();
+        fileTypeLookup = new TestFileTypeLookup();
+    }
+
+    @Test
+    public void testMerge_sortedCursors() {
+        sortModel.sortByUser(SortModel.SORT_DIMENSION_ID_TITLE,
+                SortDimension.SORT_DIRECTION_ASCENDING);
+
+        final Cursor cursor = sortModel.mergeSortedCursors(new Cursor[] {
+                createCursor("a", "apple", "cherry", "fig"),
+                createCursor("b", "banana", "date"),
+                createCursor("c", "Avocado", "elderberry", "grape") }, fileTypeLookup);
+
+        assertEquals(
+                Arrays.asList("apple", "Avocado", "banana", "cherry", "date", "elderberry", "fig",
+                        "grape"),
+                getNames(cursor));
+    }
+
+    @Test
+    public void testMerge_unsortedCursor() {
+        sortModel.sortByUser(SortModel.SORT_DIMENSION_ID_TITLE,
+                SortDimension.SORT_DIRECTION_ASCENDING);
+
+        final Cursor cursor = sortModel.mergeSortedCursors(new Cursor[] {
+                createCursor("a", "banana", "date"),
+                createCursor("b", "fig", "apple", "cherry") }, fileTypeLookup);
+
+        assertEquals(Arrays.asList("apple", "banana", "cherry", "date", "fig"), getNames(cursor));
+    }
+
+    @Test
+    public void testMerge_descending() {
+        sortModel.sortByUser(SortModel.SORT_DIMENSION_ID_TITLE,
+                SortDimension.SORT_DIRECTION_DESCENDING);
+
+        final Cursor cursor = sortModel.mergeSortedCursors(new Cursor[] {
+                createCursor("a", "date", "banana"),
+                createCursor("b", "cherry", "apple") }, fileTypeLookup);
+
+        assertEquals(Arrays.asList("date", "cherry", "banana", "apple"), getNames(cursor));
+    }
+
+    @Test
+    public void testMerge_directoriesFirst() {
+        sortModel.sortByUser(SortModel.SORT_DIMENSION_ID_TITLE,
+                SortDimension.SORT_DIRECTION_ASCENDING);
+
+        final MatrixCursor dirs = createCursor("a", "apple");
+        dirs.newRow()
+                .add(RootCursorWrapper.COLUMN_AUTHORITY, "a")
+                .add(Document.COLUMN_DOCUMENT_ID, "zucchini")
+                .add(Document.COLUMN_DISPLAY_NAME, "zucchini")
+                .add(Document.COLUMN_MIME_TYPE, Document.MIME_TYPE_DIR);
+
+        final Cursor cursor = sortModel.mergeSortedCursors(
+                new Cursor[] { dirs, createCursor("b", "banana") }, fileTypeLookup);
+
+        assertEquals(Arrays.asList("zucchini", "apple", "banana"), getNames(cursor));
+    }
+
+    @Test
+    public void testMerge_sameOrderAsSortingCursorWrapper() {
+        sortModel.sortByUser(SortModel.SORT_DIMENSION_ID_DATE,
+                SortDimension.SORT_DIRECTION_DESCENDING);
+
+        final MatrixCursor c = new MatrixCursor(new String[] {
+                Document.COLUMN_DOCUMENT_ID,
+                Document.COLUMN_DISPLAY_NAME,
+                Document.COLUMN_LAST_MODIFIED,
+                Document.COLUMN_MIME_TYPE });
+        c.addRow(new Object[] { "b", "b", 1000L, "text/plain" });
+        c.addRow(new Object[] { "a", "a", 1000L, "text/plain" });
+        c.addRow(new Object[] { "d", "d", null, "text/plain" });
+        c.addRow(new Object[] { "c", "c", 2000L, Document.MIME_TYPE_DIR });
+        c.addRow(new Object[] { "e", "e", 3000L, "text/plain" });
+
+        // Directories first, then a null date as the most recent, then ties by document ID.
+        final List<String> sorted = getNames(sortModel.sortCursor(c, fileTypeLookup));
+        assertEquals(Arrays.asList("c", "d", "e", "a", "b"), sorted);
+        assertEquals(sorted,
+                getNames(sortModel.mergeSortedCursors(new Cursor[] { c }, fileTypeLookup)));
+    }
+
+    @Test
+    public void testMerge_emptyCursors() {
+        sortModel.sortByUser(SortModel.SORT_DIMENSION_ID_SIZE,
+                SortDimension.SORT_DIRECTION_ASCENDING);
+
+        final Cursor cursor = sortModel.mergeSortedCursors(new Cursor[] {
+                createCursor("a"), createCursor("b", "apple"), createCursor("c") },
+                fileTypeLookup);
+
+        assertEquals(Arrays.asList("apple"), getNames(cursor));
+    }
+
+    @Test
+    public void testMerge_intoMerged() {
+        sortModel.sortByUser(SortModel.SORT_DIMENSION_ID_TITLE,
+                SortDimension.SORT_DIRECTION_ASCENDING);
+
+        final Cursor merged = sortModel.mergeSortedCursors(new Cursor[] {
+                createCursor("a", "apple", "date"),
+                createCursor("b", "cherry") }, fileTypeLookup);
+        final Cursor cursor = sortModel.mergeSortedCursors(merged, new Cursor[] {
+                createCursor("c", "banana", "elderberry") }, fileTypeLookup);
+
+        assertEquals(Arrays.asList("apple", "banana", "cherry", "date", "elderberry"),
+                getNames(cursor));
+        assertEquals(Arrays.asList("apple", "cherry", "date"), getNames(merged));
+    }
+
+    @Test
+    public void testMerge_intoMerged_sortChanged() {
+        sortModel.sortByUser(SortModel.SORT_DIMENSION_ID_TITLE,
+                SortDimension.SORT_DIRECTION_ASCENDING);
+        final Cursor merged = sortModel.mergeSortedCursors(new Cursor[] {
+                createCursor("a", "apple", "date") }, fileTypeLookup);
+
+        sortModel.sortByUser(SortModel.SORT_DIMENSION_ID_TITLE,
+                SortDimension.SORT_DIRECTION_DESCENDING);
+        final Cursor cursor = sortModel.mergeSortedCursors(merged, new Cursor[] {
+                createCursor("b", "banana") }, fileTypeLookup);
+
+        assertEquals(Arrays.asList("date", "banana", "apple"), getNames(cursor));
+    }
+
+    @Test
+    public void testSetExtras() {
+        sortModel.sortByUser(SortModel.SORT_DIMENSION_ID_TITLE,
+                SortDimension.SORT_DIRECTION_ASCENDING);
+
+        final Cursor cursor = sortModel.mergeSortedCursors(
+                new Cursor[] { createCursor("a", "apple") }, fileTypeLookup);
+        final Bundle extras = new Bundle();
+        extras.putBoolean(DocumentsContract.EXTRA_LOADING, true);
+        cursor.setExtras(extras);
+
+        assertEquals(true, cursor.getExtras().getBoolean(DocumentsContract.EXTRA_LOADING));
+    }
+
+    private static MatrixCursor createCursor(String authority, String... names) {
+        final MatrixCursor c = new MatrixCursor(COLUMNS);
+        for (String name : names) {
+            c.newRow()
+                    .add(RootCursorWrapper.COLUMN_AUTHORITY, authority)
+                    .add(Document.COLUMN_DOCUMENT_ID, name)
+                    .add(Document.COLUMN_DISPLAY_NAME, name)
+                    .add(Document.COLUMN_SIZE, name.length())
+                    .add(Document.COLUMN_MIME_TYPE, "text/plain");
+        }
+        return c;
+    }
+
+    private static List<String> getNames(Cursor cursor) {
+        final List<String> names = new ArrayList<>();
+        while (cursor.moveToNext()) {
+            names.add(getCursorString(cursor, Document.COLUMN_DISPLAY_NAME));
+        }
+        return names;
+    }
+}